@@ -0,0 +1,256 @@
+/*
+ * Copyright 2021 SPF4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.actuator;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import javax.ws.rs.core.MediaType;
+import org.junit.Assert;
+import org.junit.Test;
+import org.spf4j.service.avro.HealthCheckInfo;
+
+/**
+ * HTTP/2 cleartext (h2c) round trips against the test service (HTTP/2 is enabled in ServiceIntegrationBase),
+ * with minimal frame level clients, since the JDK 8 has no HTTP/2 client.
+ *
+ * @author Zoltan Farkas
+ */
+public class Http2IntegrationTest extends ServiceIntegrationBase {
+
+  private static final byte[] PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+  private static final int TYPE_DATA = 0;
+
+  private static final int TYPE_HEADERS = 1;
+
+  private static final int TYPE_SETTINGS = 4;
+
+  private static final int TYPE_RST_STREAM = 3;
+
+  private static final int TYPE_GOAWAY = 7;
+
+  private static final int FLAG_END_STREAM = 0x1;
+
+  private static final int FLAG_ACK = 0x1;
+
+  private static final int FLAG_END_HEADERS = 0x4;
+
+  @Test(timeout = 30000)
+  public void testH2cPriorKnowledge() throws IOException {
+    try (Socket socket = new Socket("127.0.0.1", 9090)) {
+      OutputStream os = socket.getOutputStream();
+      os.write(PREFACE);
+      writeFrame(os, TYPE_SETTINGS, 0, 0, new byte[0]);
+      writeFrame(os, TYPE_HEADERS, FLAG_END_STREAM | FLAG_END_HEADERS, 1, requestHeaders("/health/info"));
+      os.flush();
+      Response response = readResponse(new DataInputStream(socket.getInputStream()), os, 1);
+      Assert.assertEquals(200, response.status);
+      Assert.assertTrue(response.body.size() > 0);
+    }
+  }
+
+  @Test(timeout = 30000)
+  public void testH2cUpgrade() throws IOException {
+    try (Socket socket = new Socket("127.0.0.1", 9090)) {
+      OutputStream os = socket.getOutputStream();
+      os.write(("GET /health/info HTTP/1.1\r\nHost: 127.0.0.1:9090\r\nConnection: Upgrade, HTTP2-Settings\r\n"
+              + "Upgrade: h2c\r\nHTTP2-Settings: \r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+      os.flush();
+      DataInputStream is = new DataInputStream(socket.getInputStream());
+      String statusLine = readLine(is);
+      Assert.assertTrue(statusLine, statusLine.startsWith("HTTP/1.1 101"));
+      String line;
+      do {
+        line = readLine(is);
+      } while (!line.isEmpty());
+      // the upgraded request is answered on stream 1.
+      os.write(PREFACE);
+      writeFrame(os, TYPE_SETTINGS, 0, 0, new byte[0]);
+      os.flush();
+      Response response = readResponse(is, os, 1);
+      Assert.assertEquals(200, response.status);
+    }
+  }
+
+  @Test
+  public void testHttp11StillServed() {
+    HealthCheckInfo info = getTarget().path("health/info")
+            .request(MediaType.APPLICATION_JSON).get(HealthCheckInfo.class);
+    Assert.assertNotNull(info);
+  }
+
+  /**
+   * HPACK header block, static table indexed names, literal values without Huffman coding.
+   */
+  private static byte[] requestHeaders(final String path) {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    bos.write(0x82); // :method GET
+    bos.write(0x86); // :scheme http
+    writeLiteral(bos, 4, path); // :path
+    writeLiteral(bos, 1, "127.0.0.1:9090"); // :authority
+    writeLiteral(bos, 19, MediaType.APPLICATION_JSON); // accept
+    return bos.toByteArray();
+  }
+
+  /** literal header field with incremental indexing, indexed name. */
+  private static void writeLiteral(final ByteArrayOutputStream bos, final int nameIdx, final String value) {
+    byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+    bos.write(0x40 | nameIdx); // < 63, fits the 6 bit prefix.
+    bos.write(bytes.length); // < 127, no Huffman.
+    bos.write(bytes, 0, bytes.length);
+  }
+
+  private static void writeFrame(final OutputStream os, final int type, final int flags, final int streamId,
+          final byte[] payload) throws IOException {
+    int length = payload.length;
+    os.write(new byte[] {(byte) (length >>> 16), (byte) (length >>> 8), (byte) length, (byte) type, (byte) flags,
+      (byte) (streamId >>> 24), (byte) (streamId >>> 16), (byte) (streamId >>> 8), (byte) streamId});
+    os.write(payload);
+  }
+
+  private static Response readResponse(final DataInputStream is, final OutputStream os, final int streamId)
+          throws IOException {
+    Response response = new Response();
+    while (true) {
+      int length = is.readUnsignedByte() << 16 | is.readUnsignedShort();
+      int type = is.readUnsignedByte();
+      int flags = is.readUnsignedByte();
+      int stream = is.readInt() & 0x7FFFFFFF;
+      byte[] payload = new byte[length];
+      is.readFully(payload);
+      if (type == TYPE_SETTINGS && (flags & FLAG_ACK) == 0) {
+        writeFrame(os, TYPE_SETTINGS, FLAG_ACK, 0, new byte[0]);
+        os.flush();
+      } else if (type == TYPE_GOAWAY) {
+        Assert.fail("Received GOAWAY " + new String(payload, StandardCharsets.UTF_8));
+      } else if (type == TYPE_RST_STREAM && stream == streamId) {
+        Assert.fail("Received RST_STREAM, error code " + new DataInputStream(new ByteArrayInputStream(payload))
+                .readInt());
+      } else if (stream == streamId) {
+        if (type == TYPE_HEADERS && response.status < 0) {
+          response.status = status(payload, flags);
+        } else if (type == TYPE_DATA) {
+          response.body.write(payload, 0, payload.length);
+        }
+        if ((flags & FLAG_END_STREAM) != 0) {
+          return response;
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the :status, which is the first header of the response header block, after the table size updates.
+   */
+  private static int status(final byte[] headerBlock, final int flags) {
+    int i = 0;
+    if ((flags & 0x8) != 0) { // PADDED
+      i++;
+    }
+    if ((flags & 0x20) != 0) { // PRIORITY
+      i += 5;
+    }
+    int b = headerBlock[i] & 0xFF;
+    while ((b & 0xE0) == 0x20) { // dynamic table size updates
+      if ((b & 0x1F) == 0x1F) {
+        while ((headerBlock[++i] & 0x80) != 0) {
+          // skip integer continuation bytes.
+        }
+      }
+      b = headerBlock[++i] & 0xFF;
+    }
+    if ((b & 0x80) != 0) {
+      // indexed, static table entries 8-14 are the :status values.
+      switch (b & 0x7F) {
+        case 8: return 200;
+        case 9: return 204;
+        case 10: return 206;
+        case 11: return 304;
+        case 12: return 400;
+        case 13: return 404;
+        case 14: return 500;
+        default: throw new IllegalStateException("Unexpected status index " + (b & 0x7F));
+      }
+    }
+    // literal with a indexed :status name.
+    int len = headerBlock[i + 1] & 0x7F;
+    if ((headerBlock[i + 1] & 0x80) == 0) {
+      return Integer.parseInt(new String(headerBlock, i + 2, len, StandardCharsets.US_ASCII));
+    }
+    return huffmanDigits(headerBlock, i + 2, len);
+  }
+
+  /**
+   * Decodes a Huffman coded (RFC 7541 Appendix B) string of digits, '0'-'2' have 5 bit codes (00000-00010),
+   * '3'-'9' have 6 bit codes (011001-011111).
+   */
+  private static int huffmanDigits(final byte[] data, final int offset, final int len) {
+    int result = 0;
+    int totalBits = len * 8;
+    int bit = 0;
+    while (totalBits - bit >= 5) {
+      int code5 = bits(data, offset, bit, 5);
+      if (code5 <= 2) {
+        result = result * 10 + code5;
+        bit += 5;
+        continue;
+      }
+      if (totalBits - bit < 6) {
+        break;
+      }
+      int code6 = bits(data, offset, bit, 6);
+      if (code6 < 0x19 || code6 > 0x1F) {
+        break; // EOS padding.
+      }
+      result = result * 10 + code6 - 0x16;
+      bit += 6;
+    }
+    return result;
+  }
+
+  private static int bits(final byte[] data, final int offset, final int from, final int nr) {
+    int result = 0;
+    for (int i = from, l = from + nr; i < l; i++) {
+      result = (result << 1) | ((data[offset + i / 8] >>> (7 - i % 8)) & 1);
+    }
+    return result;
+  }
+
+  private static String readLine(final InputStream is) throws IOException {
+    StringBuilder sb = new StringBuilder();
+    int c;
+    while ((c = is.read()) >= 0 && c != '\n') {
+      if (c != '\r') {
+        sb.append((char) c);
+      }
+    }
+    return sb.toString();
+  }
+
+  private static final class Response {
+
+    private int status = -1;
+
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+  }
+
+}
@@ -52,6 +52,7 @@ public abstract class ServiceIntegrationBase {
             .withFeature(ActuatorFeature.class)
             .withFeature(SingleNodeClusterFeature.class)
             .withPort(9090)
+            .withHttp2(true)
             .withSecurityAuthenticator(new SecurityAuthenticator() {
               @Override
               public JaxRsSecurityContext authenticate(final Function<String, String> headers) {
@@ -20,6 +20,11 @@ import org.apache.avro.generic.IndexedRecord;
 import org.glassfish.jersey.spi.Contract;
 
 /**
+ * A data set exposed as a table to the avro sql query endpoint.
+ *
+ * Implementations can also be returned as entity from endpoints annotated with @SqlFilterSupport,
+ * the _where predicate and the _project projection will be pushed down to getData.
+ *
  * @author Zoltan Farkas
  */
 @Contract
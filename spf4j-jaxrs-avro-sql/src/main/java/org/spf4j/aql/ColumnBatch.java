@@ -0,0 +1,174 @@
+/*
+ * Copyright 2021 SPF4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.aql;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.util.BitSet;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * A batch of rows in columnar layout.
+ *
+ * Numeric avro fields (int, long, float, double, possibly nullable) are represented as primitive vectors
+ * (LongColumn for int/long, DoubleColumn for float/double), all other fields as ObjectColumn holding
+ * the avro runtime values.
+ *
+ * @author Zoltan Farkas
+ */
+@ParametersAreNonnullByDefault
+@SuppressFBWarnings("EI_EXPOSE_REP2") // vectors are shared, not copied.
+public final class ColumnBatch {
+
+  private final int size;
+
+  private final Column[] columns;
+
+  /**
+   * @param size the number of rows in this batch.
+   * @param columns the columns, in the order requested from the ColumnarAvroDataSet.
+   */
+  public ColumnBatch(final int size, final Column... columns) {
+    this.size = size;
+    this.columns = columns;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public int getNrColumns() {
+    return columns.length;
+  }
+
+  public Column getColumn(final int idx) {
+    return columns[idx];
+  }
+
+  @Override
+  public String toString() {
+    return "ColumnBatch{" + "size=" + size + ", nrColumns=" + columns.length + '}';
+  }
+
+  public abstract static class Column {
+
+    @Nullable
+    private final BitSet nulls;
+
+    /**
+     * @param nulls the bitmap of null values, null if column has no nulls.
+     */
+    protected Column(@Nullable final BitSet nulls) {
+      this.nulls = nulls;
+    }
+
+    public final boolean isNull(final int row) {
+      return nulls != null && nulls.get(row);
+    }
+
+    public final boolean hasNulls() {
+      return nulls != null;
+    }
+
+    @Nullable
+    public final BitSet getNulls() {
+      return nulls;
+    }
+
+    /**
+     * @return boxed value at row, for row materialization.
+     */
+    @Nullable
+    public abstract Object get(int row);
+
+  }
+
+  /**
+   * int or long values.
+   */
+  public static final class LongColumn extends Column {
+
+    private final long[] values;
+
+    public LongColumn(final long[] values, @Nullable final BitSet nulls) {
+      super(nulls);
+      this.values = values;
+    }
+
+    @SuppressFBWarnings("EI_EXPOSE_REP")
+    public long[] getValues() {
+      return values;
+    }
+
+    @Override
+    @Nullable
+    public Object get(final int row) {
+      return isNull(row) ? null : values[row];
+    }
+
+  }
+
+  /**
+   * float or double values.
+   */
+  public static final class DoubleColumn extends Column {
+
+    private final double[] values;
+
+    public DoubleColumn(final double[] values, @Nullable final BitSet nulls) {
+      super(nulls);
+      this.values = values;
+    }
+
+    @SuppressFBWarnings("EI_EXPOSE_REP")
+    public double[] getValues() {
+      return values;
+    }
+
+    @Override
+    @Nullable
+    public Object get(final int row) {
+      return isNull(row) ? null : values[row];
+    }
+
+  }
+
+  /**
+   * any other values.
+   */
+  public static final class ObjectColumn extends Column {
+
+    private final Object[] values;
+
+    public ObjectColumn(final Object[] values) {
+      super(null);
+      this.values = values;
+    }
+
+    @SuppressFBWarnings("EI_EXPOSE_REP")
+    public Object[] getValues() {
+      return values;
+    }
+
+    @Override
+    @Nullable
+    public Object get(final int row) {
+      return values[row];
+    }
+
+  }
+
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2021 SPF4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.aql;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.ws.rs.core.SecurityContext;
+import org.apache.avro.generic.IndexedRecord;
+import org.spf4j.base.CloseableIterable;
+
+/**
+ * A data set that can produce its data in columnar batches.
+ * The avro sql endpoint will scan these data sets via getBatches, evaluating simple predicates
+ * on primitive columns in tight loops over the column vectors,
+ * and materializing only the selected rows and projected columns.
+ *
+ * @author Zoltan Farkas
+ */
+@ParametersAreNonnullByDefault
+public interface ColumnarAvroDataSet<T extends IndexedRecord> extends AvroDataSetContract<T> {
+
+  /**
+   * @param columns the names of the top level fields to return, batch columns will be in this order.
+   * @param secCtx the security context.
+   * @param timeout timeout.
+   * @param timeUnit timeout unit.
+   * @return the data in column batches.
+   */
+  CloseableIterable<ColumnBatch> getBatches(List<String> columns,
+          SecurityContext secCtx, long timeout, TimeUnit timeUnit);
+
+}
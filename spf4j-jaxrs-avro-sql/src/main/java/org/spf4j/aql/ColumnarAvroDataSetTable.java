@@ -0,0 +1,519 @@
+/*
+ * Copyright 2021 SPF4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.aql;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.DoublePredicate;
+import java.util.function.LongPredicate;
+import java.util.function.Supplier;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.ws.rs.core.SecurityContext;
+import org.apache.avro.Schema;
+import org.apache.calcite.DataContext;
+import org.apache.calcite.config.CalciteConnectionConfig;
+import org.apache.calcite.linq4j.AbstractEnumerable;
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.Enumerator;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rel.type.RelDataTypeFactory;
+import org.apache.calcite.rex.RexCall;
+import org.apache.calcite.rex.RexInputRef;
+import org.apache.calcite.rex.RexLiteral;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.schema.ProjectableFilterableTable;
+import org.apache.calcite.schema.Statistic;
+import org.apache.calcite.sql.SqlCall;
+import org.apache.calcite.sql.SqlKind;
+import org.apache.calcite.sql.SqlNode;
+import org.apache.calcite.sql.type.SqlTypeName;
+import org.spf4j.avro.calcite.AvroDataSetAsProjectableFilterableTable;
+import org.spf4j.base.CloseableIterable;
+import org.spf4j.base.ExecutionContexts;
+import org.spf4j.base.TimeSource;
+
+/**
+ * Calcite table over a ColumnarAvroDataSet.
+ *
+ * Only predicate evaluation is vectorized: comparisons of numeric columns with literals, and null checks are
+ * evaluated over the primitive column vectors into a selection bitmap. Every selected row is then materialized
+ * as a Object[] calcite row of the projected columns (one box per value, straight from the primitive vectors),
+ * as required by the ProjectableFilterableTable contract. All other predicates, projections and aggregates
+ * are evaluated by calcite over these materialized rows, so aggregations over a unfiltered scan gain nothing here.
+ *
+ * @author Zoltan Farkas
+ */
+@ParametersAreNonnullByDefault
+public final class ColumnarAvroDataSetTable implements ProjectableFilterableTable {
+
+  private final ColumnarAvroDataSet<?> dataSet;
+
+  private final AvroDataSetAsProjectableFilterableTable rowTable;
+
+  private final List<Schema.Field> fields;
+
+  private final ColumnType[] columnTypes;
+
+  public ColumnarAvroDataSetTable(final ColumnarAvroDataSet<?> dataSet) {
+    this.dataSet = dataSet;
+    this.rowTable = new AvroDataSetAsProjectableFilterableTable(dataSet);
+    this.fields = dataSet.getElementSchema().getFields();
+    this.columnTypes = new ColumnType[fields.size()];
+    for (Schema.Field field : fields) {
+      columnTypes[field.pos()] = ColumnType.of(field.schema());
+    }
+  }
+
+  public ColumnarAvroDataSet<?> getDataSet() {
+    return dataSet;
+  }
+
+  @Override
+  public Enumerable<Object[]> scan(final DataContext root, final List<RexNode> filters,
+          @Nullable final int[] projects) {
+    int[] projection = projects == null ? allFields() : projects;
+    List<String> columns = new ArrayList<>(projection.length + filters.size());
+    int[] fieldToColumn = new int[fields.size()];
+    Arrays.fill(fieldToColumn, -1);
+    for (int fieldIdx : projection) {
+      fieldToColumn[fieldIdx] = columns.size();
+      columns.add(fields.get(fieldIdx).name());
+    }
+    List<ColumnPredicate> predicates = new ArrayList<>(filters.size());
+    Iterator<RexNode> fit = filters.iterator();
+    while (fit.hasNext()) {
+      ColumnPredicate pred = ColumnPredicate.from(fit.next(), columnTypes);
+      if (pred != null) {
+        fit.remove();
+        if (fieldToColumn[pred.field] < 0) {
+          fieldToColumn[pred.field] = columns.size();
+          columns.add(fields.get(pred.field).name());
+        }
+        predicates.add(pred);
+      }
+    }
+    SecurityContext secCtx = SecuredDataContext.getSecurityContext(root);
+    if (secCtx == null) {
+      throw new IllegalStateException("No security context available in " + root);
+    }
+    return new AbstractEnumerable<Object[]>() {
+      @Override
+      public Enumerator<Object[]> enumerator() {
+        return new BatchEnumerator(() -> {
+          long timeoutNanos = Math.max(0, ExecutionContexts.getContextDeadlineNanos() - TimeSource.nanoTime());
+          return dataSet.getBatches(columns, secCtx, timeoutNanos, TimeUnit.NANOSECONDS);
+        }, projection, fieldToColumn, predicates, DataContext.Variable.CANCEL_FLAG.get(root));
+      }
+    };
+  }
+
+  private int[] allFields() {
+    int[] result = new int[fields.size()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = i;
+    }
+    return result;
+  }
+
+  @Override
+  public RelDataType getRowType(final RelDataTypeFactory typeFactory) {
+    return rowTable.getRowType(typeFactory);
+  }
+
+  @Override
+  public Statistic getStatistic() {
+    return rowTable.getStatistic();
+  }
+
+  @Override
+  public org.apache.calcite.schema.Schema.TableType getJdbcTableType() {
+    return rowTable.getJdbcTableType();
+  }
+
+  @Override
+  public boolean isRolledUp(final String column) {
+    return rowTable.isRolledUp(column);
+  }
+
+  @Override
+  public boolean rolledUpColumnValidInsideAgg(final String column, final SqlCall call,
+          @Nullable final SqlNode parent, @Nullable final CalciteConnectionConfig config) {
+    return rowTable.rolledUpColumnValidInsideAgg(column, call, parent, config);
+  }
+
+  @Override
+  public String toString() {
+    return "ColumnarAvroDataSetTable{" + "dataSet=" + dataSet + '}';
+  }
+
+  private enum ColumnType {
+    INT, LONG, FLOAT, DOUBLE, OTHER;
+
+    static ColumnType of(final Schema fieldSchema) {
+      Schema schema = fieldSchema;
+      if (schema.getType() == Schema.Type.UNION) {
+        List<Schema> types = schema.getTypes();
+        if (types.size() != 2) {
+          return OTHER;
+        }
+        if (types.get(0).getType() == Schema.Type.NULL) {
+          schema = types.get(1);
+        } else if (types.get(1).getType() == Schema.Type.NULL) {
+          schema = types.get(0);
+        } else {
+          return OTHER;
+        }
+      }
+      if (schema.getLogicalType() != null) {
+        return OTHER;
+      }
+      switch (schema.getType()) {
+        case INT:
+          return INT;
+        case LONG:
+          return LONG;
+        case FLOAT:
+          return FLOAT;
+        case DOUBLE:
+          return DOUBLE;
+        default:
+          return OTHER;
+      }
+    }
+
+    boolean isIntegral() {
+      return this == INT || this == LONG;
+    }
+
+    boolean isNumeric() {
+      return this != OTHER;
+    }
+
+    /**
+     * @return the calcite value at row, numeric values are boxed once, from the primitive column vectors.
+     */
+    @Nullable
+    Object toCalcite(final ColumnBatch.Column column, final int row) {
+      if (column.isNull(row)) {
+        return null;
+      }
+      if (column instanceof ColumnBatch.LongColumn) {
+        long value = ((ColumnBatch.LongColumn) column).getValues()[row];
+        if (this == INT) {
+          return (int) value;
+        }
+        return value;
+      }
+      if (column instanceof ColumnBatch.DoubleColumn) {
+        double value = ((ColumnBatch.DoubleColumn) column).getValues()[row];
+        if (this == FLOAT) {
+          return (float) value;
+        }
+        return value;
+      }
+      Object value = column.get(row);
+      if (value instanceof CharSequence && !(value instanceof String)) {
+        return value.toString();
+      }
+      return value;
+    }
+
+  }
+
+  /**
+   * A predicate on a single column evaluated vectorized.
+   */
+  private static final class ColumnPredicate {
+
+    private final int field;
+
+    private final SqlKind kind;
+
+    @Nullable
+    private final LongPredicate longPredicate;
+
+    @Nullable
+    private final DoublePredicate doublePredicate;
+
+    private ColumnPredicate(final int field, final SqlKind kind,
+            @Nullable final LongPredicate longPredicate, @Nullable final DoublePredicate doublePredicate) {
+      this.field = field;
+      this.kind = kind;
+      this.longPredicate = longPredicate;
+      this.doublePredicate = doublePredicate;
+    }
+
+    @Nullable
+    static ColumnPredicate from(final RexNode node, final ColumnType[] columnTypes) {
+      if (!(node instanceof RexCall)) {
+        return null;
+      }
+      RexCall call = (RexCall) node;
+      List<RexNode> operands = call.getOperands();
+      SqlKind kind = call.getKind();
+      switch (kind) {
+        case IS_NULL:
+        case IS_NOT_NULL:
+          if (operands.get(0) instanceof RexInputRef) {
+            return new ColumnPredicate(((RexInputRef) operands.get(0)).getIndex(), kind, null, null);
+          }
+          return null;
+        case EQUALS:
+        case NOT_EQUALS:
+        case LESS_THAN:
+        case LESS_THAN_OR_EQUAL:
+        case GREATER_THAN:
+        case GREATER_THAN_OR_EQUAL:
+          break;
+        default:
+          return null;
+      }
+      RexNode left = operands.get(0);
+      RexNode right = operands.get(1);
+      if (right instanceof RexInputRef && left instanceof RexLiteral) {
+        RexNode tmp = left;
+        left = right;
+        right = tmp;
+        kind = kind.reverse();
+      }
+      if (!(left instanceof RexInputRef && right instanceof RexLiteral)) {
+        return null;
+      }
+      int field = ((RexInputRef) left).getIndex();
+      ColumnType type = columnTypes[field];
+      RexLiteral literal = (RexLiteral) right;
+      if (!type.isNumeric() || literal.isNull() || !SqlTypeName.NUMERIC_TYPES.contains(literal.getTypeName())) {
+        return null;
+      }
+      BigDecimal value = literal.getValueAs(BigDecimal.class);
+      if (value == null) {
+        return null;
+      }
+      if (type.isIntegral()) {
+        long lv;
+        try {
+          lv = value.longValueExact();
+        } catch (ArithmeticException ex) {
+          return null; // fractional or out of range, leave it to calcite.
+        }
+        return new ColumnPredicate(field, kind, longPredicate(kind, lv), null);
+      } else {
+        return new ColumnPredicate(field, kind, null, doublePredicate(kind, value.doubleValue()));
+      }
+    }
+
+    private static LongPredicate longPredicate(final SqlKind kind, final long v) {
+      switch (kind) {
+        case EQUALS:
+          return (x) -> x == v;
+        case NOT_EQUALS:
+          return (x) -> x != v;
+        case LESS_THAN:
+          return (x) -> x < v;
+        case LESS_THAN_OR_EQUAL:
+          return (x) -> x <= v;
+        case GREATER_THAN:
+          return (x) -> x > v;
+        case GREATER_THAN_OR_EQUAL:
+          return (x) -> x >= v;
+        default:
+          throw new IllegalArgumentException("Unsupported comparison " + kind);
+      }
+    }
+
+    private static DoublePredicate doublePredicate(final SqlKind kind, final double v) {
+      switch (kind) {
+        case EQUALS:
+          return (x) -> x == v;
+        case NOT_EQUALS:
+          return (x) -> x != v;
+        case LESS_THAN:
+          return (x) -> x < v;
+        case LESS_THAN_OR_EQUAL:
+          return (x) -> x <= v;
+        case GREATER_THAN:
+          return (x) -> x > v;
+        case GREATER_THAN_OR_EQUAL:
+          return (x) -> x >= v;
+        default:
+          throw new IllegalArgumentException("Unsupported comparison " + kind);
+      }
+    }
+
+    /**
+     * clears the selection bits of the rows that do not match this predicate.
+     */
+    void apply(final ColumnBatch.Column column, final BitSet selection) {
+      BitSet nulls = column.getNulls();
+      if (kind == SqlKind.IS_NULL) {
+        if (nulls == null) {
+          selection.clear();
+        } else {
+          selection.and(nulls);
+        }
+        return;
+      }
+      if (nulls != null) {
+        // IS NOT NULL, and comparisons with null are never true.
+        selection.andNot(nulls);
+      }
+      if (longPredicate != null) {
+        long[] values = ((ColumnBatch.LongColumn) column).getValues();
+        for (int i = selection.nextSetBit(0); i >= 0; i = selection.nextSetBit(i + 1)) {
+          if (!longPredicate.test(values[i])) {
+            selection.clear(i);
+          }
+        }
+      } else if (doublePredicate != null) {
+        double[] values = ((ColumnBatch.DoubleColumn) column).getValues();
+        for (int i = selection.nextSetBit(0); i >= 0; i = selection.nextSetBit(i + 1)) {
+          if (!doublePredicate.test(values[i])) {
+            selection.clear(i);
+          }
+        }
+      }
+    }
+
+  }
+
+  private final class BatchEnumerator implements Enumerator<Object[]> {
+
+    private final Supplier<CloseableIterable<ColumnBatch>> batchesSupplier;
+
+    private CloseableIterable<ColumnBatch> batches;
+
+    private Iterator<ColumnBatch> batchIterator;
+
+    private final int[] projection;
+
+    private final int[] fieldToColumn;
+
+    private final List<ColumnPredicate> predicates;
+
+    private final BitSet selection;
+
+    @Nullable
+    private final AtomicBoolean cancelFlag;
+
+    @Nullable
+    private ColumnBatch batch;
+
+    private int row;
+
+    @Nullable
+    private Object[] current;
+
+    BatchEnumerator(final Supplier<CloseableIterable<ColumnBatch>> batchesSupplier, final int[] projection,
+            final int[] fieldToColumn, final List<ColumnPredicate> predicates,
+            @Nullable final AtomicBoolean cancelFlag) {
+      this.batchesSupplier = batchesSupplier;
+      this.batches = batchesSupplier.get();
+      this.batchIterator = batches.iterator();
+      this.projection = projection;
+      this.fieldToColumn = fieldToColumn;
+      this.predicates = predicates;
+      this.selection = new BitSet();
+      this.cancelFlag = cancelFlag;
+      this.row = -1;
+    }
+
+    @Override
+    @SuppressFBWarnings("EI_EXPOSE_REP")
+    public Object[] current() {
+      if (current == null) {
+        throw new NoSuchElementException();
+      }
+      return current;
+    }
+
+    @Override
+    public boolean moveNext() {
+      while (true) {
+        if (batch != null) {
+          row = selection.nextSetBit(row + 1);
+          if (row >= 0) {
+            current = materialize(batch, row);
+            return true;
+          }
+        }
+        if ((cancelFlag != null && cancelFlag.get()) || !batchIterator.hasNext()) {
+          batch = null;
+          current = null;
+          return false;
+        }
+        batch = batchIterator.next();
+        select(batch);
+        row = -1;
+      }
+    }
+
+    private void select(final ColumnBatch cb) {
+      selection.clear();
+      selection.set(0, cb.size());
+      for (ColumnPredicate pred : predicates) {
+        pred.apply(cb.getColumn(fieldToColumn[pred.field]), selection);
+        if (selection.isEmpty()) {
+          return;
+        }
+      }
+    }
+
+    private Object[] materialize(final ColumnBatch cb, final int rowIdx) {
+      Object[] result = new Object[projection.length];
+      for (int i = 0; i < projection.length; i++) {
+        int fieldIdx = projection[i];
+        result[i] = columnTypes[fieldIdx].toCalcite(cb.getColumn(fieldToColumn[fieldIdx]), rowIdx);
+      }
+      return result;
+    }
+
+    /**
+     * Re-opens the batches, the enumeration restarts from the first batch.
+     */
+    @Override
+    public void reset() {
+      close();
+      batches = batchesSupplier.get();
+      batchIterator = batches.iterator();
+      batch = null;
+      current = null;
+      row = -1;
+    }
+
+    @Override
+    public void close() {
+      try {
+        ((Closeable) batches).close();
+      } catch (IOException ex) {
+        throw new UncheckedIOException(ex);
+      }
+    }
+
+  }
+
+}
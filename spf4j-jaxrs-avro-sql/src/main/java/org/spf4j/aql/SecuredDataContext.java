@@ -0,0 +1,105 @@
+/*
+ * Copyright 2021 SPF4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.aql;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.ws.rs.core.SecurityContext;
+import org.apache.calcite.DataContext;
+import org.apache.calcite.adapter.java.JavaTypeFactory;
+import org.apache.calcite.linq4j.QueryProvider;
+import org.apache.calcite.schema.SchemaPlus;
+
+/**
+ * DataContext that makes the request security context, and a query cancellation flag
+ * (DataContext.Variable.CANCEL_FLAG) available to the table implementations.
+ *
+ * @author Zoltan Farkas
+ */
+@ParametersAreNonnullByDefault
+public final class SecuredDataContext implements DataContext {
+
+  public static final String SECURITY_CONTEXT = "spf4j.securityContext";
+
+  private final DataContext delegate;
+
+  private final SecurityContext secCtx;
+
+  private final AtomicBoolean cancelFlag;
+
+  @Nullable
+  private final SchemaPlus rootSchema;
+
+  public SecuredDataContext(final DataContext delegate, final SecurityContext secCtx) {
+    this(delegate, secCtx, null);
+  }
+
+  /**
+   * @param rootSchema the root schema, to overwrite the delegate root schema with,
+   * needed for compiled plans that look up their tables in the root schema.
+   */
+  public SecuredDataContext(final DataContext delegate, final SecurityContext secCtx,
+          @Nullable final SchemaPlus rootSchema) {
+    this.delegate = delegate;
+    this.secCtx = secCtx;
+    this.cancelFlag = new AtomicBoolean(false);
+    this.rootSchema = rootSchema;
+  }
+
+  public AtomicBoolean getCancelFlag() {
+    return cancelFlag;
+  }
+
+  @Nullable
+  public static SecurityContext getSecurityContext(final DataContext ctx) {
+    return (SecurityContext) ctx.get(SECURITY_CONTEXT);
+  }
+
+  @Override
+  @Nullable
+  public SchemaPlus getRootSchema() {
+    return rootSchema == null ? delegate.getRootSchema() : rootSchema;
+  }
+
+  @Override
+  public JavaTypeFactory getTypeFactory() {
+    return delegate.getTypeFactory();
+  }
+
+  @Override
+  public QueryProvider getQueryProvider() {
+    return delegate.getQueryProvider();
+  }
+
+  @Override
+  @Nullable
+  public Object get(final String name) {
+    if (SECURITY_CONTEXT.equals(name)) {
+      return secCtx;
+    }
+    if (DataContext.Variable.CANCEL_FLAG.camelName.equals(name)) {
+      return cancelFlag;
+    }
+    return delegate.get(name);
+  }
+
+  @Override
+  public String toString() {
+    return "SecuredDataContext{" + "delegate=" + delegate + ", secCtx=" + secCtx + '}';
+  }
+
+}
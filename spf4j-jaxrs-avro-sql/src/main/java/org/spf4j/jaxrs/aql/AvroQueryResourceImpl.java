@@ -2,11 +2,14 @@ package org.spf4j.jaxrs.aql;
 
 import com.google.common.collect.Maps;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.io.IOException;
 import java.io.Reader;
 import java.io.StringReader;
-import java.util.Iterator;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.annotation.Nullable;
 import javax.annotation.PostConstruct;
 import javax.annotation.security.PermitAll;
@@ -19,13 +22,21 @@ import javax.ws.rs.core.Response;
 import org.apache.avro.Schema;
 import org.apache.avro.generic.GenericRecord;
 import org.apache.avro.reflect.AvroSchema;
+import org.apache.calcite.adapter.enumerable.EnumerableConvention;
+import org.apache.calcite.adapter.enumerable.EnumerableInterpretable;
+import org.apache.calcite.adapter.enumerable.EnumerableRel;
 import org.apache.calcite.config.Lex;
 import org.apache.calcite.interpreter.Interpreter;
 import org.apache.calcite.jdbc.JavaTypeFactoryImpl;
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.Enumerator;
+import org.apache.calcite.plan.RelOptPlanner;
 import org.apache.calcite.plan.RelOptUtil;
+import org.apache.calcite.plan.RelTraitSet;
 import org.apache.calcite.rel.RelNode;
 import org.apache.calcite.rel.RelRoot;
 import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.runtime.Bindable;
 import org.apache.calcite.schema.SchemaPlus;
 import org.apache.calcite.schema.Table;
 import org.apache.calcite.sql.SqlNode;
@@ -34,18 +45,27 @@ import org.apache.calcite.sql.parser.SqlParser;
 import org.apache.calcite.tools.FrameworkConfig;
 import org.apache.calcite.tools.Frameworks;
 import org.apache.calcite.tools.Planner;
+import org.apache.calcite.tools.Programs;
 import org.apache.calcite.tools.RelConversionException;
 import org.apache.calcite.tools.ValidationException;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 import org.glassfish.hk2.api.Immediate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.spf4j.avro.calcite.EmbededDataContext;
 import org.spf4j.avro.calcite.IndexedRecords;
 import org.spf4j.avro.calcite.Types;
-import org.spf4j.jaxrs.IterableArrayContent;
+import org.spf4j.base.ArrayWriter;
+import org.spf4j.base.ExecutionContexts;
+import org.spf4j.base.TimeSource;
+import org.spf4j.base.UncheckedTimeoutException;
+import org.spf4j.jaxrs.StreamingArrayContent;
 import org.spf4j.log.ExecContextLogger;
 import org.spf4j.avro.calcite.AvroDataSetAsProjectableFilterableTable;
 import org.spf4j.aql.AvroDataSetContract;
+import org.spf4j.aql.ColumnarAvroDataSet;
+import org.spf4j.aql.ColumnarAvroDataSetTable;
+import org.spf4j.aql.SecuredDataContext;
 import org.spf4j.avro.calcite.PlannerUtils;
 import org.spf4j.http.Headers;
 import org.spf4j.http.HttpWarning;
@@ -67,14 +87,32 @@ public class AvroQueryResourceImpl implements AvroQueryResource {
 
   private final FrameworkConfig config;
 
+  private final boolean compiled;
 
-  @Inject
   public AvroQueryResourceImpl(final Iterable<AvroDataSetContract> resources) {
+    this(resources, true);
+  }
+
+  /**
+   * @param resources the data sets to expose as tables.
+   * @param compiled when true (default), query plans are converted to the Enumerable convention and compiled to
+   * byte-code (Janino) before execution, and the result rows are streamed to the response as they are produced.
+   * Otherwise they are executed via the calcite Interpreter, which materializes the whole result before the
+   * first row is written, and avoids the per query compilation cost (only worth it for small data sets).
+   */
+  @Inject
+  public AvroQueryResourceImpl(final Iterable<AvroDataSetContract> resources,
+          @ConfigProperty(name = "avql.query.compiled", defaultValue = "true") final boolean compiled) {
+    this.compiled = compiled;
     SchemaPlus schema = Frameworks.createRootSchema(true);
     for (AvroDataSetContract res : resources) {
       String name = res.getName();
       LOG.debug("Registered {} table to schema", name);
-      schema.add(name, new AvroDataSetAsProjectableFilterableTable(res));
+      if (res instanceof ColumnarAvroDataSet) {
+        schema.add(name, new ColumnarAvroDataSetTable((ColumnarAvroDataSet) res));
+      } else {
+        schema.add(name, new AvroDataSetAsProjectableFilterableTable(res));
+      }
     }
     SqlParser.Config cfg = SqlParser.config()
             .withCaseSensitive(true)
@@ -114,8 +152,16 @@ public class AvroQueryResourceImpl implements AvroQueryResource {
     Schema from = Types.from(rowType);
     LOG.debug("Return row schema: {}", from);
     EmbededDataContext dc = new EmbededDataContext(new JavaTypeFactoryImpl(), secCtx);
-    Interpreter interpreter = new Interpreter(dc, relNode);
-    Response.ResponseBuilder rb = Response.ok(new IterableInterpreter(from, interpreter));
+    SecuredDataContext sdc = new SecuredDataContext(dc, secCtx, config.getDefaultSchema());
+    StreamingArrayContent<GenericRecord> result;
+    if (compiled) {
+      result = executeCompiled(relNode, from, dc, sdc);
+    } else {
+      Interpreter interpreter = new Interpreter(sdc, relNode);
+      result = new QueryResultContent(from, interpreter.select((row) -> IndexedRecords.fromRecord(from, row)),
+              interpreter, sdc.getCancelFlag());
+    }
+    Response.ResponseBuilder rb = Response.ok(result);
     Map<String, String> deprecations = (Map<String, String>) dc.get(EmbededDataContext.DEPRECATIONS);
     if (deprecations != null && !deprecations.isEmpty()) {
       for (Map.Entry<String, String> dep : deprecations.entrySet()) {
@@ -126,6 +172,31 @@ public class AvroQueryResourceImpl implements AvroQueryResource {
     return rb.build();
   }
 
+  /**
+   * Converts the logical plan to the Enumerable convention and compiles it.
+   * Table scans that calcite cannot generate code for (ProjectableFilterableTable)
+   * are still bound via the interpreter, everything on top of them (filters, projections, aggregates, sorts)
+   * runs as generated code, and the generated code writes the result rows directly into the result records
+   * (see EnumerableToAvroRecords).
+   */
+  private static StreamingArrayContent<GenericRecord> executeCompiled(final RelNode relNode, final Schema rowSchema,
+          final EmbededDataContext dc, final SecuredDataContext sdc) {
+    RelOptPlanner planner = relNode.getCluster().getPlanner();
+    RelTraitSet traits = relNode.getTraitSet().replace(EnumerableConvention.INSTANCE);
+    RelNode enumerablePlan = Programs.standard().run(planner, relNode, traits,
+            Collections.emptyList(), Collections.emptyList());
+    LOG.debug("compiled plan: {}", new ReadablePlan(enumerablePlan));
+    Map<String, Object> stashed = new HashMap<>(4);
+    Bindable<GenericRecord> bindable = EnumerableInterpretable.toBindable(stashed, null,
+            new EnumerableToAvroRecords((EnumerableRel) enumerablePlan, rowSchema), EnumerableRel.Prefer.ARRAY);
+    // the generated code reads the values it references (schemas, interpreted scans) from the data context.
+    for (Map.Entry<String, Object> entry : stashed.entrySet()) {
+      dc.put(entry.getKey(), entry.getValue());
+    }
+    // bind eagerly, so that table scans are set up (and deprecations collected) before the response is built.
+    return new QueryResultContent(rowSchema, bindable.bind(sdc), () -> { }, sdc.getCancelFlag());
+  }
+
   @Override
   public Response plan(final Reader query, final JaxRsSecurityContext secCtx) {
     return Response.ok(parsePlan(query)).build();
@@ -196,6 +267,8 @@ public class AvroQueryResourceImpl implements AvroQueryResource {
   private static Schema getTableSchema(final Table table) {
     if (table instanceof AvroDataSetAsProjectableFilterableTable) {
       return ((AvroDataSetAsProjectableFilterableTable) table).getDataSet().getElementSchema();
+    } else if (table instanceof ColumnarAvroDataSetTable) {
+      return ((ColumnarAvroDataSetTable) table).getDataSet().getElementSchema();
     } else {
       return Types.from(table.getRowType(new JavaTypeFactoryImpl()));
     }
@@ -232,14 +305,27 @@ public class AvroQueryResourceImpl implements AvroQueryResource {
     }
   }
 
-  private static class IterableInterpreter implements IterableArrayContent<GenericRecord> {
+  /**
+   * Query result set streamed to the client as rows are produced.
+   * Rows are pulled from the enumerator only as fast as the client consumes them,
+   * the enumerator is closed and the query is canceled when the client disconnects or the deadline is exceeded.
+   */
+  static final class QueryResultContent implements StreamingArrayContent<GenericRecord> {
+
+    /** deadline is checked every DEADLINE_CHECK_MASK + 1 rows. */
+    private static final int DEADLINE_CHECK_MASK = 0xFF;
 
     private final Schema rowSchema;
-    private final Interpreter interpreter;
+    private final Enumerable<GenericRecord> rows;
+    private final AutoCloseable resource;
+    private final AtomicBoolean cancelFlag;
 
-    IterableInterpreter(final Schema rowSchema, final Interpreter interpreter) {
+    QueryResultContent(final Schema rowSchema, final Enumerable<GenericRecord> rows,
+            final AutoCloseable resource, final AtomicBoolean cancelFlag) {
       this.rowSchema = rowSchema;
-      this.interpreter = interpreter;
+      this.rows = rows;
+      this.resource = resource;
+      this.cancelFlag = cancelFlag;
     }
 
     @Override
@@ -248,31 +334,40 @@ public class AvroQueryResourceImpl implements AvroQueryResource {
     }
 
     @Override
-    public void close() {
-      interpreter.close();
+    public void write(final ArrayWriter<GenericRecord> output) throws IOException {
+      long deadlineNanos = ExecutionContexts.getContextDeadlineNanos();
+      boolean completed = false;
+      try (Enumerator<GenericRecord> enumerator = rows.enumerator()) {
+        int nrRows = 0;
+        while (enumerator.moveNext()) {
+          if ((++nrRows & DEADLINE_CHECK_MASK) == 0 && TimeSource.nanoTime() > deadlineNanos) {
+            throw new UncheckedTimeoutException("Deadline exceeded after " + nrRows + " rows");
+          }
+          output.write(enumerator.current());
+        }
+        completed = true;
+      } finally {
+        if (!completed) {
+          cancelFlag.set(true);
+        }
+        close();
+      }
     }
 
     @Override
-    public Iterator<GenericRecord> iterator() {
-      return new Iterator<GenericRecord>() {
-        private final Iterator<Object[]>  it = interpreter.iterator();
-
-        @Override
-        public boolean hasNext() {
-          return it.hasNext();
-        }
+    @SuppressFBWarnings("EXS_EXCEPTION_SOFTENING_NO_CHECKED")
+    public void close() {
+      try {
+        resource.close();
+      } catch (Exception ex) {
+        throw new RuntimeException(ex);
+      }
+    }
 
-        @Override
-        public GenericRecord next() {
-          Object[] row = it.next();
-          LOG.debug("Raw Row {}",  (Object) row);
-          GenericRecord record = IndexedRecords.fromRecord(rowSchema, row);
-          LOG.debug("Row",  record);
-          return record;
-        }
-      };
+    @Override
+    public String toString() {
+      return "QueryResultContent{" + "rowSchema=" + rowSchema + '}';
     }
   }
 
-
 }
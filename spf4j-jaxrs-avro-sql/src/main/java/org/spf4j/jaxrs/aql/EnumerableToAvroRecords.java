@@ -0,0 +1,106 @@
+/*
+ * Copyright 2021 SPF4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.jaxrs.aql;
+
+import java.util.Collections;
+import java.util.List;
+import javax.annotation.ParametersAreNonnullByDefault;
+import org.apache.avro.Schema;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.calcite.adapter.enumerable.EnumerableRel;
+import org.apache.calcite.adapter.enumerable.EnumerableRelImplementor;
+import org.apache.calcite.adapter.enumerable.JavaRowFormat;
+import org.apache.calcite.adapter.enumerable.PhysType;
+import org.apache.calcite.adapter.enumerable.PhysTypeImpl;
+import org.apache.calcite.adapter.java.JavaTypeFactory;
+import org.apache.calcite.linq4j.function.Function1;
+import org.apache.calcite.linq4j.tree.BlockBuilder;
+import org.apache.calcite.linq4j.tree.Expression;
+import org.apache.calcite.linq4j.tree.Expressions;
+import org.apache.calcite.linq4j.tree.ParameterExpression;
+import org.apache.calcite.linq4j.tree.Primitive;
+import org.apache.calcite.plan.RelTraitSet;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.SingleRel;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.util.BuiltInMethod;
+import org.spf4j.avro.calcite.IndexedRecords;
+
+/**
+ * Root of a compiled query plan, the generated code converts the rows of its input directly into avro records
+ * of the result schema, so the compiled query returns a Enumerable&lt;GenericRecord&gt;.
+ *
+ * @author Zoltan Farkas
+ */
+@ParametersAreNonnullByDefault
+final class EnumerableToAvroRecords extends SingleRel implements EnumerableRel {
+
+  private final Schema recordSchema;
+
+  EnumerableToAvroRecords(final EnumerableRel input, final Schema recordSchema) {
+    this(input.getTraitSet(), input, recordSchema);
+  }
+
+  private EnumerableToAvroRecords(final RelTraitSet traits, final RelNode input, final Schema recordSchema) {
+    super(input.getCluster(), traits, input);
+    this.recordSchema = recordSchema;
+  }
+
+  @Override
+  public RelNode copy(final RelTraitSet traitSet, final List<RelNode> inputs) {
+    return new EnumerableToAvroRecords(traitSet, sole(inputs), recordSchema);
+  }
+
+  @Override
+  protected RelDataType deriveRowType() {
+    JavaTypeFactory typeFactory = (JavaTypeFactory) getCluster().getTypeFactory();
+    return typeFactory.createStructType(Collections.singletonList(typeFactory.createJavaType(GenericRecord.class)),
+            Collections.singletonList("record"));
+  }
+
+  /**
+   * generates: input.select(row -&gt; {record = new GenericData.Record(schema); record.put(i, fromCalciteToAvro(...));
+   * return record; })
+   */
+  @Override
+  public Result implement(final EnumerableRelImplementor implementor, final Prefer pref) {
+    Result input = implementor.visitChild(this, 0, (EnumerableRel) getInput(), pref);
+    PhysType inputType = input.physType;
+    BlockBuilder builder = new BlockBuilder();
+    Expression rows = builder.append("rows", input.block);
+    ParameterExpression row = Expressions.parameter(inputType.getJavaRowType(), "row");
+    BlockBuilder body = new BlockBuilder();
+    Expression record = body.append("record", Expressions.new_(GenericData.Record.class,
+            implementor.stash(recordSchema, Schema.class)));
+    for (Schema.Field field : recordSchema.getFields()) {
+      int pos = field.pos();
+      Expression value = inputType.fieldReference(row, pos);
+      if (Primitive.is(value.getType())) {
+        value = Expressions.box(value);
+      }
+      body.add(Expressions.statement(Expressions.call(record, "put", Expressions.constant(pos),
+              Expressions.call(IndexedRecords.class, "fromCalciteToAvro",
+                      implementor.stash(field.schema(), Schema.class), Expressions.convert_(value, Object.class)))));
+    }
+    body.add(Expressions.return_(null, record));
+    builder.add(Expressions.return_(null, Expressions.call(rows, BuiltInMethod.SELECT.method,
+            Expressions.lambda(Function1.class, body.toBlock(), row))));
+    return implementor.result(PhysTypeImpl.of(implementor.getTypeFactory(), getRowType(), JavaRowFormat.SCALAR),
+            builder.toBlock());
+  }
+
+}
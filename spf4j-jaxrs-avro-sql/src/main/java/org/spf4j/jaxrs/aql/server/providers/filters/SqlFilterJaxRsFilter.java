@@ -17,13 +17,21 @@ package org.spf4j.jaxrs.aql.server.providers.filters;
 
 
 import com.google.common.collect.Iterables;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import java.io.Closeable;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
 import javax.annotation.Priority;
+import javax.inject.Inject;
 import javax.ws.rs.ClientErrorException;
 import javax.ws.rs.Priorities;
 import javax.ws.rs.container.ContainerRequestContext;
 import javax.ws.rs.container.ContainerResponseContext;
 import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.ext.Provider;
 import org.apache.avro.Schema;
@@ -33,13 +41,33 @@ import org.apache.calcite.tools.RelConversionException;
 import org.apache.calcite.tools.ValidationException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.spf4j.avro.AvroDataSet;
+import org.spf4j.avro.calcite.AvroDataSetAsProjectableFilterableTable;
 import org.spf4j.avro.calcite.SqlRowPredicate;
+import org.spf4j.avro.schema.Schemas;
+import org.spf4j.base.CloseableIterable;
+import org.spf4j.base.ExecutionContexts;
+import org.spf4j.base.Reflections;
+import org.spf4j.base.TimeSource;
+import org.spf4j.io.Csv;
+import org.spf4j.io.csv.CsvParseException;
 import org.spf4j.jaxrs.Buffered;
 import org.spf4j.jaxrs.IterableArrayContent;
+import org.spf4j.jaxrs.JaxRsSecurityContext;
+import org.spf4j.jaxrs.ProjectionSupport;
 import org.spf4j.jaxrs.SqlFilterSupport;
 import org.spf4j.jaxrs.common.providers.avro.MessageBodyRWUtils;
 
 /**
+ * Filters the response entity with the SQL predicate provided via the _where query parameter.
+ *
+ * Resources can return a AvroDataSet (or a AvroDataSetAsProjectableFilterableTable) as entity, in which case
+ * the predicate is pushed down to AvroDataSet.getData, so that the data set is only asked for the rows that will be
+ * returned. For resources that also have @ProjectionSupport, the _project (or default) projection is pushed down
+ * as well (when a plain list of top level fields), and the projection filter is told not to project again.
+ * When the data set is not FILTERABLE, or for any other entity type, the predicate is applied to the produced rows.
+ * The response element buffer size is the one of the entity or data set (if Buffered).
+ *
  * @author Zoltan Farkas
  */
 @SqlFilterSupport
@@ -49,40 +77,146 @@ public final class SqlFilterJaxRsFilter implements ContainerResponseFilter {
 
   private static final Logger LOG = LoggerFactory.getLogger(SqlFilterJaxRsFilter.class);
 
+  private final javax.inject.Provider<ResourceInfo> resourceInfoProvider;
+
+  private final javax.inject.Provider<JaxRsSecurityContext> securityContextProvider;
+
+  @Inject
+  public SqlFilterJaxRsFilter(@Context final javax.inject.Provider<ResourceInfo> resourceInfo,
+          @Context final javax.inject.Provider<JaxRsSecurityContext> securityContext) {
+    this.resourceInfoProvider = resourceInfo;
+    this.securityContextProvider = securityContext;
+  }
+
   @Override
+  @SuppressFBWarnings("ITC_INHERITANCE_TYPE_CHECKING")
   public void filter(final ContainerRequestContext requestContext,
           final ContainerResponseContext responseContext) {
     MultivaluedMap<String, String> qp = requestContext.getUriInfo().getQueryParameters();
     String where = qp.getFirst("_where");
+    Object entityObject = responseContext.getEntity();
+    Object responseObject = entityObject;
+    if (responseObject instanceof AvroDataSetAsProjectableFilterableTable) {
+      responseObject = ((AvroDataSetAsProjectableFilterableTable) responseObject).getDataSet();
+    }
+    if (responseObject instanceof AvroDataSet) {
+      AvroDataSet<IndexedRecord> dataSet = (AvroDataSet<IndexedRecord>) responseObject;
+      int bufferSize = bufferSize(entityObject instanceof Buffered ? entityObject : dataSet);
+      pushDown(where, getProjection(qp.getFirst("_project")), dataSet, bufferSize, requestContext, responseContext);
+      return;
+    }
     if (where == null) {
       return;
     }
-    Iterable<IndexedRecord> entity = (Iterable<IndexedRecord>) responseContext.getEntity();
+    Iterable<IndexedRecord> entity = (Iterable<IndexedRecord>) responseObject;
     Closeable cl;
     if (entity instanceof Closeable) {
       cl = (Closeable) entity;
     } else {
       cl = () -> { };
     }
-    int bufferSize;
-    if (entity instanceof Buffered) {
-      bufferSize = ((Buffered) entity).getElementBufferSize();
-    } else {
-      bufferSize = 64;
-    }
+    int bufferSize = bufferSize(entity);
     LOG.debug("Filtering: {} entity: {}", where, entity);
     Schema sourceSchema = MessageBodyRWUtils.getAvroSchemaFromType(responseContext.getEntityClass(),
             responseContext.getEntityType(), entity, responseContext.getEntityAnnotations());
     Schema sourceCompType = sourceSchema.getElementType();
-    SqlRowPredicate predicate;
+    SqlRowPredicate predicate = parsePredicate(where, sourceCompType);
+    Iterable<IndexedRecord> filtered = Iterables.filter(entity, predicate::test);
+    IterableArrayContent<IndexedRecord> fresp = IterableArrayContent.from(filtered, cl, bufferSize, sourceCompType);
+    responseContext.setEntity(fresp);
+  }
+
+  private static int bufferSize(final Object entity) {
+    if (entity instanceof Buffered) {
+      return ((Buffered) entity).getElementBufferSize();
+    } else {
+      return 64;
+    }
+  }
+
+  /**
+   * @return the projection to apply, the _project parameter or the default projection, null if the resource
+   * has no @ProjectionSupport or no projection is requested.
+   */
+  @Nullable
+  private String getProjection(@Nullable final String project) {
+    Method method = resourceInfoProvider.get().getResourceMethod();
+    if (method == null) {
+      return null;
+    }
+    ProjectionSupport annotation = Reflections.getInheritedAnnotation(ProjectionSupport.class, method);
+    if (annotation == null) {
+      annotation = Reflections.getInheritedAnnotation(ProjectionSupport.class, method.getDeclaringClass());
+    }
+    if (annotation == null) {
+      return null;
+    }
+    if (project != null) {
+      return project;
+    }
+    String defaultProjection = annotation.defaultProjection();
+    return defaultProjection.isEmpty() ? null : defaultProjection;
+  }
+
+  private void pushDown(@Nullable final String where, @Nullable final String project,
+          final AvroDataSet<IndexedRecord> dataSet, final int bufferSize,
+          final ContainerRequestContext requestContext, final ContainerResponseContext responseContext) {
+    Schema elementSchema = dataSet.getElementSchema();
+    SqlRowPredicate predicate = where == null ? null : parsePredicate(where, elementSchema);
+    boolean filterable = dataSet.getFeatures().contains(AvroDataSet.Feature.FILTERABLE);
+    List<String> projection = null;
+    Schema resultSchema = elementSchema;
+    // projection can only be pushed down when the predicate does not need to be evaluated on the result.
+    if (project != null && (predicate == null || filterable)
+            && dataSet.getFeatures().contains(AvroDataSet.Feature.PROJECTABLE)) {
+      projection = topLevelProjection(project, elementSchema);
+      if (projection != null) {
+        resultSchema = Schemas.project(elementSchema, projection);
+      }
+    }
+    LOG.debug("Pushing down predicate: {}, projection {} to {}", where, projection, dataSet);
+    long timeoutNanos = Math.max(0, ExecutionContexts.getContextDeadlineNanos() - TimeSource.nanoTime());
+    CloseableIterable<IndexedRecord> data = (CloseableIterable<IndexedRecord>) dataSet.getData(
+            filterable ? predicate : null, projection, securityContextProvider.get(),
+            timeoutNanos, TimeUnit.NANOSECONDS);
+    if (projection != null) {
+      requestContext.setProperty(ProjectionSupport.PROJECTED_PROPERTY, Boolean.TRUE);
+    }
+    Iterable<IndexedRecord> result;
+    if (predicate != null && !filterable) {
+      // post-filter fallback, the predicate is evaluated against the full (un-projected) rows.
+      result = Iterables.filter(data, predicate::test);
+    } else {
+      result = data;
+    }
+    responseContext.setEntity(IterableArrayContent.from(result, data, bufferSize, resultSchema));
+  }
+
+  /**
+   * @return the projection if it is a list of top level record fields, null otherwise.
+   */
+  @Nullable
+  private static List<String> topLevelProjection(final String project, final Schema elementSchema) {
+    List<String> projection;
+    try {
+      projection = Csv.readRow(project);
+    } catch (CsvParseException ex) {
+      throw new ClientErrorException("Invalid projection " + project, 400, ex);
+    }
+    for (String field : projection) {
+      if (elementSchema.getField(field) == null) {
+        return null;
+      }
+    }
+    return projection;
+  }
+
+  private static SqlRowPredicate parsePredicate(final String where, final Schema rowSchema) {
     try {
-      predicate = new SqlRowPredicate(where, sourceCompType);
+      return new SqlRowPredicate(where, rowSchema);
     } catch (SqlParseException | ValidationException | RelConversionException ex) {
       throw new ClientErrorException("Invalid predicate " + where, 400, ex);
     }
-    Iterable<IndexedRecord> filtered = Iterables.filter(entity, predicate::test);
-    IterableArrayContent<IndexedRecord> fresp = IterableArrayContent.from(filtered, cl, bufferSize, sourceCompType);
-    responseContext.setEntity(fresp);
   }
 
 }
@@ -0,0 +1,316 @@
+/*
+ * Copyright 2021 SPF4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.aql;
+
+import java.math.BigDecimal;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.ws.rs.core.SecurityContext;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.generic.IndexedRecord;
+import org.apache.avro.util.Utf8;
+import org.apache.calcite.DataContext;
+import org.apache.calcite.jdbc.JavaTypeFactoryImpl;
+import org.apache.calcite.linq4j.Enumerator;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rex.RexBuilder;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.sql.SqlOperator;
+import org.apache.calcite.sql.fun.SqlStdOperatorTable;
+import org.junit.Assert;
+import org.junit.Test;
+import org.spf4j.avro.SqlPredicate;
+import org.spf4j.avro.calcite.EmbededDataContext;
+import org.spf4j.base.CloseableIterable;
+import org.spf4j.jaxrs.JaxRsSecurityContext;
+import org.spf4j.security.AbacSecurityContext;
+
+/**
+ * @author Zoltan Farkas
+ */
+public class ColumnarAvroDataSetTableTest {
+
+  private static final Schema SCHEMA = SchemaBuilder.record("Measurement").namespace("org.spf4j.test")
+          .fields()
+          .requiredInt("id")
+          .optionalLong("count")
+          .requiredFloat("ratio")
+          .requiredDouble("val")
+          .requiredString("name")
+          .endRecord();
+
+  private final JavaTypeFactoryImpl typeFactory = new JavaTypeFactoryImpl();
+
+  private final RexBuilder rexBuilder = new RexBuilder(typeFactory);
+
+  private final TestDataSet dataSet = new TestDataSet();
+
+  private final ColumnarAvroDataSetTable table = new ColumnarAvroDataSetTable(dataSet);
+
+  private final RelDataType rowType = table.getRowType(typeFactory);
+
+  private final SecuredDataContext dataContext
+          = new SecuredDataContext(new EmbededDataContext(typeFactory, TestSecurityContext.INSTANCE),
+                  TestSecurityContext.INSTANCE);
+
+  @Test
+  public void testBatchScan() {
+    List<Object[]> rows = scan(new ArrayList<>(), null);
+    Assert.assertEquals(TestDataSet.NR_BATCHES * TestDataSet.BATCH_SIZE, rows.size());
+    Assert.assertArrayEquals(new Object[] {0, 0L, 0f, 0.5d, "name0"}, rows.get(0));
+    // row 3 has a null count.
+    Assert.assertArrayEquals(new Object[] {13, null, 6.5f, 13.5d, "name13"}, rows.get(13));
+    Assert.assertEquals(Arrays.asList("id", "count", "ratio", "val", "name"), dataSet.lastColumns);
+    Assert.assertTrue(dataSet.closed.get());
+  }
+
+  @Test
+  public void testProjection() {
+    List<Object[]> rows = scan(new ArrayList<>(), new int[] {4, 0});
+    Assert.assertEquals(Arrays.asList("name", "id"), dataSet.lastColumns);
+    Assert.assertArrayEquals(new Object[] {"name7", 7}, rows.get(7));
+  }
+
+  @Test
+  public void testVectorizedPredicates() {
+    List<RexNode> filters = new ArrayList<>();
+    filters.add(call(SqlStdOperatorTable.GREATER_THAN_OR_EQUAL, 0, 5)); // id >= 5
+    filters.add(call(SqlStdOperatorTable.LESS_THAN, 3, 20)); // val < 20
+    filters.add(rexBuilder.makeCall(SqlStdOperatorTable.IS_NOT_NULL, field(1))); // count is not null
+    List<Object[]> rows = scan(filters, new int[] {0});
+    Assert.assertTrue("all filters are evaluated by the table " + filters, filters.isEmpty());
+    // val and count columns are fetched for filtering only.
+    Assert.assertEquals(Arrays.asList("id", "val", "count"), dataSet.lastColumns);
+    List<Object> ids = new ArrayList<>();
+    for (Object[] row : rows) {
+      Assert.assertEquals(1, row.length);
+      ids.add(row[0]);
+    }
+    Assert.assertEquals(Arrays.asList(5, 6, 7, 8, 9, 10, 11, 12, 14, 15, 16, 17, 18, 19), ids);
+  }
+
+  @Test
+  public void testReversedOperandsAndNulls() {
+    List<RexNode> filters = new ArrayList<>();
+    filters.add(call(SqlStdOperatorTable.GREATER_THAN, 1, 10, true)); // 10 > count
+    List<Object[]> rows = scan(filters, new int[] {1});
+    Assert.assertTrue(filters.isEmpty());
+    // count = id, null every 10 rows, nulls never match a comparison.
+    Assert.assertEquals(9, rows.size());
+    filters.add(rexBuilder.makeCall(SqlStdOperatorTable.IS_NULL, field(1)));
+    rows = scan(filters, new int[] {0});
+    Assert.assertEquals(TestDataSet.NR_BATCHES * TestDataSet.BATCH_SIZE / 10, rows.size());
+    Assert.assertEquals(3, rows.get(0)[0]);
+  }
+
+  @Test
+  public void testNonVectorizablePredicatesLeftToCalcite() {
+    List<RexNode> filters = new ArrayList<>();
+    RexNode fractional = rexBuilder.makeCall(SqlStdOperatorTable.GREATER_THAN, field(0),
+            rexBuilder.makeExactLiteral(new BigDecimal("2.5")));
+    RexNode string = rexBuilder.makeCall(SqlStdOperatorTable.EQUALS, field(4), rexBuilder.makeLiteral("name1"));
+    RexNode fieldToField = rexBuilder.makeCall(SqlStdOperatorTable.LESS_THAN, field(0), field(3));
+    filters.add(fractional);
+    filters.add(string);
+    filters.add(fieldToField);
+    filters.add(call(SqlStdOperatorTable.LESS_THAN_OR_EQUAL, 2, 2)); // ratio <= 2
+    List<Object[]> rows = scan(filters, new int[] {2});
+    Assert.assertEquals(Arrays.asList(fractional, string, fieldToField), filters);
+    List<Object> ratios = new ArrayList<>();
+    for (Object[] row : rows) {
+      ratios.add(row[0]);
+    }
+    Assert.assertEquals(Arrays.asList(0f, 0.5f, 1f, 1.5f, 2f), ratios);
+  }
+
+  @Test
+  public void testCancel() {
+    AtomicBoolean cancel = DataContext.Variable.CANCEL_FLAG.get(dataContext);
+    Enumerator<Object[]> enumerator = table.scan(dataContext, new ArrayList<>(), null).enumerator();
+    int nr = 0;
+    while (enumerator.moveNext()) {
+      if (++nr == 3) {
+        cancel.set(true);
+      }
+    }
+    enumerator.close();
+    // the current batch is completed, no other batch is read.
+    Assert.assertEquals(TestDataSet.BATCH_SIZE, nr);
+    Assert.assertEquals(1, dataSet.nrBatchesRead);
+    Assert.assertTrue(dataSet.closed.get());
+  }
+
+  @Test
+  public void testReset() {
+    try (Enumerator<Object[]> enumerator = table.scan(dataContext, new ArrayList<>(), new int[] {0}).enumerator()) {
+      for (int i = 0; i < TestDataSet.BATCH_SIZE + 2; i++) {
+        Assert.assertTrue(enumerator.moveNext());
+      }
+      enumerator.reset();
+      // the batches are re-opened (getBatches resets the read counter).
+      Assert.assertEquals(0, dataSet.nrBatchesRead);
+      int nr = 0;
+      while (enumerator.moveNext()) {
+        Assert.assertEquals((long) nr, ((Number) enumerator.current()[0]).longValue());
+        nr++;
+      }
+      Assert.assertEquals(TestDataSet.NR_BATCHES * TestDataSet.BATCH_SIZE, nr);
+    }
+    Assert.assertTrue(dataSet.closed.get());
+  }
+
+  private List<Object[]> scan(final List<RexNode> filters, final int[] projection) {
+    List<Object[]> result = new ArrayList<>();
+    try (Enumerator<Object[]> enumerator = table.scan(dataContext, filters, projection).enumerator()) {
+      while (enumerator.moveNext()) {
+        result.add(enumerator.current());
+      }
+    }
+    return result;
+  }
+
+  private RexNode field(final int idx) {
+    return rexBuilder.makeInputRef(rowType.getFieldList().get(idx).getType(), idx);
+  }
+
+  private RexNode call(final SqlOperator op, final int fieldIdx, final long value) {
+    return call(op, fieldIdx, value, false);
+  }
+
+  private RexNode call(final SqlOperator op, final int fieldIdx, final long value, final boolean reversed) {
+    RexNode literal = rexBuilder.makeExactLiteral(BigDecimal.valueOf(value));
+    return reversed ? rexBuilder.makeCall(op, literal, field(fieldIdx))
+            : rexBuilder.makeCall(op, field(fieldIdx), literal);
+  }
+
+  /**
+   * NR_BATCHES batches of BATCH_SIZE rows, row i: id = i, count = i (null when i % 10 == 3), ratio = i / 2,
+   * val = i + 0.5, name = "name" + i.
+   */
+  private static final class TestDataSet implements ColumnarAvroDataSet<GenericRecord> {
+
+    static final int BATCH_SIZE = 10;
+
+    static final int NR_BATCHES = 3;
+
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private List<String> lastColumns;
+
+    private int nrBatchesRead;
+
+    @Override
+    public Schema getElementSchema() {
+      return SCHEMA;
+    }
+
+    @Override
+    public String getName() {
+      return "measurements";
+    }
+
+    @Override
+    public CloseableIterable<ColumnBatch> getBatches(final List<String> columns, final SecurityContext secCtx,
+            final long timeout, final TimeUnit timeUnit) {
+      lastColumns = columns;
+      closed.set(false);
+      nrBatchesRead = 0;
+      List<ColumnBatch> batches = new ArrayList<>(NR_BATCHES);
+      for (int b = 0; b < NR_BATCHES; b++) {
+        ColumnBatch.Column[] cols = new ColumnBatch.Column[columns.size()];
+        for (int c = 0; c < cols.length; c++) {
+          cols[c] = column(columns.get(c), b * BATCH_SIZE);
+        }
+        batches.add(new ColumnBatch(BATCH_SIZE, cols));
+      }
+      return CloseableIterable.from(() -> batches.stream().peek((x) -> nrBatchesRead++).iterator(),
+              () -> closed.set(true));
+    }
+
+    private static ColumnBatch.Column column(final String name, final int offset) {
+      long[] longs = new long[BATCH_SIZE];
+      double[] doubles = new double[BATCH_SIZE];
+      Object[] objects = new Object[BATCH_SIZE];
+      for (int i = 0; i < BATCH_SIZE; i++) {
+        int id = offset + i;
+        longs[i] = id;
+        doubles[i] = "ratio".equals(name) ? id / 2d : id + 0.5;
+        objects[i] = new Utf8("name" + id);
+      }
+      switch (name) {
+        case "id":
+          return new ColumnBatch.LongColumn(longs, null);
+        case "count":
+          BitSet nulls = new BitSet();
+          nulls.set(3);
+          return new ColumnBatch.LongColumn(longs, nulls);
+        case "ratio":
+        case "val":
+          return new ColumnBatch.DoubleColumn(doubles, null);
+        case "name":
+          return new ColumnBatch.ObjectColumn(objects);
+        default:
+          throw new IllegalArgumentException("No column " + name);
+      }
+    }
+
+    @Override
+    public CloseableIterable<? extends IndexedRecord> getData(final SqlPredicate<GenericRecord> filter,
+            final List<String> selectProjections, final AbacSecurityContext secCtx,
+            final long timeout, final TimeUnit timeUnit) {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  private static final class TestSecurityContext implements JaxRsSecurityContext {
+
+    static final TestSecurityContext INSTANCE = new TestSecurityContext();
+
+    @Override
+    public Principal getUserPrincipal() {
+      return () -> "test";
+    }
+
+    @Override
+    public boolean isUserInRole(final String role) {
+      return true;
+    }
+
+    @Override
+    public boolean isSecure() {
+      return true;
+    }
+
+    @Override
+    public String getAuthenticationScheme() {
+      return "TEST";
+    }
+
+    @Override
+    public boolean canAccess(final Properties resource, final Properties action, final Properties env) {
+      return true;
+    }
+  }
+
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2021 SPF4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.jaxrs.aql;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.ws.rs.core.Response;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.generic.IndexedRecord;
+import org.apache.calcite.linq4j.AbstractEnumerable;
+import org.apache.calcite.linq4j.Enumerator;
+import org.apache.calcite.linq4j.Linq4j;
+import org.junit.Assert;
+import org.junit.Test;
+import org.spf4j.aql.AvroDataSetContract;
+import org.spf4j.avro.SqlPredicate;
+import org.spf4j.base.CloseableIterable;
+import org.spf4j.jaxrs.StreamingArrayContent;
+import org.spf4j.security.AbacSecurityContext;
+
+/**
+ * The compiled (Enumerable) execution mode must return the same results as the interpreter.
+ *
+ * @author Zoltan Farkas
+ */
+public class AvroQueryResourceImplTest {
+
+  static final Schema ITEM_SCHEMA = SchemaBuilder.record("Item").namespace("org.spf4j.test")
+          .fields()
+          .requiredInt("id")
+          .requiredString("name")
+          .requiredDouble("val")
+          .optionalString("category")
+          .endRecord();
+
+  private final AvroQueryResourceImpl interpreted
+          = new AvroQueryResourceImpl(Collections.singletonList(new ItemsDataSet(100)), false);
+
+  private final AvroQueryResourceImpl compiled
+          = new AvroQueryResourceImpl(Collections.singletonList(new ItemsDataSet(100)), true);
+
+  @Test
+  public void testSelectAll() throws IOException {
+    List<GenericRecord> result = assertSameResults("select * from items");
+    Assert.assertEquals(100, result.size());
+    Assert.assertEquals("name5", result.get(5).get("name").toString());
+  }
+
+  @Test
+  public void testFilterProject() throws IOException {
+    List<GenericRecord> result
+            = assertSameResults("select id, name from items where val > 50.5 and category = 'a'");
+    Assert.assertEquals(12, result.size());
+    Assert.assertEquals(2, result.get(0).getSchema().getFields().size());
+  }
+
+  @Test
+  public void testSingleColumn() throws IOException {
+    List<GenericRecord> result = assertSameResults("select name from items where id < 10");
+    Assert.assertEquals(10, result.size());
+    Assert.assertEquals("name9", result.get(9).get(0).toString());
+  }
+
+  @Test
+  public void testCount() throws IOException {
+    List<GenericRecord> result = assertSameResults("select count(*) as cnt from items");
+    Assert.assertEquals(1, result.size());
+    Assert.assertEquals(100L, ((Number) result.get(0).get(0)).longValue());
+  }
+
+  @Test
+  public void testAggregate() throws IOException {
+    List<GenericRecord> result = assertSameResults("select category, count(*) as cnt, sum(val) as total"
+            + " from items group by category order by category");
+    Assert.assertEquals(4, result.size()); // a, b, c, null
+    Assert.assertEquals("a", result.get(0).get(0).toString());
+    Assert.assertEquals(25L, ((Number) result.get(0).get(1)).longValue());
+  }
+
+  @Test
+  public void testExpressionsSortLimit() throws IOException {
+    List<GenericRecord> result
+            = assertSameResults("select id * 2 as doubled, upper(name) as uname from items order by id desc limit 5");
+    Assert.assertEquals(5, result.size());
+    Assert.assertEquals(198, ((Number) result.get(0).get(0)).intValue());
+    Assert.assertEquals("NAME99", result.get(0).get(1).toString());
+  }
+
+  @Test
+  public void testDefaultMode() throws IOException {
+    AvroQueryResourceImpl dflt = new AvroQueryResourceImpl(Collections.singletonList(new ItemsDataSet(100)));
+    String query = "select id, name from items where id < 10";
+    Assert.assertEquals(execute(compiled, query).toString(), execute(dflt, query).toString());
+  }
+
+  @Test
+  public void testCancelMidStream() {
+    TrackingEnumerable rows = new TrackingEnumerable(new ItemsDataSet(100).items);
+    AtomicBoolean cancelFlag = new AtomicBoolean();
+    AtomicBoolean resourceClosed = new AtomicBoolean();
+    AvroQueryResourceImpl.QueryResultContent content = new AvroQueryResourceImpl.QueryResultContent(ITEM_SCHEMA,
+            rows, () -> resourceClosed.set(true), cancelFlag);
+    AtomicInteger written = new AtomicInteger();
+    try {
+      content.write((record) -> {
+        if (written.incrementAndGet() == 3) {
+          throw new IOException("Client disconnected");
+        }
+      });
+      Assert.fail();
+    } catch (IOException ex) {
+      Assert.assertEquals("Client disconnected", ex.getMessage());
+    }
+    Assert.assertEquals(3, written.get());
+    Assert.assertEquals(3, rows.nrPulled.get());
+    Assert.assertTrue(rows.closed.get());
+    Assert.assertTrue(cancelFlag.get());
+    Assert.assertTrue(resourceClosed.get());
+  }
+
+  @Test
+  public void testCompletedNotCanceled() throws IOException {
+    TrackingEnumerable rows = new TrackingEnumerable(new ItemsDataSet(10).items);
+    AtomicBoolean cancelFlag = new AtomicBoolean();
+    AvroQueryResourceImpl.QueryResultContent content = new AvroQueryResourceImpl.QueryResultContent(ITEM_SCHEMA,
+            rows, () -> { }, cancelFlag);
+    List<GenericRecord> result = new ArrayList<>();
+    content.write(result::add);
+    Assert.assertEquals(10, result.size());
+    Assert.assertTrue(rows.closed.get());
+    Assert.assertFalse(cancelFlag.get());
+  }
+
+  private List<GenericRecord> assertSameResults(final String query) throws IOException {
+    List<GenericRecord> expected = execute(interpreted, query);
+    List<GenericRecord> actual = execute(compiled, query);
+    Assert.assertEquals(query, expected.toString(), actual.toString());
+    return actual;
+  }
+
+  static List<GenericRecord> execute(final AvroQueryResourceImpl resource, final String query)
+          throws IOException {
+    Response response = resource.query(query, SaSecurityContext.INSTANCE);
+    Assert.assertEquals(200, response.getStatus());
+    List<GenericRecord> result = new ArrayList<>();
+    try (StreamingArrayContent<GenericRecord> content = (StreamingArrayContent<GenericRecord>) response.getEntity()) {
+      content.write(result::add);
+    }
+    return result;
+  }
+
+  /**
+   * Enumerable that tracks the number of rows pulled, and if the enumerator was closed.
+   */
+  private static final class TrackingEnumerable extends AbstractEnumerable<GenericRecord> {
+
+    private final List<GenericRecord> rows;
+
+    private final AtomicInteger nrPulled = new AtomicInteger();
+
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    TrackingEnumerable(final List<GenericRecord> rows) {
+      this.rows = rows;
+    }
+
+    @Override
+    public Enumerator<GenericRecord> enumerator() {
+      Enumerator<GenericRecord> enumerator = Linq4j.enumerator(rows);
+      return new Enumerator<GenericRecord>() {
+        @Override
+        public GenericRecord current() {
+          return enumerator.current();
+        }
+
+        @Override
+        public boolean moveNext() {
+          boolean result = enumerator.moveNext();
+          if (result) {
+            nrPulled.incrementAndGet();
+          }
+          return result;
+        }
+
+        @Override
+        public void reset() {
+          enumerator.reset();
+        }
+
+        @Override
+        public void close() {
+          closed.set(true);
+          enumerator.close();
+        }
+      };
+    }
+  }
+
+  /**
+   * items: id = 0..size-1, name = "name" + id, val = id + 0.5, category = a, b, c, null (id % 4).
+   */
+  static final class ItemsDataSet implements AvroDataSetContract<GenericRecord> {
+
+    private final List<GenericRecord> items;
+
+    ItemsDataSet(final int size) {
+      items = new ArrayList<>(size);
+      String[] categories = {"a", "b", "c", null};
+      for (int i = 0; i < size; i++) {
+        GenericData.Record record = new GenericData.Record(ITEM_SCHEMA);
+        record.put(0, i);
+        record.put(1, "name" + i);
+        record.put(2, i + 0.5);
+        record.put(3, categories[i % 4]);
+        items.add(record);
+      }
+    }
+
+    @Override
+    public Schema getElementSchema() {
+      return ITEM_SCHEMA;
+    }
+
+    @Override
+    public String getName() {
+      return "items";
+    }
+
+    @Override
+    public long getRowCountStatistic() {
+      return items.size();
+    }
+
+    @Override
+    public CloseableIterable<? extends IndexedRecord> getData(final SqlPredicate<GenericRecord> filter,
+            final List<String> selectProjections, final AbacSecurityContext secCtx,
+            final long timeout, final TimeUnit timeUnit) {
+      return CloseableIterable.from(items);
+    }
+  }
+
+}
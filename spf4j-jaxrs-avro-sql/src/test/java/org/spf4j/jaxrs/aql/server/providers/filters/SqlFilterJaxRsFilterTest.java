@@ -0,0 +1,366 @@
+/*
+ * Copyright 2021 SPF4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.jaxrs.aql.server.providers.filters;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.UriInfo;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericRecord;
+import org.apache.avro.generic.IndexedRecord;
+import org.junit.Assert;
+import org.junit.Test;
+import org.spf4j.avro.AvroDataSet;
+import org.spf4j.avro.SqlPredicate;
+import org.spf4j.avro.schema.Schemas;
+import org.spf4j.base.CloseableIterable;
+import org.spf4j.jaxrs.Buffered;
+import org.spf4j.jaxrs.IterableArrayContent;
+import org.spf4j.jaxrs.JaxRsSecurityContext;
+import org.spf4j.jaxrs.ProjectionSupport;
+
+/**
+ * @author Zoltan Farkas
+ */
+public class SqlFilterJaxRsFilterTest {
+
+  private static final Schema SCHEMA = SchemaBuilder.record("Item").namespace("org.spf4j.test")
+          .fields()
+          .requiredInt("id")
+          .requiredString("name")
+          .requiredDouble("val")
+          .endRecord();
+
+  @Test
+  public void testWherePushDown() throws NoSuchMethodException {
+    TestDataSet dataSet = new TestDataSet(EnumSet.allOf(AvroDataSet.Feature.class));
+    Response response = filter(dataSet, "noProjection", "id < 5", null);
+    Assert.assertEquals("id < 5", dataSet.lastFilter.getSqlString());
+    Assert.assertNull(dataSet.lastProjection);
+    List<IndexedRecord> rows = response.rows();
+    Assert.assertEquals(5, rows.size());
+    Assert.assertEquals(10, dataSet.nrReturned); // the data set filters, all records are scanned.
+    Assert.assertTrue(dataSet.closed.get());
+  }
+
+  @Test
+  public void testWherePostFilter() throws NoSuchMethodException {
+    TestDataSet dataSet = new TestDataSet(EnumSet.of(AvroDataSet.Feature.PROJECTABLE));
+    Response response = filter(dataSet, "projection", "id >= 7", "id");
+    Assert.assertNull(dataSet.lastFilter);
+    // projection is not pushed down, the predicate needs all columns.
+    Assert.assertNull(dataSet.lastProjection);
+    Assert.assertNull(response.request.properties.get(ProjectionSupport.PROJECTED_PROPERTY));
+    List<IndexedRecord> rows = response.rows();
+    Assert.assertEquals(3, rows.size());
+    Assert.assertEquals(7, rows.get(0).get(0));
+  }
+
+  @Test
+  public void testProjectionPushDown() throws NoSuchMethodException {
+    TestDataSet dataSet = new TestDataSet(EnumSet.allOf(AvroDataSet.Feature.class));
+    Response response = filter(dataSet, "projection", "id < 2", "name,id");
+    Assert.assertEquals(Arrays.asList("name", "id"), dataSet.lastProjection);
+    Assert.assertEquals(Boolean.TRUE, response.request.properties.get(ProjectionSupport.PROJECTED_PROPERTY));
+    IterableArrayContent<IndexedRecord> content = response.content();
+    Assert.assertEquals(Arrays.asList("name", "id"), fieldNames(content.getElementSchema()));
+    List<IndexedRecord> rows = response.rows();
+    Assert.assertEquals(2, rows.size());
+    Assert.assertEquals("name1", rows.get(1).get(0).toString());
+  }
+
+  @Test
+  public void testDefaultProjectionPushDown() throws NoSuchMethodException {
+    TestDataSet dataSet = new TestDataSet(EnumSet.allOf(AvroDataSet.Feature.class));
+    Response response = filter(dataSet, "defaultProjection", null, null);
+    Assert.assertEquals(Arrays.asList("name"), dataSet.lastProjection);
+    Assert.assertEquals(Boolean.TRUE, response.request.properties.get(ProjectionSupport.PROJECTED_PROPERTY));
+    Assert.assertEquals(10, response.rows().size());
+  }
+
+  @Test
+  public void testNoProjectionWithoutProjectionSupport() throws NoSuchMethodException {
+    TestDataSet dataSet = new TestDataSet(EnumSet.allOf(AvroDataSet.Feature.class));
+    Response response = filter(dataSet, "noProjection", null, "name");
+    Assert.assertNull(dataSet.lastProjection);
+    Assert.assertNull(response.request.properties.get(ProjectionSupport.PROJECTED_PROPERTY));
+    Assert.assertEquals(SCHEMA, response.content().getElementSchema());
+  }
+
+  @Test
+  public void testNestedProjectionNotPushedDown() throws NoSuchMethodException {
+    TestDataSet dataSet = new TestDataSet(EnumSet.allOf(AvroDataSet.Feature.class));
+    Response response = filter(dataSet, "projection", null, "name,unknown");
+    Assert.assertNull(dataSet.lastProjection);
+    // left to the projection filter.
+    Assert.assertNull(response.request.properties.get(ProjectionSupport.PROJECTED_PROPERTY));
+  }
+
+  @Test
+  public void testBufferSize() throws NoSuchMethodException {
+    TestDataSet dataSet = new TestDataSet(EnumSet.allOf(AvroDataSet.Feature.class));
+    Assert.assertEquals(64, filter(dataSet, "projection", null, null).content().getElementBufferSize());
+    BufferedDataSet buffered = new BufferedDataSet(EnumSet.allOf(AvroDataSet.Feature.class));
+    Assert.assertEquals(7, filter(buffered, "projection", "id > 1", "id").content().getElementBufferSize());
+  }
+
+  private static List<String> fieldNames(final Schema schema) {
+    List<String> result = new ArrayList<>();
+    for (Schema.Field field : schema.getFields()) {
+      result.add(field.name());
+    }
+    return result;
+  }
+
+  private static Response filter(final AvroDataSet<?> entity, final String resourceMethod,
+          final String where, final String project) throws NoSuchMethodException {
+    Method method = Resources.class.getMethod(resourceMethod);
+    ResourceInfo resourceInfo = new ResourceInfo() {
+      @Override
+      public Method getResourceMethod() {
+        return method;
+      }
+
+      @Override
+      public Class<?> getResourceClass() {
+        return Resources.class;
+      }
+    };
+    SqlFilterJaxRsFilter filter = new SqlFilterJaxRsFilter(() -> resourceInfo, () -> TestSecurityContext.INSTANCE);
+    MultivaluedMap<String, String> qp = new MultivaluedHashMap<>();
+    if (where != null) {
+      qp.putSingle("_where", where);
+    }
+    if (project != null) {
+      qp.putSingle("_project", project);
+    }
+    Request request = new Request(qp);
+    Response response = new Response(request, entity);
+    filter.filter(request.proxy(), response.proxy());
+    return response;
+  }
+
+  /**
+   * Resource methods for the ResourceInfo.
+   */
+  public static final class Resources {
+
+    public List<GenericRecord> noProjection() {
+      return null;
+    }
+
+    @ProjectionSupport
+    public List<GenericRecord> projection() {
+      return null;
+    }
+
+    @ProjectionSupport(defaultProjection = "name")
+    public List<GenericRecord> defaultProjection() {
+      return null;
+    }
+  }
+
+  private static final class Request {
+
+    private final MultivaluedMap<String, String> queryParameters;
+
+    private final Map<String, Object> properties = new HashMap<>();
+
+    Request(final MultivaluedMap<String, String> queryParameters) {
+      this.queryParameters = queryParameters;
+    }
+
+    ContainerRequestContext proxy() {
+      UriInfo uriInfo = (UriInfo) Proxy.newProxyInstance(getClass().getClassLoader(), new Class[] {UriInfo.class},
+              (p, m, args) -> {
+                if ("getQueryParameters".equals(m.getName())) {
+                  return queryParameters;
+                }
+                throw new UnsupportedOperationException(m.toString());
+              });
+      return (ContainerRequestContext) Proxy.newProxyInstance(getClass().getClassLoader(),
+              new Class[] {ContainerRequestContext.class}, (p, m, args) -> {
+                switch (m.getName()) {
+                  case "getUriInfo":
+                    return uriInfo;
+                  case "getProperty":
+                    return properties.get((String) args[0]);
+                  case "setProperty":
+                    properties.put((String) args[0], args[1]);
+                    return null;
+                  default:
+                    throw new UnsupportedOperationException(m.toString());
+                }
+              });
+    }
+  }
+
+  private static final class Response {
+
+    private final Request request;
+
+    private Object entity;
+
+    Response(final Request request, final Object entity) {
+      this.request = request;
+      this.entity = entity;
+    }
+
+    ContainerResponseContext proxy() {
+      return (ContainerResponseContext) Proxy.newProxyInstance(getClass().getClassLoader(),
+              new Class[] {ContainerResponseContext.class}, (p, m, args) -> {
+                switch (m.getName()) {
+                  case "getEntity":
+                    return entity;
+                  case "setEntity":
+                    entity = args[0];
+                    return null;
+                  case "getStatus":
+                    return 200;
+                  default:
+                    throw new UnsupportedOperationException(m.toString());
+                }
+              });
+    }
+
+    IterableArrayContent<IndexedRecord> content() {
+      return (IterableArrayContent<IndexedRecord>) entity;
+    }
+
+    List<IndexedRecord> rows() {
+      List<IndexedRecord> result = new ArrayList<>();
+      try (IterableArrayContent<IndexedRecord> content = content()) {
+        for (IndexedRecord record : content) {
+          result.add(record);
+        }
+      }
+      return result;
+    }
+  }
+
+  /**
+   * 10 records, id = 0..9, name = "name" + id, val = id + 0.5.
+   */
+  private static class TestDataSet implements AvroDataSet<IndexedRecord> {
+
+    private final Set<Feature> features;
+
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private SqlPredicate<IndexedRecord> lastFilter;
+
+    private List<String> lastProjection;
+
+    private int nrReturned;
+
+    TestDataSet(final Set<Feature> features) {
+      this.features = features;
+    }
+
+    @Override
+    public Schema getElementSchema() {
+      return SCHEMA;
+    }
+
+    @Override
+    public Set<Feature> getFeatures() {
+      return features;
+    }
+
+    @Override
+    public CloseableIterable<? extends IndexedRecord> getData(final SqlPredicate<IndexedRecord> filter,
+            final List<String> selectProjections, final org.spf4j.security.AbacSecurityContext secCtx,
+            final long timeout, final TimeUnit timeUnit) {
+      Assert.assertSame(TestSecurityContext.INSTANCE, secCtx);
+      lastFilter = filter;
+      lastProjection = selectProjections;
+      Schema resultSchema = selectProjections == null ? SCHEMA : Schemas.project(SCHEMA, selectProjections);
+      List<IndexedRecord> result = new ArrayList<>();
+      for (int i = 0; i < 10; i++) {
+        GenericData.Record record = new GenericData.Record(SCHEMA);
+        record.put(0, i);
+        record.put(1, "name" + i);
+        record.put(2, i + 0.5);
+        nrReturned++;
+        if (filter == null || filter.test(record)) {
+          result.add(selectProjections == null ? record : Schemas.project(resultSchema, SCHEMA, record));
+        }
+      }
+      return CloseableIterable.from(result, () -> closed.set(true));
+    }
+  }
+
+  private static final class BufferedDataSet extends TestDataSet implements Buffered {
+
+    BufferedDataSet(final Set<Feature> features) {
+      super(features);
+    }
+
+    @Override
+    public int getElementBufferSize() {
+      return 7;
+    }
+  }
+
+  private static final class TestSecurityContext implements JaxRsSecurityContext {
+
+    static final TestSecurityContext INSTANCE = new TestSecurityContext();
+
+    @Override
+    public Principal getUserPrincipal() {
+      return () -> "test";
+    }
+
+    @Override
+    public boolean isUserInRole(final String role) {
+      return true;
+    }
+
+    @Override
+    public boolean isSecure() {
+      return true;
+    }
+
+    @Override
+    public String getAuthenticationScheme() {
+      return "TEST";
+    }
+
+    @Override
+    public boolean canAccess(final Properties resource, final Properties action, final Properties env) {
+      return true;
+    }
+  }
+
+}
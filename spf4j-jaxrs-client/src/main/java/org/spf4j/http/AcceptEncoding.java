@@ -0,0 +1,100 @@
+/*
+ * Copyright 2021 SPF4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.http;
+
+import java.util.List;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * Accept-Encoding header utilities.
+ * see https://tools.ietf.org/html/rfc7231#section-5.3.4
+ *
+ * @author Zoltan Farkas
+ */
+@ParametersAreNonnullByDefault
+public final class AcceptEncoding {
+
+  private AcceptEncoding() { }
+
+  /**
+   * @param acceptEncoding the Accept-Encoding header value.
+   * @param coding the content coding.
+   * @return the quality value (0 - 1) of the coding in the header, (explicit or via "*"), 0 if not acceptable.
+   */
+  public static double qValue(final String acceptEncoding, final String coding) {
+    double wildcardQ = 0;
+    int from = 0;
+    int length = acceptEncoding.length();
+    while (from < length) {
+      int to = acceptEncoding.indexOf(',', from);
+      if (to < 0) {
+        to = length;
+      }
+      int paramsIdx = acceptEncoding.indexOf(';', from);
+      int nameEnd = paramsIdx < 0 || paramsIdx > to ? to : paramsIdx;
+      String name = acceptEncoding.substring(from, nameEnd).trim();
+      boolean isCoding = name.equalsIgnoreCase(coding);
+      if (isCoding || "*".equals(name)) {
+        double q = nameEnd < to ? parseQ(acceptEncoding.substring(nameEnd + 1, to)) : 1;
+        if (isCoding) {
+          return q;
+        }
+        wildcardQ = q;
+      }
+      from = to + 1;
+    }
+    return wildcardQ;
+  }
+
+  private static double parseQ(final String params) {
+    for (String param : params.split(";")) {
+      String p = param.trim();
+      if (p.length() > 2 && (p.charAt(0) == 'q' || p.charAt(0) == 'Q') && p.charAt(1) == '=') {
+        try {
+          return Double.parseDouble(p.substring(2));
+        } catch (NumberFormatException ex) {
+          return 0;
+        }
+      }
+    }
+    return 1;
+  }
+
+  /**
+   * @param acceptEncoding the Accept-Encoding header value.
+   * @param supported the supported codings, in order of server preference.
+   * @return the coding with the highest quality value, ties are broken by the server preference,
+   *  null if none is acceptable.
+   */
+  @Nullable
+  public static String negotiate(@Nullable final String acceptEncoding, final List<String> supported) {
+    if (acceptEncoding == null) {
+      return null;
+    }
+    String result = null;
+    double resultQ = 0;
+    for (String coding : supported) {
+      double q = qValue(acceptEncoding, coding);
+      if (q > resultQ) {
+        result = coding;
+        resultQ = q;
+      }
+    }
+    return result;
+  }
+
+}
@@ -30,6 +30,12 @@ import javax.ws.rs.NameBinding;
 @Retention(value = RetentionPolicy.RUNTIME)
 public @interface ProjectionSupport {
 
+  /**
+   * Request property set by filters that already applied the projection to the response entity
+   * (pushed it down to the data source), the projection filter will not project again.
+   */
+  String PROJECTED_PROPERTY = "spf4j.jaxrs.projected";
+
   /** default projection. see Schemas.project for format */
   String defaultProjection() default "";
 
@@ -67,6 +67,19 @@ public final class Utils {
     }
   }
 
+  public static boolean getBooleanConfigValue(final Configuration cfg, final String cfgKey,
+          final boolean defaultValue) {
+    Object val = cfg.getProperty(cfgKey);
+    if (val == null) {
+      String sval = System.getProperty(cfgKey);
+      return sval == null ? defaultValue : Boolean.parseBoolean(sval);
+    } else if (val instanceof Boolean) {
+      return (Boolean) val;
+    } else {
+      return Boolean.parseBoolean(val.toString());
+    }
+  }
+
   public static String getStringConfigValue(final Configuration cfg, final String cfgKey, final String defaultValue) {
     String val = (String) cfg.getProperty(cfgKey);
     if (val == null) {
@@ -0,0 +1,273 @@
+/*
+ * Copyright 2021 SPF4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.jaxrs.client;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.annotation.ParametersAreNonnullByDefault;
+import org.spf4j.base.TimeSource;
+import org.spf4j.failsafe.Hedge;
+import org.spf4j.failsafe.HedgePolicy;
+import org.spf4j.perf.MeasurementRecorder;
+import org.spf4j.perf.impl.RecorderFactory;
+
+/**
+ * Per endpoint hedging, with the hedge delay derived from the observed attempt latency distribution.
+ *
+ * <ul>
+ * <li>Successful attempt latencies are recorded in a log-linear histogram (16 sub-buckets per power of 2,
+ * ~6% relative error), over a rotating window (spf4j.jaxrs.hedge.windowMillis, default 5000).</li>
+ * <li>At every window rotation the hedge delay is set to the quantile (spf4j.jaxrs.hedge.quantile, default 0.95)
+ * of the last window, if it has at least spf4j.jaxrs.hedge.minSamples (default 100) samples, otherwise the
+ * statically configured hedge policy is used.</li>
+ * <li>Hedges are limited by a budget (spf4j.jaxrs.hedge.budgetPct, default 5% of requests): every request earns
+ * budgetPct/100 hedge credits (capped at 10 hedges), a credit is reserved when a call resolves its hedge policy,
+ * and returned if the call completes before hedging. When no credit is available, requests are not hedged.</li>
+ * </ul>
+ *
+ * Adaptive hedging can be disabled with -Dspf4j.jaxrs.hedge.static=true.
+ *
+ * @author Zoltan Farkas
+ */
+@ParametersAreNonnullByDefault
+public final class AdaptiveHedge {
+
+  static final boolean ENABLED = !Boolean.getBoolean("spf4j.jaxrs.hedge.static");
+
+  private static final int SUB_BUCKET_BITS = 4;
+
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+  /** values up to 2^40 micros (~12 days) */
+  private static final int MAX_EXPONENT = 40;
+
+  private static final int NR_BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+  private static final long HEDGE_COST = 1000;
+
+  private static final long MAX_CREDITS = 10 * HEDGE_COST;
+
+  private static final MeasurementRecorder HEDGES =
+          RecorderFactory.createScalableSimpleCountingRecorder("http.client.hedges", "count", 60000);
+
+  private final String name;
+
+  private final double quantile;
+
+  private final long windowNanos;
+
+  private final int minSamples;
+
+  private final long creditsPerRequest;
+
+  private final AtomicLong credits;
+
+  private volatile AtomicLongArray current;
+
+  private volatile long windowStartNanos;
+
+  /** the hedge delay, -1 if not enough data. */
+  private volatile long hedgeDelayNanos;
+
+  AdaptiveHedge(final String name) {
+    this(name, Double.parseDouble(System.getProperty("spf4j.jaxrs.hedge.quantile", "0.95")),
+            Integer.getInteger("spf4j.jaxrs.hedge.windowMillis", 5000),
+            Integer.getInteger("spf4j.jaxrs.hedge.minSamples", 100),
+            Double.parseDouble(System.getProperty("spf4j.jaxrs.hedge.budgetPct", "5")),
+            TimeSource.nanoTime());
+  }
+
+  AdaptiveHedge(final String name, final double quantile, final int windowMillis, final int minSamples,
+          final double budgetPct, final long nowNanos) {
+    if (quantile <= 0 || quantile >= 1) {
+      throw new IllegalArgumentException("Invalid quantile " + quantile + " for " + name);
+    }
+    this.name = name;
+    this.quantile = quantile;
+    this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+    this.minSamples = minSamples;
+    this.creditsPerRequest = Math.round(budgetPct * HEDGE_COST / 100);
+    this.credits = new AtomicLong(HEDGE_COST);
+    this.current = new AtomicLongArray(NR_BUCKETS);
+    this.windowStartNanos = nowNanos;
+    this.hedgeDelayNanos = -1;
+  }
+
+  static int bucket(final long micros) {
+    if (micros < SUB_BUCKETS) {
+      return micros < 0 ? 0 : (int) micros;
+    }
+    int exp = 63 - Long.numberOfLeadingZeros(micros);
+    if (exp > MAX_EXPONENT) {
+      return NR_BUCKETS - 1;
+    }
+    int sub = (int) (micros >>> (exp - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return (exp - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+  }
+
+  /**
+   * @return the highest value (micros) that falls into the bucket.
+   */
+  static long bucketUpperBound(final int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    int shift = bucket / SUB_BUCKETS - 1;
+    long sub = bucket % SUB_BUCKETS;
+    return ((SUB_BUCKETS + sub + 1) << shift) - 1;
+  }
+
+  /**
+   * Record the latency of a successful attempt.
+   */
+  void recordLatency(final long latencyNanos) {
+    recordLatency(latencyNanos, TimeSource.nanoTime());
+  }
+
+  void recordLatency(final long latencyNanos, final long nowNanos) {
+    if (nowNanos - windowStartNanos >= windowNanos) {
+      rotate(nowNanos);
+    }
+    current.incrementAndGet(bucket(TimeUnit.NANOSECONDS.toMicros(latencyNanos)));
+  }
+
+  private synchronized void rotate(final long nowNanos) {
+    if (nowNanos - windowStartNanos < windowNanos) {
+      return;
+    }
+    AtomicLongArray window = current;
+    current = new AtomicLongArray(NR_BUCKETS);
+    windowStartNanos = nowNanos;
+    long total = 0;
+    for (int i = 0; i < NR_BUCKETS; i++) {
+      total += window.get(i);
+    }
+    if (total < minSamples) {
+      hedgeDelayNanos = -1;
+      return;
+    }
+    long rank = (long) Math.ceil(total * quantile);
+    long count = 0;
+    for (int i = 0; i < NR_BUCKETS; i++) {
+      count += window.get(i);
+      if (count >= rank) {
+        hedgeDelayNanos = TimeUnit.MICROSECONDS.toNanos(Math.max(1, bucketUpperBound(i)));
+        return;
+      }
+    }
+  }
+
+  /**
+   * Account a request, earning hedge budget.
+   */
+  void onRequest() {
+    long c;
+    do {
+      c = credits.get();
+      if (c >= MAX_CREDITS) {
+        return;
+      }
+    } while (!credits.compareAndSet(c, Math.min(c + creditsPerRequest, MAX_CREDITS)));
+  }
+
+  /**
+   * Reserve the budget for one hedge, the reservation is made when the hedge policy of a call is resolved,
+   * so that concurrent calls cannot all hedge on the same credit.
+   * @return true if the budget was reserved.
+   */
+  boolean tryReserve() {
+    long c;
+    do {
+      c = credits.get();
+      if (c < HEDGE_COST) {
+        return false;
+      }
+    } while (!credits.compareAndSet(c, c - HEDGE_COST));
+    return true;
+  }
+
+  /**
+   * Return a reserved credit that has not been used by a hedge.
+   */
+  void refund() {
+    long c;
+    do {
+      c = credits.get();
+      if (c >= MAX_CREDITS) {
+        return;
+      }
+    } while (!credits.compareAndSet(c, Math.min(c + HEDGE_COST, MAX_CREDITS)));
+  }
+
+  /**
+   * Account a executed hedge.
+   * @param reserved true if the hedge budget was reserved, otherwise the budget is spent now.
+   */
+  void onHedge(final boolean reserved) {
+    if (!reserved) {
+      credits.addAndGet(-HEDGE_COST);
+    }
+    HEDGES.increment();
+  }
+
+  long getHedgeDelayNanos() {
+    return hedgeDelayNanos;
+  }
+
+  /**
+   * @param staticPolicy the statically configured hedge policy.
+   * @return the quantile derived hedge policy, or staticPolicy if there is not enough data. Budget is not checked,
+   * see tryReserve.
+   */
+  HedgePolicy getPolicy(final HedgePolicy staticPolicy) {
+    long delay = hedgeDelayNanos;
+    if (delay < 0) {
+      return staticPolicy;
+    }
+    return new QuantileHedge(delay, staticPolicy);
+  }
+
+  @Override
+  public String toString() {
+    return "AdaptiveHedge{" + "name=" + name + ", quantile=" + quantile + ", hedgeDelayNanos=" + hedgeDelayNanos
+            + ", credits=" + credits + '}';
+  }
+
+  private static final class QuantileHedge implements HedgePolicy {
+
+    private final long delayNanos;
+
+    private final HedgePolicy staticPolicy;
+
+    QuantileHedge(final long delayNanos, final HedgePolicy staticPolicy) {
+      this.delayNanos = delayNanos;
+      this.staticPolicy = staticPolicy;
+    }
+
+    @Override
+    public Hedge getHedge(final long startTimeNanos, final long deadlineNanos) {
+      return new Hedge(delayNanos, staticPolicy.getHedge(startTimeNanos, deadlineNanos).getHedgeCount());
+    }
+
+    @Override
+    public String toString() {
+      return "QuantileHedge{" + "delayNanos=" + delayNanos + '}';
+    }
+
+  }
+
+}
@@ -0,0 +1,309 @@
+/*
+ * Copyright 2021 SPF4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.jaxrs.client;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.ws.rs.ServiceUnavailableException;
+import javax.ws.rs.core.Configuration;
+import org.spf4j.base.TimeSource;
+
+/**
+ * Automatic circuit breaker for a http destination (host:port). Opt-in, enabled per client or target via
+ * Spf4jClientProperties.CIRCUIT_BREAKER, or JVM wide via -Dspf4j.jaxrs.cb.enable=true.
+ *
+ * <ul>
+ * <li>CLOSED: calls go through, outcomes are counted in a sliding window (nrBuckets x bucketMillis) of striped
+ * counters. When the window has at least minRequests calls and the failure percentage (5xx, connection errors)
+ * reaches failurePct, or the percentage of calls slower than slowCallMillis reaches slowCallPct,
+ * the breaker opens.</li>
+ * <li>OPEN: calls fail fast with a CircuitBreakerOpenException (a ServiceUnavailableException without stack trace,
+ * cheap to create).</li>
+ * <li>HALF_OPEN: after the open interval, probes calls are allowed, if they all succeed, the breaker closes,
+ * any failure re-opens it with a doubled open interval (capped at maxOpenMillis).</li>
+ * </ul>
+ *
+ * @author Zoltan Farkas
+ */
+@ParametersAreNonnullByDefault
+public final class CircuitBreaker {
+
+  public enum State { CLOSED, OPEN, HALF_OPEN }
+
+  static final boolean ENABLED = Boolean.getBoolean("spf4j.jaxrs.cb.enable");
+
+  private static final int NR_BUCKETS = 10;
+
+  private static final State[] STATES = State.values();
+
+  private static final int CLOSED = 0;
+
+  private static final int OPEN = 1;
+
+  private static final int HALF_OPEN = 2;
+
+  private final String name;
+
+  private final long bucketNanos;
+
+  private final int minRequests;
+
+  private final int failurePct;
+
+  private final long slowCallNanos;
+
+  private final int slowCallPct;
+
+  private final long minOpenNanos;
+
+  private final long maxOpenNanos;
+
+  private final int probes;
+
+  private final Bucket[] buckets;
+
+  private final AtomicInteger state;
+
+  private final AtomicInteger probePermits;
+
+  private final AtomicInteger probeSuccesses;
+
+  private volatile long openNanos;
+
+  private volatile long openUntilNanos;
+
+  private volatile long halfOpenSinceNanos;
+
+  private volatile long retryAfterSeconds;
+
+  /**
+   * Circuit breaker configured via system properties (spf4j.jaxrs.cb.*).
+   */
+  public CircuitBreaker(final String name) {
+    this(name, Integer.getInteger("spf4j.jaxrs.cb.windowMillis", 10000),
+            Integer.getInteger("spf4j.jaxrs.cb.minRequests", 20),
+            Integer.getInteger("spf4j.jaxrs.cb.failurePct", 50),
+            Integer.getInteger("spf4j.jaxrs.cb.slowCallMillis", 0),
+            Integer.getInteger("spf4j.jaxrs.cb.slowCallPct", 80),
+            Integer.getInteger("spf4j.jaxrs.cb.openMillis", 5000),
+            Integer.getInteger("spf4j.jaxrs.cb.maxOpenMillis", 60000),
+            Integer.getInteger("spf4j.jaxrs.cb.probes", 3));
+  }
+
+  /**
+   * @param name the destination name.
+   * @param windowMillis the sliding window size.
+   * @param minRequests min number of calls in the window for the breaker to open.
+   * @param failurePct the failure percentage that will open the breaker.
+   * @param slowCallMillis calls slower than this are slow calls, 0 to disable.
+   * @param slowCallPct the slow call percentage that will open the breaker.
+   * @param openMillis the initial open interval.
+   * @param maxOpenMillis the max open interval.
+   * @param probes the number of half open probe calls.
+   */
+  public CircuitBreaker(final String name, final long windowMillis, final int minRequests,
+          final int failurePct, final long slowCallMillis, final int slowCallPct,
+          final long openMillis, final long maxOpenMillis, final int probes) {
+    if (windowMillis < NR_BUCKETS || minRequests < 1 || probes < 1 || openMillis > maxOpenMillis) {
+      throw new IllegalArgumentException("Invalid circuit breaker config for " + name + ", window = "
+              + windowMillis + ", minRequests = " + minRequests + ", probes = " + probes
+              + ", openMillis = " + openMillis + ", maxOpenMillis = " + maxOpenMillis);
+    }
+    this.name = name;
+    this.bucketNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis) / NR_BUCKETS;
+    this.minRequests = minRequests;
+    this.failurePct = failurePct;
+    this.slowCallNanos = slowCallMillis <= 0 ? Long.MAX_VALUE : TimeUnit.MILLISECONDS.toNanos(slowCallMillis);
+    this.slowCallPct = slowCallPct;
+    this.minOpenNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+    this.maxOpenNanos = TimeUnit.MILLISECONDS.toNanos(maxOpenMillis);
+    this.probes = probes;
+    this.buckets = new Bucket[NR_BUCKETS];
+    for (int i = 0; i < NR_BUCKETS; i++) {
+      buckets[i] = new Bucket();
+    }
+    this.state = new AtomicInteger(CLOSED);
+    this.probePermits = new AtomicInteger();
+    this.probeSuccesses = new AtomicInteger();
+    this.openNanos = minOpenNanos;
+  }
+
+  /**
+   * @return true if circuit breakers are enabled for the client or target configuration.
+   */
+  public static boolean isEnabled(final Configuration config) {
+    Object enabled = config.getProperty(Spf4jClientProperties.CIRCUIT_BREAKER);
+    if (enabled == null) {
+      return ENABLED;
+    }
+    return enabled instanceof Boolean ? (Boolean) enabled : Boolean.parseBoolean(enabled.toString());
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public State getState() {
+    return STATES[state.get()];
+  }
+
+  /**
+   * @return true if a call is permitted.
+   */
+  public boolean tryAcquire() {
+    return tryAcquire(TimeSource.nanoTime());
+  }
+
+  boolean tryAcquire(final long nowNanos) {
+    switch (state.get()) {
+      case CLOSED:
+        return true;
+      case OPEN:
+        if (nowNanos - openUntilNanos < 0) {
+          return false;
+        }
+        if (state.compareAndSet(OPEN, HALF_OPEN)) {
+          halfOpenSinceNanos = nowNanos;
+          probeSuccesses.set(0);
+          probePermits.set(probes - 1);
+          return true;
+        }
+        return tryAcquire(nowNanos);
+      case HALF_OPEN:
+        if (probePermits.getAndDecrement() > 0) {
+          return true;
+        }
+        if (nowNanos - halfOpenSinceNanos > openNanos) {
+          // probes did not report back (abandoned), allow new ones.
+          halfOpenSinceNanos = nowNanos;
+          probePermits.set(probes);
+        }
+        return false;
+      default:
+        throw new IllegalStateException("Invalid state " + state);
+    }
+  }
+
+  /**
+   * A new instance is returned for every call, WebApplicationException does not allow disabling suppression,
+   * so a shared instance would accumulate suppressed exceptions.
+   * @return the exception to throw when a call is not permitted.
+   */
+  public ServiceUnavailableException getOpenException() {
+    return new CircuitBreakerOpenException(name, retryAfterSeconds);
+  }
+
+  public void onResult(final long latencyNanos, final boolean failure) {
+    onResult(latencyNanos, failure, TimeSource.nanoTime());
+  }
+
+  void onResult(final long latencyNanos, final boolean failure, final long nowNanos) {
+    boolean slow = latencyNanos >= slowCallNanos;
+    switch (state.get()) {
+      case CLOSED:
+        long epoch = Math.floorDiv(nowNanos, bucketNanos);
+        Bucket bucket = buckets[(int) Math.floorMod(epoch, (long) NR_BUCKETS)];
+        bucket.record(epoch, failure, slow);
+        if ((failure || slow) && shouldOpen(epoch)) {
+          open(CLOSED, minOpenNanos, nowNanos);
+        }
+        break;
+      case HALF_OPEN:
+        if (failure || slow) {
+          open(HALF_OPEN, Math.min(openNanos * 2, maxOpenNanos), nowNanos);
+        } else if (probeSuccesses.incrementAndGet() >= probes && state.compareAndSet(HALF_OPEN, CLOSED)) {
+          for (Bucket b : buckets) {
+            b.reset(Long.MIN_VALUE);
+          }
+          openNanos = minOpenNanos;
+        }
+        break;
+      default:
+        // OPEN, results of calls started before opening.
+    }
+  }
+
+  private boolean shouldOpen(final long epoch) {
+    long total = 0;
+    long failures = 0;
+    long slow = 0;
+    for (Bucket b : buckets) {
+      if (b.epoch > epoch - NR_BUCKETS) {
+        total += b.total.sum();
+        failures += b.failures.sum();
+        slow += b.slow.sum();
+      }
+    }
+    return total >= minRequests && (failures * 100 >= failurePct * total || slow * 100 >= slowCallPct * total);
+  }
+
+  private void open(final int fromState, final long pOpenNanos, final long nowNanos) {
+    long retrySeconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(pOpenNanos));
+    if (state.get() == fromState) {
+      retryAfterSeconds = retrySeconds;
+      openNanos = pOpenNanos;
+      openUntilNanos = nowNanos + pOpenNanos;
+      state.compareAndSet(fromState, OPEN);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "CircuitBreaker{" + "name=" + name + ", state=" + getState() + ", openNanos=" + openNanos + '}';
+  }
+
+  private static final class Bucket {
+
+    private static final AtomicLongFieldUpdater<Bucket> EPOCH =
+            AtomicLongFieldUpdater.newUpdater(Bucket.class, "epoch");
+
+    private final LongAdder total = new LongAdder();
+
+    private final LongAdder failures = new LongAdder();
+
+    private final LongAdder slow = new LongAdder();
+
+    private volatile long epoch = Long.MIN_VALUE;
+
+    void record(final long pEpoch, final boolean failure, final boolean isSlow) {
+      long current = epoch;
+      if (current < pEpoch && EPOCH.compareAndSet(this, current, pEpoch)) {
+        // bucket rotation, the few concurrent increments racing with the reset can be lost.
+        total.reset();
+        failures.reset();
+        slow.reset();
+      }
+      total.increment();
+      if (failure) {
+        failures.increment();
+      }
+      if (isSlow) {
+        slow.increment();
+      }
+    }
+
+    void reset(final long pEpoch) {
+      epoch = pEpoch;
+      total.reset();
+      failures.reset();
+      slow.reset();
+    }
+  }
+
+}
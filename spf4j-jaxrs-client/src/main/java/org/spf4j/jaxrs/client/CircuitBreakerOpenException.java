@@ -0,0 +1,39 @@
+/*
+ * Copyright 2021 SPF4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.jaxrs.client;
+
+import javax.ws.rs.ServiceUnavailableException;
+
+/**
+ * Thrown when a call is rejected by an open circuit breaker, without a stack trace, since there can be a lot of them
+ * while the breaker is open.
+ *
+ * @author Zoltan Farkas
+ */
+public final class CircuitBreakerOpenException extends ServiceUnavailableException {
+
+  private static final long serialVersionUID = 1L;
+
+  public CircuitBreakerOpenException(final String name, final long retryAfterSeconds) {
+    super("Circuit breaker open: " + name, retryAfterSeconds);
+  }
+
+  @Override
+  public synchronized Throwable fillInStackTrace() {
+    return this;
+  }
+
+}
@@ -0,0 +1,311 @@
+/*
+ * Copyright 2021 SPF4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.jaxrs.client;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import org.spf4j.base.TimeSource;
+import org.spf4j.concurrent.DefaultExecutor;
+import org.spf4j.perf.MeasurementRecorder;
+import org.spf4j.perf.impl.RecorderFactory;
+
+/**
+ * Client side DNS cache with asynchronous refresh ahead.
+ *
+ * <ul>
+ * <li>The first resolution of a host is done on the calling thread (concurrent callers wait for the same
+ * resolution), a failed first resolution is not cached.</li>
+ * <li>When a entry is used after 75% of its TTL, it is refreshed in the background, the current addresses are
+ * returned meanwhile, so for hosts in use, DNS resolution is not on the request path.</li>
+ * <li>When a background refresh fails, the current addresses continue to be served until they expire, and the
+ * refresh is retried after spf4j.jaxrs.dns.retryMillis (default 5000).</li>
+ * <li>A expired entry is resolved on the calling thread (concurrent callers wait for the same resolution), the
+ * expired addresses are served only if this resolution fails, until the next attempt after
+ * spf4j.jaxrs.dns.retryMillis.</li>
+ * <li>Entries not used for spf4j.jaxrs.dns.idleMillis (default 300000) are evicted.</li>
+ * </ul>
+ *
+ * The default TTL is spf4j.jaxrs.dns.ttlMillis (default 20000), it can be overwritten per host.
+ *
+ * With the system resolver (HostResolver.SYSTEM), resolutions go through the JVM InetAddress cache, so the
+ * addresses can be stale for up to this TTL plus the JVM cache TTL (the networkaddress.cache.ttl security property,
+ * or -Dsun.net.inetaddr.ttl, 30 seconds by default). The JVM cache is JVM wide, and is not changed by this class,
+ * for the TTL configured here to be the effective one, set networkaddress.cache.ttl to 0 in the java.security file
+ * (or -Dsun.net.inetaddr.ttl=0), the JVM cache is redundant when all resolutions go through a DnsCache.
+ *
+ * @author Zoltan Farkas
+ */
+@ParametersAreNonnullByDefault
+public final class DnsCache {
+
+  private static final Logger LOG = Logger.getLogger(DnsCache.class.getName());
+
+  private static final long RETRY_NANOS = TimeUnit.MILLISECONDS.toNanos(
+          Long.getLong("spf4j.jaxrs.dns.retryMillis", 5000));
+
+  private static final MeasurementRecorder REFRESH_FAILURES =
+          RecorderFactory.createScalableSimpleCountingRecorder("http.client.dns.refreshFailures", "count", 60000);
+
+  private static final MeasurementRecorder STALE =
+          RecorderFactory.createScalableSimpleCountingRecorder("http.client.dns.stale", "count", 60000);
+
+  private final HostResolver resolver;
+
+  private final long ttlNanos;
+
+  private final Map<String, Long> hostTtlNanos;
+
+  private final long idleNanos;
+
+  /** the last use time resolution, to avoid a shared write on every use. */
+  private final long touchNanos;
+
+  private final Executor executor;
+
+  private final ConcurrentMap<String, Entry> entries;
+
+  private final ConcurrentMap<String, CompletableFuture<Entry>> resolutions;
+
+  private final AtomicLong nextEvictionNanos;
+
+  public DnsCache(final HostResolver resolver) {
+    this(resolver, Long.getLong("spf4j.jaxrs.dns.ttlMillis", 20000), Collections.emptyMap());
+  }
+
+  /**
+   * @param resolver the host resolver.
+   * @param ttlMillis the default entry TTL.
+   * @param hostTtlMillis per host TTL overwrites.
+   */
+  public DnsCache(final HostResolver resolver, final long ttlMillis, final Map<String, Long> hostTtlMillis) {
+    this(resolver, ttlMillis, hostTtlMillis, Long.getLong("spf4j.jaxrs.dns.idleMillis", 300000),
+            DefaultExecutor.INSTANCE, TimeSource.nanoTime());
+  }
+
+  DnsCache(final HostResolver resolver, final long ttlMillis, final Map<String, Long> hostTtlMillis,
+          final long idleMillis, final Executor executor, final long nowNanos) {
+    this.resolver = resolver;
+    this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+    this.hostTtlNanos = new HashMap<>(hostTtlMillis.size() + hostTtlMillis.size() / 3 + 1);
+    for (Map.Entry<String, Long> entry : hostTtlMillis.entrySet()) {
+      this.hostTtlNanos.put(entry.getKey(), TimeUnit.MILLISECONDS.toNanos(entry.getValue()));
+    }
+    this.idleNanos = TimeUnit.MILLISECONDS.toNanos(idleMillis);
+    this.touchNanos = idleNanos / 16;
+    this.executor = executor;
+    this.entries = new ConcurrentHashMap<>();
+    this.resolutions = new ConcurrentHashMap<>();
+    this.nextEvictionNanos = new AtomicLong(nowNanos + idleNanos);
+  }
+
+  /**
+   * @return the DnsCache shared by the clients that don't have one configured. (system resolver)
+   */
+  public static DnsCache getDefault() {
+    return Lazy.DEFAULT;
+  }
+
+  /**
+   * @param host the host name.
+   * @return the host addresses, the returned array must not be modified.
+   * @throws UnknownHostException if the host is not in the cache and cannot be resolved.
+   */
+  @SuppressFBWarnings("EI_EXPOSE_REP")
+  public InetAddress[] getAddresses(final String host) throws UnknownHostException {
+    return getAddresses(host, TimeSource.nanoTime());
+  }
+
+  InetAddress[] getAddresses(final String host, final long nowNanos) throws UnknownHostException {
+    if (nowNanos - nextEvictionNanos.get() >= 0) {
+      evictIdle(nowNanos);
+    }
+    Entry entry = entries.get(host);
+    if (entry == null) {
+      return resolve(host, null, nowNanos);
+    }
+    if (nowNanos - entry.lastUsedNanos >= touchNanos) {
+      entry.lastUsedNanos = nowNanos;
+    }
+    if (nowNanos - entry.expiresAtNanos >= 0) {
+      if (nowNanos - entry.resolveRetryAtNanos >= 0) {
+        return resolve(host, entry, nowNanos);
+      }
+      STALE.increment();
+      return entry.addresses;
+    }
+    if (nowNanos - entry.refreshAtNanos >= 0 && entry.startRefresh()) {
+      refreshAsync(host, entry);
+    }
+    return entry.addresses;
+  }
+
+  /**
+   * Resolve a host on the calling thread, concurrent callers wait for the same resolution.
+   * @param expired the expired entry, served if the resolution fails, null if none.
+   */
+  private InetAddress[] resolve(final String host, @Nullable final Entry expired, final long nowNanos)
+          throws UnknownHostException {
+    CompletableFuture<Entry> resolution = new CompletableFuture<>();
+    CompletableFuture<Entry> existing = resolutions.putIfAbsent(host, resolution);
+    if (existing == null) {
+      try {
+        Entry entry = entries.get(host);
+        if (entry == null || entry == expired) {
+          try {
+            entry = newEntry(host, resolver.resolve(host), nowNanos);
+            entries.put(host, entry);
+          } catch (UnknownHostException | RuntimeException ex) {
+            if (expired == null) {
+              throw ex;
+            }
+            REFRESH_FAILURES.increment();
+            STALE.increment();
+            expired.resolveRetryAtNanos = nowNanos + RETRY_NANOS;
+            LOG.log(Level.FINE, "Unable to resolve {0}, serving expired addresses", new Object[] {host, ex});
+          }
+        }
+        resolution.complete(entry);
+        return entry.addresses;
+      } catch (UnknownHostException | RuntimeException ex) {
+        resolution.completeExceptionally(ex);
+        throw ex;
+      } finally {
+        resolutions.remove(host, resolution);
+      }
+    }
+    try {
+      return existing.get().addresses;
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      UnknownHostException uhe = new UnknownHostException("Interrupted while resolving " + host);
+      uhe.initCause(ex);
+      throw uhe;
+    } catch (ExecutionException ex) {
+      Throwable cause = ex.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      UnknownHostException uhe = new UnknownHostException(host);
+      uhe.initCause(cause);
+      throw uhe;
+    }
+  }
+
+  private Entry newEntry(final String host, final InetAddress[] addresses, final long resolvedAtNanos)
+          throws UnknownHostException {
+    if (addresses.length == 0) {
+      throw new UnknownHostException(host);
+    }
+    Long hostTtl = hostTtlNanos.get(host);
+    return new Entry(addresses, resolvedAtNanos, hostTtl == null ? ttlNanos : hostTtl);
+  }
+
+  private void refreshAsync(final String host, final Entry entry) {
+    try {
+      executor.execute(() -> refresh(host, entry));
+    } catch (RejectedExecutionException ex) {
+      entry.refreshFailed(TimeSource.nanoTime() + RETRY_NANOS);
+      LOG.log(Level.FINE, "Unable to refresh {0}", new Object[] {host, ex});
+    }
+  }
+
+  private void refresh(final String host, final Entry entry) {
+    try {
+      entries.replace(host, entry, newEntry(host, resolver.resolve(host), TimeSource.nanoTime()));
+    } catch (UnknownHostException | RuntimeException ex) {
+      REFRESH_FAILURES.increment();
+      entry.refreshFailed(TimeSource.nanoTime() + RETRY_NANOS);
+      LOG.log(Level.FINE, "Unable to refresh {0}, serving current addresses", new Object[] {host, ex});
+    }
+  }
+
+  private void evictIdle(final long nowNanos) {
+    long next = nextEvictionNanos.get();
+    if (nowNanos - next < 0 || !nextEvictionNanos.compareAndSet(next, nowNanos + idleNanos)) {
+      return;
+    }
+    entries.values().removeIf(entry -> nowNanos - entry.lastUsedNanos >= idleNanos);
+  }
+
+  /**
+   * Remove a host from the cache.
+   */
+  public void invalidate(final String host) {
+    entries.remove(host);
+  }
+
+  @Override
+  public String toString() {
+    return "DnsCache{" + "resolver=" + resolver + ", ttlNanos=" + ttlNanos + ", size=" + entries.size() + '}';
+  }
+
+  private static final class Entry {
+
+    private final InetAddress[] addresses;
+
+    private final long expiresAtNanos;
+
+    private volatile long refreshAtNanos;
+
+    /** when a expired entry is to be resolved again, after a failed resolution. */
+    private volatile long resolveRetryAtNanos;
+
+    private volatile long lastUsedNanos;
+
+    private final AtomicBoolean refreshing;
+
+    Entry(final InetAddress[] addresses, final long resolvedAtNanos, final long entryTtlNanos) {
+      this.addresses = addresses;
+      this.expiresAtNanos = resolvedAtNanos + entryTtlNanos;
+      this.refreshAtNanos = resolvedAtNanos + entryTtlNanos - entryTtlNanos / 4;
+      this.resolveRetryAtNanos = expiresAtNanos;
+      this.lastUsedNanos = resolvedAtNanos;
+      this.refreshing = new AtomicBoolean();
+    }
+
+    boolean startRefresh() {
+      return refreshing.compareAndSet(false, true);
+    }
+
+    void refreshFailed(final long retryAtNanos) {
+      refreshAtNanos = retryAtNanos;
+      refreshing.set(false);
+    }
+
+  }
+
+  private static final class Lazy {
+    private static final DnsCache DEFAULT = new DnsCache(HostResolver.SYSTEM);
+  }
+
+}
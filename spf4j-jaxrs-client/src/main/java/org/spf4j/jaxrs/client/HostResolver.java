@@ -0,0 +1,42 @@
+/*
+ * Copyright 2021 SPF4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.jaxrs.client;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Host name resolver SPI, used by the DnsCache, can be replaced for tests (no network), or for custom
+ * service discovery.
+ *
+ * @author Zoltan Farkas
+ */
+@FunctionalInterface
+public interface HostResolver {
+
+  /**
+   * The JVM resolver.
+   */
+  HostResolver SYSTEM = InetAddress::getAllByName;
+
+  /**
+   * @param host the host name.
+   * @return the addresses the host resolves to, at least one.
+   * @throws UnknownHostException if the host cannot be resolved.
+   */
+  InetAddress[] resolve(String host) throws UnknownHostException;
+
+}
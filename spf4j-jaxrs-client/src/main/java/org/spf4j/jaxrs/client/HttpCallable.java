@@ -19,12 +19,13 @@ import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import java.net.URI;
 import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 import javax.annotation.Nullable;
 import org.spf4j.base.ExecutionContext;
 import static org.spf4j.base.ExecutionContexts.start;
 import org.spf4j.base.TimeSource;
 import org.spf4j.base.Wrapper;
+import org.spf4j.failsafe.HedgePolicy;
 import org.spf4j.http.RequestContextTags;
 
 /**
@@ -41,6 +42,13 @@ public interface HttpCallable<T> extends Callable<T> {
 
   long getDeadlineNanos();
 
+  /**
+   * @param staticPolicy the statically configured hedge policy.
+   * @return the hedge policy to use for this call.
+   */
+  default HedgePolicy getHedgePolicy(final HedgePolicy staticPolicy) {
+    return staticPolicy;
+  }
 
   static <T> HttpCallable<T> invocationHandler(
           final ExecutionContext ctx,
@@ -52,12 +60,73 @@ public interface HttpCallable<T> extends Callable<T> {
           final long nanoTime,
           final long deadlineNanos,
           final long callableTimeoutNanos) {
+    return invocationHandler(ctx, callable, name, uri, method, exMapper,
+            nanoTime, deadlineNanos, callableTimeoutNanos, null, null);
+  }
+
+  /**
+   * @param breaker the circuit breaker the attempt outcomes are reported to, null if none.
+   */
+  static <T> HttpCallable<T> invocationHandler(
+          final ExecutionContext ctx,
+          final Callable<T> callable,
+          @Nullable final String name,
+          final URI uri,
+          final String method,
+          final ClientExceptionMapper exMapper,
+          final long nanoTime,
+          final long deadlineNanos,
+          final long callableTimeoutNanos,
+          @Nullable final CircuitBreaker breaker) {
+    return invocationHandler(ctx, callable, name, uri, method, exMapper,
+            nanoTime, deadlineNanos, callableTimeoutNanos, breaker, null);
+  }
+
+  /**
+   * @param breaker the circuit breaker the attempt outcomes are reported to, null if none.
+   * @param hedge the adaptive hedge the attempt latencies and hedges are reported to, null if none.
+   */
+  static <T> HttpCallable<T> invocationHandler(
+          final ExecutionContext ctx,
+          final Callable<T> callable,
+          @Nullable final String name,
+          final URI uri,
+          final String method,
+          final ClientExceptionMapper exMapper,
+          final long nanoTime,
+          final long deadlineNanos,
+          final long callableTimeoutNanos,
+          @Nullable final CircuitBreaker breaker,
+          @Nullable final AdaptiveHedge hedge) {
     return new InvocationHandler(callable, ctx, name, uri, method, exMapper,
-            nanoTime, deadlineNanos, callableTimeoutNanos);
+            nanoTime, deadlineNanos, callableTimeoutNanos, breaker, hedge);
   }
 
+  /**
+   * The attempt handler, every attempt runs in a child context of the caller context with the attempt deadline.
+   * The attempt metadata is kept in primitive fields (no per call atomic wrappers), the try count is put in the
+   * attempt context only for retries/hedges (MultiURLs treats a missing try count as the first attempt),
+   * and the context name is computed once per call.
+   */
   final class InvocationHandler<T> implements HttpCallable<T>, Wrapper<Callable<T>> {
 
+    private static final AtomicIntegerFieldUpdater<InvocationHandler> TRY_COUNT =
+            AtomicIntegerFieldUpdater.newUpdater(InvocationHandler.class, "tryCount");
+
+    private static final AtomicIntegerFieldUpdater<InvocationHandler> RUNNING =
+            AtomicIntegerFieldUpdater.newUpdater(InvocationHandler.class, "running");
+
+    private static final AtomicIntegerFieldUpdater<InvocationHandler> HEDGE_STATE =
+            AtomicIntegerFieldUpdater.newUpdater(InvocationHandler.class, "hedgeState");
+
+    private static final int NOT_RESERVED = 0;
+
+    private static final int RESERVED = 1;
+
+    private static final int SPENT = 2;
+
+    private static final int REFUNDED = 3;
+
     private final Callable<T> task;
     private final ExecutionContext current;
 
@@ -69,7 +138,7 @@ public interface HttpCallable<T> extends Callable<T> {
 
     private final long callableTimeoutNanos;
 
-    private final AtomicInteger tryCount;
+    private volatile int tryCount;
 
     private final URI uri;
 
@@ -77,6 +146,18 @@ public interface HttpCallable<T> extends Callable<T> {
 
     private final ClientExceptionMapper exMapper;
 
+    @Nullable
+    private final CircuitBreaker breaker;
+
+    @Nullable
+    private final AdaptiveHedge hedge;
+
+    /** the number of attempts in progress, a attempt started while another is in progress is a hedge. */
+    private volatile int running;
+
+    /** the hedge budget reservation state: NOT_RESERVED, RESERVED, SPENT or REFUNDED. */
+    private volatile int hedgeState;
+
     InvocationHandler(final Callable<T> task,
             final ExecutionContext current,
             @Nullable final String name,
@@ -84,17 +165,20 @@ public interface HttpCallable<T> extends Callable<T> {
             final String method,
             final ClientExceptionMapper exMapper,
             final long nanoTime,
-            final long deadlineNanos, final long callableTimeoutNanos) {
+            final long deadlineNanos, final long callableTimeoutNanos,
+            @Nullable final CircuitBreaker breaker,
+            @Nullable final AdaptiveHedge hedge) {
       this.task = task;
       this.current = current;
-      this.name = name;
+      this.name = name == null ? task.toString() : name;
       this.uri = uri;
       this.method = method;
       this.nanoTime = nanoTime;
       this.deadlineNanos = deadlineNanos;
       this.callableTimeoutNanos = callableTimeoutNanos;
-      this.tryCount = new AtomicInteger(1);
       this.exMapper = exMapper;
+      this.breaker = breaker;
+      this.hedge = hedge;
     }
 
     @Override
@@ -109,17 +193,47 @@ public interface HttpCallable<T> extends Callable<T> {
           aDeadlineNanos = deadlineNanos;
         }
       }
-      try (ExecutionContext ctx = start(toString(), current, aDeadlineNanos)) {
-        ctx.put(RequestContextTags.TRY_COUNT, tryCount.getAndIncrement());
-        return task.call();
+      LoadBalancerFeedback.abandon();
+      long startNanos = breaker == null && hedge == null ? 0L : TimeSource.nanoTime();
+      if (RUNNING.getAndIncrement(this) > 0 && hedge != null) {
+        hedge.onHedge(HEDGE_STATE.compareAndSet(this, RESERVED, SPENT));
+      }
+      int attempt = TRY_COUNT.incrementAndGet(this);
+      try (ExecutionContext ctx = start(name, current, aDeadlineNanos)) {
+        if (attempt > 1) {
+          ctx.put(RequestContextTags.TRY_COUNT, attempt);
+        }
+        T result = task.call();
+        LoadBalancerFeedback.completed(result);
+        if (breaker != null || hedge != null) {
+          long latencyNanos = TimeSource.nanoTime() - startNanos;
+          boolean failure = LoadBalancerFeedback.isFailure(result);
+          if (breaker != null) {
+            breaker.onResult(latencyNanos, failure);
+          }
+          if (hedge != null && !failure) {
+            hedge.recordLatency(latencyNanos);
+          }
+        }
+        return result;
       } catch (Exception ex) {
+        LoadBalancerFeedback.failed(ex);
+        if (breaker != null) {
+          breaker.onResult(TimeSource.nanoTime() - startNanos, LoadBalancerFeedback.isFailure(ex));
+        }
         throw exMapper.handleServiceError(ex, current);
+      } finally {
+        RUNNING.decrementAndGet(this);
+        // the attempt completed (successfully or not) without a hedge being started, return the reserved credit.
+        if (hedge != null && HEDGE_STATE.compareAndSet(this, RESERVED, REFUNDED)) {
+          hedge.refund();
+        }
       }
     }
 
     @Override
     public String toString() {
-      return name == null ? task.toString() : name;
+      return name;
     }
 
     @Override
@@ -148,6 +262,26 @@ public interface HttpCallable<T> extends Callable<T> {
       return this.deadlineNanos;
     }
 
+    /**
+     * The adaptive hedge policy, when the hedge delay is known the hedge budget is reserved here,
+     * and returned if the call completes without hedging.
+     */
+    @Override
+    public HedgePolicy getHedgePolicy(final HedgePolicy staticPolicy) {
+      if (hedge == null) {
+        return staticPolicy;
+      }
+      HedgePolicy policy = hedge.getPolicy(staticPolicy);
+      if (policy == staticPolicy) {
+        return policy;
+      }
+      if (HEDGE_STATE.compareAndSet(this, NOT_RESERVED, RESERVED) && !hedge.tryReserve()) {
+        hedgeState = NOT_RESERVED;
+        return HedgePolicy.NONE;
+      }
+      return policy;
+    }
+
   }
 
 
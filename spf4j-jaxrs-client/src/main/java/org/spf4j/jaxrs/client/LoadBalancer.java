@@ -0,0 +1,60 @@
+/*
+ * Copyright 2021 SPF4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.jaxrs.client;
+
+import java.net.InetAddress;
+import javax.annotation.Nullable;
+
+/**
+ * Client side load balancer, selects the address to connect to, for a host that resolves to multiple addresses.
+ * Can be configured per client via the Spf4jClientProperties.LOAD_BALANCER client property.
+ *
+ * @author Zoltan Farkas
+ */
+public interface LoadBalancer {
+
+  /**
+   * @param host the host name.
+   * @param addresses the addresses the host resolves to (more than one).
+   * @return the selection, or null to let the default resolution happen.
+   */
+  @Nullable
+  Selection select(String host, InetAddress[] addresses);
+
+  /**
+   * A address selection, one of the completion methods will be invoked once when the http exchange completes.
+   */
+  interface Selection {
+
+    InetAddress getAddress();
+
+    /**
+     * The exchange completed with a server response. (client errors included)
+     */
+    void onSuccess();
+
+    /**
+     * The exchange failed due to a IO error, or server error.
+     */
+    void onFailure();
+
+    /**
+     * The exchange outcome is unknown.
+     */
+    void onAbandon();
+  }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2021 SPF4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.jaxrs.client;
+
+import javax.annotation.Nullable;
+import javax.ws.rs.ProcessingException;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+
+/**
+ * Associates the load balancer selection made while connecting with the http attempt executing in the same thread.
+ *
+ * @author Zoltan Farkas
+ */
+final class LoadBalancerFeedback {
+
+  private static final ThreadLocal<LoadBalancer.Selection> CURRENT = new ThreadLocal<>();
+
+  private LoadBalancerFeedback() { }
+
+  static void selected(final LoadBalancer.Selection selection) {
+    abandon();
+    CURRENT.set(selection);
+  }
+
+  static void abandon() {
+    LoadBalancer.Selection selection = CURRENT.get();
+    if (selection != null) {
+      CURRENT.remove();
+      selection.onAbandon();
+    }
+  }
+
+  static void completed(@Nullable final Object result) {
+    LoadBalancer.Selection selection = CURRENT.get();
+    if (selection != null) {
+      CURRENT.remove();
+      if (isFailure(result)) {
+        selection.onFailure();
+      } else {
+        selection.onSuccess();
+      }
+    }
+  }
+
+  static void failed(final Exception ex) {
+    LoadBalancer.Selection selection = CURRENT.get();
+    if (selection != null) {
+      CURRENT.remove();
+      if (isFailure(ex)) {
+        selection.onFailure();
+      } else {
+        selection.onSuccess();
+      }
+    }
+  }
+
+  /**
+   * @return true if the result is a server error response.
+   */
+  static boolean isFailure(@Nullable final Object result) {
+    return result instanceof Response && ((Response) result).getStatus() >= 500;
+  }
+
+  /**
+   * @return true if the exception is a server or connectivity failure.
+   */
+  static boolean isFailure(final Exception ex) {
+    return ex instanceof ProcessingException
+              || (ex instanceof WebApplicationException
+              && ((WebApplicationException) ex).getResponse().getStatus() >= 500);
+  }
+
+}
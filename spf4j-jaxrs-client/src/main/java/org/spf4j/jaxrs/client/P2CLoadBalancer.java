@@ -0,0 +1,264 @@
+/*
+ * Copyright 2021 SPF4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.jaxrs.client;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.ParametersAreNonnullByDefault;
+import org.spf4j.base.TimeSource;
+
+/**
+ * Power of two choices load balancer.
+ *
+ * Two random (non ejected) addresses are compared by cost = ewmaLatency * (inFlight + 1) / (successRate * warmup),
+ * and the cheaper one is selected, where:
+ * <ul>
+ * <li>ewmaLatency is the exponentially weighted moving average of the exchange latency with the address.</li>
+ * <li>inFlight is the number of exchanges in progress with the address.</li>
+ * <li>successRate is the exponentially weighted moving average of the exchange success rate.</li>
+ * <li>warmup grows linearly from 0.1 to 1 during the slow start period, after a address is first seen,
+ * or returns from ejection.</li>
+ * </ul>
+ * Addresses that fail consecutiveFailures times in a row are ejected for ejectionMillis * nrEjections,
+ * (capped at 10 x) no more than half of a host's addresses are ejected at any time.
+ *
+ * @author Zoltan Farkas
+ */
+@ParametersAreNonnullByDefault
+public final class P2CLoadBalancer implements LoadBalancer {
+
+  public static final P2CLoadBalancer DEFAULT = new P2CLoadBalancer(
+          Integer.getInteger("spf4j.jaxrs.lb.consecutiveFailures", 5),
+          Integer.getInteger("spf4j.jaxrs.lb.ejectionMillis", 10000),
+          Integer.getInteger("spf4j.jaxrs.lb.slowStartMillis", 30000));
+
+  private static final double ALPHA = 0.2;
+
+  private static final int MAX_EJECTION_MULTIPLIER = 10;
+
+  private static final double MIN_WARMUP = 0.1;
+
+  private final int consecutiveFailures;
+
+  private final long ejectionNanos;
+
+  private final long slowStartNanos;
+
+  private final Map<String, Map<InetAddress, AddressStats>> hosts;
+
+  public P2CLoadBalancer(final int consecutiveFailures, final long ejectionMillis, final long slowStartMillis) {
+    this.consecutiveFailures = consecutiveFailures;
+    this.ejectionNanos = TimeUnit.MILLISECONDS.toNanos(ejectionMillis);
+    this.slowStartNanos = TimeUnit.MILLISECONDS.toNanos(slowStartMillis);
+    this.hosts = new ConcurrentHashMap<>();
+  }
+
+  @Override
+  @SuppressFBWarnings("PREDICTABLE_RANDOM")
+  public Selection select(final String host, final InetAddress[] addresses) {
+    Map<InetAddress, AddressStats> stats = hosts.computeIfAbsent(host, h -> new ConcurrentHashMap<>());
+    if (stats.size() > addresses.length * 2) {
+      // address set changed, forget the stale ones.
+      stats.keySet().retainAll(new HashSet<>(Arrays.asList(addresses)));
+    }
+    long now = TimeSource.nanoTime();
+    int nrAddr = addresses.length;
+    AddressStats[] candidates = new AddressStats[nrAddr];
+    int nrCandidates = 0;
+    double latencySum = 0;
+    int nrLatencies = 0;
+    for (InetAddress addr : addresses) {
+      AddressStats as = stats.computeIfAbsent(addr, a -> new AddressStats(a, now));
+      double latency = as.ewmaLatencyNanos;
+      if (latency > 0) {
+        latencySum += latency;
+        nrLatencies++;
+      }
+      if (!as.isEjected(now)) {
+        candidates[nrCandidates++] = as;
+      }
+    }
+    if (nrCandidates == 0) {
+      for (InetAddress addr : addresses) {
+        candidates[nrCandidates++] = stats.computeIfAbsent(addr, a -> new AddressStats(a, now));
+      }
+    }
+    AddressStats chosen;
+    if (nrCandidates == 1) {
+      chosen = candidates[0];
+    } else {
+      ThreadLocalRandom rnd = ThreadLocalRandom.current();
+      int i1 = rnd.nextInt(nrCandidates);
+      int i2 = rnd.nextInt(nrCandidates - 1);
+      if (i2 >= i1) {
+        i2++;
+      }
+      // addresses with no latency samples yet are assumed average.
+      double defaultLatency = nrLatencies == 0 ? 1 : latencySum / nrLatencies;
+      AddressStats a1 = candidates[i1];
+      AddressStats a2 = candidates[i2];
+      chosen = a1.cost(now, defaultLatency) <= a2.cost(now, defaultLatency) ? a1 : a2;
+    }
+    chosen.inFlight.incrementAndGet();
+    return new AddressSelection(chosen, stats, now);
+  }
+
+  private boolean canEject(final Map<InetAddress, AddressStats> stats, final long now) {
+    int ejected = 0;
+    for (AddressStats as : stats.values()) {
+      if (as.isEjected(now)) {
+        ejected++;
+      }
+    }
+    return ejected < stats.size() / 2;
+  }
+
+  @Override
+  public String toString() {
+    return "P2CLoadBalancer{" + "consecutiveFailures=" + consecutiveFailures + ", ejectionNanos=" + ejectionNanos
+            + ", slowStartNanos=" + slowStartNanos + ", hosts=" + hosts + '}';
+  }
+
+  private final class AddressStats {
+
+    private final InetAddress address;
+
+    private final AtomicInteger inFlight;
+
+    private final AtomicInteger failures;
+
+    private volatile double ewmaLatencyNanos;
+
+    private volatile double successRate;
+
+    private volatile long warmupStartNanos;
+
+    private volatile long ejectedUntilNanos;
+
+    private volatile int nrEjections;
+
+    AddressStats(final InetAddress address, final long nowNanos) {
+      this.address = address;
+      this.inFlight = new AtomicInteger();
+      this.failures = new AtomicInteger();
+      this.ewmaLatencyNanos = 0;
+      this.successRate = 1;
+      this.warmupStartNanos = nowNanos;
+      this.ejectedUntilNanos = nowNanos;
+      this.nrEjections = 0;
+    }
+
+    boolean isEjected(final long nowNanos) {
+      return ejectedUntilNanos - nowNanos > 0;
+    }
+
+    double cost(final long nowNanos, final double defaultLatency) {
+      double latency = ewmaLatencyNanos;
+      if (latency <= 0) {
+        latency = defaultLatency;
+      }
+      long warmupElapsed = nowNanos - warmupStartNanos;
+      double warmup = warmupElapsed >= slowStartNanos ? 1
+              : Math.max(MIN_WARMUP, (double) warmupElapsed / slowStartNanos);
+      return latency * (inFlight.get() + 1) / (Math.max(0.01, successRate) * warmup);
+    }
+
+    void success(final long latencyNanos) {
+      inFlight.decrementAndGet();
+      failures.set(0);
+      double ewma = ewmaLatencyNanos;
+      ewmaLatencyNanos = ewma <= 0 ? latencyNanos : ewma * (1 - ALPHA) + latencyNanos * ALPHA;
+      successRate = successRate * (1 - ALPHA) + ALPHA;
+      nrEjections = 0;
+    }
+
+    void failure(final Map<InetAddress, AddressStats> stats, final long nowNanos) {
+      inFlight.decrementAndGet();
+      successRate = successRate * (1 - ALPHA);
+      if (failures.incrementAndGet() >= consecutiveFailures && !isEjected(nowNanos)) {
+        synchronized (stats) {
+          if (!isEjected(nowNanos) && canEject(stats, nowNanos)) {
+            int nrEj = Math.min(nrEjections + 1, MAX_EJECTION_MULTIPLIER);
+            nrEjections = nrEj;
+            ejectedUntilNanos = nowNanos + ejectionNanos * nrEj;
+            warmupStartNanos = ejectedUntilNanos;
+            failures.set(0);
+            successRate = 1;
+          }
+        }
+      }
+    }
+
+    void abandon() {
+      inFlight.decrementAndGet();
+    }
+
+    @Override
+    public String toString() {
+      return "AddressStats{" + "address=" + address + ", inFlight=" + inFlight + ", ewmaLatencyNanos="
+              + ewmaLatencyNanos + ", successRate=" + successRate + ", ejectedUntilNanos=" + ejectedUntilNanos + '}';
+    }
+  }
+
+  private static final class AddressSelection implements Selection {
+
+    private final AddressStats stats;
+
+    private final Map<InetAddress, AddressStats> hostStats;
+
+    private final long startNanos;
+
+    AddressSelection(final AddressStats stats, final Map<InetAddress, AddressStats> hostStats,
+            final long startNanos) {
+      this.stats = stats;
+      this.hostStats = hostStats;
+      this.startNanos = startNanos;
+    }
+
+    @Override
+    public InetAddress getAddress() {
+      return stats.address;
+    }
+
+    @Override
+    public void onSuccess() {
+      stats.success(TimeSource.nanoTime() - startNanos);
+    }
+
+    @Override
+    public void onFailure() {
+      stats.failure(hostStats, TimeSource.nanoTime());
+    }
+
+    @Override
+    public void onAbandon() {
+      stats.abandon();
+    }
+
+    @Override
+    public String toString() {
+      return "AddressSelection{" + "stats=" + stats + ", startNanos=" + startNanos + '}';
+    }
+  }
+
+}
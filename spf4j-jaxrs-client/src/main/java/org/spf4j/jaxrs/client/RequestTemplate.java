@@ -0,0 +1,91 @@
+/*
+ * Copyright 2021 SPF4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.jaxrs.client;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.Map;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.MultivaluedMap;
+
+/**
+ * The method, headers, entity and properties of a request, as set via Spf4jInvocationBuilder.
+ * Used to build the same request for another destination (split and shadow traffic).
+ *
+ * @author Zoltan Farkas
+ */
+@ParametersAreNonnullByDefault
+final class RequestTemplate {
+
+  private final String method;
+
+  @Nullable
+  private final MultivaluedMap<String, Object> headers;
+
+  @Nullable
+  private final Entity<?> entity;
+
+  @Nullable
+  private final Map<String, Object> properties;
+
+  @SuppressFBWarnings("EI_EXPOSE_REP2") // the builder state, not changed after build.
+  RequestTemplate(final String method, @Nullable final MultivaluedMap<String, Object> headers,
+          @Nullable final Entity<?> entity, @Nullable final Map<String, Object> properties) {
+    this.method = method;
+    this.headers = headers;
+    this.entity = entity;
+    this.properties = properties;
+  }
+
+  /**
+   * @return true if the request can be sent more than once. (the entity is not a stream)
+   */
+  boolean isRepeatable() {
+    if (entity == null) {
+      return true;
+    }
+    Object body = entity.getEntity();
+    return !(body instanceof InputStream || body instanceof Reader);
+  }
+
+  /**
+   * @param target the destination target.
+   * @return this request, for the target.
+   */
+  Invocation build(final WebTarget target) {
+    Invocation.Builder builder = target.request();
+    if (headers != null) {
+      builder = builder.headers(headers);
+    }
+    if (properties != null) {
+      for (Map.Entry<String, Object> prop : properties.entrySet()) {
+        builder = builder.property(prop.getKey(), prop.getValue());
+      }
+    }
+    return entity == null ? builder.build(method) : builder.build(method, entity);
+  }
+
+  @Override
+  public String toString() {
+    return "RequestTemplate{" + "method=" + method + ", headers=" + headers + ", entity=" + entity + '}';
+  }
+
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2021 SPF4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.jaxrs.client;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.core.Configuration;
+import javax.ws.rs.core.Response;
+import org.spf4j.base.TimeSource;
+import org.spf4j.concurrent.CustomThreadFactory;
+import org.spf4j.perf.MeasurementRecorder;
+import org.spf4j.perf.impl.RecorderFactory;
+
+/**
+ * Isolated executor for shadow (mirrored) traffic.
+ *
+ * Shadow calls are fire and forget: they are executed once (no retries), on a small pool of low priority daemon
+ * threads, with a bounded queue. When the queue is full, shadow calls are dropped, so that mirroring has a strictly
+ * bounded impact on the primary request path. The per destination shadow ratio is scaled by a sampling rate,
+ * configurable per client or target (Spf4jClientProperties.SHADOW_SAMPLE_RATE) or per invocation
+ * (Spf4jInvocationBuilder.withShadowSampleRate), the JVM wide spf4j.jaxrs.shadow.sampleRate (default 1) otherwise.
+ * Only idempotent requests are mirrored, unless Spf4jClientProperties.SHADOW_NON_IDEMPOTENT is set.
+ *
+ * @author Zoltan Farkas
+ */
+@ParametersAreNonnullByDefault
+final class ShadowTrafficExecutor {
+
+  private static final Logger LOG = Logger.getLogger(ShadowTrafficExecutor.class.getName());
+
+  static final double SAMPLE_RATE = Double.parseDouble(System.getProperty("spf4j.jaxrs.shadow.sampleRate", "1"));
+
+  private static final MeasurementRecorder SUBMITTED =
+          RecorderFactory.createScalableSimpleCountingRecorder("http.client.shadow.submitted", "count", 60000);
+
+  private static final MeasurementRecorder DROPPED =
+          RecorderFactory.createScalableSimpleCountingRecorder("http.client.shadow.dropped", "count", 60000);
+
+  private static final MeasurementRecorder FAILED =
+          RecorderFactory.createScalableSimpleCountingRecorder("http.client.shadow.failed", "count", 60000);
+
+  private static final MeasurementRecorder EXEC_TIME =
+          RecorderFactory.createScalableQuantizedRecorder("http.client.shadow.execTime", "microSecond", 60000,
+                  1000, 0, 6, 10);
+
+  private final ThreadPoolExecutor executor;
+
+  ShadowTrafficExecutor(final int nrThreads, final int queueSize) {
+    this.executor = new ThreadPoolExecutor(nrThreads, nrThreads, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(queueSize),
+            new CustomThreadFactory("spf4j-jaxrs-shadow", true, Thread.MIN_PRIORITY),
+            new ThreadPoolExecutor.AbortPolicy());
+    this.executor.allowCoreThreadTimeOut(true);
+  }
+
+  static ShadowTrafficExecutor instance() {
+    return Lazy.INSTANCE;
+  }
+
+  /**
+   * @return the sampling rate configured for the client or target, the JVM wide SAMPLE_RATE if not configured.
+   */
+  static double getSampleRate(final Configuration config) {
+    Object rate = config.getProperty(Spf4jClientProperties.SHADOW_SAMPLE_RATE);
+    if (rate == null) {
+      return SAMPLE_RATE;
+    }
+    if (rate instanceof Number) {
+      return ((Number) rate).doubleValue();
+    }
+    return Double.parseDouble(rate.toString());
+  }
+
+  /**
+   * @return true if requests with the method can be mirrored with the client or target configuration.
+   */
+  static boolean isMirrored(final String method, final Configuration config) {
+    switch (method) {
+      case HttpMethod.GET:
+      case HttpMethod.HEAD:
+      case HttpMethod.OPTIONS:
+      case "TRACE":
+      case HttpMethod.PUT:
+      case HttpMethod.DELETE:
+        return true;
+      default:
+        Object allow = config.getProperty(Spf4jClientProperties.SHADOW_NON_IDEMPOTENT);
+        return allow != null && (allow instanceof Boolean ? (Boolean) allow : Boolean.parseBoolean(allow.toString()));
+    }
+  }
+
+  /**
+   * @param rnd a uniformly distributed random number in [0, 1).
+   * @param ratio the shadow destination ratio.
+   * @param sampleRate the sampling rate.
+   * @return true if the request is to be mirrored to the destination.
+   */
+  static boolean isSampled(final double rnd, final double ratio, final double sampleRate) {
+    return rnd < ratio * sampleRate;
+  }
+
+  /**
+   * @return true if there is room for more shadow calls.
+   */
+  boolean hasCapacity() {
+    return executor.getQueue().remainingCapacity() > 0;
+  }
+
+  /**
+   * Execute a shadow call, or drop it if the queue is full.
+   * @return true if the call was queued.
+   */
+  boolean submit(final HttpCallable<?> call) {
+    try {
+      executor.execute(() -> execute(call));
+    } catch (RejectedExecutionException ex) {
+      DROPPED.increment();
+      return false;
+    }
+    SUBMITTED.increment();
+    return true;
+  }
+
+  private static void execute(final HttpCallable<?> call) {
+    long startNanos = TimeSource.nanoTime();
+    if (call.getDeadlineNanos() - startNanos <= 0) {
+      DROPPED.increment();
+      return;
+    }
+    try {
+      Object result = call.call();
+      if (result instanceof Response) {
+        ((Response) result).close();
+      }
+    } catch (Exception ex) {
+      FAILED.increment();
+      LOG.log(Level.FINE, ex, () -> "Shadow call failed " + call);
+    } finally {
+      EXEC_TIME.record(TimeUnit.NANOSECONDS.toMicros(TimeSource.nanoTime() - startNanos));
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "ShadowTrafficExecutor{" + "executor=" + executor + '}';
+  }
+
+  private static final class Lazy {
+    private static final ShadowTrafficExecutor INSTANCE = new ShadowTrafficExecutor(
+            Integer.getInteger("spf4j.jaxrs.shadow.threads", 2),
+            Integer.getInteger("spf4j.jaxrs.shadow.queueSize", 128));
+  }
+
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2021 SPF4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.jaxrs.client;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import javax.annotation.ParametersAreNonnullByDefault;
+import org.spf4j.base.TimeSource;
+import org.spf4j.base.UncheckedTimeoutException;
+import org.spf4j.concurrent.DefaultScheduler;
+import org.spf4j.perf.MeasurementRecorder;
+import org.spf4j.perf.impl.RecorderFactory;
+
+/**
+ * Coalesces concurrent identical requests into a single in flight request (single flight).
+ *
+ * The first caller for a key executes the request, concurrent callers with the same key wait for its outcome,
+ * each within its own deadline. When the request times out (the leader's deadline), waiters that have time left
+ * do not get the leader's timeout, they retry (join a new flight or lead one).
+ * Since the result object is shared among all waiters, it must not be mutated.
+ *
+ * @author Zoltan Farkas
+ */
+@ParametersAreNonnullByDefault
+final class SingleFlight {
+
+  private static final MeasurementRecorder COALESCED =
+          RecorderFactory.createScalableSimpleCountingRecorder("http.client.coalesced", "count", 60000);
+
+  private final ConcurrentMap<String, CompletableFuture<Object>> flights;
+
+  SingleFlight() {
+    this.flights = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Execute synchronously.
+   * @param key the request key.
+   * @param deadlineNanos the caller deadline.
+   * @param what the request.
+   * @return the request result.
+   */
+  @SuppressWarnings("unchecked")
+  <T> T call(final String key, final long deadlineNanos, final Supplier<T> what) {
+    while (true) {
+      CompletableFuture<Object> flight = new CompletableFuture<>();
+      CompletableFuture<Object> existing = flights.putIfAbsent(key, flight);
+      if (existing == null) {
+        T result;
+        try {
+          result = what.get();
+        } catch (RuntimeException | Error ex) {
+          // removed before completion, so that retrying waiters do not join this flight again.
+          flights.remove(key, flight);
+          flight.completeExceptionally(ex);
+          throw ex;
+        }
+        flights.remove(key, flight);
+        flight.complete(result);
+        return result;
+      }
+      COALESCED.increment();
+      try {
+        return (T) existing.get(deadlineNanos - TimeSource.nanoTime(), TimeUnit.NANOSECONDS);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(ex);
+      } catch (TimeoutException ex) {
+        throw new UncheckedTimeoutException(ex);
+      } catch (ExecutionException ex) {
+        Throwable cause = ex.getCause();
+        if (isTimeout(cause) && deadlineNanos - TimeSource.nanoTime() > 0) {
+          continue;
+        }
+        if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        } else if (cause instanceof Error) {
+          throw (Error) cause;
+        } else {
+          throw new RuntimeException(cause);
+        }
+      }
+    }
+  }
+
+  /**
+   * @return true if the flight failed because it timed out.
+   */
+  static boolean isTimeout(final Throwable t) {
+    Throwable cause = t;
+    for (int i = 0; i < 8 && cause != null; i++) {
+      if (cause instanceof TimeoutException || cause instanceof UncheckedTimeoutException) {
+        return true;
+      }
+      cause = cause.getCause();
+    }
+    return false;
+  }
+
+  /**
+   * Execute asynchronously.
+   * @param key the request key.
+   * @param deadlineNanos the caller deadline.
+   * @param what the request.
+   * @return the future result.
+   */
+  @SuppressWarnings("unchecked")
+  <T> CompletableFuture<T> submit(final String key, final long deadlineNanos,
+          final Supplier<CompletableFuture<T>> what) {
+    CompletableFuture<Object> flight = new CompletableFuture<>();
+    CompletableFuture<Object> existing = flights.putIfAbsent(key, flight);
+    if (existing == null) {
+      CompletableFuture<T> result;
+      try {
+        result = what.get();
+      } catch (RuntimeException | Error ex) {
+        flights.remove(key, flight);
+        flight.completeExceptionally(ex);
+        throw ex;
+      }
+      result.whenComplete((r, t) -> {
+        flights.remove(key, flight);
+        if (t != null) {
+          flight.completeExceptionally(t);
+        } else {
+          flight.complete(r);
+        }
+      });
+      return result;
+    }
+    COALESCED.increment();
+    CompletableFuture<T> waiter = new CompletableFuture<>();
+    ScheduledFuture<?> timeout = DefaultScheduler.instance().schedule(
+            () -> waiter.completeExceptionally(new TimeoutException("Timed out waiting for " + key)),
+            deadlineNanos - TimeSource.nanoTime(), TimeUnit.NANOSECONDS);
+    existing.whenComplete((r, t) -> {
+      if (t == null) {
+        timeout.cancel(false);
+        waiter.complete((T) r);
+      } else if (isTimeout(t) && deadlineNanos - TimeSource.nanoTime() > 0) {
+        CompletableFuture<T> retry;
+        try {
+          retry = submit(key, deadlineNanos, what);
+        } catch (RuntimeException | Error ex) {
+          timeout.cancel(false);
+          waiter.completeExceptionally(ex);
+          return;
+        }
+        retry.whenComplete((rr, rt) -> {
+          timeout.cancel(false);
+          if (rt != null) {
+            waiter.completeExceptionally(rt);
+          } else {
+            waiter.complete(rr);
+          }
+        });
+      } else {
+        timeout.cancel(false);
+        waiter.completeExceptionally(t);
+      }
+    });
+    return waiter;
+  }
+
+  int getInFlight() {
+    return flights.size();
+  }
+
+  @Override
+  public String toString() {
+    return "SingleFlight{" + "inFlight=" + flights.size() + '}';
+  }
+
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2021 SPF4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.jaxrs.client;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * A SSL socket factory used for connections to a specific address of a host, where the URL host is the address.
+ *
+ * The TLS layer is created with the original host name, so that SNI and the server certificate verification
+ * (HTTPS endpoint identification) are done against the host name, not against the address.
+ *
+ * createSocket() is not supported (throws SocketException caused by UnsupportedOperationException), which makes
+ * the JDK https client connect a plain socket, and layer TLS on top of it with createSocket(Socket, ...).
+ *
+ * @author Zoltan Farkas
+ */
+@ParametersAreNonnullByDefault
+final class SniSSLSocketFactory extends SSLSocketFactory {
+
+  private final SSLSocketFactory delegate;
+
+  private final String hostName;
+
+  SniSSLSocketFactory(final SSLSocketFactory delegate, final String hostName) {
+    this.delegate = delegate;
+    this.hostName = hostName;
+  }
+
+  @Override
+  public String[] getDefaultCipherSuites() {
+    return delegate.getDefaultCipherSuites();
+  }
+
+  @Override
+  public String[] getSupportedCipherSuites() {
+    return delegate.getSupportedCipherSuites();
+  }
+
+  @Override
+  public Socket createSocket() throws IOException {
+    SocketException ex = new SocketException("Unconnected sockets not supported by " + this);
+    ex.initCause(new UnsupportedOperationException());
+    throw ex;
+  }
+
+  @Override
+  public Socket createSocket(final Socket s, final String host, final int port, final boolean autoClose)
+          throws IOException {
+    SSLSocket socket = (SSLSocket) delegate.createSocket(s, hostName, port, autoClose);
+    SSLParameters params = socket.getSSLParameters();
+    params.setEndpointIdentificationAlgorithm("HTTPS");
+    socket.setSSLParameters(params);
+    return socket;
+  }
+
+  @Override
+  public Socket createSocket(final String host, final int port) throws IOException {
+    return createSocket(connect(new InetSocketAddress(host, port)), host, port, true);
+  }
+
+  @Override
+  public Socket createSocket(final String host, final int port, final InetAddress localHost, final int localPort)
+          throws IOException {
+    return createSocket(connect(new InetSocketAddress(host, port), new InetSocketAddress(localHost, localPort)),
+            host, port, true);
+  }
+
+  @Override
+  public Socket createSocket(final InetAddress host, final int port) throws IOException {
+    return createSocket(connect(new InetSocketAddress(host, port)), hostName, port, true);
+  }
+
+  @Override
+  public Socket createSocket(final InetAddress address, final int port, final InetAddress localAddress,
+          final int localPort) throws IOException {
+    return createSocket(connect(new InetSocketAddress(address, port), new InetSocketAddress(localAddress, localPort)),
+            hostName, port, true);
+  }
+
+  private static Socket connect(final InetSocketAddress address) throws IOException {
+    Socket socket = new Socket();
+    try {
+      socket.connect(address);
+    } catch (IOException | RuntimeException ex) {
+      socket.close();
+      throw ex;
+    }
+    return socket;
+  }
+
+  private static Socket connect(final InetSocketAddress address, final InetSocketAddress local) throws IOException {
+    Socket socket = new Socket();
+    try {
+      socket.bind(local);
+      socket.connect(address);
+    } catch (IOException | RuntimeException ex) {
+      socket.close();
+      throw ex;
+    }
+    return socket;
+  }
+
+  @Override
+  public String toString() {
+    return "SniSSLSocketFactory{" + "delegate=" + delegate + ", hostName=" + hostName + '}';
+  }
+
+}
@@ -1,6 +1,7 @@
 package org.spf4j.jaxrs.client;
 
 import com.google.common.base.Ascii;
+import com.google.common.net.InetAddresses;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
@@ -8,6 +9,8 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.net.HttpURLConnection;
 import java.net.InetAddress;
+import java.net.Proxy;
+import java.net.ProxySelector;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
@@ -20,12 +23,19 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import javax.annotation.Nullable;
 import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
 import javax.ws.rs.client.Client;
+import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.Configuration;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.Link;
 import javax.ws.rs.core.UriBuilder;
 import javax.ws.rs.ext.ParamConverter;
@@ -42,18 +52,17 @@ import org.spf4j.jaxrs.common.providers.ProviderUtils;
 /**
  * A improved JAX-RS client, that will do the following in addition to the stock Jersey client: 1) retried + hedged
  * execution. 2) timeout propagation. 3) Execution context propagation. 4) JAX-RS Parameter converters in the client!
+ * 5) Client side load balancing across the addresses of a host, this requires the Host header to be settable,
+ * so the JVM must be started with -Dsun.net.http.allowRestrictedHeaders=true, otherwise the connections are made
+ * by host name. The host addresses are cached by a DnsCache (see DnsCache for its interaction with the JVM
+ * InetAddress cache).
  *
  * @author Zoltan Farkas
  */
 @SuppressFBWarnings("FCCD_FIND_CLASS_CIRCULAR_DEPENDENCY")
 public final class Spf4JClient implements Client {
 
-  static {
-    // time to cache DNS entries in seconds.
-    System.setProperty("networkaddress.cache.ttl", "20");
-    // time to cache failed attempts in seconds.
-    System.setProperty("networkaddress.cache.negative.ttl", "5");
-  }
+  private static final int MAX_HEDGED_ENDPOINTS = Integer.getInteger("spf4j.jaxrs.hedge.maxEndpoints", 1024);
 
   private final Client cl;
 
@@ -63,6 +72,12 @@ public final class Spf4JClient implements Client {
 
   private final EndpointPoliciesConfig endpointConfig;
 
+  private final ConcurrentMap<String, CircuitBreaker> circuitBreakers;
+
+  private final ConcurrentMap<String, AdaptiveHedge> hedges;
+
+  private final SingleFlight singleFlight;
+
   Spf4JClient(final Client cl) {
     this(cl, DefaultFailSafeExecutor.instance(),
             DefaultClientExceptionMapper.INSTANCE, SchemaResolver.NONE);
@@ -80,19 +95,42 @@ public final class Spf4JClient implements Client {
     this(cl, fsExec, exceptionMapper, new EndpointPoliciesConfig(cl.getConfiguration(), resolver));
   }
 
-  @SuppressWarnings("unchecked")
   Spf4JClient(final Client cl,
           final FailSafeExecutor fsExec,
           final ClientExceptionMapper exceptionMapper,
           final EndpointPoliciesConfig endpointConfig) {
+    this(cl, fsExec, exceptionMapper, endpointConfig, new ConcurrentHashMap<>(), new ConcurrentHashMap<>());
+  }
+
+  @SuppressWarnings("unchecked")
+  private Spf4JClient(final Client cl,
+          final FailSafeExecutor fsExec,
+          final ClientExceptionMapper exceptionMapper,
+          final EndpointPoliciesConfig endpointConfig,
+          final ConcurrentMap<String, CircuitBreaker> circuitBreakers,
+          final ConcurrentMap<String, AdaptiveHedge> hedges) {
     this.cl = cl;
     ClientConfig configuration = (ClientConfig) cl.getConfiguration();
     HttpUrlConnectorProvider httpUrlConnectorProvider = new HttpUrlConnectorProvider();
-    httpUrlConnectorProvider.connectionFactory(CustomConnectionFactory.INSTANCE);
+    Object balancer = configuration.getProperty(Spf4jClientProperties.LOAD_BALANCER);
+    Object dns = configuration.getProperty(Spf4jClientProperties.DNS);
+    DnsCache dnsCache;
+    if (dns instanceof DnsCache) {
+      dnsCache = (DnsCache) dns;
+    } else if (dns instanceof HostResolver) {
+      dnsCache = new DnsCache((HostResolver) dns);
+    } else {
+      dnsCache = DnsCache.getDefault();
+    }
+    httpUrlConnectorProvider.connectionFactory(new CustomConnectionFactory(cl,
+            balancer instanceof LoadBalancer ? (LoadBalancer) balancer : P2CLoadBalancer.DEFAULT, dnsCache));
     configuration.connectorProvider(httpUrlConnectorProvider);
     this.executor = fsExec;
     this.exceptionMapper = exceptionMapper;
     this.endpointConfig = endpointConfig;
+    this.circuitBreakers = circuitBreakers;
+    this.hedges = hedges;
+    this.singleFlight = new SingleFlight();
   }
 
   public static Spf4JClient create(final Client cl) {
@@ -106,6 +144,52 @@ public final class Spf4JClient implements Client {
     return endpointConfig;
   }
 
+  /**
+   * @return the automatic circuit breaker of the destination (host:port), null if the uri has no authority.
+   * The breakers are used only for the clients/targets they are enabled for (see CircuitBreaker.isEnabled).
+   */
+  @Nullable
+  public CircuitBreaker getCircuitBreaker(final URI uri) {
+    String authority = uri.getRawAuthority();
+    if (authority == null) {
+      return null;
+    }
+    CircuitBreaker breaker = circuitBreakers.get(authority);
+    if (breaker == null) {
+      return circuitBreakers.computeIfAbsent(authority, CircuitBreaker::new);
+    }
+    return breaker;
+  }
+
+  /**
+   * @param method the http method.
+   * @param uri the destination uri.
+   * @param pathTemplate the path template of the target (like /items/{id}), see Spf4jWebTarget.getPathTemplate.
+   * @return the adaptive hedge of the endpoint (method + host:port + path template, different resources
+   * of a service have different latency distributions), null if adaptive hedging is disabled,
+   * or the number of tracked endpoints exceeds spf4j.jaxrs.hedge.maxEndpoints (default 1024).
+   * Targets with ids in the path should be built via templates (path("items/{id}").resolveTemplate(...)).
+   */
+  @Nullable
+  AdaptiveHedge getAdaptiveHedge(final String method, final URI uri, final String pathTemplate) {
+    if (!AdaptiveHedge.ENABLED) {
+      return null;
+    }
+    String endpoint = method + ' ' + uri.getRawAuthority() + pathTemplate;
+    AdaptiveHedge hedge = hedges.get(endpoint);
+    if (hedge == null) {
+      if (hedges.size() >= MAX_HEDGED_ENDPOINTS) {
+        return null;
+      }
+      return hedges.computeIfAbsent(endpoint, AdaptiveHedge::new);
+    }
+    return hedge;
+  }
+
+  SingleFlight getSingleFlight() {
+    return singleFlight;
+  }
+
   public ClientExceptionMapper getExceptionMapper() {
     return exceptionMapper;
   }
@@ -216,7 +300,8 @@ public final class Spf4JClient implements Client {
   }
 
   public Spf4JClient withExceptionMapper(final ClientExceptionMapper pexceptionMapper) {
-    return new Spf4JClient(cl, executor, pexceptionMapper, this.endpointConfig);
+    return new Spf4JClient(cl, executor, pexceptionMapper, this.endpointConfig, this.circuitBreakers,
+            this.hedges);
   }
 
   @Override
@@ -224,6 +309,13 @@ public final class Spf4JClient implements Client {
     cl.close();
   }
 
+  /**
+   * @return a plain (not retried, hedged...) target of the wrapped client.
+   */
+  WebTarget rawTarget(final URI uri) {
+    return cl.target(uri);
+  }
+
   @Override
   public Spf4jWebTarget target(final String uri) {
     return new Spf4jWebTarget(this, cl.target(uri), executor);
@@ -324,44 +416,133 @@ public final class Spf4JClient implements Client {
     return "Spf4JClient{" + "cl=" + cl + ", executor=" + executor + '}';
   }
 
-  private static class CustomConnectionFactory implements HttpUrlConnectorProvider.ConnectionFactory {
+  /**
+   * Client side load balancing for hosts that resolve to multiple addresses: the connection is made to the address
+   * chosen by the LoadBalancer, with the Host header (and for https SNI + certificate verification) using the host
+   * name. Https load balancing requires the default hostname verification (no custom HostnameVerifier).
+   * Host names are resolved via the DnsCache, and single address hosts are connected to by address as well,
+   * so that DNS resolution (refreshed in the background by the cache) is not done on the request path.
+   */
+  private static final class CustomConnectionFactory implements HttpUrlConnectorProvider.ConnectionFactory {
 
-    private static final CustomConnectionFactory INSTANCE = new CustomConnectionFactory();
+    private final Client client;
+
+    private final LoadBalancer balancer;
+
+    private final DnsCache dnsCache;
+
+    private final ConcurrentMap<String, SniSSLSocketFactory> sslSocketFactories;
+
+    private volatile SSLSocketFactory sslSocketFactory;
+
+    CustomConnectionFactory(final Client client, final LoadBalancer balancer, final DnsCache dnsCache) {
+      this.client = client;
+      this.balancer = balancer;
+      this.dnsCache = dnsCache;
+      this.sslSocketFactories = new ConcurrentHashMap<>();
+    }
 
-    /**
-     * Attempt to client side load balance... Approach works for HTTP only. for HTTPS we would need to register a new
-     * HTTP URL connection. to do implemented later.
-     *
-     * @param url
-     * @return
-     * @throws IOException
-     */
     @Override
-    @SuppressFBWarnings({"PREDICTABLE_RANDOM", "URLCONNECTION_SSRF_FD"})
+    @SuppressFBWarnings("URLCONNECTION_SSRF_FD")
     public HttpURLConnection getConnection(final URL url) throws IOException {
-      try {
-        String protocol = url.getProtocol();
-        if (Ascii.equalsIgnoreCase("file", protocol)) {
-          throw new IOException("File protocol not supported: " + url);
-        }
-        if (Ascii.equalsIgnoreCase("https", protocol)) {
+      String protocol = url.getProtocol();
+      if (Ascii.equalsIgnoreCase("file", protocol)) {
+        throw new IOException("File protocol not supported: " + url);
+      }
+      boolean https = Ascii.equalsIgnoreCase("https", protocol);
+      if (!https && !Ascii.equalsIgnoreCase("http", protocol)) {
+        return (HttpURLConnection) url.openConnection();
+      }
+      String host = url.getHost();
+      if (!HostOverride.SUPPORTED || host.isEmpty() || InetAddresses.isUriInetAddress(host)
+              || (https && client.getHostnameVerifier() != null) || usesProxy(url)) {
+        return (HttpURLConnection) url.openConnection();
+      }
+      InetAddress[] targets = dnsCache.getAddresses(host);
+      InetAddress address;
+      if (targets.length == 1) {
+        address = targets[0];
+      } else {
+        LoadBalancer.Selection selection = balancer.select(host, targets);
+        if (selection == null) {
           return (HttpURLConnection) url.openConnection();
         }
-        URI uri = url.toURI();
-        String host = uri.getHost();
-        if (host == null) {
-          return (HttpURLConnection) url.openConnection();
+        LoadBalancerFeedback.selected(selection);
+        address = selection.getAddress();
+      }
+      int port = url.getPort();
+      URL addrUrl = new URL(protocol, InetAddresses.toUriString(address), port, url.getFile());
+      HttpURLConnection conn = (HttpURLConnection) addrUrl.openConnection();
+      conn.setRequestProperty(HttpHeaders.HOST, port < 0 ? host : host + ':' + port);
+      if (https) {
+        ((HttpsURLConnection) conn).setSSLSocketFactory(getSSLSocketFactory(host));
+      }
+      return conn;
+    }
+
+    /**
+     * Connections to a selected address need the Host header, which HttpURLConnection ignores unless the JVM
+     * is started with -Dsun.net.http.allowRestrictedHeaders=true (read once, when HttpURLConnection initializes).
+     */
+    private static final class HostOverride {
+
+      private static final boolean SUPPORTED = isSupported();
+
+      private static boolean isSupported() {
+        try {
+          HttpURLConnection conn = (HttpURLConnection) new URL("http", "127.0.0.1", "/").openConnection();
+          conn.setRequestProperty(HttpHeaders.HOST, "localhost");
+          if ("localhost".equals(conn.getRequestProperty(HttpHeaders.HOST))) {
+            return true;
+          }
+        } catch (IOException | RuntimeException ex) {
+          Logger.getLogger(Spf4JClient.class.getName()).log(Level.FINE, "Host header override test failed", ex);
         }
-        InetAddress[] targets = InetAddress.getAllByName(host);
-        if (targets.length <= 1) {
-          return (HttpURLConnection) url.openConnection();
+        Logger.getLogger(Spf4JClient.class.getName()).info("Host header cannot be set, client side load balancing"
+                + " is disabled, start the JVM with -Dsun.net.http.allowRestrictedHeaders=true to enable it");
+        return false;
+      }
+    }
+
+    /**
+     * With a proxy, the host is resolved by the proxy, and the proxy selection (http.nonProxyHosts...)
+     * is done by host name, so the url must not be rewritten to a address.
+     */
+    private static boolean usesProxy(final URL url) {
+      ProxySelector selector = ProxySelector.getDefault();
+      if (selector == null) {
+        return false;
+      }
+      List<Proxy> proxies;
+      try {
+        proxies = selector.select(url.toURI());
+      } catch (URISyntaxException | RuntimeException ex) {
+        return false;
+      }
+      for (Proxy proxy : proxies) {
+        if (proxy.type() != Proxy.Type.DIRECT) {
+          return true;
         }
-        InetAddress chosen = targets[ThreadLocalRandom.current().nextInt(targets.length)];
-        URI newUri = UriBuilder.fromUri(uri).host(chosen.getHostAddress()).build();
-        return (HttpURLConnection) newUri.toURL().openConnection();
-      } catch (URISyntaxException ex) {
-        throw new RuntimeException(ex);
       }
+      return false;
+    }
+
+    /**
+     * the factories are cached per host, since the JDK keep alive cache matches connections by factory identity.
+     */
+    private SSLSocketFactory getSSLSocketFactory(final String host) {
+      SSLSocketFactory delegate = sslSocketFactory;
+      if (delegate == null) {
+        delegate = client.getSslContext().getSocketFactory();
+        sslSocketFactory = delegate;
+      }
+      SSLSocketFactory del = delegate;
+      return sslSocketFactories.computeIfAbsent(host, h -> new SniSSLSocketFactory(del, h));
+    }
+
+    @Override
+    public String toString() {
+      return "CustomConnectionFactory{" + "balancer=" + balancer + ", dnsCache=" + dnsCache + '}';
     }
   }
 
@@ -12,4 +12,43 @@ public final class Spf4jClientProperties {
 
   public static final String TIMEOUT_NANOS = "spf4j.j.c.timeout-ns";
 
+  /**
+   * a LoadBalancer instance, P2CLoadBalancer.DEFAULT if not specified.
+   * Load balancing requires -Dsun.net.http.allowRestrictedHeaders=true (to set the Host header).
+   */
+  public static final String LOAD_BALANCER = "spf4j.j.c.lb";
+
+  /**
+   * Boolean, coalesce concurrent identical GET requests (same uri, headers and response type) into a single
+   * request, can be set at client or target level, false if not specified.
+   * Requests with credentials (Authorization, Cookie), or made via a client with a CallerCredentialsClientFilter
+   * registered are never coalesced.
+   */
+  public static final String COALESCE_GETS = "spf4j.j.c.coalesce";
+
+  /**
+   * a DnsCache, or a HostResolver instance (a DnsCache with default settings will be created for it),
+   * the shared DnsCache.getDefault() if not specified.
+   */
+  public static final String DNS = "spf4j.j.c.dns";
+
+  /**
+   * Boolean, enable the automatic per destination (host:port) circuit breakers (see CircuitBreaker),
+   * can be set at client or target level, spf4j.jaxrs.cb.enable (default false) if not specified.
+   */
+  public static final String CIRCUIT_BREAKER = "spf4j.j.c.circuitBreaker";
+
+  /**
+   * Number (or String), the shadow traffic sampling rate, the shadow destination ratios are scaled by it,
+   * can be set at client or target level, spf4j.jaxrs.shadow.sampleRate (default 1) if not specified.
+   */
+  public static final String SHADOW_SAMPLE_RATE = "spf4j.j.c.shadowSampleRate";
+
+  /**
+   * Boolean, mirror non idempotent requests (POST, PATCH...) to the shadow destinations,
+   * can be set at client or target level, false if not specified (only GET, HEAD, OPTIONS, TRACE, PUT and DELETE
+   * requests are mirrored).
+   */
+  public static final String SHADOW_NON_IDEMPOTENT = "spf4j.j.c.shadowNonIdempotent";
+
 }
@@ -1,7 +1,6 @@
 package org.spf4j.jaxrs.client;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
-import java.util.concurrent.Callable;
 import java.util.concurrent.CompletionStage;
 import javax.ws.rs.HttpMethod;
 import javax.ws.rs.client.CompletionStageRxInvoker;
@@ -11,6 +10,8 @@ import javax.ws.rs.core.Response;
 import org.spf4j.failsafe.concurrent.FailSafeExecutor;
 
 /**
+ * Completion stage rx invoker, the invocation (exec policy, retry executor) is built once per call,
+ * and the returned completion stage is the async retry executor future.
  * @author Zoltan Farkas
  */
 @SuppressFBWarnings("FCCD_FIND_CLASS_CIRCULAR_DEPENDENCY")
@@ -28,158 +29,129 @@ public final class Spf4jCompletionStageRxInvoker
   }
 
 
-  private <T> CompletionStage<T> submit(final Callable<T> what, final String method) {
-    return invocationBuilder.build(method).submit(what);
-  }
-
   @Override
   public CompletionStage<Response> get() {
-    return submit(invocationBuilder.buildGet().getWrapped()::invoke,
-            HttpMethod.GET);
+    return invocationBuilder.buildGet().submit();
   }
 
   @Override
   public <T> CompletionStage<T> get(final Class<T> responseType) {
-    return submit(() ->  {
-      return invocationBuilder.buildGet().getWrapped().invoke(responseType);
-    }, HttpMethod.GET);
+    return invocationBuilder.buildGet().submit(responseType);
   }
 
   @Override
   public <T> CompletionStage<T> get(final GenericType<T> responseType) {
-     return submit(() -> invocationBuilder.buildGet().getWrapped().invoke(responseType),
-              HttpMethod.GET);
+    return invocationBuilder.buildGet().submit(responseType);
   }
 
   @Override
   public CompletionStage<Response> put(final Entity<?> entity) {
-    return submit(() -> invocationBuilder.buildPut(entity).getWrapped().invoke(),
-             HttpMethod.PUT);
+    return invocationBuilder.buildPut(entity).submit();
   }
 
   @Override
   public <T> CompletionStage<T> put(final Entity<?> entity, final Class<T> clazz) {
-    return submit(() -> invocationBuilder.buildPut(entity).getWrapped().invoke(clazz),
-             HttpMethod.PUT);
+    return invocationBuilder.buildPut(entity).submit(clazz);
   }
 
   @Override
   public <T> CompletionStage<T> put(final Entity<?> entity, final GenericType<T> type) {
-    return submit(() -> invocationBuilder.buildPut(entity).getWrapped().invoke(type),
-             HttpMethod.PUT);
+    return invocationBuilder.buildPut(entity).submit(type);
   }
 
   @Override
   public CompletionStage<Response> post(final Entity<?> entity) {
-    return submit(() -> invocationBuilder.buildPost(entity).getWrapped().invoke(),
-             HttpMethod.POST);
+    return invocationBuilder.buildPost(entity).submit();
   }
 
   @Override
   public <T> CompletionStage<T> post(final Entity<?> entity, final Class<T> clazz) {
-    return submit(() -> invocationBuilder.buildPost(entity).getWrapped().invoke(clazz),
-             HttpMethod.POST);
+    return invocationBuilder.buildPost(entity).submit(clazz);
   }
 
   @Override
   public <T> CompletionStage<T> post(final Entity<?> entity, final GenericType<T> type) {
-    return submit(() -> invocationBuilder.buildPost(entity).getWrapped().invoke(type),
-             HttpMethod.POST);
+    return invocationBuilder.buildPost(entity).submit(type);
   }
 
   @Override
   public CompletionStage<Response> delete() {
-    return submit(() -> invocationBuilder.buildDelete().getWrapped().invoke(),
-            HttpMethod.DELETE);
+    return invocationBuilder.buildDelete().submit();
   }
 
   @Override
   public <T> CompletionStage<T> delete(final Class<T> responseType) {
-    return submit(() -> invocationBuilder.buildDelete().getWrapped().invoke(responseType),
-             HttpMethod.DELETE);
+    return invocationBuilder.buildDelete().submit(responseType);
   }
 
   @Override
   public <T> CompletionStage<T> delete(final GenericType<T> responseType) {
-    return submit(() -> invocationBuilder.buildDelete().getWrapped().invoke(responseType),
-            HttpMethod.DELETE);
+    return invocationBuilder.buildDelete().submit(responseType);
   }
 
   @Override
   public CompletionStage<Response> head() {
-    return submit(() -> invocationBuilder.build(HttpMethod.HEAD).getWrapped().invoke(),
-             HttpMethod.HEAD);
+    return invocationBuilder.build(HttpMethod.HEAD).submit();
   }
 
   @Override
   public CompletionStage<Response> options() {
-    return submit(() -> invocationBuilder.build(HttpMethod.OPTIONS).getWrapped().invoke(),
-            HttpMethod.OPTIONS);
+    return invocationBuilder.build(HttpMethod.OPTIONS).submit();
   }
 
   @Override
   public <T> CompletionStage<T> options(final Class<T> responseType) {
-    return submit(() -> invocationBuilder.build(HttpMethod.OPTIONS).getWrapped().invoke(responseType),
-             HttpMethod.OPTIONS);
+    return invocationBuilder.build(HttpMethod.OPTIONS).submit(responseType);
   }
 
   @Override
   public <T> CompletionStage<T> options(final GenericType<T> responseType) {
-    return submit(() -> invocationBuilder.build(HttpMethod.OPTIONS).getWrapped().invoke(responseType),
-            HttpMethod.OPTIONS);
+    return invocationBuilder.build(HttpMethod.OPTIONS).submit(responseType);
   }
 
   @Override
   public CompletionStage<Response> trace() {
-    return submit(() -> invocationBuilder.build("TRACE").getWrapped().invoke(),
-           "TRACE");
+    return invocationBuilder.build("TRACE").submit();
   }
 
   @Override
   public <T> CompletionStage<T> trace(final Class<T> responseType) {
-    return submit(() -> invocationBuilder.build("TRACE").getWrapped().invoke(responseType),
-            "TRACE");
+    return invocationBuilder.build("TRACE").submit(responseType);
   }
 
   @Override
   public <T> CompletionStage<T> trace(final GenericType<T> responseType) {
-    return submit(() -> invocationBuilder.build("TRACE").getWrapped().invoke(responseType),
-            "TRACE");
+    return invocationBuilder.build("TRACE").submit(responseType);
   }
 
   @Override
   public CompletionStage<Response> method(final String name) {
-    return submit(() -> invocationBuilder.build(name).getWrapped().invoke(), name);
+    return invocationBuilder.build(name).submit();
   }
 
   @Override
   public <T> CompletionStage<T> method(final String name, final Class<T> responseType) {
-    return submit(() -> invocationBuilder.build(name).getWrapped().invoke(responseType),
-             name);
+    return invocationBuilder.build(name).submit(responseType);
   }
 
   @Override
   public <T> CompletionStage<T> method(final String name, final GenericType<T> responseType) {
-    return submit(() -> invocationBuilder.build(name).getWrapped().invoke(responseType),
-             name);
+    return invocationBuilder.build(name).submit(responseType);
   }
 
   @Override
   public CompletionStage<Response> method(final String name, final Entity<?> entity) {
-     return submit(() -> invocationBuilder.build(name, entity).getWrapped().invoke(),
-              name);
+    return invocationBuilder.build(name, entity).submit();
   }
 
   @Override
   public <T> CompletionStage<T> method(final String name, final Entity<?> entity, final Class<T> responseType) {
-    return submit(() -> invocationBuilder.build(name, entity).getWrapped().invoke(responseType),
-             name);
+    return invocationBuilder.build(name, entity).submit(responseType);
   }
 
   @Override
   public <T> CompletionStage<T> method(final String name, final Entity<?> entity, final GenericType<T> responseType) {
-    return submit(() -> invocationBuilder.build(name, entity).getWrapped().invoke(responseType),
-             name);
+    return invocationBuilder.build(name, entity).submit(responseType);
   }
 
   @Override
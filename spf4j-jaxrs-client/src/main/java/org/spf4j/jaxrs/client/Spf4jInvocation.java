@@ -6,18 +6,19 @@ import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.Callable;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Future;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import javax.annotation.Nullable;
 import javax.ws.rs.ServiceUnavailableException;
 import javax.ws.rs.client.Invocation;
 import javax.ws.rs.client.InvocationCallback;
+import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.GenericType;
 import javax.ws.rs.core.Response;
-import javax.ws.rs.core.UriBuilder;
 import org.glassfish.jersey.internal.util.ReflectionHelper;
 import org.spf4j.base.ExecutionContext;
 import org.spf4j.base.ExecutionContexts;
@@ -42,15 +43,58 @@ public final class Spf4jInvocation implements Invocation, Wrapper<Invocation> {
   private final HttpExecutionPolicy execPolicy;
   private final String method;
 
-  @SuppressFBWarnings("EI_EXPOSE_REP2")
+  /** not null when concurrent identical requests are to be coalesced. */
+  @Nullable
+  private final String coalesceKey;
+
+  /** the split traffic routing table of the execPolicy, null if no split traffic. */
+  @Nullable
+  private final TrafficSplit trafficSplit;
+
+  /** the shadow traffic sampling rate. */
+  private final double shadowSampleRate;
+
+  /** the request, to build it for split/shadow traffic destinations, null if there are none. */
+  @Nullable
+  private final RequestTemplate template;
+
   public Spf4jInvocation(final Invocation invocation, final HttpExecutionPolicy execPolicy,
           final AsyncRetryExecutor<Object, HttpCallable<?>> aexecutor,
           final Spf4jWebTarget target, final String method) {
+    this(invocation, execPolicy, aexecutor, target, method, null);
+  }
+
+  /**
+   * @param coalesceKey the request key (uri + headers) if concurrent identical requests are to be coalesced,
+   * null otherwise.
+   */
+  public Spf4jInvocation(final Invocation invocation, final HttpExecutionPolicy execPolicy,
+          final AsyncRetryExecutor<Object, HttpCallable<?>> aexecutor,
+          final Spf4jWebTarget target, final String method, @Nullable final String coalesceKey) {
+    this(invocation, execPolicy, null, 1, aexecutor, target, method, coalesceKey, null);
+  }
+
+  /**
+   * @param trafficSplit the precomputed split traffic routing table of the execPolicy.
+   * @param shadowSampleRate the shadow traffic sampling rate.
+   * @param template the request, to build it for split/shadow traffic destinations,
+   * null if there are none (or the request cannot be re-built, in which case there is no split/shadow traffic).
+   */
+  @SuppressFBWarnings("EI_EXPOSE_REP2")
+  Spf4jInvocation(final Invocation invocation, final HttpExecutionPolicy execPolicy,
+          @Nullable final TrafficSplit trafficSplit, final double shadowSampleRate,
+          final AsyncRetryExecutor<Object, HttpCallable<?>> aexecutor,
+          final Spf4jWebTarget target, final String method, @Nullable final String coalesceKey,
+          @Nullable final RequestTemplate template) {
     this.invocation = invocation;
     this.target = target;
     this.method = method;
     this.execPolicy = execPolicy;
+    this.trafficSplit = template == null ? null : trafficSplit;
+    this.shadowSampleRate = shadowSampleRate;
+    this.template = template;
     this.aexecutor = aexecutor;
+    this.coalesceKey = coalesceKey;
   }
 
 
@@ -78,15 +122,16 @@ public final class Spf4jInvocation implements Invocation, Wrapper<Invocation> {
     if (invc == invocation) {
       return this;
     } else {
-      return new Spf4jInvocation(invc, execPolicy, aexecutor, target, method);
+      return new Spf4jInvocation(invc, execPolicy, trafficSplit, shadowSampleRate, aexecutor, target, method,
+              coalesceKey, template);
     }
   }
 
   private static class HttpInvocations<T> {
     private final HttpCallable<T> primaryCall;
-    private final List<HttpCallable<T>> backgroundCalls;
+    private final List<HttpCallable<Response>> backgroundCalls;
 
-    HttpInvocations(final HttpCallable<T> primaryCall, final List<HttpCallable<T>> backgroundCalls) {
+    HttpInvocations(final HttpCallable<T> primaryCall, final List<HttpCallable<Response>> backgroundCalls) {
       this.primaryCall = primaryCall;
       this.backgroundCalls = backgroundCalls;
     }
@@ -95,7 +140,7 @@ public final class Spf4jInvocation implements Invocation, Wrapper<Invocation> {
       return primaryCall;
     }
 
-    public List<HttpCallable<T>> getBackgroundCalls() {
+    public List<HttpCallable<Response>> getBackgroundCalls() {
       return backgroundCalls;
     }
 
@@ -103,7 +148,7 @@ public final class Spf4jInvocation implements Invocation, Wrapper<Invocation> {
   }
 
   @SuppressFBWarnings({ "PREDICTABLE_RANDOM", "PRMC_POSSIBLY_REDUNDANT_METHOD_CALLS" })
-  <T> HttpInvocations<T> createCall(final ExecutionContext current, final Callable<T> what) {
+  <T> HttpInvocations<T> createCall(final ExecutionContext current, final Function<Invocation, T> what) {
     if (execPolicy.getCircuitBreaker()) {
       throw new ServiceUnavailableException("Circuit breaker active: " + getName());
     }
@@ -111,35 +156,50 @@ public final class Spf4jInvocation implements Invocation, Wrapper<Invocation> {
     long deadlineNanos = ExecutionContexts.computeDeadline(current,
             execPolicy.getOverallTimeout().toNanos(), TimeUnit.NANOSECONDS);
     URI uri = this.target.getUri();
-    List<DestinationTraffic> split = execPolicy.getSplitTraffic();
+    Invocation destInvocation = this.invocation;
     double rnd = -1d;
-    if (!split.isEmpty()) {
+    if (trafficSplit != null) {
       rnd = ThreadLocalRandom.current().nextDouble();
-      for (DestinationTraffic destination : split) {
-        if (rnd < destination.getRatio()) {
-          uri = UriBuilder.fromUri(uri).host(destination.getDestination()).build();
-          break;
-        }
+      String destination = trafficSplit.select(rnd);
+      if (destination != null) {
+        WebTarget destTarget = this.target.getDestinationTarget(destination);
+        uri = destTarget.getUri();
+        destInvocation = template.build(destTarget);
       }
     }
-    HttpCallable<T> primary = HttpCallable.invocationHandler(current, what, getName(),
-            uri,
+    Invocation callInvocation = destInvocation;
+    CircuitBreaker breaker = CircuitBreaker.isEnabled(this.target.getConfiguration())
+            ? this.target.getClient().getCircuitBreaker(uri) : null;
+    if (breaker != null && !breaker.tryAcquire(nanoTime)) {
+      throw breaker.getOpenException();
+    }
+    AdaptiveHedge hedge = execPolicy.getHedgePolicy() == null ? null
+            : this.target.getClient().getAdaptiveHedge(this.method, uri, this.target.getPathTemplate());
+    if (hedge != null) {
+      hedge.onRequest();
+    }
+    HttpCallable<T> primary = HttpCallable.invocationHandler(current, () -> what.apply(callInvocation),
+            getName(), uri,
             this.method,
             this.target.getClient().getExceptionMapper(),
             nanoTime,
-            deadlineNanos, execPolicy.getAttemptTimeout().toNanos());
+            deadlineNanos, execPolicy.getAttemptTimeout().toNanos(), breaker, hedge);
     List<DestinationTraffic> shadow =  execPolicy.getShadowTraffic();
-    if (shadow.isEmpty()) {
-      return new HttpInvocations(primary, Collections.EMPTY_LIST);
+    if (shadow.isEmpty() || template == null || !template.isRepeatable()
+            || !ShadowTrafficExecutor.instance().hasCapacity()
+            || !ShadowTrafficExecutor.isMirrored(this.method, this.target.getConfiguration())) {
+      return new HttpInvocations<>(primary, Collections.emptyList());
     } else {
       if (rnd < 0) {
         rnd = ThreadLocalRandom.current().nextDouble();
       }
-      List<HttpCallable<T>> shadowInvocations = new ArrayList<>(shadow.size());
+      List<HttpCallable<Response>> shadowInvocations = new ArrayList<>(shadow.size());
       for (DestinationTraffic destination : shadow) {
-        if (rnd < destination.getRatio()) {
-          HttpCallable<T> shCall = HttpCallable.invocationHandler(current, what, getName(),
-                  UriBuilder.fromUri(uri).host(destination.getDestination()).build(),
+        if (ShadowTrafficExecutor.isSampled(rnd, destination.getRatio(), shadowSampleRate)) {
+          WebTarget shadowTarget = this.target.getDestinationTarget(destination.getDestination());
+          Invocation shadowInvocation = template.build(shadowTarget);
+          HttpCallable<Response> shCall = HttpCallable.invocationHandler(current, shadowInvocation::invoke,
+                  getName(), shadowTarget.getUri(),
                   this.method,
                   this.target.getClient().getExceptionMapper(),
                   nanoTime,
@@ -151,13 +211,11 @@ public final class Spf4jInvocation implements Invocation, Wrapper<Invocation> {
     }
   }
 
-  private <T> T invoke(final Callable<T> what) {
+  private <T> T invoke(final Function<Invocation, T> what) {
     ExecutionContext current = ExecutionContexts.current();
     HttpInvocations<T> hc = createCall(current, what);
     HttpCallable<T> pc = hc.getPrimaryCall();
-    for (HttpCallable<T> call : hc.getBackgroundCalls()) {
-      submit(current, call);
-    }
+    submitShadow(hc.getBackgroundCalls());
     try {
       return aexecutor.call(pc,
                RuntimeException.class, pc.getStartNanos(), pc.getDeadlineNanos());
@@ -169,16 +227,23 @@ public final class Spf4jInvocation implements Invocation, Wrapper<Invocation> {
     }
   }
 
-  <T> CompletableFuture<T> submit(final Callable<T> what) {
+  <T> CompletableFuture<T> submit(final Function<Invocation, T> what) {
     ExecutionContext current = ExecutionContexts.current();
     HttpInvocations<T> hc = createCall(current, what);
     HttpCallable<T> pc = hc.getPrimaryCall();
-    for (HttpCallable<T> call : hc.getBackgroundCalls()) {
-      submit(current, call);
-    }
+    submitShadow(hc.getBackgroundCalls());
     return submit(current, pc);
   }
 
+  private static void submitShadow(final List<HttpCallable<Response>> shadowCalls) {
+    if (!shadowCalls.isEmpty()) {
+      ShadowTrafficExecutor executor = ShadowTrafficExecutor.instance();
+      for (HttpCallable<Response> call : shadowCalls) {
+        executor.submit(call);
+      }
+    }
+  }
+
   private <T> CompletableFuture<T> submit(final ExecutionContext current, final HttpCallable<T> pc) {
     return aexecutor.submitRx(pc, pc.getStartNanos(), pc.getDeadlineNanos(),
             () -> new ContextPropagatingCompletableFuture<>(current, pc.getDeadlineNanos()));
@@ -186,32 +251,53 @@ public final class Spf4jInvocation implements Invocation, Wrapper<Invocation> {
 
   @Override
   public Response invoke() {
-    return invoke(invocation::invoke);
+    return invoke(Invocation::invoke);
   }
 
   @Override
   public <T> T invoke(final Class<T> responseType) {
-    return invoke(() -> invocation.invoke(responseType));
+    if (coalesceKey != null) {
+      return target.getClient().getSingleFlight().call(coalesceKey + responseType.getName(), coalesceDeadlineNanos(),
+              () -> invoke((inv) -> inv.invoke(responseType)));
+    }
+    return invoke((inv) -> inv.invoke(responseType));
   }
 
   @Override
   public <T> T invoke(final GenericType<T> responseType) {
-    return invoke(() -> invocation.invoke(responseType));
+    if (coalesceKey != null) {
+      return target.getClient().getSingleFlight().call(coalesceKey + responseType.getType().getTypeName(),
+              coalesceDeadlineNanos(), () -> invoke((inv) -> inv.invoke(responseType)));
+    }
+    return invoke((inv) -> inv.invoke(responseType));
+  }
+
+  private long coalesceDeadlineNanos() {
+    return ExecutionContexts.computeDeadline(ExecutionContexts.current(),
+            execPolicy.getOverallTimeout().toNanos(), TimeUnit.NANOSECONDS);
   }
 
   @Override
-  public Future<Response> submit() {
-    return submit(invocation::invoke);
+  public CompletableFuture<Response> submit() {
+    return submit(Invocation::invoke);
   }
 
   @Override
-  public <T> Future<T> submit(final Class<T> responseType) {
-    return submit(() -> invocation.invoke(responseType));
+  public <T> CompletableFuture<T> submit(final Class<T> responseType) {
+    if (coalesceKey != null) {
+      return target.getClient().getSingleFlight().submit(coalesceKey + responseType.getName(),
+              coalesceDeadlineNanos(), () -> submit((inv) -> inv.invoke(responseType)));
+    }
+    return submit((inv) -> inv.invoke(responseType));
   }
 
   @Override
-  public <T> Future<T> submit(final GenericType<T> responseType) {
-    return submit(() -> invocation.invoke(responseType));
+  public <T> CompletableFuture<T> submit(final GenericType<T> responseType) {
+    if (coalesceKey != null) {
+      return target.getClient().getSingleFlight().submit(coalesceKey + responseType.getType().getTypeName(),
+              coalesceDeadlineNanos(), () -> submit((inv) -> inv.invoke(responseType)));
+    }
+    return submit((inv) -> inv.invoke(responseType));
   }
 
   @Override
@@ -230,9 +316,9 @@ public final class Spf4jInvocation implements Invocation, Wrapper<Invocation> {
     }
     final Class<T> callbackParamClass = ReflectionHelper.erasure(callbackParamType);
     if (Response.class == callbackParamClass) {
-      return (Future<T>) submit(() -> {
+      return (Future<T>) submit((inv) -> {
         try {
-          Response resp = invocation.invoke();
+          Response resp = inv.invoke();
           callback.completed((T) resp);
           return resp;
         } catch (Throwable t) {
@@ -241,9 +327,9 @@ public final class Spf4jInvocation implements Invocation, Wrapper<Invocation> {
         }
       });
     } else {
-      return (Future<T>) submit(() -> {
+      return (Future<T>) submit((inv) -> {
         try {
-          T resp = invocation.invoke(new GenericType<>(callbackParamType));
+          T resp = inv.invoke(new GenericType<>(callbackParamType));
           callback.completed(resp);
           return resp;
         } catch (Throwable t) {
@@ -1,5 +1,6 @@
 package org.spf4j.jaxrs.client;
 
+import com.google.common.annotations.VisibleForTesting;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
@@ -8,6 +9,7 @@ import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
@@ -15,14 +17,17 @@ import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javax.annotation.Nullable;
 import javax.ws.rs.HttpMethod;
 import javax.ws.rs.client.CompletionStageRxInvoker;
 import javax.ws.rs.client.Entity;
 import javax.ws.rs.client.Invocation;
 import javax.ws.rs.client.RxInvoker;
 import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.Configuration;
 import javax.ws.rs.core.Cookie;
 import javax.ws.rs.core.GenericType;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedHashMap;
 import javax.ws.rs.core.MultivaluedMap;
@@ -36,6 +41,8 @@ import org.spf4j.failsafe.avro.RetryPolicy;
 import org.spf4j.failsafe.avro.TimeoutRelativeHedgePolicy;
 import org.spf4j.failsafe.concurrent.FailSafeExecutor;
 import org.spf4j.jaxrs.Utils;
+import org.spf4j.jaxrs.client.security.providers.CallerCredentialsClientFilter;
+import org.spf4j.service.avro.DestinationTraffic;
 import org.spf4j.service.avro.HttpExecutionPolicy;
 
 /**
@@ -56,6 +63,20 @@ public final class Spf4jInvocationBuilder implements Invocation.Builder {
 
   private boolean addDefaultRetryPolicies;
 
+  @Nullable
+  private Boolean coalesce;
+
+  @Nullable
+  private Double shadowSampleRate;
+
+  /** the request headers set via this builder, part of the request coalescing key, null if none. */
+  @Nullable
+  private MultivaluedMap<String, Object> requestHeaders;
+
+  /** the request properties set via this builder, null if none. */
+  @Nullable
+  private Map<String, Object> requestProperties;
+
   public Spf4jInvocationBuilder(final Spf4JClient client, final Invocation.Builder ib,
           final FailSafeExecutor executor,
           final Spf4jWebTarget target) {
@@ -163,6 +184,122 @@ public final class Spf4jInvocationBuilder implements Invocation.Builder {
     return this;
   }
 
+  /**
+   * @param pCoalesce coalesce concurrent identical GET requests (same uri, headers and response type),
+   * overwrites the Spf4jClientProperties.COALESCE_GETS configuration.
+   */
+  public Spf4jInvocationBuilder withCoalescing(final boolean pCoalesce) {
+    this.coalesce = pCoalesce;
+    return this;
+  }
+
+  /**
+   * @param pShadowSampleRate the shadow traffic sampling rate,
+   * overwrites the Spf4jClientProperties.SHADOW_SAMPLE_RATE configuration.
+   */
+  public Spf4jInvocationBuilder withShadowSampleRate(final double pShadowSampleRate) {
+    this.shadowSampleRate = pShadowSampleRate;
+    return this;
+  }
+
+  double getShadowSampleRate() {
+    if (shadowSampleRate == null) {
+      return ShadowTrafficExecutor.getSampleRate(target.getConfiguration());
+    }
+    return shadowSampleRate;
+  }
+
+  void addKeyHeader(final String name, final Object... values) {
+    if (requestHeaders == null) {
+      requestHeaders = new MultivaluedHashMap<>(4);
+    }
+    List<Object> hValues = requestHeaders.get(name);
+    if (hValues == null) {
+      hValues = new ArrayList<>(values.length);
+      requestHeaders.put(name, hValues);
+    }
+    Collections.addAll(hValues, values);
+  }
+
+  private boolean hasCredentials() {
+    if (requestHeaders == null) {
+      return false;
+    }
+    for (String name : requestHeaders.keySet()) {
+      if (HttpHeaders.AUTHORIZATION.equalsIgnoreCase(name) || HttpHeaders.COOKIE.equalsIgnoreCase(name)
+              || "Proxy-Authorization".equalsIgnoreCase(name)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return the coalescing key, null if the request is not to be coalesced. Requests with credentials,
+   * or made via a client with caller credential filters are never coalesced, since the key does not include
+   * the headers added by the request filters.
+   */
+  @Nullable
+  @VisibleForTesting
+  String coalesceKey(final String method) {
+    if (!HttpMethod.GET.equals(method) || hasCredentials()) {
+      return null;
+    }
+    boolean doCoalesce;
+    if (coalesce == null) {
+      Object cfg = target.getConfiguration().getProperty(Spf4jClientProperties.COALESCE_GETS);
+      doCoalesce = cfg != null && Boolean.parseBoolean(cfg.toString());
+    } else {
+      doCoalesce = coalesce;
+    }
+    if (!doCoalesce || hasCallerCredentialFilters(target.getConfiguration())) {
+      return null;
+    }
+    StringBuilder sb = new StringBuilder(64).append(target.getUri()).append('\n');
+    if (requestHeaders != null) {
+      for (Map.Entry<String, List<Object>> entry : requestHeaders.entrySet()) {
+        sb.append(entry.getKey()).append(':');
+        for (Object value : entry.getValue()) {
+          sb.append(value).append(',');
+        }
+        sb.append('\n');
+      }
+    }
+    return sb.toString();
+  }
+
+  private static boolean hasCallerCredentialFilters(final Configuration config) {
+    for (Class<?> clasz : config.getClasses()) {
+      if (CallerCredentialsClientFilter.class.isAssignableFrom(clasz)) {
+        return true;
+      }
+    }
+    for (Object instance : config.getInstances()) {
+      if (instance instanceof CallerCredentialsClientFilter) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @param splitTraffic the destination hosts to route a ratio of the requests to,
+   * overwrites the endpoint configuration.
+   */
+  public Spf4jInvocationBuilder withSplitTraffic(final List<DestinationTraffic> splitTraffic) {
+    this.execPolicyBuilder.setSplitTraffic(splitTraffic);
+    return this;
+  }
+
+  /**
+   * @param shadowTraffic the destination hosts to mirror a ratio of the requests to,
+   * overwrites the endpoint configuration.
+   */
+  public Spf4jInvocationBuilder withShadowTraffic(final List<DestinationTraffic> shadowTraffic) {
+    this.execPolicyBuilder.setShadowTraffic(shadowTraffic);
+    return this;
+  }
+
   public Spf4jInvocationBuilder withHedgePolicy(final TimeoutRelativeHedgePolicy hedgePolicy) {
     this.execPolicyBuilder.setHedgePolicy(hedgePolicy);
     return this;
@@ -196,50 +333,60 @@ public final class Spf4jInvocationBuilder implements Invocation.Builder {
       Utils.addDefaultRetryPredicated(builder);
     }
     TimeoutRelativeHedgePolicy trp = policy.getHedgePolicy();
-    return org.spf4j.failsafe.RetryPolicy.async(c -> builder.build(),
-           trp == null ? c -> HedgePolicy.NONE : c -> new TimeoutRelativeHedge(trp), exec);
+    if (trp == null) {
+      return org.spf4j.failsafe.RetryPolicy.async(c -> builder.build(), c -> HedgePolicy.NONE, exec);
+    }
+    HedgePolicy staticHedge = new TimeoutRelativeHedge(trp);
+    return org.spf4j.failsafe.RetryPolicy.async(c -> builder.build(), c -> c.getHedgePolicy(staticHedge), exec);
+  }
+
+  /**
+   * @param execPolicy the resolved execution policy, the traffic split is precomputed from it once.
+   * @param entity the request entity, null if none.
+   */
+  private Spf4jInvocation newInvocation(final Invocation invocation, final HttpExecutionPolicy execPolicy,
+          final String method, @Nullable final Entity<?> entity, @Nullable final String coalesceKey) {
+    RequestTemplate template;
+    if (execPolicy.getSplitTraffic().isEmpty() && execPolicy.getShadowTraffic().isEmpty()) {
+      template = null;
+    } else {
+      template = new RequestTemplate(method,
+              requestHeaders == null ? null : new MultivaluedHashMap<>(requestHeaders), entity,
+              requestProperties == null ? null : new HashMap<>(requestProperties));
+    }
+    return new Spf4jInvocation(invocation, execPolicy, TrafficSplit.of(execPolicy.getSplitTraffic()),
+            getShadowSampleRate(), buildExecutor(execPolicy, executor), this.target, method, coalesceKey, template);
   }
 
   @Override
   public Spf4jInvocation build(final String method) {
-    HttpExecutionPolicy execPolicy = getExecPolicy(method);
-    return new Spf4jInvocation(ib.build(method), execPolicy, buildExecutor(execPolicy, executor), this.target,
-            method);
+    return newInvocation(ib.build(method), getExecPolicy(method), method, null, coalesceKey(method));
   }
 
   @Override
   public Spf4jInvocation build(final String method, final Entity<?> entity) {
-    HttpExecutionPolicy execPolicy = getExecPolicy(method);
-    return new Spf4jInvocation(ib.build(method, entity), execPolicy,
-            buildExecutor(execPolicy, executor), this.target, method);
+    return newInvocation(ib.build(method, entity), getExecPolicy(method), method, entity, null);
   }
 
   @Override
   public Spf4jInvocation buildGet() {
-    HttpExecutionPolicy execPolicy = getExecPolicy(HttpMethod.GET);
-    return new Spf4jInvocation(ib.buildGet(), execPolicy,
-            buildExecutor(execPolicy, executor), this.target, HttpMethod.GET);
+    return newInvocation(ib.buildGet(), getExecPolicy(HttpMethod.GET), HttpMethod.GET, null,
+            coalesceKey(HttpMethod.GET));
   }
 
   @Override
   public Spf4jInvocation buildDelete() {
-    HttpExecutionPolicy execPolicy = getExecPolicy(HttpMethod.DELETE);
-    return new Spf4jInvocation(ib.buildDelete(), execPolicy,
-            buildExecutor(execPolicy, executor), this.target, HttpMethod.DELETE);
+    return newInvocation(ib.buildDelete(), getExecPolicy(HttpMethod.DELETE), HttpMethod.DELETE, null, null);
   }
 
   @Override
   public Spf4jInvocation buildPost(final Entity<?> entity) {
-    HttpExecutionPolicy execPolicy = getExecPolicy(HttpMethod.POST);
-    return new Spf4jInvocation(ib.buildPost(entity), execPolicy,
-            buildExecutor(execPolicy, executor), this.target, HttpMethod.POST);
+    return newInvocation(ib.buildPost(entity), getExecPolicy(HttpMethod.POST), HttpMethod.POST, entity, null);
   }
 
   @Override
   public Spf4jInvocation buildPut(final Entity<?> entity) {
-    HttpExecutionPolicy execPolicy = getExecPolicy(HttpMethod.PUT);
-    return new Spf4jInvocation(ib.buildPut(entity), execPolicy,
-            buildExecutor(execPolicy, executor), this.target, HttpMethod.PUT);
+    return newInvocation(ib.buildPut(entity), getExecPolicy(HttpMethod.PUT), HttpMethod.PUT, entity, null);
   }
 
   @Override
@@ -249,6 +396,7 @@ public final class Spf4jInvocationBuilder implements Invocation.Builder {
 
   @Override
   public Invocation.Builder accept(final String... mediaTypes) {
+    addKeyHeader(HttpHeaders.ACCEPT, (Object[]) mediaTypes);
     Invocation.Builder builder = ib.accept(mediaTypes);
     if (builder == ib) {
       return this;
@@ -259,6 +407,7 @@ public final class Spf4jInvocationBuilder implements Invocation.Builder {
 
   @Override
   public Invocation.Builder accept(final MediaType... mediaTypes) {
+    addKeyHeader(HttpHeaders.ACCEPT, (Object[]) mediaTypes);
     Invocation.Builder builder = ib.accept(mediaTypes);
     if (builder == ib) {
       return this;
@@ -269,6 +418,7 @@ public final class Spf4jInvocationBuilder implements Invocation.Builder {
 
   @Override
   public Invocation.Builder acceptLanguage(final Locale... locales) {
+    addKeyHeader(HttpHeaders.ACCEPT_LANGUAGE, (Object[]) locales);
     Invocation.Builder builder = ib.acceptLanguage(locales);
     if (builder == ib) {
       return this;
@@ -279,6 +429,7 @@ public final class Spf4jInvocationBuilder implements Invocation.Builder {
 
   @Override
   public Invocation.Builder acceptLanguage(final String... locales) {
+    addKeyHeader(HttpHeaders.ACCEPT_LANGUAGE, (Object[]) locales);
     Invocation.Builder builder = ib.acceptLanguage(locales);
     if (builder == ib) {
       return this;
@@ -289,6 +440,7 @@ public final class Spf4jInvocationBuilder implements Invocation.Builder {
 
   @Override
   public Invocation.Builder acceptEncoding(final String... encodings) {
+    addKeyHeader(HttpHeaders.ACCEPT_ENCODING, (Object[]) encodings);
     Invocation.Builder builder = ib.acceptEncoding(encodings);
     if (builder == ib) {
       return this;
@@ -299,6 +451,7 @@ public final class Spf4jInvocationBuilder implements Invocation.Builder {
 
   @Override
   public Invocation.Builder cookie(final Cookie cookie) {
+    addKeyHeader(HttpHeaders.COOKIE, cookie);
     Invocation.Builder builder = ib.cookie(cookie);
     if (builder == ib) {
       return this;
@@ -309,6 +462,7 @@ public final class Spf4jInvocationBuilder implements Invocation.Builder {
 
   @Override
   public Invocation.Builder cookie(final String name, final String value) {
+    addKeyHeader(HttpHeaders.COOKIE, new Cookie(name, value));
     Invocation.Builder builder = ib.cookie(name, value);
     if (builder == ib) {
       return this;
@@ -319,6 +473,7 @@ public final class Spf4jInvocationBuilder implements Invocation.Builder {
 
   @Override
   public Invocation.Builder cacheControl(final CacheControl cacheControl) {
+    addKeyHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
     Invocation.Builder builder = ib.cacheControl(cacheControl);
     if (builder == ib) {
       return this;
@@ -329,8 +484,15 @@ public final class Spf4jInvocationBuilder implements Invocation.Builder {
 
   @Override
   public Invocation.Builder header(final String name, final Object value) {
-    Invocation.Builder builder = ib.header(name, Spf4JClient.convert(
-            Spf4JClient.getParamConverters(this.getTarget().getConfiguration()), value));
+    Object cValue = Spf4JClient.convert(Spf4JClient.getParamConverters(this.getTarget().getConfiguration()), value);
+    if (cValue == null) {
+      if (requestHeaders != null) {
+        requestHeaders.remove(name);
+      }
+    } else {
+      addKeyHeader(name, cValue);
+    }
+    Invocation.Builder builder = ib.header(name, cValue);
     if (builder == ib) {
       return this;
     } else {
@@ -353,7 +515,12 @@ public final class Spf4jInvocationBuilder implements Invocation.Builder {
         map.put(entry.getKey(), cValue);
       }
     }
-    Invocation.Builder builder = ib.headers(map == null ? headers : map);
+    MultivaluedMap<String, Object> cHeaders = map == null ? headers : map;
+    requestHeaders = null;
+    for (Map.Entry<String, List<Object>> entry : cHeaders.entrySet()) {
+      addKeyHeader(entry.getKey(), entry.getValue().toArray());
+    }
+    Invocation.Builder builder = ib.headers(cHeaders);
     if (builder == ib) {
       return this;
     } else {
@@ -363,6 +530,10 @@ public final class Spf4jInvocationBuilder implements Invocation.Builder {
 
   @Override
   public Spf4jInvocationBuilder property(final String name, final Object value) {
+    if (requestProperties == null) {
+      requestProperties = new HashMap<>(4);
+    }
+    requestProperties.put(name, value);
     Invocation.Builder builder = ib.property(name, value);
     if (builder == ib) {
       return this;
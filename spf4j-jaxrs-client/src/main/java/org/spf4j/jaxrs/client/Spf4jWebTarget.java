@@ -2,8 +2,11 @@ package org.spf4j.jaxrs.client;
 
 import java.net.URI;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.Nullable;
 import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.Configuration;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.UriBuilder;
 import org.spf4j.failsafe.concurrent.FailSafeExecutor;
@@ -19,8 +22,21 @@ public final class Spf4jWebTarget implements WebTarget {
 
   private final Spf4JClient client;
 
+  /** the path before template resolution, null if no template was resolved (the path is the uri path). */
+  @Nullable
+  private final String pathTemplate;
+
+  /** lazily initialized cache of this target with the host replaced. (split/shadow traffic) */
+  private volatile Map<String, WebTarget> destinationTargets;
+
   public Spf4jWebTarget(final Spf4JClient client,
           final WebTarget tg, final FailSafeExecutor executor) {
+    this(client, tg, executor, null);
+  }
+
+  private Spf4jWebTarget(final Spf4JClient client,
+          final WebTarget tg, final FailSafeExecutor executor, @Nullable final String pathTemplate) {
+    this.pathTemplate = pathTemplate;
     this.tg = tg;
     this.client = client;
     this.executor = executor;
@@ -35,29 +51,130 @@ public final class Spf4jWebTarget implements WebTarget {
     return tg.getUri();
   }
 
+  /**
+   * @param host the destination host.
+   * @return this target with the host replaced, with the same configuration properties.
+   */
+  WebTarget getDestinationTarget(final String host) {
+    Map<String, WebTarget> targets = destinationTargets;
+    if (targets == null) {
+      targets = new ConcurrentHashMap<>(4);
+      destinationTargets = targets;
+    }
+    WebTarget result = targets.get(host);
+    if (result == null) {
+      result = client.rawTarget(withHost(getUri(), host));
+      for (Map.Entry<String, Object> prop : tg.getConfiguration().getProperties().entrySet()) {
+        result.property(prop.getKey(), prop.getValue());
+      }
+      targets.put(host, result);
+    }
+    return result;
+  }
+
+  static URI withHost(final URI uri, final String host) {
+    StringBuilder sb = new StringBuilder(64);
+    sb.append(uri.getScheme()).append("://");
+    String userInfo = uri.getRawUserInfo();
+    if (userInfo != null) {
+      sb.append(userInfo).append('@');
+    }
+    if (host.indexOf(':') >= 0 && host.charAt(0) != '[') {
+      sb.append('[').append(host).append(']');
+    } else {
+      sb.append(host);
+    }
+    int port = uri.getPort();
+    if (port >= 0) {
+      sb.append(':').append(port);
+    }
+    String path = uri.getRawPath();
+    if (path != null) {
+      sb.append(path);
+    }
+    String query = uri.getRawQuery();
+    if (query != null) {
+      sb.append('?').append(query);
+    }
+    String fragment = uri.getRawFragment();
+    if (fragment != null) {
+      sb.append('#').append(fragment);
+    }
+    return URI.create(sb.toString());
+  }
+
   @Override
   public UriBuilder getUriBuilder() {
     return tg.getUriBuilder();
   }
 
+  /**
+   * @return the path of this target before template resolution (like /items/{id}), the uri path if no template
+   * was resolved. Used as the endpoint key of the per endpoint statistics. (adaptive hedging)
+   */
+  String getPathTemplate() {
+    return pathTemplate == null ? getUri().getRawPath() : pathTemplate;
+  }
+
+  private String unresolvedPath() {
+    return pathTemplate == null ? templatePath(tg.getUriBuilder().toTemplate()) : pathTemplate;
+  }
+
+  /**
+   * @return the path of a uri template, without scheme, authority, query and fragment.
+   */
+  static String templatePath(final String uriTemplate) {
+    int schemeEnd = uriTemplate.indexOf("://");
+    int start = schemeEnd < 0 ? 0 : uriTemplate.indexOf('/', schemeEnd + 3);
+    if (start < 0) {
+      return "";
+    }
+    int end = uriTemplate.length();
+    for (int i = start; i < end; i++) {
+      char c = uriTemplate.charAt(i);
+      if (c == '?' || c == '#') {
+        end = i;
+        break;
+      }
+    }
+    return uriTemplate.substring(start, end);
+  }
+
+  static String joinPath(final String base, final String path) {
+    if (path.isEmpty()) {
+      return base;
+    }
+    boolean baseSlash = base.endsWith("/");
+    boolean pathSlash = path.charAt(0) == '/';
+    if (baseSlash && pathSlash) {
+      return base + path.substring(1);
+    } else if (baseSlash || pathSlash) {
+      return base + path;
+    } else {
+      return base + '/' + path;
+    }
+  }
+
   @Override
   public Spf4jWebTarget path(final String path) {
-    return new Spf4jWebTarget(client, tg.path(path), executor);
+    return new Spf4jWebTarget(client, tg.path(path), executor,
+            pathTemplate == null ? null : joinPath(pathTemplate, path));
   }
 
   @Override
   public Spf4jWebTarget resolveTemplate(final String name, final Object value) {
-    return new Spf4jWebTarget(client, tg.resolveTemplate(name, value), executor);
+    return new Spf4jWebTarget(client, tg.resolveTemplate(name, value), executor, unresolvedPath());
   }
 
   @Override
   public Spf4jWebTarget resolveTemplate(final String name, final Object value, final boolean encodeSlashInPath) {
-    return new Spf4jWebTarget(client, tg.resolveTemplate(name, value, encodeSlashInPath), executor);
+    return new Spf4jWebTarget(client, tg.resolveTemplate(name, value, encodeSlashInPath), executor,
+            unresolvedPath());
   }
 
   @Override
   public Spf4jWebTarget resolveTemplateFromEncoded(final String name, final Object value) {
-    return new Spf4jWebTarget(client, tg.resolveTemplateFromEncoded(name, value), executor);
+    return new Spf4jWebTarget(client, tg.resolveTemplateFromEncoded(name, value), executor, unresolvedPath());
   }
 
   @Override
@@ -65,7 +182,7 @@ public final class Spf4jWebTarget implements WebTarget {
     if (templateValues.isEmpty()) {
       return this;
     }
-    return new Spf4jWebTarget(client, tg.resolveTemplates(templateValues), executor);
+    return new Spf4jWebTarget(client, tg.resolveTemplates(templateValues), executor, unresolvedPath());
   }
 
   @Override
@@ -73,7 +190,8 @@ public final class Spf4jWebTarget implements WebTarget {
     if (templateValues.isEmpty()) {
       return this;
     }
-    return new Spf4jWebTarget(client, tg.resolveTemplates(templateValues, encodeSlashInPath), executor);
+    return new Spf4jWebTarget(client, tg.resolveTemplates(templateValues, encodeSlashInPath), executor,
+            unresolvedPath());
   }
 
   @Override
@@ -81,21 +199,21 @@ public final class Spf4jWebTarget implements WebTarget {
     if (templateValues.isEmpty()) {
       return this;
     }
-    return new Spf4jWebTarget(client, tg.resolveTemplatesFromEncoded(templateValues), executor);
+    return new Spf4jWebTarget(client, tg.resolveTemplatesFromEncoded(templateValues), executor, unresolvedPath());
   }
 
   @Override
   public Spf4jWebTarget matrixParam(final String name, final Object... values) {
     return new Spf4jWebTarget(client, tg.matrixParam(name,
             Spf4JClient.convert(Spf4JClient.getParamConverters(getConfiguration()), values)),
-            executor);
+            executor, pathTemplate);
   }
 
   @Override
   public Spf4jWebTarget queryParam(final String name, final Object... values) {
     return new Spf4jWebTarget(client, tg.queryParam(name,
             Spf4JClient.convert(Spf4JClient.getParamConverters(getConfiguration()), values)),
-            executor);
+            executor, pathTemplate);
   }
 
   @Override
@@ -105,12 +223,18 @@ public final class Spf4jWebTarget implements WebTarget {
 
   @Override
   public Spf4jInvocationBuilder request(final String... acceptedResponseTypes) {
-    return new Spf4jInvocationBuilder(client, tg.request(acceptedResponseTypes), executor, this);
+    Spf4jInvocationBuilder result = new Spf4jInvocationBuilder(client, tg.request(acceptedResponseTypes),
+            executor, this);
+    result.addKeyHeader(HttpHeaders.ACCEPT, (Object[]) acceptedResponseTypes);
+    return result;
   }
 
   @Override
   public Spf4jInvocationBuilder request(final MediaType... acceptedResponseTypes) {
-    return new Spf4jInvocationBuilder(client, tg.request(acceptedResponseTypes), executor, this);
+    Spf4jInvocationBuilder result = new Spf4jInvocationBuilder(client, tg.request(acceptedResponseTypes),
+            executor, this);
+    result.addKeyHeader(HttpHeaders.ACCEPT, (Object[]) acceptedResponseTypes);
+    return result;
   }
 
   @Override
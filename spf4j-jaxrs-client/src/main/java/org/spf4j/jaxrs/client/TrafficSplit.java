@@ -0,0 +1,157 @@
+/*
+ * Copyright 2021 SPF4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.jaxrs.client;
+
+import java.util.Arrays;
+import java.util.List;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import org.spf4j.service.avro.DestinationTraffic;
+
+/**
+ * Precomputed split traffic routing table.
+ *
+ * A random number r in [0, 1) routes to the first destination (in declaration order) with r &lt; ratio,
+ * or to the original destination if there is none. The resulting per destination probabilities are
+ * precomputed in a alias table (Walker/Vose), so that selection is O(1) in the number of destinations.
+ * The table is built once per resolved execution policy, when the invocation is built.
+ *
+ * @author Zoltan Farkas
+ */
+@ParametersAreNonnullByDefault
+final class TrafficSplit {
+
+  /** destination hosts, null for the original destination. */
+  private final String[] destinations;
+
+  private final double[] prob;
+
+  private final int[] alias;
+
+  TrafficSplit(final List<DestinationTraffic> split) {
+    this(split.stream().map(DestinationTraffic::getDestination).toArray(String[]::new),
+            split.stream().mapToDouble(DestinationTraffic::getRatio).toArray());
+  }
+
+  /**
+   * @param pDestinations the destination hosts.
+   * @param ratios the destination ratios.
+   */
+  TrafficSplit(final String[] pDestinations, final double[] ratios) {
+    int nrDest = pDestinations.length;
+    int n = nrDest + 1;
+    this.destinations = Arrays.copyOf(pDestinations, n);
+    double[] weights = new double[n];
+    double[] bounds = new double[nrDest + 2];
+    for (int i = 0; i < nrDest; i++) {
+      bounds[i] = Math.max(0, Math.min(1, ratios[i]));
+    }
+    bounds[nrDest] = 0;
+    bounds[nrDest + 1] = 1;
+    Arrays.sort(bounds);
+    for (int b = 1; b < bounds.length; b++) {
+      double lo = bounds[b - 1];
+      double w = bounds[b] - lo;
+      if (w <= 0) {
+        continue;
+      }
+      int sel = nrDest;
+      for (int i = 0; i < nrDest; i++) {
+        if (lo < ratios[i]) {
+          sel = i;
+          break;
+        }
+      }
+      weights[sel] += w;
+    }
+    this.prob = new double[n];
+    this.alias = new int[n];
+    buildAliasTable(weights, prob, alias);
+  }
+
+  /**
+   * Vose's alias method.
+   */
+  private static void buildAliasTable(final double[] weights, final double[] prob, final int[] alias) {
+    int n = weights.length;
+    double[] scaled = new double[n];
+    int[] small = new int[n];
+    int[] large = new int[n];
+    int ns = 0;
+    int nl = 0;
+    for (int i = 0; i < n; i++) {
+      scaled[i] = weights[i] * n;
+      if (scaled[i] < 1) {
+        small[ns++] = i;
+      } else {
+        large[nl++] = i;
+      }
+    }
+    while (ns > 0 && nl > 0) {
+      int s = small[--ns];
+      int l = large[--nl];
+      prob[s] = scaled[s];
+      alias[s] = l;
+      scaled[l] = scaled[l] + scaled[s] - 1;
+      if (scaled[l] < 1) {
+        small[ns++] = l;
+      } else {
+        large[nl++] = l;
+      }
+    }
+    while (nl > 0) {
+      int l = large[--nl];
+      prob[l] = 1;
+      alias[l] = l;
+    }
+    while (ns > 0) {
+      // numerical residue.
+      int s = small[--ns];
+      prob[s] = 1;
+      alias[s] = s;
+    }
+  }
+
+  /**
+   * @return the routing table, null if there is no split traffic.
+   */
+  @Nullable
+  static TrafficSplit of(final List<DestinationTraffic> split) {
+    return split.isEmpty() ? null : new TrafficSplit(split);
+  }
+
+  /**
+   * @param rnd a uniformly distributed random number in [0, 1).
+   * @return the destination host or null for the original destination.
+   */
+  @Nullable
+  String select(final double rnd) {
+    int n = prob.length;
+    double x = rnd * n;
+    int col = (int) x;
+    if (col >= n) {
+      col = n - 1;
+    }
+    return x - col < prob[col] ? destinations[col] : destinations[alias[col]];
+  }
+
+  @Override
+  public String toString() {
+    return "TrafficSplit{" + "destinations=" + Arrays.toString(destinations)
+            + ", prob=" + Arrays.toString(prob) + ", alias=" + Arrays.toString(alias) + '}';
+  }
+
+}
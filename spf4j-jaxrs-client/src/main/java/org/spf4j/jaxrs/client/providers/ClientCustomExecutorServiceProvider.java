@@ -20,7 +20,8 @@ public final class ClientCustomExecutorServiceProvider extends CustomExecutorSer
             Utils.getIntConfigValue(cfg, "jersey.client.exec.maxSize", 256),
             Utils.getIntConfigValue(cfg, "jersey.client.exec.maxIdleMIllis", 120000),
             Utils.getIntConfigValue(cfg, "jersey.cleanShutdownWaitMillis", 300000),
-            Utils.getStringConfigValue(cfg, "jersey.client.exec.name", "clt-masync"));
+            Utils.getStringConfigValue(cfg, "jersey.client.exec.name", "clt-masync"),
+            Utils.getBooleanConfigValue(cfg, "jersey.client.exec.virtualThreads", false));
   }
 
 
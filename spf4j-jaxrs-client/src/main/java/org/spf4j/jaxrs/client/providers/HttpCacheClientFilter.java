@@ -0,0 +1,552 @@
+/*
+ * Copyright 2021 SPF4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.jaxrs.client.providers;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ascii;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.net.URI;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.annotation.Nullable;
+import javax.annotation.Priority;
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientRequestFilter;
+import javax.ws.rs.client.ClientResponseContext;
+import javax.ws.rs.client.ClientResponseFilter;
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.core.CacheControl;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.Provider;
+import javax.ws.rs.ext.RuntimeDelegate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spf4j.base.ExecutionContext;
+import org.spf4j.base.ExecutionContexts;
+import org.spf4j.base.TimeSource;
+import org.spf4j.concurrent.DefaultExecutor;
+import org.spf4j.perf.MeasurementRecorder;
+import org.spf4j.perf.impl.RecorderFactory;
+
+/**
+ * A in process, private, HTTP response cache (see https://tools.ietf.org/html/rfc7234) for GET requests.
+ *
+ * <ul>
+ * <li>200 responses with explicit freshness (Cache-Control max-age, Expires) or validators (ETag, Last-Modified)
+ * are stored as raw (still content encoded) bytes, within a memory budget. Responses with Cache-Control no-store
+ * or private, Set-Cookie, Vary: *, or larger than the max entry size are not stored. Requests with credentials
+ * (Authorization, Proxy-Authorization or Cookie headers) are neither stored nor served from the cache.</li>
+ * <li>Fresh responses are served from the cache, request Cache-Control no-cache and max-age are honored.</li>
+ * <li>Stale responses within the stale-while-revalidate window are served from the cache, while
+ * the entry is revalidated in the background.</li>
+ * <li>Other stale responses with validators are revalidated with If-None-Match/If-Modified-Since,
+ * a 304 response is replaced with the cached response.</li>
+ * <li>Only one variant per uri is cached, a request that does not match the Vary headers of the cached
+ * variant is a cache miss.</li>
+ * <li>Conditional requests from the caller (If-None-Match, If-Modified-Since, If-Match, If-Unmodified-Since,
+ * If-Range) are passed through untouched, their validators are not overwritten, and their responses
+ * (including 304) are returned as is.</li>
+ * <li>Unsafe requests (POST, PUT, DELETE, PATCH) invalidate the uri cache entry.</li>
+ * </ul>
+ *
+ * Not registered by default, register it with the client to enable caching.
+ *
+ * @author Zoltan Farkas
+ */
+@Provider
+@Priority(Priorities.HEADER_DECORATOR + 100)
+public final class HttpCacheClientFilter implements ClientRequestFilter, ClientResponseFilter {
+
+  private static final Logger LOG = LoggerFactory.getLogger(HttpCacheClientFilter.class);
+
+  private static final String ENTRY_PROP = "spf4j.httpCache.entry";
+
+  private static final String HIT_PROP = "spf4j.httpCache.hit";
+
+  private static final String REVALIDATE_PROP = "spf4j.httpCache.revalidate";
+
+  private static final String STALE_WHILE_REVALIDATE = "stale-while-revalidate";
+
+  private static final long REVALIDATE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+  private static final String[] CREDENTIAL_HEADERS = {HttpHeaders.AUTHORIZATION, "Proxy-Authorization",
+    HttpHeaders.COOKIE};
+
+  private static final String[] CONDITIONAL_HEADERS = {HttpHeaders.IF_NONE_MATCH, HttpHeaders.IF_MODIFIED_SINCE,
+    HttpHeaders.IF_MATCH, HttpHeaders.IF_UNMODIFIED_SINCE, "If-Range"};
+
+  private static final RuntimeDelegate.HeaderDelegate<CacheControl> CC_DELEGATE =
+          RuntimeDelegate.getInstance().createHeaderDelegate(CacheControl.class);
+
+  private static final MeasurementRecorder HITS =
+          RecorderFactory.createScalableSimpleCountingRecorder("http.client.cache.hits", "count", 60000);
+
+  private static final MeasurementRecorder STALE_HITS =
+          RecorderFactory.createScalableSimpleCountingRecorder("http.client.cache.staleHits", "count", 60000);
+
+  private static final MeasurementRecorder MISSES =
+          RecorderFactory.createScalableSimpleCountingRecorder("http.client.cache.misses", "count", 60000);
+
+  private static final MeasurementRecorder REVALIDATED =
+          RecorderFactory.createScalableSimpleCountingRecorder("http.client.cache.revalidated", "count", 60000);
+
+  private final Cache<String, CachedResponse> cache;
+
+  private final int maxEntryBytes;
+
+  public HttpCacheClientFilter() {
+    this(Long.getLong("spf4j.jaxrs.clientCache.maxBytes", 64L * 1024 * 1024),
+            Integer.getInteger("spf4j.jaxrs.clientCache.maxEntryBytes", 1024 * 1024));
+  }
+
+  /**
+   * @param maxBytes the cache memory budget.
+   * @param maxEntryBytes responses larger than this are not cached.
+   */
+  public HttpCacheClientFilter(final long maxBytes, final int maxEntryBytes) {
+    this.maxEntryBytes = maxEntryBytes;
+    this.cache = CacheBuilder.newBuilder()
+            .maximumWeight(maxBytes)
+            .weigher((String k, CachedResponse v) -> k.length() * 2 + v.getWeight())
+            .build();
+  }
+
+  @Override
+  public void filter(final ClientRequestContext request) {
+    String method = request.getMethod();
+    if (!HttpMethod.GET.equals(method)) {
+      if (!HttpMethod.HEAD.equals(method) && !HttpMethod.OPTIONS.equals(method)) {
+        cache.invalidate(request.getUri().toString());
+      }
+      return;
+    }
+    if (hasHeader(request, CREDENTIAL_HEADERS) || hasHeader(request, CONDITIONAL_HEADERS)) {
+      return;
+    }
+    CacheControl reqCc = cacheControl(request.getHeaderString(HttpHeaders.CACHE_CONTROL));
+    if (reqCc != null && reqCc.isNoStore()) {
+      return;
+    }
+    CachedResponse entry = cache.getIfPresent(request.getUri().toString());
+    if (entry == null || !entry.matchesVary(request)) {
+      MISSES.increment();
+      return;
+    }
+    long ageNanos = entry.getAgeNanos(TimeSource.nanoTime());
+    boolean revalidate = request.getProperty(REVALIDATE_PROP) != null;
+    boolean noCache = revalidate || (reqCc != null && reqCc.isNoCache());
+    if (!noCache) {
+      boolean ageOk = reqCc == null || reqCc.getMaxAge() < 0
+              || ageNanos <= TimeUnit.SECONDS.toNanos(reqCc.getMaxAge());
+      if (ageOk && ageNanos < entry.freshnessNanos) {
+        HITS.increment();
+        request.setProperty(HIT_PROP, Boolean.TRUE);
+        request.abortWith(entry.toResponse(ageNanos));
+        return;
+      }
+      if (ageOk && ageNanos < entry.freshnessNanos + entry.staleWhileRevalidateNanos) {
+        STALE_HITS.increment();
+        if (entry.startRevalidation()) {
+          revalidateAsync(request, entry);
+        }
+        request.setProperty(HIT_PROP, Boolean.TRUE);
+        request.abortWith(entry.toResponse(ageNanos));
+        return;
+      }
+    }
+    MISSES.increment();
+    if (entry.etag != null || entry.lastModified != null) {
+      MultivaluedMap<String, Object> headers = request.getHeaders();
+      if (entry.etag != null) {
+        headers.putSingle(HttpHeaders.IF_NONE_MATCH, entry.etag);
+      }
+      if (entry.lastModified != null) {
+        headers.putSingle(HttpHeaders.IF_MODIFIED_SINCE, entry.lastModified);
+      }
+      request.setProperty(ENTRY_PROP, entry);
+    }
+  }
+
+  /**
+   * @return true if the request has any of the headers (credentials, caller validators).
+   */
+  private static boolean hasHeader(final ClientRequestContext request, final String[] names) {
+    for (String header : names) {
+      if (request.getHeaderString(header) != null) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static void revalidateAsync(final ClientRequestContext request, final CachedResponse entry) {
+    Client client = request.getClient();
+    URI uri = request.getUri();
+    MultivaluedMap<String, Object> headers = new MultivaluedHashMap<>(4);
+    copyHeader(request, HttpHeaders.ACCEPT, headers);
+    copyHeader(request, HttpHeaders.ACCEPT_ENCODING, headers);
+    copyHeader(request, HttpHeaders.ACCEPT_LANGUAGE, headers);
+    for (String name : entry.varyNames) {
+      copyHeader(request, name, headers);
+    }
+    DefaultExecutor.INSTANCE.execute(() -> {
+      try (ExecutionContext ec = ExecutionContexts.start("revalidate " + uri,
+              REVALIDATE_TIMEOUT_NANOS, TimeUnit.NANOSECONDS)) {
+        Invocation.Builder builder = client.target(uri).request().headers(headers)
+                .property(REVALIDATE_PROP, Boolean.TRUE);
+        builder.get().close();
+      } catch (RuntimeException ex) {
+        LOG.debug("Failed to revalidate {}", uri, ex);
+      } finally {
+        entry.revalidationDone();
+      }
+    });
+  }
+
+  private static void copyHeader(final ClientRequestContext request, final String name,
+          final MultivaluedMap<String, Object> to) {
+    List<Object> values = request.getHeaders().get(name);
+    if (values != null && !to.containsKey(name)) {
+      to.put(name, new ArrayList<>(values));
+    }
+  }
+
+  @Override
+  public void filter(final ClientRequestContext request, final ClientResponseContext response)
+          throws IOException {
+    if (request.getProperty(HIT_PROP) != null || !HttpMethod.GET.equals(request.getMethod())) {
+      return;
+    }
+    String key = request.getUri().toString();
+    int status = response.getStatus();
+    CachedResponse prev = (CachedResponse) request.getProperty(ENTRY_PROP);
+    if (status == 304 && prev != null) {
+      REVALIDATED.increment();
+      CachedResponse updated = prev.revalidated(response.getHeaders(), TimeSource.nanoTime());
+      cache.put(key, updated);
+      response.setStatus(updated.status);
+      MultivaluedMap<String, String> headers = response.getHeaders();
+      headers.clear();
+      headers.putAll(updated.headers);
+      response.setEntityStream(new ByteArrayInputStream(updated.body));
+      return;
+    }
+    if (status != 200 || hasHeader(request, CREDENTIAL_HEADERS)) {
+      return;
+    }
+    CacheControl reqCc = cacheControl(request.getHeaderString(HttpHeaders.CACHE_CONTROL));
+    if (reqCc != null && reqCc.isNoStore()) {
+      return;
+    }
+    MultivaluedMap<String, String> respHeaders = response.getHeaders();
+    CacheControl cc = cacheControl(joined(respHeaders.get(HttpHeaders.CACHE_CONTROL)));
+    if ((cc != null && (cc.isNoStore() || cc.isPrivate())) || respHeaders.containsKey(HttpHeaders.SET_COOKIE)) {
+      cache.invalidate(key);
+      return;
+    }
+    String vary = joined(respHeaders.get(HttpHeaders.VARY));
+    if (vary != null && vary.contains("*")) {
+      return;
+    }
+    long freshnessNanos = freshnessNanos(cc, respHeaders);
+    String etag = response.getHeaderString(HttpHeaders.ETAG);
+    String lastModified = response.getHeaderString(HttpHeaders.LAST_MODIFIED);
+    if (freshnessNanos <= 0 && etag == null && lastModified == null) {
+      return;
+    }
+    InputStream entityStream = response.getEntityStream();
+    if (entityStream == null) {
+      return;
+    }
+    byte[] body = readAtMost(entityStream, maxEntryBytes + 1);
+    if (body.length > maxEntryBytes) {
+      // too large, put back what was read.
+      response.setEntityStream(new SequenceInputStream(new ByteArrayInputStream(body), entityStream));
+      return;
+    }
+    entityStream.close();
+    response.setEntityStream(new ByteArrayInputStream(body));
+    long swrNanos = 0;
+    if (cc != null) {
+      String swr = cc.getCacheExtension().get(STALE_WHILE_REVALIDATE);
+      if (swr != null) {
+        swrNanos = TimeUnit.SECONDS.toNanos(parseSeconds(swr));
+      }
+    }
+    String[] varyNames = vary == null ? new String[0] : splitVary(vary);
+    String[] varyValues = new String[varyNames.length];
+    for (int i = 0; i < varyNames.length; i++) {
+      varyValues[i] = requestHeader(request, varyNames[i]);
+    }
+    cache.put(key, new CachedResponse(status, new MultivaluedHashMap<>(respHeaders), body,
+            varyNames, varyValues, TimeSource.nanoTime(), ageSeconds(respHeaders), freshnessNanos, swrNanos,
+            etag, lastModified));
+  }
+
+  /**
+   * @return the stream content up to maxBytes.
+   */
+  private static byte[] readAtMost(final InputStream is, final int maxBytes) throws IOException {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream(Math.min(maxBytes, 8192));
+    byte[] buff = new byte[8192];
+    int total = 0;
+    int nr;
+    while (total < maxBytes && (nr = is.read(buff, 0, Math.min(buff.length, maxBytes - total))) >= 0) {
+      total += nr;
+      bos.write(buff, 0, nr);
+    }
+    return bos.toByteArray();
+  }
+
+  @Nullable
+  @VisibleForTesting
+  static CacheControl cacheControl(@Nullable final String value) {
+    if (value == null || value.isEmpty()) {
+      return null;
+    }
+    try {
+      return CC_DELEGATE.fromString(value);
+    } catch (IllegalArgumentException ex) {
+      LOG.debug("Invalid Cache-Control {}", value, ex);
+      return null;
+    }
+  }
+
+  @Nullable
+  private static String joined(@Nullable final List<String> values) {
+    if (values == null || values.isEmpty()) {
+      return null;
+    }
+    return values.size() == 1 ? values.get(0) : String.join(",", values);
+  }
+
+  private static long freshnessNanos(@Nullable final CacheControl cc, final MultivaluedMap<String, String> headers) {
+    if (cc != null) {
+      if (cc.isNoCache()) {
+        return 0;
+      }
+      if (cc.getMaxAge() >= 0) {
+        return TimeUnit.SECONDS.toNanos(cc.getMaxAge());
+      }
+    }
+    String expires = headers.getFirst(HttpHeaders.EXPIRES);
+    if (expires == null) {
+      return 0;
+    }
+    ZonedDateTime exp = parseDate(expires);
+    if (exp == null) {
+      return 0;
+    }
+    String dateStr = headers.getFirst(HttpHeaders.DATE);
+    ZonedDateTime date = dateStr == null ? null : parseDate(dateStr);
+    long fromMillis = date == null ? System.currentTimeMillis() : date.toInstant().toEpochMilli();
+    return Math.max(0, TimeUnit.MILLISECONDS.toNanos(exp.toInstant().toEpochMilli() - fromMillis));
+  }
+
+  @Nullable
+  private static ZonedDateTime parseDate(final String date) {
+    try {
+      return ZonedDateTime.parse(date, DateTimeFormatter.RFC_1123_DATE_TIME);
+    } catch (DateTimeParseException ex) {
+      return null;
+    }
+  }
+
+  private static long ageSeconds(final MultivaluedMap<String, String> headers) {
+    String age = headers.getFirst("Age");
+    return age == null ? 0 : parseSeconds(age);
+  }
+
+  private static long parseSeconds(final String value) {
+    try {
+      return Math.max(0, Long.parseLong(value.trim()));
+    } catch (NumberFormatException ex) {
+      return 0;
+    }
+  }
+
+  private static String[] splitVary(final String vary) {
+    String[] names = vary.split(",");
+    int j = 0;
+    for (String name : names) {
+      String n = name.trim();
+      if (!n.isEmpty()) {
+        names[j++] = n;
+      }
+    }
+    return Arrays.copyOf(names, j);
+  }
+
+  @Nullable
+  private static String requestHeader(final ClientRequestContext request, final String name) {
+    for (Map.Entry<String, List<Object>> entry : request.getHeaders().entrySet()) {
+      if (Ascii.equalsIgnoreCase(name, entry.getKey())) {
+        return request.getHeaderString(entry.getKey());
+      }
+    }
+    return null;
+  }
+
+  @VisibleForTesting
+  long size() {
+    return cache.size();
+  }
+
+  @Override
+  public String toString() {
+    return "HttpCacheClientFilter{" + "size=" + cache.size() + ", maxEntryBytes=" + maxEntryBytes + '}';
+  }
+
+  private static final class CachedResponse {
+
+    private final int status;
+
+    private final MultivaluedMap<String, String> headers;
+
+    private final byte[] body;
+
+    private final String[] varyNames;
+
+    private final String[] varyValues;
+
+    private final long storedNanos;
+
+    private final long initialAgeNanos;
+
+    private final long freshnessNanos;
+
+    private final long staleWhileRevalidateNanos;
+
+    @Nullable
+    private final String etag;
+
+    @Nullable
+    private final String lastModified;
+
+    private final AtomicBoolean revalidating;
+
+    @SuppressFBWarnings("EI_EXPOSE_REP2")
+    CachedResponse(final int status, final MultivaluedMap<String, String> headers, final byte[] body,
+            final String[] varyNames, final String[] varyValues, final long storedNanos, final long ageSeconds,
+            final long freshnessNanos, final long staleWhileRevalidateNanos,
+            @Nullable final String etag, @Nullable final String lastModified) {
+      this.status = status;
+      this.headers = headers;
+      this.body = body;
+      this.varyNames = varyNames;
+      this.varyValues = varyValues;
+      this.storedNanos = storedNanos;
+      this.initialAgeNanos = TimeUnit.SECONDS.toNanos(ageSeconds);
+      this.freshnessNanos = freshnessNanos;
+      this.staleWhileRevalidateNanos = staleWhileRevalidateNanos;
+      this.etag = etag;
+      this.lastModified = lastModified;
+      this.revalidating = new AtomicBoolean();
+    }
+
+    long getAgeNanos(final long nowNanos) {
+      return initialAgeNanos + nowNanos - storedNanos;
+    }
+
+    boolean matchesVary(final ClientRequestContext request) {
+      for (int i = 0; i < varyNames.length; i++) {
+        if (!Objects.equals(varyValues[i], requestHeader(request, varyNames[i]))) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    boolean startRevalidation() {
+      return revalidating.compareAndSet(false, true);
+    }
+
+    void revalidationDone() {
+      revalidating.set(false);
+    }
+
+    /**
+     * @return a new entry with the headers and freshness updated from a 304 response.
+     */
+    CachedResponse revalidated(final MultivaluedMap<String, String> notModifiedHeaders, final long nowNanos) {
+      MultivaluedMap<String, String> newHeaders = new MultivaluedHashMap<>(headers);
+      for (Map.Entry<String, List<String>> entry : notModifiedHeaders.entrySet()) {
+        String name = entry.getKey();
+        if (!Ascii.equalsIgnoreCase(HttpHeaders.CONTENT_LENGTH, name)) {
+          newHeaders.put(name, entry.getValue());
+        }
+      }
+      CacheControl cc = cacheControl(joined(newHeaders.get(HttpHeaders.CACHE_CONTROL)));
+      long swrNanos = staleWhileRevalidateNanos;
+      if (cc != null) {
+        String swr = cc.getCacheExtension().get(STALE_WHILE_REVALIDATE);
+        swrNanos = swr == null ? 0 : TimeUnit.SECONDS.toNanos(parseSeconds(swr));
+      }
+      String newEtag = newHeaders.getFirst(HttpHeaders.ETAG);
+      String newLastModified = newHeaders.getFirst(HttpHeaders.LAST_MODIFIED);
+      return new CachedResponse(status, newHeaders, body, varyNames, varyValues, nowNanos,
+              ageSeconds(notModifiedHeaders), freshnessNanos(cc, newHeaders), swrNanos,
+              newEtag, newLastModified);
+    }
+
+    Response toResponse(final long ageNanos) {
+      Response.ResponseBuilder rb = Response.status(status);
+      for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
+        String name = entry.getKey();
+        if (!"Age".equalsIgnoreCase(name)) {
+          for (String value : entry.getValue()) {
+            rb.header(name, value);
+          }
+        }
+      }
+      rb.header("Age", TimeUnit.NANOSECONDS.toSeconds(ageNanos));
+      return rb.entity(new ByteArrayInputStream(body)).build();
+    }
+
+    int getWeight() {
+      return body.length + 64 * headers.size() + 128;
+    }
+
+    @Override
+    public String toString() {
+      return "CachedResponse{" + "status=" + status + ", size=" + body.length + ", etag=" + etag
+              + ", lastModified=" + lastModified + ", freshnessNanos=" + freshnessNanos + '}';
+    }
+
+  }
+
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2021 SPF4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.jaxrs.client.providers;
+
+import javax.annotation.Priority;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientRequestFilter;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.Provider;
+import org.glassfish.jersey.client.ClientProperties;
+import org.spf4j.jaxrs.common.providers.CompressionCodecs;
+
+/**
+ * Client encoding filter, a replacement for the jersey EncodingFilter that:
+ * <ul>
+ * <li>Sets the Accept-Encoding header with all the available codecs (see {@link CompressionCodecs})
+ * with q-values reflecting the codec preference (zstd, br, gzip, deflate).</li>
+ * <li>Sets the request entity Content-Encoding based on the jersey.config.client.useEncoding property,
+ * if the codec is available.</li>
+ * </ul>
+ * The codec content encoders need to be registered as well. (see GeneralPurposeFeatures)
+ *
+ * @author Zoltan Farkas
+ */
+@Provider
+@Priority(Priorities.HEADER_DECORATOR)
+public final class Spf4jEncodingFilter implements ClientRequestFilter {
+
+  @Override
+  public void filter(final ClientRequestContext request) {
+    MultivaluedMap<String, Object> headers = request.getHeaders();
+    if (!headers.containsKey(HttpHeaders.ACCEPT_ENCODING)) {
+      headers.putSingle(HttpHeaders.ACCEPT_ENCODING, CompressionCodecs.getAcceptEncoding());
+    }
+    if (request.hasEntity() && !headers.containsKey(HttpHeaders.CONTENT_ENCODING)) {
+      Object useEncoding = request.getConfiguration().getProperty(ClientProperties.USE_ENCODING);
+      if (useEncoding != null && CompressionCodecs.get(useEncoding.toString()) != null) {
+        headers.putSingle(HttpHeaders.CONTENT_ENCODING, useEncoding);
+      }
+    }
+  }
+
+}
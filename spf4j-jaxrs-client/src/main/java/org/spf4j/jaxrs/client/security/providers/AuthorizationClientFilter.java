@@ -19,7 +19,6 @@ import java.util.function.Consumer;
 import javax.annotation.Priority;
 import javax.ws.rs.Priorities;
 import javax.ws.rs.client.ClientRequestContext;
-import javax.ws.rs.client.ClientRequestFilter;
 import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.ext.Provider;
 
@@ -29,7 +28,7 @@ import javax.ws.rs.ext.Provider;
  */
 @Priority(Priorities.HEADER_DECORATOR)
 @Provider
-public class AuthorizationClientFilter implements ClientRequestFilter {
+public class AuthorizationClientFilter implements CallerCredentialsClientFilter {
 
   public static final AuthorizationClientFilter NOP_AUTH_FILTER
           = new AuthorizationClientFilter(AuthenticationScheme.Bearer, (sb) -> { });
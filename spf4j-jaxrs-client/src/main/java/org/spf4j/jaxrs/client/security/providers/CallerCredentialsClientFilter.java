@@ -0,0 +1,29 @@
+/*
+ * Copyright 2021 SPF4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.jaxrs.client.security.providers;
+
+import javax.ws.rs.client.ClientRequestFilter;
+
+/**
+ * Marker for request filters that add caller specific credentials (Authorization, Cookie...) to requests.
+ * GET request coalescing (Spf4jClientProperties.COALESCE_GETS) is disabled for clients with such a filter,
+ * since the coalescing key is computed before the request filters run.
+ *
+ * @author Zoltan Farkas
+ */
+public interface CallerCredentialsClientFilter extends ClientRequestFilter {
+
+}
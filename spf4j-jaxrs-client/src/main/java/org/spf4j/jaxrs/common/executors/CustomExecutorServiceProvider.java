@@ -25,13 +25,25 @@ public class CustomExecutorServiceProvider implements ExecutorServiceProvider {
 
   private final String executorName;
 
+  private final boolean virtualThreads;
+
   public CustomExecutorServiceProvider(final int coreSize, final int maxSize, final int idleMillis,
           final int cleanShutdownWaitMillis, final String executorName) {
+    this(coreSize, maxSize, idleMillis, cleanShutdownWaitMillis, executorName, false);
+  }
+
+  /**
+   * @param virtualThreads if true, and the runtime supports them (JDK 21+), tasks are executed in virtual threads,
+   * with no concurrency limit, the pool sizes are ignored.
+   */
+  public CustomExecutorServiceProvider(final int coreSize, final int maxSize, final int idleMillis,
+          final int cleanShutdownWaitMillis, final String executorName, final boolean virtualThreads) {
     this.coreSize = coreSize;
     this.maxSize = maxSize;
     this.idleMillis = idleMillis;
     this.cleanShutdownWaitMillis = cleanShutdownWaitMillis;
     this.executorName = executorName;
+    this.virtualThreads = virtualThreads;
   }
 
   /**
@@ -41,6 +53,13 @@ public class CustomExecutorServiceProvider implements ExecutorServiceProvider {
   public ExecutorService getExecutorService() {
     Logger.getLogger(CustomExecutorServiceProvider.class.getName())
             .log(Level.FINE, "Starting executor {0}", executorName);
+    if (virtualThreads) {
+      if (VirtualThreads.isAvailable()) {
+        return new ContextPropagatingExecutorService(VirtualThreads.newExecutor(executorName + '-'));
+      }
+      Logger.getLogger(CustomExecutorServiceProvider.class.getName()).log(Level.WARNING,
+              "Virtual threads not available, using a thread pool for {0}", executorName);
+    }
     return new ContextPropagatingExecutorService(LifoThreadPoolBuilder.newBuilder()
             .withCoreSize(coreSize)
             .withMaxSize(maxSize)
@@ -87,7 +106,7 @@ public class CustomExecutorServiceProvider implements ExecutorServiceProvider {
   public String toString() {
     return "CustomExecutorServiceProvider{" + "coreSize=" + coreSize + ", maxSize="
             + maxSize + ", idleMillis=" + idleMillis + ", cleanShutdownWaitMillis="
-            + cleanShutdownWaitMillis + ", executorName=" + executorName + '}';
+            + cleanShutdownWaitMillis + ", executorName=" + executorName + ", virtualThreads=" + virtualThreads + '}';
   }
 
 
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2021 SPF4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.jaxrs.common.executors;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+
+/**
+ * Virtual thread (JDK 21+) support, accessed via reflection since the baseline is java 8.
+ *
+ * @author Zoltan Farkas
+ */
+public final class VirtualThreads {
+
+  @Nullable
+  private static final Method OF_VIRTUAL;
+
+  @Nullable
+  private static final Method NAME;
+
+  @Nullable
+  private static final Method FACTORY;
+
+  @Nullable
+  private static final Method NEW_THREAD_PER_TASK_EXECUTOR;
+
+  static {
+    Method ofVirtual = null;
+    Method name = null;
+    Method factory = null;
+    Method newExecutor = null;
+    try {
+      Class<?> builderClass = Class.forName("java.lang.Thread$Builder$OfVirtual");
+      ofVirtual = Thread.class.getMethod("ofVirtual");
+      name = builderClass.getMethod("name", String.class, long.class);
+      factory = builderClass.getMethod("factory");
+      newExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+      // on JDK 19/20 virtual threads are a preview feature, make sure they are enabled.
+      ofVirtual.invoke(null);
+    } catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException
+            | InvocationTargetException | RuntimeException ex) {
+      Logger.getLogger(VirtualThreads.class.getName()).log(Level.FINE, "Virtual threads not available", ex);
+      ofVirtual = null;
+    }
+    OF_VIRTUAL = ofVirtual;
+    NAME = name;
+    FACTORY = factory;
+    NEW_THREAD_PER_TASK_EXECUTOR = newExecutor;
+  }
+
+  private VirtualThreads() { }
+
+  public static boolean isAvailable() {
+    return OF_VIRTUAL != null;
+  }
+
+  /**
+   * @param namePrefix the thread name prefix, threads will be named namePrefix + counter.
+   * @return a factory of virtual threads.
+   * @throws UnsupportedOperationException if virtual threads are not available in this runtime.
+   */
+  public static ThreadFactory newThreadFactory(final String namePrefix) {
+    if (OF_VIRTUAL == null) {
+      throw new UnsupportedOperationException("Virtual threads not available in " + System.getProperty("java.version"));
+    }
+    try {
+      Object builder = NAME.invoke(OF_VIRTUAL.invoke(null), namePrefix, 0L);
+      return (ThreadFactory) FACTORY.invoke(builder);
+    } catch (IllegalAccessException | InvocationTargetException ex) {
+      throw new UnsupportedOperationException("Cannot create virtual thread factory " + namePrefix, ex);
+    }
+  }
+
+  /**
+   * @param namePrefix the thread name prefix.
+   * @return a executor that runs every task in a new virtual thread.
+   * @throws UnsupportedOperationException if virtual threads are not available in this runtime.
+   */
+  public static ExecutorService newExecutor(final String namePrefix) {
+    ThreadFactory factory = newThreadFactory(namePrefix);
+    try {
+      return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, factory);
+    } catch (IllegalAccessException | InvocationTargetException ex) {
+      throw new UnsupportedOperationException("Cannot create virtual thread executor " + namePrefix, ex);
+    }
+  }
+
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2021 SPF4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.jaxrs.common.providers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A http content coding (compression algorithm).
+ *
+ * @author Zoltan Farkas
+ */
+public interface CompressionCodec {
+
+  /**
+   * @return the content coding name, as used in Content-Encoding and Accept-Encoding.
+   */
+  String getName();
+
+  /**
+   * @return the level to use when not specified, configurable via spf4j.jaxrs.[name].level system property.
+   */
+  int getDefaultLevel();
+
+  /**
+   * @param level compression level, codec specific (zstd: 1-22, brotli: 0-11, gzip/deflate: 1-9),
+   * values outside the codec range are clamped.
+   * @return a stream that will compress the data written to it, flush will output all data written so far.
+   */
+  OutputStream encode(OutputStream os, int level) throws IOException;
+
+  InputStream decode(InputStream is) throws IOException;
+
+}
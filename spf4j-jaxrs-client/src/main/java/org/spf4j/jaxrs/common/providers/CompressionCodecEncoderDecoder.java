@@ -0,0 +1,75 @@
+/*
+ * Copyright 2021 SPF4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.jaxrs.common.providers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import org.glassfish.jersey.spi.ContentEncoder;
+import org.spf4j.io.LazyOutputStreamWrapper;
+
+/**
+ * Base for the content encoders backed by a {@link CompressionCodec}.
+ * Encoding streams are created lazily, so that compression headers written on creation, do not commit
+ * the http headers.
+ *
+ * @author Zoltan Farkas
+ */
+public abstract class CompressionCodecEncoderDecoder extends ContentEncoder {
+
+  private final CompressionCodec codec;
+
+  private final int level;
+
+  protected CompressionCodecEncoderDecoder(final CompressionCodec codec, final int level,
+          final String... encodings) {
+    super(encodings);
+    this.codec = codec;
+    this.level = level;
+  }
+
+  @Override
+  public final InputStream decode(final String contentEncoding, final InputStream encodedStream)
+          throws IOException {
+    return codec.decode(encodedStream);
+  }
+
+  @Override
+  public final OutputStream encode(final String contentEncoding, final OutputStream entityStream) {
+    return new LazyOutputStreamWrapper(() ->  {
+      try {
+        return codec.encode(entityStream, level);
+      } catch (IOException ex) {
+        throw new UncheckedIOException(ex);
+      }
+    });
+  }
+
+  public final CompressionCodec getCodec() {
+    return codec;
+  }
+
+  public final int getLevel() {
+    return level;
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "{" + "codec=" + codec.getName() + ", level=" + level + '}';
+  }
+
+}
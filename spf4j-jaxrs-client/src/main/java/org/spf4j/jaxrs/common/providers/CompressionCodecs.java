@@ -0,0 +1,218 @@
+/*
+ * Copyright 2021 SPF4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.jaxrs.common.providers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.Deflater;
+import javax.annotation.Nullable;
+import org.spf4j.http.AcceptEncoding;
+
+/**
+ * The available compression codecs.
+ *
+ * zstd (zstd-jni) and brotli (brotli4j) are optional dependencies, they are available only if the libraries
+ * (and their native components) are present in the runtime.
+ *
+ * @author Zoltan Farkas
+ */
+public final class CompressionCodecs {
+
+  public static final CompressionCodec GZIP = new GzipCodec();
+
+  public static final CompressionCodec DEFLATE = new DeflateCodec();
+
+  @Nullable
+  public static final CompressionCodec ZSTD = load("org.spf4j.jaxrs.common.providers.ZstdCodec");
+
+  @Nullable
+  public static final CompressionCodec BROTLI = load("org.spf4j.jaxrs.common.providers.BrotliCodec");
+
+  /** available codecs, in order of preference. */
+  private static final List<CompressionCodec> AVAILABLE = availableCodecs();
+
+  private static final List<String> AVAILABLE_NAMES = codecNames();
+
+  private static final String ACCEPT_ENCODING = acceptEncodingHeader();
+
+  private CompressionCodecs() { }
+
+  /**
+   * Instantiate a optional codec reflectively, the codec class is the only one referencing the optional library,
+   * so that a missing library results in a unavailable codec, and not in a NoClassDefFoundError here.
+   */
+  @Nullable
+  private static CompressionCodec load(final String codecClassName) {
+    try {
+      return Class.forName(codecClassName, true, CompressionCodecs.class.getClassLoader())
+              .asSubclass(CompressionCodec.class).getDeclaredConstructor().newInstance();
+    } catch (ReflectiveOperationException | LinkageError | RuntimeException ex) {
+      Logger.getLogger(CompressionCodecs.class.getName()).log(Level.FINE, "Codec not available", ex);
+      return null;
+    }
+  }
+
+  private static List<CompressionCodec> availableCodecs() {
+    List<CompressionCodec> result = new ArrayList<>(4);
+    if (ZSTD != null) {
+      result.add(ZSTD);
+    }
+    if (BROTLI != null) {
+      result.add(BROTLI);
+    }
+    result.add(GZIP);
+    result.add(DEFLATE);
+    return Collections.unmodifiableList(result);
+  }
+
+  private static List<String> codecNames() {
+    List<String> result = new ArrayList<>(AVAILABLE.size());
+    for (CompressionCodec codec : AVAILABLE) {
+      result.add(codec.getName());
+    }
+    return Collections.unmodifiableList(result);
+  }
+
+  private static String acceptEncodingHeader() {
+    StringBuilder sb = new StringBuilder(48);
+    int i = 0;
+    for (CompressionCodec codec : AVAILABLE) {
+      if (i > 0) {
+        sb.append(", ").append(codec.getName()).append(";q=0.").append(10 - i);
+      } else {
+        sb.append(codec.getName());
+      }
+      i++;
+    }
+    return sb.toString();
+  }
+
+  /**
+   * @return the available codecs, in order of preference.
+   */
+  public static List<CompressionCodec> available() {
+    return AVAILABLE;
+  }
+
+  /**
+   * @return a Accept-Encoding header value with all available codecs, with q-values reflecting the preference.
+   */
+  public static String getAcceptEncoding() {
+    return ACCEPT_ENCODING;
+  }
+
+  @Nullable
+  public static CompressionCodec get(final String name) {
+    for (CompressionCodec codec : AVAILABLE) {
+      if (codec.getName().equalsIgnoreCase(name)) {
+        return codec;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @throws IllegalStateException if the codec is a optional one (zstd, br) whose library is not in the runtime.
+   * @throws IllegalArgumentException if the codec name is not known.
+   */
+  public static CompressionCodec getRequired(final String name) {
+    CompressionCodec codec = get(name);
+    if (codec == null) {
+      if ("zstd".equalsIgnoreCase(name) || "br".equalsIgnoreCase(name)) {
+        throw new IllegalStateException("Codec " + name + " not available, optional library missing, available: "
+                + AVAILABLE_NAMES);
+      }
+      throw new IllegalArgumentException("Unknown codec: " + name + ", available: " + AVAILABLE_NAMES);
+    }
+    return codec;
+  }
+
+  /**
+   * @param acceptEncoding the Accept-Encoding header value.
+   * @return the best codec (by q-value and preference), null if none is acceptable.
+   */
+  @Nullable
+  public static CompressionCodec negotiate(@Nullable final String acceptEncoding) {
+    String name = AcceptEncoding.negotiate(acceptEncoding, AVAILABLE_NAMES);
+    return name == null ? null : get(name);
+  }
+
+  static int clamp(final int level, final int min, final int max) {
+    return Math.max(min, Math.min(max, level));
+  }
+
+  private static int zlibLevel(final int level) {
+    return level == Deflater.DEFAULT_COMPRESSION ? level : clamp(level, 1, 9);
+  }
+
+  private static final class GzipCodec implements CompressionCodec {
+
+    private final int defaultLevel = Integer.getInteger("spf4j.jaxrs.gzip.level", Deflater.DEFAULT_COMPRESSION);
+
+    @Override
+    public String getName() {
+      return "gzip";
+    }
+
+    @Override
+    public int getDefaultLevel() {
+      return defaultLevel;
+    }
+
+    @Override
+    public OutputStream encode(final OutputStream os, final int level) throws IOException {
+      return new PooledDeflaterOutputStream(os, zlibLevel(level), true);
+    }
+
+    @Override
+    public InputStream decode(final InputStream is) throws IOException {
+      return new PooledInflaterInputStream(is, PooledInflaterInputStream.Format.GZIP);
+    }
+  }
+
+  private static final class DeflateCodec implements CompressionCodec {
+
+    private final int defaultLevel = Integer.getInteger("spf4j.jaxrs.deflate.level", Deflater.DEFAULT_COMPRESSION);
+
+    @Override
+    public String getName() {
+      return "deflate";
+    }
+
+    @Override
+    public int getDefaultLevel() {
+      return defaultLevel;
+    }
+
+    @Override
+    public OutputStream encode(final OutputStream os, final int level) throws IOException {
+      // http deflate is the zlib format.
+      return new PooledDeflaterOutputStream(os, zlibLevel(level), false);
+    }
+
+    @Override
+    public InputStream decode(final InputStream is) throws IOException {
+      return new PooledInflaterInputStream(is, PooledInflaterInputStream.Format.ZLIB_OR_RAW);
+    }
+  }
+
+}
@@ -15,16 +15,8 @@
  */
 package org.spf4j.jaxrs.common.providers;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.io.UncheckedIOException;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 import javax.annotation.Priority;
 import javax.ws.rs.Priorities;
-import org.glassfish.jersey.spi.ContentEncoder;
-import org.spf4j.io.LazyOutputStreamWrapper;
 
 /**
  * GZIP encoding support. Interceptor that encodes the output or decodes the input if
@@ -35,28 +27,17 @@ import org.spf4j.io.LazyOutputStreamWrapper;
  * @author zolyfarkas
  */
 @Priority(Priorities.ENTITY_CODER)
-public final class GZipEncoderDecoder extends ContentEncoder {
-    /**
-     * Initialize GZipEncoder.
-     */
-    public GZipEncoderDecoder() {
-        super("gzip", "x-gzip");
-    }
+public final class GZipEncoderDecoder extends CompressionCodecEncoderDecoder {
 
-    @Override
-    public InputStream decode(final String contentEncoding, final InputStream encodedStream)
-            throws IOException {
-        return new GZIPInputStream(encodedStream);
-    }
+  /**
+   * Initialize GZipEncoder, with the default level. (spf4j.jaxrs.gzip.level)
+   */
+  public GZipEncoderDecoder() {
+    this(CompressionCodecs.GZIP.getDefaultLevel());
+  }
 
-    @Override
-    public OutputStream encode(final String contentEncoding, final OutputStream entityStream) {
-        return new LazyOutputStreamWrapper(() ->  {
-          try {
-            return new GZIPOutputStream(entityStream);
-          } catch (IOException ex) {
-            throw new UncheckedIOException(ex);
-          }
-        });
-    }
-}
\ No newline at end of file
+  public GZipEncoderDecoder(final int level) {
+    super(CompressionCodecs.GZIP, level, "gzip", "x-gzip");
+  }
+
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2021 SPF4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.jaxrs.common.providers;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * A deflater output stream (zlib or gzip format) that borrows its Deflater and buffer from the ZlibPool,
+ * and returns them on close.
+ * flush() does a SYNC_FLUSH, so that all data written so far can be decoded by the receiver.
+ *
+ * @author Zoltan Farkas
+ */
+@ParametersAreNonnullByDefault
+final class PooledDeflaterOutputStream extends OutputStream {
+
+  private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+  private final OutputStream out;
+
+  private final boolean gzip;
+
+  private final Deflater deflater;
+
+  private final byte[] buf;
+
+  private final CRC32 crc;
+
+  /** single byte buffer reused by write(int). */
+  private final byte[] single = new byte[1];
+
+  private boolean closed;
+
+  /**
+   * @param out the destination stream.
+   * @param level the compression level.
+   * @param gzip true for the gzip format (rfc1952), false for the zlib format (rfc1950).
+   */
+  PooledDeflaterOutputStream(final OutputStream out, final int level, final boolean gzip) throws IOException {
+    this.out = out;
+    this.gzip = gzip;
+    this.deflater = ZlibPool.getDeflater(level, gzip);
+    this.buf = ZlibPool.getBuffer();
+    if (gzip) {
+      this.crc = new CRC32();
+      out.write(GZIP_HEADER);
+    } else {
+      this.crc = null;
+    }
+    this.closed = false;
+  }
+
+  @Override
+  public void write(final int b) throws IOException {
+    single[0] = (byte) b;
+    write(single, 0, 1);
+  }
+
+  @Override
+  public void write(final byte[] b, final int off, final int len) throws IOException {
+    if (closed) {
+      throw new IOException("Stream closed " + this);
+    }
+    if (len == 0) {
+      return;
+    }
+    if (crc != null) {
+      crc.update(b, off, len);
+    }
+    deflater.setInput(b, off, len);
+    while (!deflater.needsInput()) {
+      deflate(Deflater.NO_FLUSH);
+    }
+  }
+
+  private int deflate(final int flush) throws IOException {
+    int len = deflater.deflate(buf, 0, buf.length, flush);
+    if (len > 0) {
+      out.write(buf, 0, len);
+    }
+    return len;
+  }
+
+  @Override
+  public void flush() throws IOException {
+    if (closed) {
+      return;
+    }
+    int len;
+    do {
+      len = deflate(Deflater.SYNC_FLUSH);
+    } while (len == buf.length);
+    out.flush();
+  }
+
+  private void finish() throws IOException {
+    deflater.finish();
+    while (!deflater.finished()) {
+      deflate(Deflater.NO_FLUSH);
+    }
+    if (gzip) {
+      writeIntLE((int) crc.getValue());
+      writeIntLE((int) deflater.getBytesRead());
+    }
+  }
+
+  private void writeIntLE(final int val) throws IOException {
+    out.write(val & 0xff);
+    out.write((val >> 8) & 0xff);
+    out.write((val >> 16) & 0xff);
+    out.write((val >> 24) & 0xff);
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try (OutputStream os = out) {
+      finish();
+    } finally {
+      ZlibPool.release(deflater, gzip);
+      ZlibPool.release(buf);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "PooledDeflaterOutputStream{" + "out=" + out + ", gzip=" + gzip + ", closed=" + closed + '}';
+  }
+
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright 2021 SPF4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.jaxrs.common.providers;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * A inflater input stream (gzip, zlib or raw deflate) that borrows its Inflater and buffer from the ZlibPool,
+ * and returns them on close.
+ * Concatenated gzip members are decoded as one stream (like GZIPInputStream does).
+ *
+ * @author Zoltan Farkas
+ */
+@ParametersAreNonnullByDefault
+final class PooledInflaterInputStream extends InputStream {
+
+  enum Format {
+    GZIP,
+    /** zlib format, or raw deflate if the zlib header is missing. */
+    ZLIB_OR_RAW
+  }
+
+  private static final int FHCRC = 2;
+  private static final int FEXTRA = 4;
+  private static final int FNAME = 8;
+  private static final int FCOMMENT = 16;
+
+  private final InputStream in;
+
+  private final boolean nowrap;
+
+  private final Inflater inflater;
+
+  private final byte[] buf;
+
+  private final CRC32 crc;
+
+  /** single byte buffer reused by read(). */
+  private final byte[] single = new byte[1];
+
+  private int pos;
+
+  private int lim;
+
+  private boolean eof;
+
+  private boolean closed;
+
+  PooledInflaterInputStream(final InputStream in, final Format format) throws IOException {
+    this.in = in;
+    this.buf = ZlibPool.getBuffer();
+    this.pos = 0;
+    this.lim = 0;
+    this.eof = false;
+    this.closed = false;
+    Inflater inf = null;
+    try {
+      if (format == Format.GZIP) {
+        this.nowrap = true;
+        this.crc = new CRC32();
+        readGzipHeader();
+      } else {
+        this.crc = null;
+        // some implementations send raw deflate instead of zlib, detect the zlib header.
+        if (fill(2)) {
+          int b0 = buf[pos] & 0xff;
+          int b1 = buf[pos + 1] & 0xff;
+          this.nowrap = (b0 & 0x0F) != Deflater.DEFLATED || ((b0 << 8) | b1) % 31 != 0;
+        } else {
+          this.nowrap = true;
+        }
+      }
+      inf = ZlibPool.getInflater(nowrap);
+    } finally {
+      if (inf == null) {
+        ZlibPool.release(buf);
+      }
+    }
+    this.inflater = inf;
+  }
+
+  /**
+   * make sure at least n bytes are buffered.
+   * @return false if the end of the stream is reached before.
+   */
+  private boolean fill(final int n) throws IOException {
+    if (lim - pos >= n) {
+      return true;
+    }
+    if (pos > 0) {
+      System.arraycopy(buf, pos, buf, 0, lim - pos);
+      lim -= pos;
+      pos = 0;
+    }
+    while (lim < n) {
+      int nr = in.read(buf, lim, buf.length - lim);
+      if (nr < 0) {
+        return false;
+      }
+      lim += nr;
+    }
+    return true;
+  }
+
+  private int readUByte() throws IOException {
+    if (!fill(1)) {
+      throw new EOFException("Unexpected end of gzip stream " + this);
+    }
+    return buf[pos++] & 0xff;
+  }
+
+  private int readUShortLE() throws IOException {
+    return readUByte() | (readUByte() << 8);
+  }
+
+  private long readUIntLE() throws IOException {
+    return ((long) readUShortLE()) | (((long) readUShortLE()) << 16);
+  }
+
+  private void skip(final int n) throws IOException {
+    for (int i = 0; i < n; i++) {
+      readUByte();
+    }
+  }
+
+  private void skipZeroTerminated() throws IOException {
+    while (readUByte() != 0) {
+      // skip
+    }
+  }
+
+  private void readGzipHeader() throws IOException {
+    if (readUShortLE() != 0x8b1f) {
+      throw new ZipException("Not in GZIP format " + this);
+    }
+    if (readUByte() != Deflater.DEFLATED) {
+      throw new ZipException("Unsupported compression method " + this);
+    }
+    int flags = readUByte();
+    skip(6); // mtime, xfl, os
+    if ((flags & FEXTRA) != 0) {
+      skip(readUShortLE());
+    }
+    if ((flags & FNAME) != 0) {
+      skipZeroTerminated();
+    }
+    if ((flags & FCOMMENT) != 0) {
+      skipZeroTerminated();
+    }
+    if ((flags & FHCRC) != 0) {
+      skip(2);
+    }
+  }
+
+  /**
+   * @return true if another gzip member follows.
+   */
+  private boolean readGzipTrailer() throws IOException {
+    if (readUIntLE() != crc.getValue()) {
+      throw new ZipException("Corrupt GZIP trailer (crc) " + this);
+    }
+    if (readUIntLE() != (inflater.getBytesWritten() & 0xffffffffL)) {
+      throw new ZipException("Corrupt GZIP trailer (size) " + this);
+    }
+    if (fill(2) && (buf[pos] & 0xff) == 0x1f && (buf[pos + 1] & 0xff) == 0x8b) {
+      readGzipHeader();
+      inflater.reset();
+      crc.reset();
+      return true;
+    }
+    return false;
+  }
+
+  @Override
+  public int read() throws IOException {
+    return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+  }
+
+  @Override
+  public int read(final byte[] b, final int off, final int len) throws IOException {
+    if (closed) {
+      throw new IOException("Stream closed " + this);
+    }
+    if (len == 0) {
+      return 0;
+    }
+    while (!eof) {
+      int nr;
+      try {
+        nr = inflater.inflate(b, off, len);
+      } catch (DataFormatException ex) {
+        throw new ZipException("Invalid compressed data " + ex.getMessage() + ", " + this);
+      }
+      if (nr > 0) {
+        if (crc != null) {
+          crc.update(b, off, nr);
+        }
+        return nr;
+      }
+      if (inflater.needsDictionary()) {
+        throw new ZipException("Preset dictionaries are not supported " + this);
+      }
+      if (inflater.finished()) {
+        pos = lim - inflater.getRemaining();
+        if (crc == null || !readGzipTrailer()) {
+          eof = true;
+        }
+      } else if (inflater.needsInput()) {
+        if (!fill(1)) {
+          throw new EOFException("Unexpected end of compressed stream " + this);
+        }
+        inflater.setInput(buf, pos, lim - pos);
+        pos = lim;
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  public int available() throws IOException {
+    return eof || closed ? 0 : 1;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      in.close();
+    } finally {
+      ZlibPool.release(inflater, nowrap);
+      ZlibPool.release(buf);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "PooledInflaterInputStream{" + "in=" + in + ", nowrap=" + nowrap + ", eof=" + eof
+            + ", closed=" + closed + '}';
+  }
+
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2021 SPF4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.jaxrs.common.providers;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Bounded pools of reset-able Deflater/Inflater instances and their io buffers.
+ * Creating zlib contexts is expensive (native memory, released only on end() or by a cleaner),
+ * pooled instances are reset and reused, instances in excess of the pool size are ended on release.
+ *
+ * @author Zoltan Farkas
+ */
+final class ZlibPool {
+
+  static final int BUFFER_SIZE = Integer.getInteger("spf4j.jaxrs.zlib.bufferSize", 8192);
+
+  private static final int POOL_SIZE = Integer.getInteger("spf4j.jaxrs.zlib.poolSize",
+          Runtime.getRuntime().availableProcessors() * 2);
+
+  private static final ArrayBlockingQueue<Deflater> DEFLATERS = new ArrayBlockingQueue<>(POOL_SIZE);
+
+  private static final ArrayBlockingQueue<Deflater> RAW_DEFLATERS = new ArrayBlockingQueue<>(POOL_SIZE);
+
+  private static final ArrayBlockingQueue<Inflater> INFLATERS = new ArrayBlockingQueue<>(POOL_SIZE);
+
+  private static final ArrayBlockingQueue<Inflater> RAW_INFLATERS = new ArrayBlockingQueue<>(POOL_SIZE);
+
+  private static final ArrayBlockingQueue<byte[]> BUFFERS = new ArrayBlockingQueue<>(POOL_SIZE * 2);
+
+  private ZlibPool() { }
+
+  /**
+   * @param level the compression level.
+   * @param nowrap true for raw deflate (used by gzip), false for the zlib format.
+   */
+  static Deflater getDeflater(final int level, final boolean nowrap) {
+    Deflater deflater = (nowrap ? RAW_DEFLATERS : DEFLATERS).poll();
+    if (deflater == null) {
+      return new Deflater(level, nowrap);
+    }
+    deflater.setLevel(level);
+    return deflater;
+  }
+
+  static void release(final Deflater deflater, final boolean nowrap) {
+    deflater.reset();
+    if (!(nowrap ? RAW_DEFLATERS : DEFLATERS).offer(deflater)) {
+      deflater.end();
+    }
+  }
+
+  static Inflater getInflater(final boolean nowrap) {
+    Inflater inflater = (nowrap ? RAW_INFLATERS : INFLATERS).poll();
+    if (inflater == null) {
+      return new Inflater(nowrap);
+    }
+    return inflater;
+  }
+
+  static void release(final Inflater inflater, final boolean nowrap) {
+    inflater.reset();
+    if (!(nowrap ? RAW_INFLATERS : INFLATERS).offer(inflater)) {
+      inflater.end();
+    }
+  }
+
+  static byte[] getBuffer() {
+    byte[] buffer = BUFFERS.poll();
+    if (buffer == null) {
+      return new byte[BUFFER_SIZE];
+    }
+    return buffer;
+  }
+
+  static void release(final byte[] buffer) {
+    BUFFERS.offer(buffer);
+  }
+
+}
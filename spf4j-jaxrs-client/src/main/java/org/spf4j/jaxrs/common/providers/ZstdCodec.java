@@ -0,0 +1,59 @@
+/*
+ * Copyright 2021 SPF4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.jaxrs.common.providers;
+
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+import com.github.luben.zstd.util.Native;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Zstandard codec, the only class referencing zstd-jni, instantiated reflectively by CompressionCodecs,
+ * only when the library is available.
+ *
+ * @author Zoltan Farkas
+ */
+final class ZstdCodec implements CompressionCodec {
+
+  private final int defaultLevel = Integer.getInteger("spf4j.jaxrs.zstd.level", 3);
+
+  ZstdCodec() {
+    Native.load();
+  }
+
+  @Override
+  public String getName() {
+    return "zstd";
+  }
+
+  @Override
+  public int getDefaultLevel() {
+    return defaultLevel;
+  }
+
+  @Override
+  public OutputStream encode(final OutputStream os, final int level) throws IOException {
+    return new ZstdOutputStream(os, CompressionCodecs.clamp(level, 1, 22));
+  }
+
+  @Override
+  public InputStream decode(final InputStream is) throws IOException {
+    return new ZstdInputStream(is);
+  }
+
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2021 SPF4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.jaxrs.common.providers;
+
+import javax.annotation.Priority;
+import javax.ws.rs.Priorities;
+
+/**
+ * Zstandard (RFC 8878) content encoding support.
+ * Requires the optional zstd-jni library in the class path.
+ *
+ * @author Zoltan Farkas
+ */
+@Priority(Priorities.ENTITY_CODER)
+public final class ZstdEncoderDecoder extends CompressionCodecEncoderDecoder {
+
+  public ZstdEncoderDecoder() {
+    this(CompressionCodecs.getRequired("zstd").getDefaultLevel());
+  }
+
+  public ZstdEncoderDecoder(final int level) {
+    super(CompressionCodecs.getRequired("zstd"), level, "zstd");
+  }
+
+}
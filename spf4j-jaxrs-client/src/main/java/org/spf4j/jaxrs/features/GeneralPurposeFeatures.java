@@ -17,8 +17,11 @@ package org.spf4j.jaxrs.features;
 
 import javax.ws.rs.core.Feature;
 import javax.ws.rs.core.FeatureContext;
-import org.glassfish.jersey.message.DeflateEncoder;
+import org.spf4j.jaxrs.common.providers.BrotliEncoderDecoder;
+import org.spf4j.jaxrs.common.providers.CompressionCodecs;
+import org.spf4j.jaxrs.common.providers.DeflateEncoderDecoder;
 import org.spf4j.jaxrs.common.providers.GZipEncoderDecoder;
+import org.spf4j.jaxrs.common.providers.ZstdEncoderDecoder;
 import org.spf4j.jaxrs.common.providers.gp.CharSequenceMessageProvider;
 import org.spf4j.jaxrs.common.providers.gp.CsvParameterConverterProvider;
 import org.spf4j.jaxrs.common.providers.gp.DirectStringMessageProvider;
@@ -43,8 +46,14 @@ public final class GeneralPurposeFeatures implements Feature {
     fc.register(new DurationParameterConverterProvider());
     fc.register(new SampleNodeMessageProviderJson());
     fc.register(new SampleNodeMessageProviderD3Json());
+    if (CompressionCodecs.ZSTD != null) {
+      fc.register(new ZstdEncoderDecoder());
+    }
+    if (CompressionCodecs.BROTLI != null) {
+      fc.register(new BrotliEncoderDecoder());
+    }
     fc.register(new GZipEncoderDecoder());
-    fc.register(DeflateEncoder.class);
+    fc.register(new DeflateEncoderDecoder());
     return true;
   }
 
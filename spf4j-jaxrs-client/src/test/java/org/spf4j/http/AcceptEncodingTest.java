@@ -0,0 +1,41 @@
+/*
+ * Copyright 2021 SPF4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.http;
+
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author Zoltan Farkas
+ */
+public class AcceptEncodingTest {
+
+  @Test
+  public void testNegotiation() {
+    List<String> supported = Arrays.asList("zstd", "br", "gzip", "deflate");
+    Assert.assertEquals("gzip", AcceptEncoding.negotiate("gzip, deflate", supported));
+    Assert.assertEquals("br", AcceptEncoding.negotiate("gzip;q=0.8, br", supported));
+    Assert.assertEquals("zstd", AcceptEncoding.negotiate("*", supported));
+    Assert.assertEquals("deflate", AcceptEncoding.negotiate("*;q=0.5, zstd;q=0, br;q=0, gzip;q=0.1", supported));
+    Assert.assertNull(AcceptEncoding.negotiate("identity", supported));
+    Assert.assertNull(AcceptEncoding.negotiate(null, supported));
+    Assert.assertEquals(0.5, AcceptEncoding.qValue("gzip ; q=0.5,br", "gzip"), 0.0001);
+  }
+
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2021 SPF4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.jaxrs.client;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+import org.spf4j.base.ExecutionContext;
+import org.spf4j.base.ExecutionContexts;
+import org.spf4j.base.TimeSource;
+import org.spf4j.failsafe.Hedge;
+import org.spf4j.failsafe.HedgePolicy;
+
+/**
+ * @author Zoltan Farkas
+ */
+public class AdaptiveHedgeTest {
+
+  private static final HedgePolicy STATIC = (s, d) -> new Hedge(TimeUnit.SECONDS.toNanos(10), 2);
+
+  @Test
+  public void testBuckets() {
+    for (long v = 0; v < 100000; v++) {
+      int bucket = AdaptiveHedge.bucket(v);
+      Assert.assertTrue(v <= AdaptiveHedge.bucketUpperBound(bucket));
+      Assert.assertTrue(bucket == 0 || v > AdaptiveHedge.bucketUpperBound(bucket - 1));
+      Assert.assertTrue(AdaptiveHedge.bucketUpperBound(bucket) <= v + v / 16);
+    }
+  }
+
+  @Test
+  public void testQuantileDelayAndBudget() {
+    long now = 0;
+    AdaptiveHedge hedge = newTrainedHedge(now);
+    long delay = hedge.getHedgeDelayNanos();
+    Assert.assertTrue("delay " + delay, delay >= TimeUnit.MILLISECONDS.toNanos(950)
+            && delay <= TimeUnit.MILLISECONDS.toNanos(1010));
+    Hedge h = hedge.getPolicy(STATIC).getHedge(0, Long.MAX_VALUE);
+    Assert.assertEquals(delay, h.getHedgeDelayNanos());
+    Assert.assertEquals(2, h.getHedgeCount());
+    // initial credit reserved.
+    Assert.assertTrue(hedge.tryReserve());
+    Assert.assertFalse(hedge.tryReserve());
+    // 5% budget, 20 requests earn a hedge.
+    for (int i = 0; i < 19; i++) {
+      hedge.onRequest();
+    }
+    Assert.assertFalse(hedge.tryReserve());
+    hedge.onRequest();
+    Assert.assertTrue(hedge.tryReserve());
+    hedge.refund();
+    Assert.assertTrue(hedge.tryReserve());
+  }
+
+  @Test
+  public void testBudgetReservedPerCall() throws Exception {
+    AdaptiveHedge hedge = newTrainedHedge(TimeSource.nanoTime());
+    try (ExecutionContext ctx = ExecutionContexts.start("test", 1, TimeUnit.MINUTES)) {
+      HttpCallable<String> call1 = newCall(ctx, hedge);
+      HttpCallable<String> call2 = newCall(ctx, hedge);
+      HedgePolicy p1 = call1.getHedgePolicy(STATIC);
+      Assert.assertNotSame(STATIC, p1);
+      Assert.assertNotSame(HedgePolicy.NONE, p1);
+      // the only credit is reserved by call1, concurrent calls are not hedged.
+      Assert.assertSame(HedgePolicy.NONE, call2.getHedgePolicy(STATIC));
+      // call1 completes without hedging, the credit is returned.
+      Assert.assertEquals("ok", call1.call());
+      Assert.assertNotSame(HedgePolicy.NONE, newCall(ctx, hedge).getHedgePolicy(STATIC));
+    }
+  }
+
+  @Test
+  public void testCreditRefundedOnFailure() throws Exception {
+    AdaptiveHedge hedge = newTrainedHedge(TimeSource.nanoTime());
+    try (ExecutionContext ctx = ExecutionContexts.start("test", 1, TimeUnit.MINUTES)) {
+      HttpCallable<String> call = HttpCallable.invocationHandler(ctx, () -> {
+                throw new IllegalStateException("failed");
+              }, "GET test", URI.create("http://localhost/test"), "GET",
+              DefaultClientExceptionMapper.INSTANCE, TimeSource.nanoTime(), ctx.getDeadlineNanos(), -1, null, hedge);
+      Assert.assertNotSame(HedgePolicy.NONE, call.getHedgePolicy(STATIC));
+      Assert.assertSame(HedgePolicy.NONE, newCall(ctx, hedge).getHedgePolicy(STATIC));
+      try {
+        call.call();
+        Assert.fail();
+      } catch (Exception ex) {
+        // expected
+      }
+      // the call failed without hedging, the credit is returned.
+      Assert.assertNotSame(HedgePolicy.NONE, newCall(ctx, hedge).getHedgePolicy(STATIC));
+    }
+  }
+
+  private static HttpCallable<String> newCall(final ExecutionContext ctx, final AdaptiveHedge hedge) {
+    return HttpCallable.invocationHandler(ctx, () -> "ok", "GET test", URI.create("http://localhost/test"), "GET",
+            DefaultClientExceptionMapper.INSTANCE, TimeSource.nanoTime(), ctx.getDeadlineNanos(), -1, null, hedge);
+  }
+
+  private static AdaptiveHedge newTrainedHedge(final long startNanos) {
+    long now = startNanos;
+    AdaptiveHedge hedge = new AdaptiveHedge("test", 0.95, 1000, 100, 5, now);
+    Assert.assertSame(STATIC, hedge.getPolicy(STATIC));
+    for (int i = 1; i <= 1000; i++) {
+      hedge.recordLatency(TimeUnit.MILLISECONDS.toNanos(i), now);
+    }
+    now += TimeUnit.SECONDS.toNanos(1);
+    hedge.recordLatency(TimeUnit.MILLISECONDS.toNanos(1), now);
+    return hedge;
+  }
+
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2021 SPF4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.jaxrs.client;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+import javax.ws.rs.ServiceUnavailableException;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Zoltan Farkas
+ */
+public class CircuitBreakerTest {
+
+  private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  @Test
+  public void testOpenHalfOpenClose() {
+    CircuitBreaker cb = new CircuitBreaker("test", 1000, 10, 50, 0, 80, 100, 1000, 2);
+    long now = 0;
+    for (int i = 0; i < 9; i++) {
+      Assert.assertTrue(cb.tryAcquire(now));
+      cb.onResult(MS, true, now);
+    }
+    // not enough requests in the window.
+    Assert.assertEquals(CircuitBreaker.State.CLOSED, cb.getState());
+    cb.onResult(MS, true, now);
+    Assert.assertEquals(CircuitBreaker.State.OPEN, cb.getState());
+    Assert.assertFalse(cb.tryAcquire(now + 50 * MS));
+    ServiceUnavailableException openEx = cb.getOpenException();
+    Assert.assertTrue(openEx instanceof CircuitBreakerOpenException);
+    Assert.assertNotSame(openEx, cb.getOpenException());
+    Assert.assertEquals(0, openEx.getStackTrace().length);
+    Assert.assertEquals(503, openEx.getResponse().getStatus());
+    // half open, 2 probes allowed.
+    now += 100 * MS;
+    Assert.assertTrue(cb.tryAcquire(now));
+    Assert.assertTrue(cb.tryAcquire(now));
+    Assert.assertFalse(cb.tryAcquire(now));
+    Assert.assertEquals(CircuitBreaker.State.HALF_OPEN, cb.getState());
+    cb.onResult(MS, false, now);
+    cb.onResult(MS, false, now);
+    Assert.assertEquals(CircuitBreaker.State.CLOSED, cb.getState());
+    // window was reset.
+    cb.onResult(MS, true, now);
+    Assert.assertEquals(CircuitBreaker.State.CLOSED, cb.getState());
+  }
+
+  @Test
+  public void testProbeFailureBacksOff() {
+    CircuitBreaker cb = new CircuitBreaker("test", 1000, 2, 50, 0, 80, 100, 1000, 1);
+    long now = 0;
+    cb.onResult(MS, true, now);
+    cb.onResult(MS, true, now);
+    Assert.assertEquals(CircuitBreaker.State.OPEN, cb.getState());
+    now += 100 * MS;
+    Assert.assertTrue(cb.tryAcquire(now));
+    cb.onResult(MS, true, now);
+    Assert.assertEquals(CircuitBreaker.State.OPEN, cb.getState());
+    // open interval doubled.
+    Assert.assertFalse(cb.tryAcquire(now + 150 * MS));
+    Assert.assertTrue(cb.tryAcquire(now + 200 * MS));
+  }
+
+  @Test
+  public void testSlidingWindow() {
+    CircuitBreaker cb = new CircuitBreaker("test", 1000, 4, 50, 0, 80, 100, 1000, 1);
+    cb.onResult(MS, true, 0);
+    cb.onResult(MS, false, 0);
+    cb.onResult(MS, false, 0);
+    // old failures slide out of the window.
+    long now = 1500 * MS;
+    cb.onResult(MS, false, now);
+    cb.onResult(MS, true, now);
+    Assert.assertEquals(CircuitBreaker.State.CLOSED, cb.getState());
+    cb.onResult(MS, false, now);
+    cb.onResult(MS, true, now);
+    Assert.assertEquals(CircuitBreaker.State.OPEN, cb.getState());
+  }
+
+  @Test
+  public void testSlowCalls() {
+    CircuitBreaker cb = new CircuitBreaker("test", 1000, 5, 50, 10, 80, 100, 1000, 1);
+    for (int i = 0; i < 4; i++) {
+      cb.onResult(20 * MS, false, 0);
+    }
+    cb.onResult(MS, false, 0);
+    Assert.assertEquals(CircuitBreaker.State.CLOSED, cb.getState());
+    cb.onResult(20 * MS, false, 0);
+    Assert.assertEquals(CircuitBreaker.State.OPEN, cb.getState());
+  }
+
+  @Test
+  public void testOptIn() {
+    Spf4JClient client = new Spf4jClientBuilder().build();
+    try {
+      Spf4jWebTarget target = client.target("http://127.0.0.1:1/test");
+      Assert.assertFalse(CircuitBreaker.isEnabled(target.getConfiguration()));
+      Assert.assertTrue(CircuitBreaker.isEnabled(
+              target.property(Spf4jClientProperties.CIRCUIT_BREAKER, Boolean.TRUE).getConfiguration()));
+      Assert.assertSame(client.getCircuitBreaker(URI.create("http://127.0.0.2:1/a")),
+              client.getCircuitBreaker(URI.create("http://127.0.0.2:1/b")));
+    } finally {
+      client.close();
+    }
+  }
+
+}
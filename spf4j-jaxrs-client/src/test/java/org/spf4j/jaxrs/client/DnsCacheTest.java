@@ -0,0 +1,133 @@
+/*
+ * Copyright 2021 SPF4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.jaxrs.client;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Assert;
+import org.junit.Test;
+import org.spf4j.base.TimeSource;
+
+/**
+ * @author Zoltan Farkas
+ */
+public class DnsCacheTest {
+
+  private static InetAddress address(final int last) throws UnknownHostException {
+    return InetAddress.getByAddress(new byte[] {10, 0, 0, (byte) last});
+  }
+
+  @Test
+  public void testRefreshAhead() throws UnknownHostException {
+    AtomicReference<InetAddress[]> answer = new AtomicReference<>(new InetAddress[] {address(1)});
+    AtomicInteger resolutions = new AtomicInteger();
+    List<Runnable> refreshes = new ArrayList<>();
+    long now = TimeSource.nanoTime();
+    DnsCache cache = new DnsCache(resolver(answer, resolutions), 1000, Collections.singletonMap("other", 100000L),
+            300000, refreshes::add, now);
+    Assert.assertEquals(address(1), cache.getAddresses("test", now)[0]);
+    Assert.assertEquals(address(1), cache.getAddresses("test", now)[0]);
+    Assert.assertEquals(1, resolutions.get());
+    answer.set(new InetAddress[] {address(2)});
+    // after 75% of the TTL, the old address is returned while a refresh is scheduled.
+    long later = now + TimeUnit.MILLISECONDS.toNanos(800);
+    Assert.assertEquals(address(1), cache.getAddresses("test", later)[0]);
+    Assert.assertEquals(address(1), cache.getAddresses("test", later)[0]);
+    Assert.assertEquals(1, refreshes.size());
+    refreshes.remove(0).run();
+    Assert.assertEquals(address(2), cache.getAddresses("test", later)[0]);
+    // host TTL overwrite.
+    answer.set(new InetAddress[] {address(3)});
+    Assert.assertEquals(address(3), cache.getAddresses("other", now)[0]);
+    int nrRefreshes = refreshes.size();
+    cache.getAddresses("other", now + TimeUnit.MILLISECONDS.toNanos(10000));
+    Assert.assertEquals(nrRefreshes, refreshes.size());
+  }
+
+  @Test
+  public void testExpiredResolvedSynchronously() throws UnknownHostException {
+    AtomicReference<InetAddress[]> answer = new AtomicReference<>(new InetAddress[] {address(1)});
+    AtomicInteger resolutions = new AtomicInteger();
+    List<Runnable> refreshes = new ArrayList<>();
+    long now = TimeSource.nanoTime();
+    DnsCache cache = new DnsCache(resolver(answer, resolutions), 1000, Collections.emptyMap(),
+            300000, refreshes::add, now);
+    Assert.assertEquals(address(1), cache.getAddresses("test", now)[0]);
+    // a expired entry is not served, it is resolved on the calling thread.
+    answer.set(new InetAddress[] {address(2)});
+    long expired = now + TimeUnit.MILLISECONDS.toNanos(10000);
+    Assert.assertEquals(address(2), cache.getAddresses("test", expired)[0]);
+    Assert.assertEquals(2, resolutions.get());
+    Assert.assertTrue(refreshes.isEmpty());
+    // the expired addresses are served only if the resolution fails.
+    answer.set(null);
+    expired += TimeUnit.MILLISECONDS.toNanos(10000);
+    Assert.assertEquals(address(2), cache.getAddresses("test", expired)[0]);
+    Assert.assertEquals(3, resolutions.get());
+    // and the resolution is not retried on every call.
+    Assert.assertEquals(address(2), cache.getAddresses("test", expired + 1)[0]);
+    Assert.assertEquals(3, resolutions.get());
+    answer.set(new InetAddress[] {address(3)});
+    Assert.assertEquals(address(3), cache.getAddresses("test", expired + TimeUnit.SECONDS.toNanos(6))[0]);
+    Assert.assertEquals(4, resolutions.get());
+  }
+
+  @Test
+  public void testIdleEviction() throws UnknownHostException {
+    AtomicReference<InetAddress[]> answer = new AtomicReference<>(new InetAddress[] {address(1)});
+    AtomicInteger resolutions = new AtomicInteger();
+    long now = TimeSource.nanoTime();
+    DnsCache cache = new DnsCache(resolver(answer, resolutions), 100000, Collections.emptyMap(),
+            1000, Runnable::run, now);
+    cache.getAddresses("idle", now);
+    cache.getAddresses("used", now);
+    long later = now + TimeUnit.MILLISECONDS.toNanos(600);
+    cache.getAddresses("used", later);
+    Assert.assertEquals(2, resolutions.get());
+    long evictionTime = now + TimeUnit.MILLISECONDS.toNanos(1100);
+    cache.getAddresses("used", evictionTime);
+    Assert.assertEquals(2, resolutions.get());
+    cache.getAddresses("idle", evictionTime);
+    Assert.assertEquals(3, resolutions.get());
+  }
+
+  private static HostResolver resolver(final AtomicReference<InetAddress[]> answer,
+          final AtomicInteger resolutions) {
+    return host -> {
+      resolutions.incrementAndGet();
+      InetAddress[] result = answer.get();
+      if (result == null) {
+        throw new UnknownHostException(host);
+      }
+      return result;
+    };
+  }
+
+  @Test(expected = UnknownHostException.class)
+  public void testUnknownHost() throws UnknownHostException {
+    DnsCache cache = new DnsCache(host -> {
+      throw new UnknownHostException(host);
+    }, 1000, Collections.emptyMap(), 300000, Runnable::run, TimeSource.nanoTime());
+    cache.getAddresses("unknown");
+  }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2021 SPF4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.jaxrs.client;
+
+import java.net.URI;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.spf4j.base.ExecutionContext;
+import org.spf4j.base.ExecutionContexts;
+import org.spf4j.base.TimeSource;
+
+/**
+ * Measures the per call and per retry overhead of the attempt handling in HttpCallable.InvocationHandler
+ * (the http call itself is a no-op). Run with "-prof gc" to see the allocation rate per call (gc.alloc.rate.norm).
+ * Reference (JDK 17): call 488 B/op, callWithRetry 865 B/op with AtomicInteger attempt state and a per attempt
+ * context name; call 328 B/op, callWithRetry 745 B/op with the field updater based attempt state.
+ *
+ * @author Zoltan Farkas
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HttpCallableBenchmark {
+
+  private static final URI TARGET = URI.create("http://localhost:8080/test");
+
+  private static final Callable<String> TASK = () -> "result";
+
+  private ExecutionContext parent;
+
+  @Setup
+  public void setup() {
+    parent = ExecutionContexts.start("benchmark", 1, TimeUnit.HOURS);
+  }
+
+  @TearDown
+  public void tearDown() {
+    parent.close();
+  }
+
+  private HttpCallable<String> newCall() {
+    long now = TimeSource.nanoTime();
+    return HttpCallable.invocationHandler(parent, TASK, "GET test", TARGET, "GET",
+            DefaultClientExceptionMapper.INSTANCE, now, parent.getDeadlineNanos(), -1);
+  }
+
+  @Benchmark
+  public String call() throws Exception {
+    return newCall().call();
+  }
+
+  @Benchmark
+  public String callWithRetry() throws Exception {
+    HttpCallable<String> call = newCall();
+    call.call();
+    return call.call();
+  }
+
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2021 SPF4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.jaxrs.client;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author Zoltan Farkas
+ */
+public class P2CLoadBalancerTest {
+
+  private static InetAddress[] addresses(final int nr) throws UnknownHostException {
+    InetAddress[] result = new InetAddress[nr];
+    for (int i = 0; i < nr; i++) {
+      result[i] = InetAddress.getByAddress("test", new byte[] {10, 0, 0, (byte) (i + 1)});
+    }
+    return result;
+  }
+
+  @Test
+  public void testInFlightBalanced() throws UnknownHostException {
+    P2CLoadBalancer lb = new P2CLoadBalancer(5, 10000, 0);
+    InetAddress[] addrs = addresses(2);
+    List<LoadBalancer.Selection> selections = new ArrayList<>();
+    int nrFirst = 0;
+    for (int i = 0; i < 10; i++) {
+      LoadBalancer.Selection selection = lb.select("test", addrs);
+      selections.add(selection);
+      if (selection.getAddress().equals(addrs[0])) {
+        nrFirst++;
+      }
+    }
+    Assert.assertEquals(5, nrFirst);
+    for (LoadBalancer.Selection selection : selections) {
+      selection.onSuccess();
+    }
+  }
+
+  @Test
+  public void testFailingAddressEjected() throws UnknownHostException {
+    P2CLoadBalancer lb = new P2CLoadBalancer(3, 60000, 0);
+    InetAddress[] addrs = addresses(3);
+    for (int i = 0; i < 100; i++) {
+      LoadBalancer.Selection selection = lb.select("test", addrs);
+      if (selection.getAddress().equals(addrs[0])) {
+        selection.onFailure();
+      } else {
+        selection.onSuccess();
+      }
+    }
+    for (int i = 0; i < 100; i++) {
+      LoadBalancer.Selection selection = lb.select("test", addrs);
+      Assert.assertNotEquals(addrs[0], selection.getAddress());
+      selection.onSuccess();
+    }
+  }
+
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2021 SPF4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.jaxrs.client;
+
+import java.net.URI;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import org.junit.Assert;
+import org.junit.Test;
+import org.spf4j.base.TimeSource;
+
+/**
+ * @author Zoltan Farkas
+ */
+public class ShadowTrafficExecutorTest {
+
+  @Test(timeout = 10000)
+  public void testDropWhenFull() throws InterruptedException {
+    ShadowTrafficExecutor executor = new ShadowTrafficExecutor(1, 1);
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch done = new CountDownLatch(2);
+    long deadline = TimeSource.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    Assert.assertTrue(executor.submit(new TestCall(() -> {
+      started.countDown();
+      release.await();
+      done.countDown();
+      return null;
+    }, deadline)));
+    started.await();
+    Assert.assertTrue(executor.hasCapacity());
+    Assert.assertTrue(executor.submit(new TestCall(() -> {
+      done.countDown();
+      return null;
+    }, deadline)));
+    Assert.assertFalse(executor.hasCapacity());
+    AtomicInteger dropped = new AtomicInteger();
+    Assert.assertFalse(executor.submit(new TestCall(() -> dropped.incrementAndGet(), deadline)));
+    release.countDown();
+    Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+    Assert.assertEquals(0, dropped.get());
+    Assert.assertTrue(executor.hasCapacity());
+  }
+
+  @Test(timeout = 10000)
+  public void testExpiredDeadlineSkipped() throws InterruptedException {
+    ShadowTrafficExecutor executor = new ShadowTrafficExecutor(1, 4);
+    AtomicInteger expiredCalls = new AtomicInteger();
+    CountDownLatch done = new CountDownLatch(1);
+    Assert.assertTrue(executor.submit(new TestCall(() -> expiredCalls.incrementAndGet(),
+            TimeSource.nanoTime() - 1)));
+    Assert.assertTrue(executor.submit(new TestCall(() -> {
+      done.countDown();
+      return null;
+    }, TimeSource.nanoTime() + TimeUnit.SECONDS.toNanos(10))));
+    // single thread, the calls are executed in order.
+    Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+    Assert.assertEquals(0, expiredCalls.get());
+  }
+
+  @Test
+  public void testSampling() {
+    Assert.assertTrue(ShadowTrafficExecutor.isSampled(0.09, 0.1, 1));
+    Assert.assertFalse(ShadowTrafficExecutor.isSampled(0.1, 0.1, 1));
+    Assert.assertTrue(ShadowTrafficExecutor.isSampled(0.04, 0.1, 0.5));
+    Assert.assertFalse(ShadowTrafficExecutor.isSampled(0.06, 0.1, 0.5));
+    Assert.assertFalse(ShadowTrafficExecutor.isSampled(0, 1, 0));
+    int nrSampled = 0;
+    Random rnd = new Random(0);
+    for (int i = 0; i < 100000; i++) {
+      if (ShadowTrafficExecutor.isSampled(rnd.nextDouble(), 0.5, 0.2)) {
+        nrSampled++;
+      }
+    }
+    Assert.assertEquals(10000, nrSampled, 1000);
+  }
+
+  @Test
+  public void testSampleRateConfig() {
+    Client client = ClientBuilder.newClient();
+    try {
+      Assert.assertEquals(ShadowTrafficExecutor.SAMPLE_RATE,
+              ShadowTrafficExecutor.getSampleRate(client.getConfiguration()), 0);
+      client.property(Spf4jClientProperties.SHADOW_SAMPLE_RATE, 0.25);
+      Assert.assertEquals(0.25, ShadowTrafficExecutor.getSampleRate(client.getConfiguration()), 0);
+      Assert.assertEquals(0.5, ShadowTrafficExecutor.getSampleRate(client.target("http://localhost")
+              .property(Spf4jClientProperties.SHADOW_SAMPLE_RATE, "0.5").getConfiguration()), 0);
+    } finally {
+      client.close();
+    }
+  }
+
+  private static final class TestCall implements HttpCallable<Object> {
+
+    private final Callable<Object> task;
+
+    private final long deadlineNanos;
+
+    TestCall(final Callable<Object> task, final long deadlineNanos) {
+      this.task = task;
+      this.deadlineNanos = deadlineNanos;
+    }
+
+    @Override
+    public URI getUri() {
+      return URI.create("http://localhost/shadow");
+    }
+
+    @Override
+    public String getHttpMethod() {
+      return "GET";
+    }
+
+    @Override
+    public long getStartNanos() {
+      return deadlineNanos - TimeUnit.SECONDS.toNanos(10);
+    }
+
+    @Override
+    public long getDeadlineNanos() {
+      return deadlineNanos;
+    }
+
+    @Override
+    public Object call() throws Exception {
+      return task.call();
+    }
+  }
+
+}
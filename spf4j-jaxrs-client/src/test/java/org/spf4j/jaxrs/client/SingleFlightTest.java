@@ -0,0 +1,154 @@
+/*
+ * Copyright 2021 SPF4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.jaxrs.client;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+import org.spf4j.base.TimeSource;
+import org.spf4j.base.UncheckedTimeoutException;
+
+/**
+ * @author Zoltan Farkas
+ */
+public class SingleFlightTest {
+
+  @Test
+  public void testCoalescing() throws InterruptedException, ExecutionException {
+    SingleFlight sf = new SingleFlight();
+    AtomicInteger calls = new AtomicInteger();
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    long deadline = TimeSource.getDeadlineNanos(10, TimeUnit.SECONDS);
+    CompletableFuture<String> leader = CompletableFuture.supplyAsync(() -> sf.call("k", deadline, () -> {
+      calls.incrementAndGet();
+      started.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException ex) {
+        throw new RuntimeException(ex);
+      }
+      return "result";
+    }));
+    started.await();
+    CompletableFuture<String> follower = sf.submit("k", deadline, () -> {
+      calls.incrementAndGet();
+      return CompletableFuture.completedFuture("other");
+    });
+    Assert.assertFalse(follower.isDone());
+    release.countDown();
+    Assert.assertEquals("result", leader.get());
+    Assert.assertEquals("result", follower.get());
+    Assert.assertEquals(1, calls.get());
+    Assert.assertEquals(0, sf.getInFlight());
+  }
+
+  @Test(expected = UncheckedTimeoutException.class)
+  public void testFollowerDeadline() throws InterruptedException {
+    SingleFlight sf = new SingleFlight();
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    CompletableFuture.runAsync(() -> sf.call("k", TimeSource.getDeadlineNanos(10, TimeUnit.SECONDS), () -> {
+      started.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException ex) {
+        throw new RuntimeException(ex);
+      }
+      return "result";
+    }));
+    started.await();
+    try {
+      sf.call("k", TimeSource.getDeadlineNanos(10, TimeUnit.MILLISECONDS), () -> "other");
+    } finally {
+      release.countDown();
+    }
+  }
+
+  /**
+   * A leader timing out with its own (shorter) deadline does not fail a follower with time left.
+   */
+  @Test(timeout = 10000)
+  public void testFollowerRetriesOnLeaderTimeout() throws InterruptedException, ExecutionException {
+    SingleFlight sf = new SingleFlight();
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    CompletableFuture<String> leader = CompletableFuture.supplyAsync(() ->
+            sf.call("k", TimeSource.getDeadlineNanos(10, TimeUnit.MILLISECONDS), () -> {
+      started.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException ex) {
+        throw new RuntimeException(ex);
+      }
+      throw new UncheckedTimeoutException("leader timed out");
+    }));
+    started.await();
+    CompletableFuture<String> follower = CompletableFuture.supplyAsync(() ->
+            sf.call("k", TimeSource.getDeadlineNanos(10, TimeUnit.SECONDS), () -> "retried"));
+    CompletableFuture<String> asyncFollower = sf.submit("k", TimeSource.getDeadlineNanos(10, TimeUnit.SECONDS),
+            () -> CompletableFuture.completedFuture("asyncRetried"));
+    Assert.assertFalse(asyncFollower.isDone());
+    release.countDown();
+    try {
+      leader.get();
+      Assert.fail();
+    } catch (ExecutionException ex) {
+      Assert.assertTrue(ex.getCause() instanceof UncheckedTimeoutException);
+    }
+    Assert.assertEquals("retried", follower.get());
+    Assert.assertEquals("asyncRetried", asyncFollower.get());
+  }
+
+  @Test
+  public void testFollowerGetsLeaderFailure() throws InterruptedException {
+    SingleFlight sf = new SingleFlight();
+    CompletableFuture<String> flight = new CompletableFuture<>();
+    sf.submit("k", TimeSource.getDeadlineNanos(10, TimeUnit.SECONDS), () -> flight);
+    CompletableFuture<String> follower = sf.submit("k", TimeSource.getDeadlineNanos(10, TimeUnit.SECONDS),
+            () -> CompletableFuture.completedFuture("other"));
+    flight.completeExceptionally(new IllegalStateException("failed"));
+    try {
+      follower.get();
+      Assert.fail();
+    } catch (ExecutionException ex) {
+      Assert.assertTrue(ex.getCause() instanceof IllegalStateException);
+    }
+  }
+
+  @Test
+  public void testAsyncFollowerDeadline() throws InterruptedException {
+    SingleFlight sf = new SingleFlight();
+    CompletableFuture<String> flight = new CompletableFuture<>();
+    sf.submit("k", TimeSource.getDeadlineNanos(10, TimeUnit.SECONDS), () -> flight);
+    CompletableFuture<String> follower = sf.submit("k", TimeSource.getDeadlineNanos(10, TimeUnit.MILLISECONDS),
+            () -> CompletableFuture.completedFuture("other"));
+    try {
+      follower.get();
+      Assert.fail();
+    } catch (ExecutionException ex) {
+      Assert.assertTrue(ex.getCause() instanceof TimeoutException);
+    }
+    flight.complete("result");
+    Assert.assertEquals(0, sf.getInFlight());
+  }
+
+}
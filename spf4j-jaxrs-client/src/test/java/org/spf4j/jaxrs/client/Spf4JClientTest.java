@@ -57,4 +57,21 @@ public class Spf4JClientTest {
 
   }
 
+  @Test
+  public void testPathTemplate() {
+    Spf4JClient client = new Spf4jClientBuilder().build();
+    Spf4jWebTarget base = client.target("http://localhost:8080/api");
+    Assert.assertEquals("/api", base.getPathTemplate());
+    Spf4jWebTarget target = base.path("items/{id}").resolveTemplate("id", 42)
+            .path("parts").queryParam("q", "x");
+    Assert.assertEquals("http://localhost:8080/api/items/42/parts?q=x", target.getUri().toString());
+    Assert.assertEquals("/api/items/{id}/parts", target.getPathTemplate());
+    Spf4jWebTarget other = base.path("items/{id}").resolveTemplate("id", 43).path("parts");
+    Assert.assertEquals(target.getPathTemplate(), other.getPathTemplate());
+    Assert.assertSame(client.getAdaptiveHedge("GET", target.getUri(), target.getPathTemplate()),
+            client.getAdaptiveHedge("GET", other.getUri(), other.getPathTemplate()));
+    Assert.assertNotSame(client.getAdaptiveHedge("GET", target.getUri(), target.getPathTemplate()),
+            client.getAdaptiveHedge("GET", base.getUri(), base.getPathTemplate()));
+  }
+
 }
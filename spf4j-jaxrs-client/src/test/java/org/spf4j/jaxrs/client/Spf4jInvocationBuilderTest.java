@@ -0,0 +1,75 @@
+/*
+ * Copyright 2021 SPF4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.jaxrs.client;
+
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.core.HttpHeaders;
+import org.junit.Assert;
+import org.junit.Test;
+import org.spf4j.jaxrs.client.security.providers.BearerAuthClientFilter;
+import org.spf4j.jaxrs.client.security.providers.CallerCredentialsClientFilter;
+
+/**
+ * @author Zoltan Farkas
+ */
+public class Spf4jInvocationBuilderTest {
+
+  @Test
+  public void testCoalesceKey() {
+    Spf4JClient client = new Spf4jClientBuilder().property(Spf4jClientProperties.COALESCE_GETS, true).build();
+    Spf4jInvocationBuilder builder = client.target("http://localhost:1/test").request();
+    String key = builder.coalesceKey(HttpMethod.GET);
+    Assert.assertNotNull(key);
+    Assert.assertNull(builder.coalesceKey(HttpMethod.POST));
+    builder.header("X-Test", "a");
+    Assert.assertNotEquals(key, builder.coalesceKey(HttpMethod.GET));
+  }
+
+  @Test
+  public void testNoCoalescingWithCredentialHeaders() {
+    Spf4JClient client = new Spf4jClientBuilder().property(Spf4jClientProperties.COALESCE_GETS, true).build();
+    Spf4jInvocationBuilder builder = client.target("http://localhost:1/test").request();
+    builder.header(HttpHeaders.AUTHORIZATION, "Bearer user-a");
+    Assert.assertNull(builder.coalesceKey(HttpMethod.GET));
+    builder = client.target("http://localhost:1/test").request();
+    builder.cookie("session", "user-a");
+    Assert.assertNull(builder.coalesceKey(HttpMethod.GET));
+  }
+
+  /**
+   * Per caller credentials added by a filter are not part of the coalescing key,
+   * user B must not receive user A's response.
+   */
+  @Test
+  public void testNoCoalescingWithCallerCredentialFilters() {
+    Spf4JClient client = new Spf4jClientBuilder().property(Spf4jClientProperties.COALESCE_GETS, true)
+            .register(new BearerAuthClientFilter(sb -> sb.append("token"))).build();
+    Assert.assertNull(client.target("http://localhost:1/test").request().coalesceKey(HttpMethod.GET));
+    client = new Spf4jClientBuilder().property(Spf4jClientProperties.COALESCE_GETS, true)
+            .register(CallerFilter.class).build();
+    Assert.assertNull(client.target("http://localhost:1/test").request().coalesceKey(HttpMethod.GET));
+  }
+
+  public static final class CallerFilter implements CallerCredentialsClientFilter {
+
+    @Override
+    public void filter(final ClientRequestContext requestContext) {
+      requestContext.getHeaders().add(HttpHeaders.AUTHORIZATION, "Bearer caller");
+    }
+  }
+
+}
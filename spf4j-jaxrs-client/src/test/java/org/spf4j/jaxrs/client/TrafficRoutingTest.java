@@ -0,0 +1,135 @@
+/*
+ * Copyright 2021 SPF4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.jaxrs.client;
+
+import com.google.common.io.ByteStreams;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import javax.ws.rs.client.Entity;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.spf4j.service.avro.DestinationTraffic;
+
+/**
+ * Split and shadow traffic routing, the servers listen on the same port, on 127.0.0.1 (original) and 127.0.0.2 (destination).
+ *
+ * @author Zoltan Farkas
+ */
+public class TrafficRoutingTest {
+
+  private HttpServer original;
+
+  private HttpServer destination;
+
+  private Spf4JClient client;
+
+  private Spf4jWebTarget target;
+
+  /** the requests received: "server method path header body". */
+  private final BlockingQueue<String> requests = new LinkedBlockingQueue<>();
+
+  @Before
+  public void startServers() throws IOException {
+    original = startServer(InetAddress.getByName("127.0.0.1"), 0, "original");
+    int port = original.getAddress().getPort();
+    destination = startServer(InetAddress.getByName("127.0.0.2"), port, "destination");
+    client = new Spf4jClientBuilder().build();
+    target = client.target("http://127.0.0.1:" + port).path("res");
+  }
+
+  @After
+  public void stopServers() {
+    client.close();
+    original.stop(0);
+    destination.stop(0);
+  }
+
+  private HttpServer startServer(final InetAddress address, final int port, final String name)
+          throws IOException {
+    HttpServer server = HttpServer.create(new InetSocketAddress(address, port), 0);
+    server.createContext("/", (exchange) -> {
+      String body;
+      try (InputStream is = exchange.getRequestBody()) {
+        body = new String(ByteStreams.toByteArray(is), StandardCharsets.UTF_8);
+      }
+      requests.add(name + ' ' + exchange.getRequestMethod() + ' ' + exchange.getRequestURI().getPath()
+              + ' ' + exchange.getRequestHeaders().getFirst("X-Test") + ' ' + body);
+      byte[] resp = name.getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().add("Content-Type", "text/plain");
+      exchange.sendResponseHeaders(200, resp.length);
+      try (OutputStream os = exchange.getResponseBody()) {
+        os.write(resp);
+      }
+    });
+    server.start();
+    return server;
+  }
+
+  @Test(timeout = 30000)
+  public void testSplitTrafficRouting() throws InterruptedException {
+    Assert.assertEquals("destination", target.request()
+            .withSplitTraffic(Collections.singletonList(new DestinationTraffic("127.0.0.2", 1)))
+            .header("X-Test", "h1").get(String.class));
+    Assert.assertEquals("destination GET /res h1 ", requests.take());
+    Assert.assertEquals("destination", target.request()
+            .withSplitTraffic(Collections.singletonList(new DestinationTraffic("127.0.0.2", 1)))
+            .header("X-Test", "h2").post(Entity.text("payload"), String.class));
+    Assert.assertEquals("destination POST /res h2 payload", requests.take());
+    Assert.assertEquals("original", target.request()
+            .withSplitTraffic(Collections.singletonList(new DestinationTraffic("127.0.0.2", 0)))
+            .header("X-Test", "h3").get(String.class));
+    Assert.assertEquals("original GET /res h3 ", requests.take());
+    Assert.assertTrue(requests.isEmpty());
+  }
+
+  @Test(timeout = 30000)
+  public void testShadowTrafficRouting() throws InterruptedException {
+    Assert.assertEquals("original", target.request()
+            .withShadowTraffic(Collections.singletonList(new DestinationTraffic("127.0.0.2", 1)))
+            .header("X-Test", "s1").get(String.class));
+    List<String> received = Arrays.asList(requests.take(), requests.take());
+    Collections.sort(received);
+    Assert.assertEquals(Arrays.asList("destination GET /res s1 ", "original GET /res s1 "), received);
+    // non idempotent requests are not mirrored by default.
+    Assert.assertEquals("original", target.request()
+            .withShadowTraffic(Collections.singletonList(new DestinationTraffic("127.0.0.2", 1)))
+            .header("X-Test", "s2").post(Entity.text("payload"), String.class));
+    Assert.assertEquals("original POST /res s2 payload", requests.take());
+    Assert.assertNull(requests.poll(500, TimeUnit.MILLISECONDS));
+    Spf4jWebTarget mirrorAll = target.property(Spf4jClientProperties.SHADOW_NON_IDEMPOTENT, Boolean.TRUE);
+    Assert.assertEquals("original", mirrorAll.request()
+            .withShadowTraffic(Collections.singletonList(new DestinationTraffic("127.0.0.2", 1)))
+            .header("X-Test", "s3").post(Entity.text("payload"), String.class));
+    received = Arrays.asList(requests.take(), requests.take());
+    Collections.sort(received);
+    Assert.assertEquals(Arrays.asList("destination POST /res s3 payload", "original POST /res s3 payload"),
+            received);
+  }
+
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2021 SPF4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.jaxrs.client;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Zoltan Farkas
+ */
+public class TrafficSplitTest {
+
+  @Test
+  public void testSelectionMatchesFirstMatchSemantics() {
+    String[] destinations = {"a", "b", "c"};
+    double[] ratios = {0.1, 0.3, 0.2};
+    TrafficSplit split = new TrafficSplit(destinations, ratios);
+    Map<String, Integer> counts = new HashMap<>();
+    int n = 100000;
+    for (int i = 0; i < n; i++) {
+      double rnd = (i + 0.5) / n;
+      counts.merge(String.valueOf(split.select(rnd)), 1, Integer::sum);
+    }
+    // a: [0, 0.1), b: [0.1, 0.3), c: never, original: [0.3, 1)
+    Assert.assertEquals(0.1, counts.get("a") / (double) n, 0.001);
+    Assert.assertEquals(0.2, counts.get("b") / (double) n, 0.001);
+    Assert.assertNull(counts.get("c"));
+    Assert.assertEquals(0.7, counts.get("null") / (double) n, 0.001);
+  }
+
+  @Test
+  public void testNoSplit() {
+    TrafficSplit split = new TrafficSplit(new String[] {"a"}, new double[] {0});
+    Assert.assertNull(split.select(0));
+    Assert.assertNull(split.select(0.99));
+  }
+
+  @Test
+  public void testWithHost() {
+    URI uri = URI.create("https://u@host:8443/a%20b/c?q=x%26y#f");
+    Assert.assertEquals(URI.create("https://u@other:8443/a%20b/c?q=x%26y#f"),
+            Spf4jWebTarget.withHost(uri, "other"));
+    Assert.assertEquals(URI.create("http://[::1]/p"),
+            Spf4jWebTarget.withHost(URI.create("http://host/p"), "::1"));
+  }
+
+}
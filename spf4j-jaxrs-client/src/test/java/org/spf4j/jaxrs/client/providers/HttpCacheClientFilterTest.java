@@ -0,0 +1,294 @@
+/*
+ * Copyright 2021 SPF4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.jaxrs.client.providers;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Zoltan Farkas
+ */
+public class HttpCacheClientFilterTest {
+
+  private HttpServer server;
+
+  private Client client;
+
+  private WebTarget target;
+
+  private final AtomicInteger nrRequests = new AtomicInteger();
+
+  /** the request headers of the last request received by the server. */
+  private volatile Headers lastRequestHeaders;
+
+  /** the If-None-Match values received by the server. */
+  private final Queue<String> ifNoneMatch = new ConcurrentLinkedQueue<>();
+
+  private volatile ResponseWriter responseWriter;
+
+  /** the response headers for the current server side version. */
+  private final Map<String, String> responseHeaders = new ConcurrentHashMap<>();
+
+  private volatile String version = "v1";
+
+  @Before
+  public void startServer() throws IOException {
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext("/", (exchange) -> {
+      nrRequests.incrementAndGet();
+      lastRequestHeaders = exchange.getRequestHeaders();
+      String inm = lastRequestHeaders.getFirst(HttpHeaders.IF_NONE_MATCH);
+      if (inm != null) {
+        ifNoneMatch.add(inm);
+      }
+      try (InputStream is = exchange.getRequestBody()) {
+        while (is.read() >= 0) {
+          // drain the request body.
+        }
+      }
+      responseWriter.write(exchange);
+      exchange.close();
+    });
+    server.start();
+    client = ClientBuilder.newBuilder().register(new HttpCacheClientFilter(1024 * 1024, 64 * 1024)).build();
+    target = client.target("http://127.0.0.1:" + server.getAddress().getPort()).path("res");
+    responseWriter = this::writeVersion;
+  }
+
+  @After
+  public void stopServer() {
+    client.close();
+    server.stop(0);
+  }
+
+  @Test
+  public void testFreshness() {
+    responseHeaders.put(HttpHeaders.CACHE_CONTROL, "max-age=60");
+    Assert.assertEquals("v1", get(target.request()));
+    version = "v2";
+    Response cached = target.request().get();
+    Assert.assertEquals("v1", cached.readEntity(String.class));
+    Assert.assertNotNull(cached.getHeaderString("Age"));
+    Assert.assertEquals(1, nrRequests.get());
+    // request no-cache and max-age=0 go to the server.
+    Assert.assertEquals("v2", get(target.request().header(HttpHeaders.CACHE_CONTROL, "no-cache")));
+    Assert.assertEquals(2, nrRequests.get());
+    version = "v3";
+    Assert.assertEquals("v3", get(target.request().header(HttpHeaders.CACHE_CONTROL, "max-age=0")));
+    Assert.assertEquals(3, nrRequests.get());
+    Assert.assertEquals("v3", get(target.request()));
+    Assert.assertEquals(3, nrRequests.get());
+  }
+
+  @Test
+  public void testNotStored() {
+    responseHeaders.put(HttpHeaders.CACHE_CONTROL, "no-store");
+    Assert.assertEquals("v1", get(target.request()));
+    Assert.assertEquals("v1", get(target.request()));
+    Assert.assertEquals(2, nrRequests.get());
+    responseHeaders.put(HttpHeaders.CACHE_CONTROL, "max-age=60");
+    Assert.assertEquals("v1", get(target.request().header(HttpHeaders.AUTHORIZATION, "Bearer x")));
+    Assert.assertEquals("v1", get(target.request().header(HttpHeaders.AUTHORIZATION, "Bearer x")));
+    Assert.assertEquals(4, nrRequests.get());
+  }
+
+  @Test
+  public void testCredentialsNotCached() {
+    responseHeaders.put(HttpHeaders.CACHE_CONTROL, "max-age=60");
+    Assert.assertEquals("v1", get(target.request().header(HttpHeaders.COOKIE, "session=x")));
+    Assert.assertEquals("v1", get(target.request().cookie("session", "x")));
+    Assert.assertEquals(2, nrRequests.get());
+    Assert.assertEquals("v1", get(target.request().header("Proxy-Authorization", "Basic eA==")));
+    Assert.assertEquals("v1", get(target.request().header("Proxy-Authorization", "Basic eA==")));
+    Assert.assertEquals(4, nrRequests.get());
+    // a cached anonymous response is not served to requests with credentials.
+    Assert.assertEquals("v1", get(target.request()));
+    Assert.assertEquals("v1", get(target.request()));
+    Assert.assertEquals(5, nrRequests.get());
+    version = "v2";
+    Assert.assertEquals("v2", get(target.request().header(HttpHeaders.COOKIE, "session=x")));
+    Assert.assertEquals("v2", get(target.request().header("Proxy-Authorization", "Basic eA==")));
+    Assert.assertEquals("v2", get(target.request().header(HttpHeaders.AUTHORIZATION, "Bearer x")));
+    Assert.assertEquals(8, nrRequests.get());
+  }
+
+  @Test
+  public void testPrivateNotStored() {
+    responseHeaders.put(HttpHeaders.CACHE_CONTROL, "private, max-age=60");
+    Assert.assertEquals("v1", get(target.request()));
+    Assert.assertEquals("v1", get(target.request()));
+    Assert.assertEquals(2, nrRequests.get());
+  }
+
+  @Test
+  public void testSetCookieNotStored() {
+    responseHeaders.put(HttpHeaders.CACHE_CONTROL, "max-age=60");
+    responseHeaders.put(HttpHeaders.SET_COOKIE, "session=x");
+    Assert.assertEquals("v1", get(target.request()));
+    Assert.assertEquals("v1", get(target.request()));
+    Assert.assertEquals(2, nrRequests.get());
+    // a stored entry is dropped when the response starts setting cookies.
+    responseHeaders.remove(HttpHeaders.SET_COOKIE);
+    Assert.assertEquals("v1", get(target.request()));
+    Assert.assertEquals("v1", get(target.request()));
+    Assert.assertEquals(3, nrRequests.get());
+    version = "v2";
+    responseHeaders.put(HttpHeaders.SET_COOKIE, "session=x");
+    Assert.assertEquals("v2", get(target.request().header(HttpHeaders.CACHE_CONTROL, "no-cache")));
+    responseHeaders.remove(HttpHeaders.SET_COOKIE);
+    version = "v3";
+    Assert.assertEquals("v3", get(target.request()));
+    Assert.assertEquals(5, nrRequests.get());
+  }
+
+  @Test
+  public void testVary() {
+    responseHeaders.put(HttpHeaders.CACHE_CONTROL, "max-age=60");
+    responseHeaders.put(HttpHeaders.VARY, HttpHeaders.ACCEPT_LANGUAGE);
+    Assert.assertEquals("v1", get(target.request().header(HttpHeaders.ACCEPT_LANGUAGE, "en")));
+    Assert.assertEquals("v1", get(target.request().header(HttpHeaders.ACCEPT_LANGUAGE, "en")));
+    Assert.assertEquals(1, nrRequests.get());
+    version = "v2";
+    Assert.assertEquals("v2", get(target.request().header(HttpHeaders.ACCEPT_LANGUAGE, "fr")));
+    Assert.assertEquals(2, nrRequests.get());
+    Assert.assertEquals("v2", get(target.request().header(HttpHeaders.ACCEPT_LANGUAGE, "fr")));
+    Assert.assertEquals(2, nrRequests.get());
+  }
+
+  @Test
+  public void test304Merge() {
+    responseHeaders.put(HttpHeaders.CACHE_CONTROL, "no-cache");
+    responseHeaders.put(HttpHeaders.ETAG, "\"v1\"");
+    responseHeaders.put("X-Version", "1");
+    Assert.assertEquals("v1", get(target.request()));
+    responseWriter = (exchange) -> {
+      exchange.getResponseHeaders().add("X-Version", "2");
+      exchange.sendResponseHeaders(304, -1);
+    };
+    Response response = target.request().get();
+    Assert.assertEquals(200, response.getStatus());
+    Assert.assertEquals("v1", response.readEntity(String.class));
+    Assert.assertEquals("2", response.getHeaderString("X-Version"));
+    Assert.assertEquals("\"v1\"", lastRequestHeaders.getFirst(HttpHeaders.IF_NONE_MATCH));
+    Assert.assertEquals(2, nrRequests.get());
+  }
+
+  @Test
+  public void testCallerValidatorsLeftAlone() {
+    responseHeaders.put(HttpHeaders.CACHE_CONTROL, "no-cache");
+    responseHeaders.put(HttpHeaders.ETAG, "\"v1\"");
+    Assert.assertEquals("v1", get(target.request()));
+    responseWriter = (exchange) -> exchange.sendResponseHeaders(304, -1);
+    Response response = target.request().header(HttpHeaders.IF_NONE_MATCH, "\"other\"").get();
+    Assert.assertEquals(304, response.getStatus());
+    response.close();
+    Assert.assertEquals("\"other\"", lastRequestHeaders.getFirst(HttpHeaders.IF_NONE_MATCH));
+    // a caller conditional request is not answered from the cache, even when the entry is fresh.
+    responseHeaders.put(HttpHeaders.CACHE_CONTROL, "max-age=60");
+    responseWriter = this::writeVersion;
+    Assert.assertEquals("v1", get(target.request()));
+    responseWriter = (exchange) -> exchange.sendResponseHeaders(304, -1);
+    response = target.request().header(HttpHeaders.IF_MODIFIED_SINCE, "Thu, 01 Jan 2015 00:00:00 GMT").get();
+    Assert.assertEquals(304, response.getStatus());
+    response.close();
+    Assert.assertEquals(4, nrRequests.get());
+    Assert.assertNull(lastRequestHeaders.getFirst(HttpHeaders.IF_NONE_MATCH));
+  }
+
+  @Test(timeout = 30000)
+  public void testStaleWhileRevalidate() throws InterruptedException {
+    responseHeaders.put(HttpHeaders.CACHE_CONTROL, "max-age=0, stale-while-revalidate=60");
+    responseHeaders.put(HttpHeaders.ETAG, "\"v1\"");
+    Assert.assertEquals("v1", get(target.request()));
+    version = "v2";
+    responseHeaders.put(HttpHeaders.ETAG, "\"v2\"");
+    // stale entry is served, and revalidated in the background.
+    Assert.assertEquals("v1", get(target.request()));
+    String result;
+    do {
+      TimeUnit.MILLISECONDS.sleep(10);
+      result = get(target.request());
+    } while ("v1".equals(result));
+    Assert.assertEquals("v2", result);
+    Assert.assertEquals("\"v1\"", ifNoneMatch.peek());
+    Assert.assertTrue(nrRequests.get() >= 2);
+  }
+
+  @Test
+  public void testInvalidation() {
+    responseHeaders.put(HttpHeaders.CACHE_CONTROL, "max-age=60");
+    Assert.assertEquals("v1", get(target.request()));
+    version = "v2";
+    target.request().post(Entity.text("x")).close();
+    Assert.assertEquals(2, nrRequests.get());
+    Assert.assertEquals("v2", get(target.request()));
+    Assert.assertEquals(3, nrRequests.get());
+    version = "v3";
+    target.request().delete().close();
+    Assert.assertEquals("v3", get(target.request()));
+    Assert.assertEquals(5, nrRequests.get());
+  }
+
+  private static String get(final Invocation.Builder builder) {
+    Response response = builder.get();
+    Assert.assertEquals(200, response.getStatus());
+    return response.readEntity(String.class);
+  }
+
+  private void writeVersion(final HttpExchange exchange) throws IOException {
+    byte[] body = version.getBytes(StandardCharsets.UTF_8);
+    Headers headers = exchange.getResponseHeaders();
+    headers.add(HttpHeaders.CONTENT_TYPE, "text/plain");
+    for (Map.Entry<String, String> entry : responseHeaders.entrySet()) {
+      headers.add(entry.getKey(), entry.getValue());
+    }
+    exchange.sendResponseHeaders(200, body.length);
+    try (OutputStream os = exchange.getResponseBody()) {
+      os.write(body);
+    }
+  }
+
+  @FunctionalInterface
+  private interface ResponseWriter {
+
+    void write(HttpExchange exchange) throws IOException;
+  }
+
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2021 SPF4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.jaxrs.common.executors;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * @author Zoltan Farkas
+ */
+public class VirtualThreadsTest {
+
+  @Test
+  public void testVirtualThreadExecutor() throws InterruptedException, ExecutionException, TimeoutException {
+    Assume.assumeTrue("Virtual threads not available", VirtualThreads.isAvailable());
+    ExecutorService executor = VirtualThreads.newExecutor("test-");
+    try {
+      Future<String> name = executor.submit(() -> Thread.currentThread().getName());
+      Assert.assertEquals("test-0", name.get(10, TimeUnit.SECONDS));
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testProviderFallback() throws InterruptedException, ExecutionException, TimeoutException {
+    CustomExecutorServiceProvider provider = new CustomExecutorServiceProvider(1, 4, 1000, 1000, "tvt", true);
+    ExecutorService executor = provider.getExecutorService();
+    try {
+      Future<Integer> result = executor.submit(() -> 42);
+      Assert.assertEquals(42, (int) result.get(10, TimeUnit.SECONDS));
+    } finally {
+      provider.dispose(executor);
+    }
+  }
+
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2021 SPF4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.jaxrs.common.providers;
+
+import com.google.common.io.ByteStreams;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.apache.avro.Schema;
+import org.apache.avro.SchemaBuilder;
+import org.apache.avro.generic.GenericData;
+import org.apache.avro.generic.GenericDatumWriter;
+import org.apache.avro.io.BinaryEncoder;
+import org.apache.avro.io.DatumWriter;
+import org.apache.avro.io.EncoderFactory;
+import org.apache.avro.specific.SpecificDatumWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spf4j.service.avro.FileEntry;
+import org.spf4j.service.avro.FileType;
+
+/**
+ * Compares the compression codecs on representative binary avro payloads:
+ * <ul>
+ * <li>listing - a array of records with repetitive strings. (file listing)</li>
+ * <li>metrics - a array of records with timestamps and random walk doubles. (hard to compress)</li>
+ * </ul>
+ * Compressed sizes are logged during setup.
+ * Only the always available codecs are benchmarked by default, the optional codecs can be benchmarked
+ * when zstd-jni and brotli4j are in the class path with: -p codecName=gzip,deflate,zstd,br
+ *
+ * @author Zoltan Farkas
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class CompressionCodecsBenchmark {
+
+  private static final Logger LOG = LoggerFactory.getLogger(CompressionCodecsBenchmark.class);
+
+  private static final Schema METRIC_SCHEMA = SchemaBuilder.record("Metric").fields()
+          .requiredLong("ts").requiredString("name").requiredDouble("value").requiredDouble("count")
+          .endRecord();
+
+  @Param({"gzip", "deflate"})
+  private String codecName;
+
+  @Param({"listing", "metrics"})
+  private String payload;
+
+  @Param({"1", "3", "6"})
+  private int level;
+
+  private CompressionCodec codec;
+
+  private byte[] data;
+
+  private byte[] compressed;
+
+  @Setup
+  public void setup() throws IOException {
+    codec = CompressionCodecs.getRequired(codecName);
+    data = "listing".equals(payload) ? listing(10000) : metrics(10000);
+    compressed = compress();
+    LOG.info("Codec {}, level={}, payload={}, size={}, compressed={}", codecName, level, payload, data.length,
+            compressed.length);
+  }
+
+  private static byte[] listing(final int nr) throws IOException {
+    Schema schema = Schema.createArray(FileEntry.getClassSchema());
+    GenericData.Array<FileEntry> entries = new GenericData.Array<>(nr, schema);
+    Instant now = Instant.parse("2021-01-01T00:00:00Z");
+    for (int i = 0; i < nr; i++) {
+      entries.add(new FileEntry(FileType.REGULAR, "application-" + i + ".log.gz", 1000000L + i * 17,
+              now.plusSeconds(i * 60)));
+    }
+    return serialize(new SpecificDatumWriter<>(schema), entries);
+  }
+
+  private static byte[] metrics(final int nr) throws IOException {
+    Schema schema = Schema.createArray(METRIC_SCHEMA);
+    GenericData.Array<GenericData.Record> records = new GenericData.Array<>(nr, schema);
+    Random random = new Random(0);
+    double value = 100;
+    for (int i = 0; i < nr; i++) {
+      GenericData.Record record = new GenericData.Record(METRIC_SCHEMA);
+      record.put("ts", 1609459200000L + i * 1000L);
+      record.put("name", "http.latency");
+      value += random.nextGaussian();
+      record.put("value", value);
+      record.put("count", (double) random.nextInt(1000));
+      records.add(record);
+    }
+    return serialize(new GenericDatumWriter<>(schema), records);
+  }
+
+  private static <T> byte[] serialize(final DatumWriter<T> writer, final T object) throws IOException {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    BinaryEncoder encoder = EncoderFactory.get().binaryEncoder(bos, null);
+    writer.write(object, encoder);
+    encoder.flush();
+    return bos.toByteArray();
+  }
+
+  @Benchmark
+  public byte[] compress() throws IOException {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream(data.length);
+    try (OutputStream os = codec.encode(bos, level)) {
+      os.write(data);
+    }
+    return bos.toByteArray();
+  }
+
+  @Benchmark
+  public byte[] decompress() throws IOException {
+    try (InputStream is = codec.decode(new ByteArrayInputStream(compressed))) {
+      return ByteStreams.toByteArray(is);
+    }
+  }
+
+}
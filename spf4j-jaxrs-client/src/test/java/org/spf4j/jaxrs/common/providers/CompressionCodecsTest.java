@@ -0,0 +1,131 @@
+/*
+ * Copyright 2021 SPF4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.jaxrs.common.providers;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Zoltan Farkas
+ */
+public class CompressionCodecsTest {
+
+  @Test
+  public void testRoundTripAvailable() throws IOException {
+    byte[] data = "some text to compress, some text to compress".getBytes(StandardCharsets.UTF_8);
+    for (CompressionCodec codec : CompressionCodecs.available()) {
+      ByteArrayOutputStream bos = new ByteArrayOutputStream();
+      try (OutputStream os = codec.encode(bos, codec.getDefaultLevel())) {
+        os.write(data);
+      }
+      ByteArrayOutputStream result = new ByteArrayOutputStream();
+      try (InputStream is = codec.decode(new ByteArrayInputStream(bos.toByteArray()))) {
+        byte[] buff = new byte[64];
+        int nr;
+        while ((nr = is.read(buff)) >= 0) {
+          result.write(buff, 0, nr);
+        }
+      }
+      Assert.assertArrayEquals(codec.getName(), data, result.toByteArray());
+    }
+  }
+
+  /**
+   * CompressionCodecs initialized in a class loader that does not see zstd-jni and brotli4j.
+   */
+  @Test
+  public void testWithoutOptionalLibraries() throws Exception {
+    URL classes = CompressionCodecs.class.getProtectionDomain().getCodeSource().getLocation();
+    try (URLClassLoader loader = new HidingClassLoader(classes, CompressionCodecs.class.getClassLoader(),
+            "com.github.luben.zstd.", "com.aayushatharva.brotli4j.")) {
+      Class<?> codecs = Class.forName(CompressionCodecs.class.getName(), true, loader);
+      Assert.assertNotSame(CompressionCodecs.class, codecs);
+      Assert.assertNull(codecs.getField("ZSTD").get(null));
+      Assert.assertNull(codecs.getField("BROTLI").get(null));
+      Method getName = Class.forName(CompressionCodec.class.getName(), false, loader).getMethod("getName");
+      List<String> available = new ArrayList<>();
+      for (Object codec : (List<?>) codecs.getMethod("available").invoke(null)) {
+        available.add((String) getName.invoke(codec));
+      }
+      Assert.assertEquals(Arrays.asList("gzip", "deflate"), available);
+      Assert.assertEquals("gzip, deflate;q=0.9", codecs.getMethod("getAcceptEncoding").invoke(null));
+      Object negotiated = codecs.getMethod("negotiate", String.class).invoke(null, "zstd, br, gzip;q=0.5");
+      Assert.assertNotNull(negotiated);
+      Assert.assertEquals("gzip", getName.invoke(negotiated));
+      Method getRequired = codecs.getMethod("getRequired", String.class);
+      try {
+        getRequired.invoke(null, "zstd");
+        Assert.fail();
+      } catch (InvocationTargetException ex) {
+        Assert.assertTrue(ex.getCause() instanceof IllegalStateException);
+      }
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownCodec() {
+    CompressionCodecs.getRequired("lzma");
+  }
+
+  /**
+   * Loads the org.spf4j classes from the module classes (child first), and hides the given packages.
+   */
+  private static final class HidingClassLoader extends URLClassLoader {
+
+    private final String[] hidden;
+
+    HidingClassLoader(final URL classes, final ClassLoader parent, final String... pHidden) {
+      super(new URL[] {classes}, parent);
+      this.hidden = pHidden;
+    }
+
+    @Override
+    protected Class<?> loadClass(final String name, final boolean resolve) throws ClassNotFoundException {
+      for (String prefix : hidden) {
+        if (name.startsWith(prefix)) {
+          throw new ClassNotFoundException(name);
+        }
+      }
+      if (!name.startsWith("org.spf4j.jaxrs.")) {
+        return super.loadClass(name, resolve);
+      }
+      synchronized (getClassLoadingLock(name)) {
+        Class<?> c = findLoadedClass(name);
+        if (c == null) {
+          c = findClass(name);
+        }
+        if (resolve) {
+          resolveClass(c);
+        }
+        return c;
+      }
+    }
+  }
+
+}
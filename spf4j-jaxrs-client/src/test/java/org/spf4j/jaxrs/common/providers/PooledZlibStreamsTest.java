@@ -0,0 +1,147 @@
+/*
+ * Copyright 2021 SPF4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.jaxrs.common.providers;
+
+import com.google.common.io.ByteStreams;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author Zoltan Farkas
+ */
+public class PooledZlibStreamsTest {
+
+  private static byte[] testData(final int size) {
+    StringBuilder sb = new StringBuilder(size + 64);
+    int i = 0;
+    while (sb.length() < size) {
+      sb.append("{\"id\":").append(i++).append(",\"name\":\"value ").append(i % 17).append("\"},");
+    }
+    return sb.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void testGzipInterop() throws IOException {
+    byte[] data = testData(100000);
+    for (int i = 0; i < 3; i++) { // exercise pooled instance reuse.
+      ByteArrayOutputStream bos = new ByteArrayOutputStream();
+      try (OutputStream os = CompressionCodecs.GZIP.encode(bos, 6)) {
+        os.write(data, 0, 1000);
+        os.flush();
+        os.write(data, 1000, data.length - 1000);
+      }
+      try (InputStream is = new GZIPInputStream(new ByteArrayInputStream(bos.toByteArray()))) {
+        Assert.assertArrayEquals(data, ByteStreams.toByteArray(is));
+      }
+      try (InputStream is = CompressionCodecs.GZIP.decode(new ByteArrayInputStream(bos.toByteArray()))) {
+        Assert.assertArrayEquals(data, ByteStreams.toByteArray(is));
+      }
+    }
+  }
+
+  @Test
+  public void testGzipConcatenatedMembers() throws IOException {
+    byte[] data = testData(20000);
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    try (GZIPOutputStream os = new GZIPOutputStream(bos)) {
+      os.write(data);
+    }
+    try (GZIPOutputStream os = new GZIPOutputStream(bos)) {
+      os.write(data);
+    }
+    try (InputStream is = CompressionCodecs.GZIP.decode(new ByteArrayInputStream(bos.toByteArray()))) {
+      byte[] result = ByteStreams.toByteArray(is);
+      Assert.assertEquals(2 * data.length, result.length);
+    }
+  }
+
+  @Test
+  public void testFlushIsDecodable() throws IOException {
+    byte[] data = testData(5000);
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    OutputStream os = CompressionCodecs.DEFLATE.encode(bos, 1);
+    os.write(data);
+    os.flush();
+    try (InputStream is = new InflaterInputStream(new ByteArrayInputStream(bos.toByteArray()))) {
+      byte[] result = new byte[data.length];
+      ByteStreams.readFully(is, result);
+      Assert.assertArrayEquals(data, result);
+    }
+    os.close();
+  }
+
+  @Test
+  public void testDeflateRawAndZlib() throws IOException {
+    byte[] data = testData(30000);
+    for (boolean nowrap : new boolean[] {true, false}) {
+      ByteArrayOutputStream bos = new ByteArrayOutputStream();
+      Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, nowrap);
+      try (OutputStream os = new DeflaterOutputStream(bos, deflater)) {
+        os.write(data);
+      } finally {
+        deflater.end();
+      }
+      try (InputStream is = CompressionCodecs.DEFLATE.decode(new ByteArrayInputStream(bos.toByteArray()))) {
+        Assert.assertArrayEquals(data, ByteStreams.toByteArray(is));
+      }
+    }
+  }
+
+  @Test
+  public void testSingleByteReadWrite() throws IOException {
+    byte[] data = testData(10000);
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    try (OutputStream os = CompressionCodecs.GZIP.encode(bos, 6)) {
+      for (byte b : data) {
+        os.write(b);
+      }
+    }
+    try (InputStream is = CompressionCodecs.GZIP.decode(new ByteArrayInputStream(bos.toByteArray()))) {
+      ByteArrayOutputStream result = new ByteArrayOutputStream(data.length);
+      int b;
+      while ((b = is.read()) >= 0) {
+        result.write(b);
+      }
+      Assert.assertArrayEquals(data, result.toByteArray());
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void testTruncated() throws IOException {
+    byte[] data = testData(30000);
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    try (OutputStream os = CompressionCodecs.GZIP.encode(bos, 6)) {
+      os.write(data);
+    }
+    byte[] compressed = bos.toByteArray();
+    try (InputStream is = CompressionCodecs.GZIP.decode(
+            new ByteArrayInputStream(compressed, 0, compressed.length / 2))) {
+      ByteStreams.toByteArray(is);
+    }
+  }
+
+}
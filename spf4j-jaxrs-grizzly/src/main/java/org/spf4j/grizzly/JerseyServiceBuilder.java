@@ -47,13 +47,14 @@ import org.glassfish.grizzly.http.CompressionConfig;
 import org.glassfish.grizzly.http.server.HttpServer;
 import org.glassfish.grizzly.http.server.NetworkListener;
 import org.glassfish.grizzly.http.server.ServerConfiguration;
+import org.glassfish.grizzly.http2.Http2AddOn;
+import org.glassfish.grizzly.http2.Http2Configuration;
 import org.glassfish.grizzly.nio.transport.TCPNIOTransport;
 import org.glassfish.grizzly.servlet.FixedWebappContext;
 import org.glassfish.grizzly.servlet.ServletRegistration;
 import org.glassfish.grizzly.servlet.WebappContext;
 import org.glassfish.grizzly.ssl.SSLEngineConfigurator;
 import org.glassfish.jersey.client.ClientProperties;
-import org.glassfish.jersey.client.filter.EncodingFilter;
 import org.glassfish.jersey.internal.inject.AbstractBinder;
 import org.glassfish.jersey.internal.inject.Binder;
 import org.glassfish.jersey.server.ResourceConfig;
@@ -66,18 +67,23 @@ import org.spf4j.concurrent.LifoThreadPoolBuilder;
 import org.spf4j.jaxrs.Spf4jBinder;
 import org.spf4j.http.DefaultDeadlineProtocol;
 import org.spf4j.jaxrs.server.SecurityAuthenticator;
+import org.spf4j.jaxrs.server.CompressionPolicy;
+import org.spf4j.jaxrs.server.DefaultCompressionPolicy;
 import org.spf4j.http.multi.MultiURLs;
 import org.spf4j.http.multi.Spf4jURLStreamHandlerFactory;
 import org.spf4j.jaxrs.client.Spf4JClient;
 import org.spf4j.jaxrs.client.providers.ClientCustomExecutorServiceProvider;
 import org.spf4j.jaxrs.client.providers.ClientCustomScheduledExecutionServiceProvider;
 import org.spf4j.jaxrs.client.providers.ExecutionContextClientFilter;
+import org.spf4j.jaxrs.client.providers.Spf4jEncodingFilter;
+import org.spf4j.jaxrs.common.executors.VirtualThreads;
 import org.spf4j.jaxrs.common.providers.avro.DefaultSchemaProtocol;
 import org.spf4j.jaxrs.config.MicroprofileConfigFeature;
 import org.spf4j.jaxrs.features.AvroFeature;
 import org.spf4j.jaxrs.features.GeneralPurposeFeatures;
 import org.spf4j.jaxrs.server.DelegatingAuthenticationClientFilter;
 import org.spf4j.jaxrs.server.features.ImmediateFeature;
+import org.spf4j.jaxrs.server.providers.CompressionJaxRsFilter;
 import org.spf4j.jaxrs.server.providers.DefaultServerProvidersFeatures;
 import org.spf4j.servlet.ExecutionContextFilter;
 import org.spf4j.stackmonitor.Sampler;
@@ -118,6 +124,20 @@ public final class JerseyServiceBuilder implements JaxRsConfiguration {
 
   private SecurityAuthenticator auth = SecurityAuthenticator.NOAUTH;
 
+  private boolean http2Enabled;
+
+  private int http2MaxConcurrentStreams;
+
+  private int http2InitialWindowSize;
+
+  private int http2MaxFramePayloadSize;
+
+  private int http2MaxHeaderListSize;
+
+  private CompressionPolicy compressionPolicy;
+
+  private boolean virtualThreads;
+
   /* see https://github.com/jersey/jersey/blob/master/examples/
   https-clientserver-grizzly/src/main/java/org/glassfish/jersey/examples/httpsclientservergrizzly/Server.java */
   private SSLEngineConfigurator sslConfig;
@@ -141,6 +161,13 @@ public final class JerseyServiceBuilder implements JaxRsConfiguration {
     this.maxHeaderSizeBytes = 256 * 1024;
     this.defaultTimeoutNanos = TimeUnit.SECONDS.toNanos(10);
     this.maximumAllowedTimeoutNanos = TimeUnit.SECONDS.toNanos(25);
+    this.http2Enabled = Boolean.parseBoolean(System.getProperty("spf4j.grizzly.http2.enabled", "false"));
+    this.http2MaxConcurrentStreams = 256;
+    this.http2InitialWindowSize = 1024 * 1024;
+    this.http2MaxFramePayloadSize = 64 * 1024;
+    this.http2MaxHeaderListSize = -1;
+    this.compressionPolicy = DefaultCompressionPolicy.INSTANCE;
+    this.virtualThreads = Boolean.getBoolean("spf4j.grizzly.virtualThreads");
   }
 
   public JerseyServiceBuilder removeDefaults() {
@@ -214,6 +241,67 @@ public final class JerseyServiceBuilder implements JaxRsConfiguration {
     return this;
   }
 
+  /**
+   * Enable/disable HTTP/2, disabled by default (spf4j.grizzly.http2.enabled).
+   * When enabled, cleartext listeners accept h2c (prior knowledge and HTTP/1.1 upgrade),
+   * and TLS listeners negotiate h2 via ALPN, HTTP/1.1 clients are served as before.
+   */
+  public JerseyServiceBuilder withHttp2(final boolean enabled) {
+    this.http2Enabled = enabled;
+    return this;
+  }
+
+  /**
+   * @param maxStreams the max number of concurrent streams (in flight requests) per HTTP/2 connection.
+   */
+  public JerseyServiceBuilder withHttp2MaxConcurrentStreams(final int maxStreams) {
+    this.http2MaxConcurrentStreams = maxStreams;
+    return this;
+  }
+
+  /**
+   * @param windowSize the HTTP/2 initial stream flow control window size in bytes.
+   */
+  public JerseyServiceBuilder withHttp2InitialWindowSize(final int windowSize) {
+    this.http2InitialWindowSize = windowSize;
+    return this;
+  }
+
+  /**
+   * @param maxFrameSize the max HTTP/2 frame payload size in bytes. (between 16K and 16M)
+   */
+  public JerseyServiceBuilder withHttp2MaxFramePayloadSize(final int maxFrameSize) {
+    this.http2MaxFramePayloadSize = maxFrameSize;
+    return this;
+  }
+
+  /**
+   * @param maxHeaderListSize the max (uncompressed) HTTP/2 header list size in bytes,
+   * -1 to use the max http header size.
+   */
+  public JerseyServiceBuilder withHttp2MaxHeaderListSize(final int maxHeaderListSize) {
+    this.http2MaxHeaderListSize = maxHeaderListSize;
+    return this;
+  }
+
+  /**
+   * @param policy the response compression policy.
+   */
+  public JerseyServiceBuilder withCompressionPolicy(final CompressionPolicy policy) {
+    this.compressionPolicy = policy;
+    return this;
+  }
+
+  /**
+   * Run request handling, async response completion and client async invocations in virtual threads.
+   * Requires a JDK 21+ runtime, thread pools will be used otherwise.
+   * When enabled, the worker thread pool sizes are ignored, and concurrency is not bound by the thread count.
+   */
+  public JerseyServiceBuilder withVirtualThreads(final boolean enabled) {
+    this.virtualThreads = enabled;
+    return this;
+  }
+
   public JerseyServiceBuilder withSSLEngineConfigurator(final SSLEngineConfigurator configurator) {
     this.sslConfig = configurator;
     return this;
@@ -253,7 +341,8 @@ public final class JerseyServiceBuilder implements JaxRsConfiguration {
             + ", jvmServices=" + jvmServices + ", kernelThreadsCoreSize=" + kernelThreadsCoreSize
             + ", kernelThreadsMaxSize=" + kernelThreadsMaxSize + ", workerThreadsCoreSize="
             + workerThreadsCoreSize + ", workerThreadsMaxSize=" + workerThreadsMaxSize
-            + ", sslConfig=" + sslConfig + '}';
+            + ", sslConfig=" + sslConfig + ", http2Enabled=" + http2Enabled
+            + ", http2MaxConcurrentStreams=" + http2MaxConcurrentStreams + ", virtualThreads=" + virtualThreads + '}';
   }
 
   @Override
@@ -325,6 +414,7 @@ public final class JerseyServiceBuilder implements JaxRsConfiguration {
       resourceConfig.property("application.logFilesPath", jvmServices.getLogFolder());
       resourceConfig.property(ServerProperties.PROVIDER_PACKAGES, Joiner.on(';').join(providerPackages));
       resourceConfig.property(ServerProperties.WADL_FEATURE_DISABLE, "true");
+      resourceConfig.property("jersey.server.exec.virtualThreads", virtualThreads);
       resourceConfig.register(new AbstractBinder() {
         @Override
         protected void configure() {
@@ -342,14 +432,16 @@ public final class JerseyServiceBuilder implements JaxRsConfiguration {
             .register(ClientCustomExecutorServiceProvider.class)
             .register(ClientCustomScheduledExecutionServiceProvider.class)
             .register(new GeneralPurposeFeatures())
-            .register(EncodingFilter.class)
+            .register(Spf4jEncodingFilter.class)
             .register(avroFeature)
             .register(DelegatingAuthenticationClientFilter.class)
             .property(ClientProperties.USE_ENCODING, "gzip")
+            .property("jersey.client.exec.virtualThreads", virtualThreads)
             .build());
       resourceConfig.register(new Spf4jBinder(schemaClient, restClient));
       resourceConfig.register(avroFeature);
       resourceConfig.register(ImmediateFeature.class);
+      resourceConfig.register(new CompressionJaxRsFilter(compressionPolicy));
       ServletContainer servletContainer = new ServletContainer(resourceConfig);
       resourceConfig.property(ServletContainer.class.getName(), servletContainer);
       ServletRegistration servletRegistration = webappContext.addServlet("jersey", servletContainer);
@@ -385,20 +477,20 @@ public final class JerseyServiceBuilder implements JaxRsConfiguration {
       final NetworkListener listener
               = new NetworkListener("http", pbindAddr, port);
       listener.setMaxHttpHeaderSize(maxHeaderSizeBytes);
-      // Create default HTTP/2 configuration and provide it to the AddOn
-      //Http2Configuration configuration = Http2Configuration.builder().build();
-      //Http2AddOn http2Addon = new Http2AddOn(configuration);
-
-      // Register the Addon.
-      //listener.registerAddOn(http2Addon);
-
-      CompressionConfig compressionConfig = listener.getCompressionConfig();
-      compressionConfig.setCompressionMode(CompressionConfig.CompressionMode.ON); // the mode
-      compressionConfig.setCompressionMinSize(4096); // the min amount of bytes to compress
-      compressionConfig.setCompressibleMimeTypes("text/plain",
-              "text/html", "text/csv", "application/json",
-              "application/octet-stream", "application/avro",
-              "application/avro+json", "application/avro-x+json"); // the mime types to compress
+      if (http2Enabled) {
+        // h2c prior knowledge + upgrade for cleartext, ALPN negotiated h2 for TLS listeners.
+        Http2Configuration configuration = Http2Configuration.builder()
+                .maxConcurrentStreams(http2MaxConcurrentStreams)
+                .initialWindowSize(http2InitialWindowSize)
+                .maxFramePayloadSize(http2MaxFramePayloadSize)
+                .maxHeaderListSize(http2MaxHeaderListSize < 0 ? maxHeaderSizeBytes : http2MaxHeaderListSize)
+                .priorKnowledge(true)
+                .build();
+        listener.registerAddOn(new Http2AddOn(configuration));
+      }
+
+      // responses are compressed by CompressionJaxRsFilter, based on the configured CompressionPolicy.
+      listener.getCompressionConfig().setCompressionMode(CompressionConfig.CompressionMode.OFF);
       TCPNIOTransport transport = listener.getTransport();
       transport.setKernelThreadPool(LifoThreadPoolBuilder.newBuilder()
               .withCoreSize(kernelThreadsCoreSize)
@@ -410,16 +502,27 @@ public final class JerseyServiceBuilder implements JaxRsConfiguration {
               .enableJmx()
               .build());
       transport.setSelectorRunnersCount(Integer.getInteger("spf4j.grizzly.selectorCount", 4));
-      transport.setWorkerThreadPool(LifoThreadPoolBuilder.newBuilder()
+      transport.setWorkerThreadPool(createWorkerPool(poolNameBase + "-worker"));
+      return listener;
+    }
+
+    private ExecutorService createWorkerPool(final String poolName) {
+      if (virtualThreads) {
+        if (VirtualThreads.isAvailable()) {
+          return VirtualThreads.newExecutor(poolName + '-');
+        }
+        Logger.getLogger(JerseyServiceBuilder.class.getName()).log(Level.WARNING,
+                "Virtual threads not available, using a thread pool for {0}", poolName);
+      }
+      return LifoThreadPoolBuilder.newBuilder()
               .withCoreSize(workerThreadsCoreSize)
               .withMaxSize(workerThreadsMaxSize)
               .withDaemonThreads(false)
               .withMaxIdleTimeMillis(Integer.getInteger("spf4j.grizzly.worker.idleMillis", 120000))
-              .withPoolName(poolNameBase + "-worker")
+              .withPoolName(poolName)
               .withQueueSizeLimit(0)
               .enableJmx()
-              .build());
-      return listener;
+              .build();
     }
 
     @Override
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2021 SPF4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.jaxrs.server;
+
+import javax.ws.rs.core.MediaType;
+
+/**
+ * Decides if and how http response entities are compressed.
+ *
+ * @author Zoltan Farkas
+ */
+public interface CompressionPolicy {
+
+  /** level to return by getCompressionLevel when the entity should not be compressed. */
+  int NO_COMPRESSION = 0;
+
+  /**
+   * @param mediaType the response media type.
+   * @return the compression level to use (1-9 is valid for all codecs), or NO_COMPRESSION.
+   */
+  int getCompressionLevel(MediaType mediaType);
+
+  /**
+   * @return responses smaller than this (in bytes) will not be compressed.
+   */
+  int getMinSize();
+
+  /**
+   * @return the number of bytes used to test the entity compressibility, before committing to compress it.
+   */
+  int getSampleSize();
+
+  /**
+   * @return if the sample compressed size / sample size is larger than this ratio, the entity is deemed
+   * incompressible, and will be sent uncompressed.
+   */
+  double getMaxCompressionRatio();
+
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2021 SPF4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.jaxrs.server;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.ws.rs.core.MediaType;
+
+/**
+ * Compression levels configured per media type ("type/subtype") and per media type family ("type/*").
+ * Text formats (json, xml, csv, javascript...) are compressed with a medium level, binary avro and octet-stream
+ * with the fastest level, (they are sampled for compressibility), everything else (images, archives...)
+ * is not compressed.
+ *
+ * @author Zoltan Farkas
+ */
+@ParametersAreNonnullByDefault
+public final class DefaultCompressionPolicy implements CompressionPolicy {
+
+  public static final CompressionPolicy INSTANCE = new DefaultCompressionPolicy(defaultLevels(),
+          Integer.getInteger("spf4j.jaxrs.compression.minSize", 2048),
+          Integer.getInteger("spf4j.jaxrs.compression.sampleSize", 8192),
+          Double.parseDouble(System.getProperty("spf4j.jaxrs.compression.maxRatio", "0.9")));
+
+  private final Map<String, Integer> levels;
+
+  private final int minSize;
+
+  private final int sampleSize;
+
+  private final double maxCompressionRatio;
+
+  /**
+   * @param levels compression level by "type/subtype" or "type/*".
+   * @param minSize min entity size to compress.
+   * @param sampleSize compressibility sample size.
+   * @param maxCompressionRatio max compressed/uncompressed ratio, over which compression is abandoned.
+   */
+  public DefaultCompressionPolicy(final Map<String, Integer> levels, final int minSize,
+          final int sampleSize, final double maxCompressionRatio) {
+    if (sampleSize <= 0) {
+      throw new IllegalArgumentException("Invalid sample size " + sampleSize);
+    }
+    this.levels = new HashMap<>(levels);
+    this.minSize = minSize;
+    this.sampleSize = sampleSize;
+    this.maxCompressionRatio = maxCompressionRatio;
+  }
+
+  public static Map<String, Integer> defaultLevels() {
+    Map<String, Integer> result = new HashMap<>();
+    result.put("text/*", 6);
+    result.put("application/json", 6);
+    result.put("application/avro+json", 6);
+    result.put("application/avro-x+json", 6);
+    result.put("application/xml", 6);
+    result.put("application/javascript", 6);
+    result.put("image/svg+xml", 6);
+    result.put("application/avro", 1);
+    result.put("application/octet-stream", 1);
+    return result;
+  }
+
+  @Override
+  public int getCompressionLevel(final MediaType mediaType) {
+    String type = mediaType.getType().toLowerCase(Locale.US);
+    Integer level = levels.get(type + '/' + mediaType.getSubtype().toLowerCase(Locale.US));
+    if (level == null) {
+      level = levels.get(type + "/*");
+      if (level == null) {
+        return NO_COMPRESSION;
+      }
+    }
+    return level;
+  }
+
+  @Override
+  public int getMinSize() {
+    return minSize;
+  }
+
+  @Override
+  public int getSampleSize() {
+    return sampleSize;
+  }
+
+  @Override
+  public double getMaxCompressionRatio() {
+    return maxCompressionRatio;
+  }
+
+  @Override
+  public String toString() {
+    return "DefaultCompressionPolicy{" + "levels=" + levels + ", minSize=" + minSize
+            + ", sampleSize=" + sampleSize + ", maxCompressionRatio=" + maxCompressionRatio + '}';
+  }
+
+}
@@ -18,17 +18,20 @@ package org.spf4j.jaxrs.server;
 import javax.annotation.Priority;
 import javax.ws.rs.Priorities;
 import javax.ws.rs.client.ClientRequestContext;
-import javax.ws.rs.client.ClientRequestFilter;
 import javax.ws.rs.ext.Provider;
 import org.spf4j.base.ExecutionContext;
 import org.spf4j.base.ExecutionContexts;
 import org.spf4j.http.ContextTags;
 import org.spf4j.jaxrs.JaxRsSecurityContext;
+import org.spf4j.jaxrs.client.security.providers.CallerCredentialsClientFilter;
 
 
+/**
+ * Propagates the credentials of the current request (from the security context) to the client requests.
+ */
 @Priority(Priorities.HEADER_DECORATOR)
 @Provider
-public final class DelegatingAuthenticationClientFilter implements ClientRequestFilter  {
+public final class DelegatingAuthenticationClientFilter implements CallerCredentialsClientFilter  {
 
   @Override
   public void filter(final ClientRequestContext reqCtx) {
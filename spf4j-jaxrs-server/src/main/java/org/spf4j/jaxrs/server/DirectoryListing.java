@@ -0,0 +1,170 @@
+/*
+ * Copyright 2021 SPF4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.jaxrs.server;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import org.apache.avro.Schema;
+import org.spf4j.base.ArrayWriter;
+import org.spf4j.jaxrs.StreamingArrayContent;
+import org.spf4j.service.avro.FileEntry;
+import org.spf4j.service.avro.FileType;
+
+/**
+ * A filtered directory listing.
+ *
+ * Entries are produced while walking the directory stream, with one attribute read per entry,
+ * and the name/modification time filters applied during the walk.
+ * Pagination is based on a name cursor: a page contains the first N entries (in name order) with a name greater
+ * than the cursor. Computing a page keeps only N + 1 entries in memory, irrespective of the directory size.
+ *
+ * @author Zoltan Farkas
+ */
+@ParametersAreNonnullByDefault
+public final class DirectoryListing {
+
+  private static final Comparator<FileEntry> NAME_ORDER = Comparator.comparing(FileEntry::getName);
+
+  private final Path dir;
+
+  @Nullable
+  private final PathMatcher nameMatcher;
+
+  @Nullable
+  private final Instant modifiedAfter;
+
+  @Nullable
+  private final Instant modifiedBefore;
+
+  @Nullable
+  private final String cursor;
+
+  /**
+   * @param dir the directory to list.
+   * @param nameMatcher if not null, only entries with a matching file name are listed.
+   * @param modifiedAfter if not null, only entries modified after (exclusive) are listed.
+   * @param modifiedBefore if not null, only entries modified before (exclusive) are listed.
+   * @param cursor if not null, only entries with a name greater than this are listed.
+   */
+  public DirectoryListing(final Path dir, @Nullable final PathMatcher nameMatcher,
+          @Nullable final Instant modifiedAfter, @Nullable final Instant modifiedBefore,
+          @Nullable final String cursor) {
+    this.dir = dir;
+    this.nameMatcher = nameMatcher;
+    this.modifiedAfter = modifiedAfter;
+    this.modifiedBefore = modifiedBefore;
+    this.cursor = cursor;
+  }
+
+  /**
+   * Walk the directory, and invoke the consumer for every matching entry, in directory stream order.
+   * Entries that disappear during the walk (rolled/deleted files) are skipped.
+   */
+  @SuppressFBWarnings("RCN_REDUNDANT_NULLCHECK_WOULD_HAVE_BEEN_A_NPE") // try-resources gen code
+  public void walk(final Consumer<? super FileEntry> consumer) throws IOException {
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+      for (Path elem : stream) {
+        Path fileName = elem.getFileName();
+        if (fileName == null) {
+          throw new IllegalStateException("Dir entry should not be empty " + elem);
+        }
+        String name = fileName.toString();
+        if (cursor != null && name.compareTo(cursor) <= 0) {
+          continue;
+        }
+        if (nameMatcher != null && !nameMatcher.matches(fileName)) {
+          continue;
+        }
+        BasicFileAttributes attrs;
+        try {
+          attrs = Files.readAttributes(elem, BasicFileAttributes.class);
+        } catch (NoSuchFileException ex) {
+          continue;
+        }
+        Instant lastModified = attrs.lastModifiedTime().toInstant();
+        if ((modifiedAfter != null && !lastModified.isAfter(modifiedAfter))
+                || (modifiedBefore != null && !lastModified.isBefore(modifiedBefore))) {
+          continue;
+        }
+        consumer.accept(new FileEntry(attrs.isDirectory() ? FileType.DIRECTORY : FileType.REGULAR,
+                name, attrs.size(), lastModified));
+      }
+    }
+  }
+
+  /**
+   * @return all matching entries, streamed while the directory is being walked.
+   */
+  public StreamingArrayContent<FileEntry> stream() {
+    return new StreamingArrayContent<FileEntry>() {
+      @Override
+      public void write(final ArrayWriter<FileEntry> output) throws IOException {
+        walk(output);
+      }
+
+      @Override
+      public Schema getElementSchema() {
+        return FileEntry.getClassSchema();
+      }
+    };
+  }
+
+  /**
+   * @param limit the max page size.
+   * @return the first limit + 1 matching entries, in name order. (more than limit entries means there is a next page)
+   */
+  public List<FileEntry> page(final int limit) throws IOException {
+    if (limit <= 0) {
+      throw new IllegalArgumentException("Invalid page size " + limit);
+    }
+    int max = limit + 1;
+    // max heap, the head is the largest name we currently retain.
+    PriorityQueue<FileEntry> top = new PriorityQueue<>(Math.min(max, 1024), NAME_ORDER.reversed());
+    walk((FileEntry entry) -> {
+      if (top.size() < max) {
+        top.add(entry);
+      } else if (NAME_ORDER.compare(entry, top.peek()) < 0) {
+        top.poll();
+        top.add(entry);
+      }
+    });
+    List<FileEntry> result = new ArrayList<>(top);
+    Collections.sort(result, NAME_ORDER);
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return "DirectoryListing{" + "dir=" + dir + ", nameMatcher=" + nameMatcher + ", modifiedAfter="
+            + modifiedAfter + ", modifiedBefore=" + modifiedBefore + ", cursor=" + cursor + '}';
+  }
+
+}
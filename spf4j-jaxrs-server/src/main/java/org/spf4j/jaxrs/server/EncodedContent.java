@@ -0,0 +1,60 @@
+/*
+ * Copyright 2021 SPF4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.jaxrs.server;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.io.IOException;
+import java.io.OutputStream;
+import javax.ws.rs.core.StreamingOutput;
+
+/**
+ * Content that is already encoded (compressed) with the response Content-Encoding.
+ * {@link org.spf4j.jaxrs.server.providers.EncodedContentWriterInterceptor} writes it ahead of the
+ * content encoders, so that it is not encoded again.
+ *
+ * @author Zoltan Farkas
+ */
+public final class EncodedContent implements StreamingOutput {
+
+  private final byte[] content;
+
+  private final String encoding;
+
+  @SuppressFBWarnings("EI_EXPOSE_REP2")
+  public EncodedContent(final byte[] content, final String encoding) {
+    this.content = content;
+    this.encoding = encoding;
+  }
+
+  public String getEncoding() {
+    return encoding;
+  }
+
+  public int getLength() {
+    return content.length;
+  }
+
+  @Override
+  public void write(final OutputStream output) throws IOException {
+    output.write(content);
+  }
+
+  @Override
+  public String toString() {
+    return "EncodedContent{" + "encoding=" + encoding + ", length=" + content.length + '}';
+  }
+
+}
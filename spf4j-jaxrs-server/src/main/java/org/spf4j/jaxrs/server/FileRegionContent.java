@@ -0,0 +1,116 @@
+/*
+ * Copyright 2021 SPF4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.jaxrs.server;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import javax.ws.rs.core.StreamingOutput;
+
+/**
+ * File (region) response content.
+ *
+ * The file region is read with positional reads (no skipping) into a bounded buffer, and written to the output.
+ * This is a user space copy, not a zero-copy (sendfile) transfer: the entity is written to the servlet output
+ * stream (wrapped for byte counting and compression), which does not expose the connection channel.
+ *
+ * @author Zoltan Farkas
+ */
+public final class FileRegionContent implements StreamingOutput {
+
+  private static final int BUFFER_SIZE = Integer.getInteger("spf4j.jaxrs.fileRegionBufferSize", 65536);
+
+  private final Path file;
+  private final long position;
+  private final long count;
+
+  /**
+   * Entire file.
+   */
+  public FileRegionContent(final Path file) {
+    this(file, 0, -1);
+  }
+
+  /**
+   * @param file the file.
+   * @param position the start position.
+   * @param count the number of bytes to write, -1 for everything till the end of the file.
+   */
+  public FileRegionContent(final Path file, final long position, final long count) {
+    if (position < 0) {
+      throw new IllegalArgumentException("Invalid position " + position + " for " + file);
+    }
+    this.file = file;
+    this.position = position;
+    this.count = count;
+  }
+
+  public Path getFile() {
+    return file;
+  }
+
+  public long getPosition() {
+    return position;
+  }
+
+  public long getCount() {
+    return count;
+  }
+
+  @Override
+  @SuppressFBWarnings({"RCN_REDUNDANT_NULLCHECK_WOULD_HAVE_BEEN_A_NPE", "PATH_TRAVERSAL_IN"})
+  public void write(final OutputStream output) throws IOException {
+    try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+      long end = count < 0 ? ch.size() : position + count;
+      writeRegion(ch, position, end, output);
+    }
+  }
+
+  /**
+   * write a file region to a output stream.
+   * @param ch the file channel.
+   * @param from the region start (inclusive).
+   * @param end the region end (exclusive).
+   * @param output the output stream.
+   */
+  static void writeRegion(final FileChannel ch, final long from, final long end, final OutputStream output)
+          throws IOException {
+    byte[] buffer = new byte[(int) Math.min(BUFFER_SIZE, Math.max(end - from, 1))];
+    ByteBuffer bb = ByteBuffer.wrap(buffer);
+    long pos = from;
+    while (pos < end) {
+      bb.clear();
+      bb.limit((int) Math.min(buffer.length, end - pos));
+      int read = ch.read(bb, pos);
+      if (read < 0) {
+        throw new EOFException("File truncated to " + pos + " while writing till " + end);
+      }
+      output.write(buffer, 0, read);
+      pos += read;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "FileRegionContent{" + "file=" + file + ", position=" + position + ", count=" + count + '}';
+  }
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2021 SPF4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.jaxrs.server;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.StreamingOutput;
+
+/**
+ * multipart/byteranges response content for multiple file ranges.
+ * see https://tools.ietf.org/html/rfc7233#appendix-A
+ *
+ * @author Zoltan Farkas
+ */
+public final class MultiRangeFileContent implements StreamingOutput {
+
+  private final Path file;
+  private final MediaType partMediaType;
+  private final long fileSize;
+  private final long[] starts;
+  private final long[] ends;
+  private final String boundary;
+
+  /**
+   * @param file the file.
+   * @param partMediaType the media type of the file.
+   * @param fileSize the file size.
+   * @param starts the range starts.
+   * @param ends the range ends (inclusive).
+   */
+  @SuppressFBWarnings("EI_EXPOSE_REP2")
+  public MultiRangeFileContent(final Path file, final MediaType partMediaType, final long fileSize,
+          final long[] starts, final long[] ends) {
+    if (starts.length != ends.length) {
+      throw new IllegalArgumentException("Invalid ranges " + Arrays.toString(starts)
+              + ", " + Arrays.toString(ends));
+    }
+    this.file = file;
+    this.partMediaType = partMediaType;
+    this.fileSize = fileSize;
+    this.starts = starts;
+    this.ends = ends;
+    this.boundary = Long.toHexString(ThreadLocalRandom.current().nextLong())
+            + Long.toHexString(ThreadLocalRandom.current().nextLong());
+  }
+
+  /**
+   * @return the media type of the response.
+   */
+  public MediaType getMediaType() {
+    return MediaType.valueOf("multipart/byteranges; boundary=" + boundary);
+  }
+
+  @Override
+  @SuppressFBWarnings({"RCN_REDUNDANT_NULLCHECK_WOULD_HAVE_BEEN_A_NPE", "PATH_TRAVERSAL_IN"})
+  public void write(final OutputStream output) throws IOException {
+    try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+      for (int i = 0; i < starts.length; i++) {
+        long start = starts[i];
+        long end = ends[i];
+        output.write(("--" + boundary + "\r\nContent-Type: " + partMediaType
+                + "\r\nContent-Range: bytes " + start + '-' + end + '/' + fileSize + "\r\n\r\n")
+                .getBytes(StandardCharsets.US_ASCII));
+        FileRegionContent.writeRegion(ch, start, end + 1, output);
+        output.write('\r');
+        output.write('\n');
+      }
+      output.write(("--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "MultiRangeFileContent{" + "file=" + file + ", nrRanges=" + starts.length + '}';
+  }
+
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2021 SPF4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.jaxrs.server;
+
+import com.google.common.io.ByteStreams;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import javax.annotation.Nullable;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MultivaluedMap;
+import org.spf4j.jaxrs.common.providers.CompressionCodec;
+
+/**
+ * Output stream that compresses the written content with a codec, only if it is worth it.
+ *
+ * The first block (sample) of the content is buffered and compressed, and if the content is smaller than the
+ * minimum size, or the sample does not compress well, the content is written as is. Otherwise the Content-Encoding
+ * and Vary: Accept-Encoding headers are set, and the already compressed sample is written out, followed by the rest of
+ * the compressed content. The decision is made before anything is written to the wrapped stream, so that the headers
+ * can still be changed. A flush before the minimum size is reached does not force the decision, the content is
+ * buffered until the minimum size is reached or the stream is closed.
+ *
+ * @author Zoltan Farkas
+ */
+public final class SamplingCompressionOutputStream extends OutputStream {
+
+  private final OutputStream out;
+
+  private final MultivaluedMap<String, Object> headers;
+
+  private final CompressionCodec codec;
+
+  private final int level;
+
+  private final int minSize;
+
+  private final double maxCompressionRatio;
+
+  @Nullable
+  private byte[] sample;
+
+  private int count;
+
+  /** the stream to write to, null until the compress decision is made. */
+  @Nullable
+  private OutputStream target;
+
+  @SuppressFBWarnings("EI_EXPOSE_REP2") // headers are mutated by design.
+  public SamplingCompressionOutputStream(final OutputStream out, final MultivaluedMap<String, Object> headers,
+          final CompressionCodec codec, final int level, final CompressionPolicy policy) {
+    this.out = out;
+    this.headers = headers;
+    this.codec = codec;
+    this.level = level;
+    this.minSize = policy.getMinSize();
+    this.maxCompressionRatio = policy.getMaxCompressionRatio();
+    this.sample = new byte[Math.max(policy.getSampleSize(), minSize)];
+    this.count = 0;
+    this.target = null;
+  }
+
+  @Override
+  public void write(final int b) throws IOException {
+    if (target != null) {
+      target.write(b);
+      return;
+    }
+    sample[count++] = (byte) b;
+    if (count == sample.length) {
+      decide(false);
+    }
+  }
+
+  @Override
+  public void write(final byte[] b, final int off, final int len) throws IOException {
+    if (target != null) {
+      target.write(b, off, len);
+      return;
+    }
+    int toCopy = Math.min(len, sample.length - count);
+    System.arraycopy(b, off, sample, count, toCopy);
+    count += toCopy;
+    if (count == sample.length) {
+      decide(false);
+      if (len > toCopy) {
+        target.write(b, off + toCopy, len - toCopy);
+      }
+    }
+  }
+
+  /**
+   * @return true if the content is compressed, false if not or not decided yet.
+   */
+  public boolean isCompressing() {
+    return target != null && target != out;
+  }
+
+  @SuppressFBWarnings("NP_NULL_ON_SOME_PATH_FROM_RETURN_VALUE")
+  private void decide(final boolean complete) throws IOException {
+    if (complete && count < minSize) {
+      target = out;
+    } else {
+      ByteArrayOutputStream bos = new ByteArrayOutputStream(count / 2 + 32);
+      SwitchingOutputStream sw = new SwitchingOutputStream(bos);
+      OutputStream encoder = codec.encode(sw, level);
+      encoder.write(sample, 0, count);
+      encoder.flush(); // all compressed sample bytes are in bos.
+      if (bos.size() > count * maxCompressionRatio) {
+        sw.delegate = ByteStreams.nullOutputStream();
+        encoder.close(); // release the compressor.
+        target = out;
+      } else {
+        headers.putSingle(HttpHeaders.CONTENT_ENCODING, codec.getName());
+        headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        headers.remove(HttpHeaders.CONTENT_LENGTH);
+        bos.writeTo(out);
+        sw.delegate = out;
+        target = encoder;
+        sample = null;
+        return;
+      }
+    }
+    out.write(sample, 0, count);
+    sample = null;
+  }
+
+  @Override
+  public void flush() throws IOException {
+    if (target == null) {
+      if (count < minSize) {
+        return; // nothing was written out yet, keep buffering.
+      }
+      decide(false);
+    }
+    target.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (target == null) {
+      decide(true);
+    }
+    target.close();
+  }
+
+  @Override
+  public String toString() {
+    return "SamplingCompressionOutputStream{" + "out=" + out + ", level=" + level + ", target=" + target + '}';
+  }
+
+  private static final class SwitchingOutputStream extends OutputStream {
+
+    private OutputStream delegate;
+
+    SwitchingOutputStream(final OutputStream delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+      delegate.write(b);
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+      delegate.write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+      delegate.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      delegate.close();
+    }
+  }
+
+}
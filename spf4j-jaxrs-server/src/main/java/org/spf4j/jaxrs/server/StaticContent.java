@@ -0,0 +1,171 @@
+/*
+ * Copyright 2021 SPF4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.jaxrs.server;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.Deflater;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.MediaType;
+import org.spf4j.http.AcceptEncoding;
+import org.spf4j.jaxrs.common.providers.CompressionCodecs;
+
+/**
+ * A immutable in memory static asset, with its precomputed encoded (compressed) variants and strong entity tag.
+ *
+ * @author Zoltan Farkas
+ */
+@ParametersAreNonnullByDefault
+public final class StaticContent {
+
+  /** a encoded variant is kept only if it saves at least 1/8 of the identity size. */
+  private static final int MIN_SAVINGS_SHIFT = 3;
+
+  private final MediaType mediaType;
+
+  private final byte[] content;
+
+  @Nullable
+  private final byte[] gzipContent;
+
+  private final EntityTag etag;
+
+  private StaticContent(final MediaType mediaType, final byte[] content, @Nullable final byte[] gzipContent) {
+    this.mediaType = mediaType;
+    this.content = content;
+    this.gzipContent = gzipContent;
+    this.etag = new EntityTag(Hashing.murmur3_128().hashBytes(content).toString());
+  }
+
+  /**
+   * Read a static asset and precompute its compressed variant if the media type is compressible.
+   * @param is the content, will be read fully.
+   * @param mediaType the asset media type.
+   */
+  public static StaticContent read(final InputStream is, final MediaType mediaType) throws IOException {
+    byte[] content = ByteStreams.toByteArray(is);
+    byte[] gzipContent = null;
+    if (isCompressible(mediaType)) {
+      gzipContent = gzip(content);
+      if (gzipContent.length > content.length - (content.length >> MIN_SAVINGS_SHIFT)) {
+        gzipContent = null;
+      }
+    }
+    return new StaticContent(mediaType, content, gzipContent);
+  }
+
+  private static byte[] gzip(final byte[] content) throws IOException {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream(content.length / 2 + 32);
+    // done once per asset, worth the extra cpu.
+    try (OutputStream gos = CompressionCodecs.GZIP.encode(bos, Deflater.BEST_COMPRESSION)) {
+      gos.write(content);
+    }
+    return bos.toByteArray();
+  }
+
+  public static boolean isCompressible(final MediaType mt) {
+    if ("text".equals(mt.getType())) {
+      return true;
+    }
+    String subType = mt.getSubtype().toLowerCase(Locale.US);
+    return subType.contains("json") || subType.contains("xml") || subType.contains("javascript")
+            || subType.contains("wasm");
+  }
+
+  /**
+   * @param acceptEncoding the value of the Accept-Encoding header.
+   * @return the content encoding to serve (null for identity).
+   */
+  @Nullable
+  public String negotiateEncoding(@Nullable final String acceptEncoding) {
+    if (gzipContent == null || acceptEncoding == null) {
+      return null;
+    }
+    return acceptsEncoding(acceptEncoding, "gzip") ? "gzip" : null;
+  }
+
+  /**
+   * @return true if the coding is listed in the Accept-Encoding header with a non zero quality.
+   * (see https://tools.ietf.org/html/rfc7231#section-5.3.4)
+   */
+  public static boolean acceptsEncoding(final String acceptEncoding, final String coding) {
+    return AcceptEncoding.qValue(acceptEncoding, coding) > 0;
+  }
+
+  /**
+   * @return the content encoded with the encoding or the identity content if encoding is null.
+   */
+  @SuppressFBWarnings("EI_EXPOSE_REP") // immutable by contract, not copied for performance.
+  public byte[] getContent(@Nullable final String encoding) {
+    if (encoding == null) {
+      return content;
+    }
+    if ("gzip".equals(encoding) && gzipContent != null) {
+      return gzipContent;
+    }
+    throw new IllegalArgumentException("Encoding not available " + encoding + " for " + this);
+  }
+
+  /**
+   * @return available encodings and their sizes.
+   */
+  public Map<String, Integer> getEncodings() {
+    return gzipContent == null ? Collections.emptyMap() : Collections.singletonMap("gzip", gzipContent.length);
+  }
+
+  public boolean hasEncodings() {
+    return gzipContent != null;
+  }
+
+  public MediaType getMediaType() {
+    return mediaType;
+  }
+
+  /**
+   * @param encoding the content encoding, null for identity.
+   * @return the strong entity tag of the encoded variant. (every variant has a distinct strong etag)
+   */
+  public EntityTag getEntityTag(@Nullable final String encoding) {
+    if (encoding == null) {
+      return etag;
+    }
+    return new EntityTag(etag.getValue() + '-' + encoding);
+  }
+
+  /**
+   * @return the memory footprint (approximate).
+   */
+  public int getWeight() {
+    return content.length + (gzipContent == null ? 0 : gzipContent.length) + 128;
+  }
+
+  @Override
+  public String toString() {
+    return "StaticContent{" + "mediaType=" + mediaType + ", size=" + content.length
+            + ", encodings=" + getEncodings() + ", etag=" + etag + '}';
+  }
+
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2021 SPF4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.jaxrs.server.providers;
+
+import java.io.IOException;
+import javax.annotation.Priority;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.Provider;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+import org.spf4j.jaxrs.common.providers.CompressionCodec;
+import org.spf4j.jaxrs.common.providers.CompressionCodecs;
+import org.spf4j.jaxrs.server.CompressionPolicy;
+import org.spf4j.jaxrs.server.SamplingCompressionOutputStream;
+
+/**
+ * Content aware response compression.
+ *
+ * The codec is negotiated based on the Accept-Encoding q-values (see {@link CompressionCodecs#negotiate}),
+ * the response filter decides based on the {@link CompressionPolicy} and the response media type if the
+ * response is a compression candidate. Already encoded entities (Content-Encoding present) and partial content
+ * are never compressed. The writer interceptor compresses candidates with a {@link SamplingCompressionOutputStream},
+ * which gives up on compression for small or incompressible content, and sets Vary: Accept-Encoding only when
+ * it compresses. Candidates that are not compressed because the client does not accept any supported encoding
+ * get Vary: Accept-Encoding, unless their Content-Length is below the minimum compression size.
+ *
+ * @author Zoltan Farkas
+ */
+@Provider
+@Priority(Priorities.ENTITY_CODER)
+public final class CompressionJaxRsFilter implements ContainerResponseFilter, WriterInterceptor {
+
+  private static final String LEVEL_PROPERTY = "spf4j.compressionLevel";
+
+  private static final String CODEC_PROPERTY = "spf4j.compressionCodec";
+
+  private final CompressionPolicy policy;
+
+  public CompressionJaxRsFilter(final CompressionPolicy policy) {
+    this.policy = policy;
+  }
+
+  @Override
+  public void filter(final ContainerRequestContext requestContext, final ContainerResponseContext responseContext) {
+    if (!responseContext.hasEntity()) {
+      return;
+    }
+    MultivaluedMap<String, Object> headers = responseContext.getHeaders();
+    if (headers.containsKey(HttpHeaders.CONTENT_ENCODING) || headers.containsKey("Content-Range")) {
+      return;
+    }
+    MediaType mediaType = responseContext.getMediaType();
+    if (mediaType == null) {
+      return;
+    }
+    int level = policy.getCompressionLevel(mediaType);
+    if (level <= CompressionPolicy.NO_COMPRESSION) {
+      return;
+    }
+    String acceptEncoding = requestContext.getHeaderString(HttpHeaders.ACCEPT_ENCODING);
+    CompressionCodec codec = CompressionCodecs.negotiate(acceptEncoding);
+    if (codec != null) {
+      // Vary is set by the SamplingCompressionOutputStream, if it compresses.
+      requestContext.setProperty(CODEC_PROPERTY, codec);
+      requestContext.setProperty(LEVEL_PROPERTY, level);
+    } else if (!isSmall(responseContext.getLength())) {
+      // other clients might get a compressed response.
+      headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+    }
+  }
+
+  private boolean isSmall(final int contentLength) {
+    return contentLength >= 0 && contentLength < policy.getMinSize();
+  }
+
+  @Override
+  public void aroundWriteTo(final WriterInterceptorContext context) throws IOException {
+    Object codec = context.getProperty(CODEC_PROPERTY);
+    if (codec != null) {
+      context.setOutputStream(new SamplingCompressionOutputStream(context.getOutputStream(), context.getHeaders(),
+              (CompressionCodec) codec, (Integer) context.getProperty(LEVEL_PROPERTY), policy));
+    }
+    context.proceed();
+  }
+
+  @Override
+  public String toString() {
+    return "CompressionJaxRsFilter{" + "policy=" + policy + '}';
+  }
+
+}
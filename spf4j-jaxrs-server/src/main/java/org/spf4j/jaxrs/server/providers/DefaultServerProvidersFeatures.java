@@ -23,6 +23,7 @@ import org.spf4j.base.ExecutionContext;
 import org.spf4j.jaxrs.JaxRsSecurityContext;
 import org.spf4j.jaxrs.server.security.providers.AnnotationAuthorizationFilter;
 import org.spf4j.jaxrs.server.security.providers.SecurityContextRequestFilter;
+import org.spf4j.servlet.DeadlineSheddingFilter;
 
 /**
  * @author Zoltan Farkas
@@ -34,9 +35,11 @@ public final class DefaultServerProvidersFeatures implements Feature {
     fc.register(DataDeprecationsJaxRsFilter.class);
     fc.register(StdErrorResponseExceptionMapper.class);
     fc.register(ProjectionJaxRsFilter.class);
+    fc.register(EncodedContentWriterInterceptor.class);
     fc.register(ServerCustomExecutorServiceProvider.class);
     fc.register(ServerCustomScheduledExecutionServiceProvider.class);
     fc.register(SecurityContextRequestFilter.class);
+    fc.register(DeadlineSheddingFilter.class);
     fc.register(AnnotationAuthorizationFilter.class);
     fc.register(new XtraObjectsContextBinder());
     return true;
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2021 SPF4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.jaxrs.server.providers;
+
+import java.io.IOException;
+import javax.annotation.Priority;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.ext.Provider;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+import org.spf4j.jaxrs.server.EncodedContent;
+
+/**
+ * Writes pre-encoded content directly, bypassing the content encoders (that would encode it again).
+ * Needs to execute before the ENTITY_CODER interceptors.
+ *
+ * @author Zoltan Farkas
+ */
+@Provider
+@Priority(Priorities.ENTITY_CODER - 100)
+public final class EncodedContentWriterInterceptor implements WriterInterceptor {
+
+  @Override
+  public void aroundWriteTo(final WriterInterceptorContext context) throws IOException {
+    Object entity = context.getEntity();
+    if (entity instanceof EncodedContent) {
+      ((EncodedContent) entity).write(context.getOutputStream());
+    } else {
+      context.proceed();
+    }
+  }
+
+}
@@ -90,6 +90,9 @@ public final class ProjectionJaxRsFilter implements ContainerResponseFilter {
     if (responseContext.getStatus() >= 400) {
       return; // No projections on error responses.
     }
+    if (requestContext.getProperty(ProjectionSupport.PROJECTED_PROPERTY) != null) {
+      return; // already projected at the source.
+    }
     MultivaluedMap<String, String> qp = requestContext.getUriInfo().getQueryParameters();
     String select = qp.getFirst("_project");
     List<String> projection;
@@ -20,7 +20,8 @@ public final class ServerCustomExecutorServiceProvider extends CustomExecutorSer
             Utils.getIntConfigValue(cfg, "jersey.server.exec.maxSize", 256),
             Utils.getIntConfigValue(cfg, "jersey.server.exec.maxIdleMIllis", 120000),
             Utils.getIntConfigValue(cfg, "jersey.server.exec.cleanShutdownWaitMillis", 300000),
-            Utils.getStringConfigValue(cfg, "jersey.server.exec.name", "svr-masync"));
+            Utils.getStringConfigValue(cfg, "jersey.server.exec.name", "svr-masync"),
+            Utils.getBooleanConfigValue(cfg, "jersey.server.exec.virtualThreads", false));
   }
 
 }
@@ -16,6 +16,8 @@
 package org.spf4j.jaxrs.server.resources;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import java.io.IOException;
 import java.io.InputStream;
@@ -26,21 +28,34 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Properties;
+import java.util.regex.Pattern;
+import javax.annotation.Nullable;
 import javax.ws.rs.ForbiddenException;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
+import javax.ws.rs.core.CacheControl;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.spf4j.jaxrs.JaxRsSecurityContext;
+import org.spf4j.jaxrs.server.EncodedContent;
+import org.spf4j.jaxrs.server.StaticContent;
 import org.spf4j.jaxrs.server.security.SecuredInternaly;
 import org.spf4j.log.ExecContextLogger;
 import org.spf4j.security.AbacSecurityContext;
 
 /**
+ * Serves static assets from the class path.
+ *
+ * Resolved assets (up to a size) are cached in memory with their precompressed (gzip) variant and strong etag,
+ * so that serving them is a cache lookup and a byte array write.
  *
  * @author Zoltan Farkas
  */
@@ -51,12 +66,38 @@ public class ClassPathResource {
 
   private static final Logger LOG = new ExecContextLogger(LoggerFactory.getLogger(ClassPathResource.class));
 
+  /** Assets larger than this are streamed from the class path, and not cached. */
+  private static final int MAX_CACHED_ASSET_SIZE
+          = Integer.getInteger("spf4j.jaxrs.staticResources.maxCachedAssetSize", 1024 * 1024);
+
+  /** Max total memory (bytes) of the cached assets, for a ClassPathResource instance. */
+  private static final long MAX_CACHE_WEIGHT
+          = Long.getLong("spf4j.jaxrs.staticResources.maxCacheSize", 32 * 1024 * 1024);
+
+  /**
+   * Assets with a path matching this pattern are considered versioned (content hash in the name),
+   * and are served with a immutable Cache-Control.
+   */
+  private static final Pattern VERSIONED_ASSET = Pattern.compile(
+          System.getProperty("spf4j.jaxrs.staticResources.versionedPattern",
+                  ".*[.-][0-9a-fA-F]{8,}\\.[a-zA-Z0-9]+$"));
+
+  private static final CacheControl IMMUTABLE = CacheControl.valueOf("public, max-age=31536000, immutable");
+
+  private static final CacheControl REVALIDATE = CacheControl.valueOf("no-cache");
+
   private final String cpBase;
 
   private final ClassLoader classLoader;
 
   private final List<String> welcomeFiles;
 
+  /**
+   * resolved resources: request path -> cached content.
+   * Only found resources are cached, to not have the cache size driven by requests for non existent assets.
+   */
+  private final Cache<String, StaticContent> cache;
+
   public ClassPathResource(final String cpBase) {
     this(cpBase, Thread.currentThread().getContextClassLoader(), Collections.EMPTY_LIST);
   }
@@ -71,6 +112,10 @@ public class ClassPathResource {
     this.cpBase = cpBase;
     this.classLoader = classLoader;
     this.welcomeFiles = new ArrayList<>(welcomeFiles);
+    this.cache = CacheBuilder.newBuilder()
+            .maximumWeight(MAX_CACHE_WEIGHT)
+            .weigher((final String k, final StaticContent v) -> v.getWeight())
+            .build();
   }
 
   @Override
@@ -85,10 +130,15 @@ public class ClassPathResource {
     return path;
   }
 
+  public Response staticResources(final String path, final JaxRsSecurityContext secCtx) throws IOException {
+    return staticResources(path, null, null, secCtx);
+  }
 
   @GET
   @Path("{path:.*}")
   public Response staticResources(@PathParam("path") final String path,
+          @HeaderParam(HttpHeaders.ACCEPT_ENCODING) @Nullable final String acceptEncoding,
+          @Context @Nullable final Request request,
           @Context final JaxRsSecurityContext secCtx) throws IOException {
     String urlStr;
     if (path.startsWith("/")) {
@@ -100,6 +150,10 @@ public class ClassPathResource {
             AbacSecurityContext.action("read"), new Properties())) {
       return Response.status(403, "Cannot access " + urlStr).build();
     }
+    StaticContent content = cache.getIfPresent(urlStr);
+    if (content != null) {
+      return toResponse(urlStr, content, acceptEncoding, request);
+    }
     URL resource = null;
     if (urlStr.endsWith("/")) {
       if (welcomeFiles.isEmpty()) {
@@ -121,8 +175,41 @@ public class ClassPathResource {
     URLConnection conn = resource.openConnection();
     LOG.debug("Connection of type {}", conn.getClass());
     conn.connect();
+    MediaType mediaType = getPathMediaType(resource.getPath());
+    long length = conn.getContentLengthLong();
     final InputStream is = conn.getInputStream();
-    return Response.ok().entity(is).type(getPathMediaType(resource.getPath())).build();
+    if (length < 0 || length > MAX_CACHED_ASSET_SIZE) {
+      return Response.ok().entity(is).type(mediaType).build();
+    }
+    try (InputStream cis = is) {
+      content = StaticContent.read(cis, mediaType);
+    }
+    cache.put(urlStr, content);
+    return toResponse(urlStr, content, acceptEncoding, request);
+  }
+
+  private static Response toResponse(final String urlStr, final StaticContent content,
+          @Nullable final String acceptEncoding, @Nullable final Request request) {
+    CacheControl cacheControl = VERSIONED_ASSET.matcher(urlStr).matches() ? IMMUTABLE : REVALIDATE;
+    String encoding = content.negotiateEncoding(acceptEncoding);
+    EntityTag etag = content.getEntityTag(encoding);
+    Response.ResponseBuilder rb;
+    if (request != null) {
+      rb = request.evaluatePreconditions(etag);
+      if (rb != null) {
+        return rb.cacheControl(cacheControl).build();
+      }
+    }
+    if (encoding == null) {
+      rb = Response.ok(content.getContent(null), content.getMediaType());
+    } else {
+      rb = Response.ok(new EncodedContent(content.getContent(encoding), encoding), content.getMediaType())
+              .encoding(encoding);
+    }
+    if (content.hasEncodings()) {
+      rb.header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+    }
+    return rb.tag(etag).cacheControl(cacheControl).build();
   }
 
 
@@ -17,32 +17,46 @@ package org.spf4j.jaxrs.server.resources;
 
 import com.google.common.collect.Range;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
-import java.io.BufferedInputStream;
 import java.io.IOException;
-import java.nio.file.DirectoryStream;
+import java.net.URI;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
-import java.util.ArrayList;
+import java.nio.file.PathMatcher;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.PatternSyntaxException;
 import javax.annotation.Nullable;
 import javax.ws.rs.ClientErrorException;
 import javax.ws.rs.GET;
 import javax.ws.rs.HeaderParam;
+import javax.ws.rs.NotFoundException;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.PathSegment;
 import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
 import org.spf4j.base.SuppressForbiden;
 import org.spf4j.service.avro.FileEntry;
-import org.spf4j.service.avro.FileType;
 import org.spf4j.http.HttpRange;
+import org.spf4j.jaxrs.IterableArrayContent;
 import org.spf4j.jaxrs.JaxRsSecurityContext;
-import org.spf4j.jaxrs.server.StreamedResponseContent;
+import org.spf4j.jaxrs.server.DirectoryListing;
+import org.spf4j.jaxrs.server.FileRegionContent;
+import org.spf4j.jaxrs.server.MultiRangeFileContent;
 import org.spf4j.jaxrs.server.security.SecuredInternaly;
 import org.spf4j.security.AbacSecurityContext;
 
@@ -56,6 +70,9 @@ import org.spf4j.security.AbacSecurityContext;
 @SecuredInternaly
 public class FilesResource {
 
+  /** Requests with more ranges are served the full content. */
+  private static final int MAX_RANGES = 64;
+
   private final Path base;
 
   private final boolean listDirectoryContents;
@@ -71,9 +88,11 @@ public class FilesResource {
 
   @GET
   public Response get(@HeaderParam("Range") @Nullable final HttpRange range,
+          @HeaderParam("If-Range") @Nullable final String ifRange,
+          @Context final UriInfo uriInfo,
           @Context final Request request, @Context final JaxRsSecurityContext secCtx)
           throws IOException {
-    return get(Collections.emptyList(), range, request, secCtx);
+    return get(Collections.emptyList(), range, ifRange, uriInfo, request, secCtx);
   }
 
   @javax.ws.rs.Path("{path:.*}")
@@ -82,6 +101,8 @@ public class FilesResource {
   @SuppressForbiden // java.util.Date is my only choice.
   public Response get(@PathParam("path") final List<PathSegment> path,
           @HeaderParam("Range") @Nullable final HttpRange range,
+          @HeaderParam("If-Range") @Nullable final String ifRange,
+          @Context final UriInfo uriInfo,
           @Context final Request request, @Context final JaxRsSecurityContext secCtx)
           throws IOException {
     Path ltarget = resolveToPath(path);
@@ -91,53 +112,173 @@ public class FilesResource {
                     AbacSecurityContext.action("read"), new Properties())) {
       return Response.status(403, "Denied access to: " + target).build();
     }
-    if (Files.isDirectory(target)) {
+    BasicFileAttributes attrs;
+    try {
+      attrs = Files.readAttributes(target, BasicFileAttributes.class);
+    } catch (NoSuchFileException ex) {
+      throw new NotFoundException("File not found: " + path, ex);
+    }
+    if (attrs.isDirectory()) {
       if (!this.listDirectoryContents) {
         return Response.status(403, "Directory listing not allowed for " + path).build();
       }
-      List<FileEntry> result = new ArrayList<>();
-      try (DirectoryStream<Path> stream = Files.newDirectoryStream(target)) {
-        for (Path elem : stream) {
-          Path fileName = elem.getFileName();
-          if (fileName == null) {
-            throw new IllegalStateException("Dir entry should not be empty " + elem);
-          }
-          result.add(new FileEntry(Files.isDirectory(elem) ? FileType.DIRECTORY : FileType.REGULAR,
-                  fileName.toString(), Files.size(elem), Files.getLastModifiedTime(elem).toInstant()));
-        }
-      }
-      return Response.ok(result, MediaType.APPLICATION_JSON).build();
+      return listDirectory(target, uriInfo);
     } else {
-
-        Date lastModifiedTime = new Date(Files.getLastModifiedTime(target).toMillis());
-        Response.ResponseBuilder rb = request.evaluatePreconditions(lastModifiedTime);
-        if (rb != null) {
-          return rb.build();
-        }
-        MediaType fileMediaType = getFileMediaType(target);
-        if (range != null && range.isByteRange()) {
+      long size = attrs.size();
+      Date lastModifiedTime = new Date(attrs.lastModifiedTime().toMillis());
+      EntityTag etag = fileEntityTag(attrs);
+      Response.ResponseBuilder rb = request.evaluatePreconditions(lastModifiedTime, etag);
+      if (rb != null) {
+        return rb.build();
+      }
+      MediaType fileMediaType = getFileMediaType(target);
+      if (range != null && range.isByteRange() && ifRangeMatches(ifRange, etag, lastModifiedTime)) {
         List<Range<Long>> ranges = range.getRanges();
-        if (ranges.size() == 1) {
-          final Range<Long> r = ranges.get(0);
-          return Response.status(206).entity(new StreamedResponseContent(
-                  () -> new BufferedInputStream(Files.newInputStream(target)), r.lowerEndpoint(), r.upperEndpoint()))
-                  .type(fileMediaType)
-                  .lastModified(lastModifiedTime)
-                  .header("Accept-Ranges", "bytes")
-                  .header("Content-Range", "bytes " + r.lowerEndpoint() + '-' + r.upperEndpoint() + "/*")
-                  .header("Content-Disposition", "attachment; filename=\"" + target.getFileName() + "\"")
-                  .build();
+        if (ranges.size() <= MAX_RANGES) {
+          long[] starts = new long[ranges.size()];
+          long[] ends = new long[ranges.size()];
+          int nrRanges = 0;
+          for (Range<Long> r : ranges) {
+            long from = r.lowerEndpoint();
+            if (from < size) {  // skip unsatisfiable ranges.
+              starts[nrRanges] = from;
+              ends[nrRanges] = r.hasUpperBound() ? Math.min(r.upperEndpoint(), size - 1) : size - 1;
+              nrRanges++;
+            }
+          }
+          if (nrRanges == 0) {
+            return Response.status(416)
+                    .header("Content-Range", "bytes */" + size)
+                    .build();
+          } else if (nrRanges == 1) {
+            long from = starts[0];
+            long to = ends[0];
+            return Response.status(206).entity(new FileRegionContent(target, from, to - from + 1))
+                    .type(fileMediaType)
+                    .lastModified(lastModifiedTime)
+                    .tag(etag)
+                    .header("Accept-Ranges", "bytes")
+                    .header("Content-Range", "bytes " + from + '-' + to + '/' + size)
+                    .header("Content-Disposition", "attachment; filename=\"" + target.getFileName() + "\"")
+                    .build();
+          } else {
+            MultiRangeFileContent content = new MultiRangeFileContent(target, fileMediaType, size,
+                    Arrays.copyOf(starts, nrRanges), Arrays.copyOf(ends, nrRanges));
+            return Response.status(206).entity(content)
+                    .type(content.getMediaType())
+                    .lastModified(lastModifiedTime)
+                    .tag(etag)
+                    .header("Accept-Ranges", "bytes")
+                    .header("Content-Disposition", "attachment; filename=\"" + target.getFileName() + "\"")
+                    .build();
+          }
         }
       }
-      return Response.ok(new StreamedResponseContent(() -> new BufferedInputStream(Files.newInputStream(target))),
-              fileMediaType)
+      return Response.ok(new FileRegionContent(target), fileMediaType)
               .lastModified(lastModifiedTime)
+              .tag(etag)
               .header("Accept-Ranges", "bytes")
               .header("Content-Disposition", "attachment; filename=\"" + target.getFileName() + "\"")
               .build();
     }
   }
 
+  /**
+   * List a directory, supported query parameters:
+   * <ul>
+   * <li>glob - file name glob filter.</li>
+   * <li>modifiedAfter, modifiedBefore - ISO instants, modification time filters.</li>
+   * <li>cursor - list only entries with names greater than the cursor.</li>
+   * <li>limit - max number of entries, when specified the entries are returned in name order,
+   * and a Link rel=next header is returned if there are more entries.</li>
+   * </ul>
+   * Without a limit, the listing is streamed in directory order.
+   */
+  private static Response listDirectory(final Path dir, final UriInfo uriInfo) throws IOException {
+    MultivaluedMap<String, String> qp = uriInfo.getQueryParameters();
+    PathMatcher nameMatcher;
+    String glob = qp.getFirst("glob");
+    if (glob != null) {
+      try {
+        nameMatcher = dir.getFileSystem().getPathMatcher("glob:" + glob);
+      } catch (PatternSyntaxException ex) {
+        throw new ClientErrorException("Invalid glob " + glob, 400, ex);
+      }
+    } else {
+      nameMatcher = null;
+    }
+    DirectoryListing listing = new DirectoryListing(dir, nameMatcher,
+            parseInstant(qp.getFirst("modifiedAfter")), parseInstant(qp.getFirst("modifiedBefore")),
+            qp.getFirst("cursor"));
+    String limitStr = qp.getFirst("limit");
+    if (limitStr == null) {
+      return Response.ok(listing.stream(), MediaType.APPLICATION_JSON).build();
+    }
+    int limit;
+    try {
+      limit = Integer.parseInt(limitStr);
+    } catch (NumberFormatException ex) {
+      throw new ClientErrorException("Invalid limit " + limitStr, 400, ex);
+    }
+    if (limit <= 0) {
+      throw new ClientErrorException("limit parameter must be positive: " + limit, 400);
+    }
+    List<FileEntry> page = listing.page(limit);
+    if (page.size() > limit) {
+      page = page.subList(0, limit);
+      URI next = uriInfo.getRequestUriBuilder()
+              .replaceQueryParam("cursor", page.get(limit - 1).getName()).build();
+      return Response.ok(IterableArrayContent.from(page, FileEntry.getClassSchema()), MediaType.APPLICATION_JSON)
+              .link(next, "next").build();
+    }
+    return Response.ok(IterableArrayContent.from(page, FileEntry.getClassSchema()), MediaType.APPLICATION_JSON)
+            .build();
+  }
+
+  @Nullable
+  private static Instant parseInstant(@Nullable final String value) {
+    if (value == null) {
+      return null;
+    }
+    try {
+      return Instant.parse(value);
+    } catch (DateTimeParseException ex) {
+      throw new ClientErrorException("Invalid instant " + value, 400, ex);
+    }
+  }
+
+  /**
+   * Strong entity tag derived from the file key (inode), size and modification time.
+   */
+  static EntityTag fileEntityTag(final BasicFileAttributes attrs) {
+    Object fileKey = attrs.fileKey();
+    return new EntityTag(Integer.toHexString(fileKey == null ? 0 : fileKey.hashCode())
+            + '-' + Long.toHexString(attrs.size())
+            + '-' + Long.toHexString(attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS)));
+  }
+
+  /**
+   * see https://tools.ietf.org/html/rfc7233#section-3.2
+   * @return true if the range request should be honored.
+   */
+  @SuppressForbiden // java.util.Date is my only choice.
+  static boolean ifRangeMatches(@Nullable final String ifRange, final EntityTag etag, final Date lastModified) {
+    if (ifRange == null) {
+      return true;
+    }
+    String val = ifRange.trim();
+    if (val.startsWith("\"") || val.startsWith("W/")) {
+      // strong comparison, weak tags never match.
+      return val.equals('"' + etag.getValue() + '"');
+    }
+    try {
+      return ZonedDateTime.parse(val, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().getEpochSecond()
+              == lastModified.getTime() / 1000;
+    } catch (DateTimeParseException ex) {
+      return false;
+    }
+  }
+
   private Path resolveToPath(final List<PathSegment> path) {
     Path ltarget = base;
     for (PathSegment part : path) {
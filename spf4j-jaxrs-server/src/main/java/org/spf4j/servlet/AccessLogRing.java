@@ -0,0 +1,364 @@
+package org.spf4j.servlet;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import javax.annotation.ParametersAreNonnullByDefault;
+
+/**
+ * Asynchronous access log.
+ *
+ * A preallocated ring of mutable request summary slots, filled in by request threads (a few field writes)
+ * and drained in batches by a single background thread that encodes every slot straight into its reusable
+ * output buffer, one json object per line:
+ * <pre>
+ * {"ts":1634567890123,"name":"GET/http://host/path","trId":"...","clientHost":"127.0.0.1","httpStatus":200,
+ *  "execTimeMicros":1234,"inBytes":0,"outBytes":512}
+ * </pre>
+ * (no LogRecord, LogAttribute or String is created per record), the buffer is written to the output channel
+ * once per drained batch.
+ * When the ring is full, offer returns false and the caller is expected to log synchronously.
+ * The idle writer thread is parked until a producer publishes a record, producers only unpark it when it is idle.
+ *
+ * @author Zoltan Farkas
+ */
+@ParametersAreNonnullByDefault
+final class AccessLogRing implements Closeable {
+
+  private static final int INITIAL_BUFFER_SIZE = 16384;
+
+  private final String name;
+
+  private final WritableByteChannel out;
+
+  private final Slot[] slots;
+
+  private final int mask;
+
+  /** next sequence to be claimed by producers. */
+  private final AtomicLong claimSeq;
+
+  /** next sequence to be consumed by the writer, all slots with sequence < readSeq are free. */
+  private volatile long readSeq;
+
+  private volatile boolean running;
+
+  /** true while the writer is parked, or about to park. */
+  private volatile boolean idle;
+
+  /** the encoding buffer, used only by the writer thread. */
+  private ByteBuffer buffer;
+
+  private final Thread writer;
+
+  /**
+   * @param file the access log file, records are appended to it. (/dev/stdout can be used for the console)
+   */
+  static AccessLogRing open(final String name, final Path file, final int minSize) throws IOException {
+    return new AccessLogRing(name, FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.APPEND), minSize);
+  }
+
+  /**
+   * @param out the output channel, owned (closed) by this ring.
+   */
+  AccessLogRing(final String name, final WritableByteChannel out, final int minSize) {
+    if (minSize <= 0) {
+      throw new IllegalArgumentException("Invalid access log buffer size " + minSize);
+    }
+    this.name = name;
+    this.out = out;
+    int size = Integer.highestOneBit(minSize);
+    if (size < minSize) {
+      size <<= 1;
+    }
+    this.slots = new Slot[size];
+    for (int i = 0; i < size; i++) {
+      slots[i] = new Slot(i - size);
+    }
+    this.mask = size - 1;
+    this.claimSeq = new AtomicLong();
+    this.readSeq = 0;
+    this.running = true;
+    this.buffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    this.writer = new Thread(this::drainLoop, "spf4j-access-log-" + name);
+    this.writer.setDaemon(true);
+    this.writer.start();
+  }
+
+  /**
+   * @return false if there is no free slot, or the ring is closed.
+   */
+  boolean offer(final String reqName, final CharSequence traceId, final String clientHost,
+          final int status, final long execTimeMicros, final long inBytes, final long outBytes) {
+    if (!running) {
+      return false;
+    }
+    long seq;
+    do {
+      seq = claimSeq.get();
+      if (seq - readSeq >= slots.length) {
+        return false;
+      }
+    } while (!claimSeq.compareAndSet(seq, seq + 1));
+    Slot slot = slots[(int) (seq & mask)];
+    slot.timestampMillis = System.currentTimeMillis();
+    slot.name = reqName;
+    slot.traceId = traceId;
+    slot.clientHost = clientHost;
+    slot.status = status;
+    slot.execTimeMicros = execTimeMicros;
+    slot.inBytes = inBytes;
+    slot.outBytes = outBytes;
+    slot.publishedSeq = seq;
+    if (idle) {
+      LockSupport.unpark(writer);
+    }
+    return true;
+  }
+
+  private void drainLoop() {
+    while (running) {
+      if (drain() == 0) {
+        idle = true;
+        // re-check after idle is set, a producer that published before will not unpark.
+        if (running && !isPublished(readSeq)) {
+          LockSupport.park(this);
+        }
+        idle = false;
+      }
+    }
+    drain();
+  }
+
+  private boolean isPublished(final long seq) {
+    return slots[(int) (seq & mask)].publishedSeq == seq;
+  }
+
+  /**
+   * @return the number of encoded records.
+   */
+  private int drain() {
+    int nr = 0;
+    long seq = readSeq;
+    while (true) {
+      if (!isPublished(seq)) {
+        break;
+      }
+      Slot slot = slots[(int) (seq & mask)];
+      encode(slot);
+      slot.clear();
+      seq++;
+      readSeq = seq;
+      nr++;
+    }
+    if (nr > 0) {
+      flush();
+    }
+    return nr;
+  }
+
+  private void encode(final Slot slot) {
+    // worst case: a 6 byte escape per char of the strings, plus the field names and the numbers.
+    ensureCapacity(256 + 6 * (length(slot.name) + length(slot.traceId) + length(slot.clientHost)));
+    int start = buffer.position();
+    try {
+      putAscii("{\"ts\":");
+      putLong(slot.timestampMillis);
+      putAscii(",\"name\":");
+      putJsonString(slot.name);
+      putAscii(",\"trId\":");
+      putJsonString(slot.traceId);
+      putAscii(",\"clientHost\":");
+      putJsonString(slot.clientHost);
+      putAscii(",\"httpStatus\":");
+      putLong(slot.status);
+      putAscii(",\"execTimeMicros\":");
+      putLong(slot.execTimeMicros);
+      putAscii(",\"inBytes\":");
+      putLong(slot.inBytes);
+      putAscii(",\"outBytes\":");
+      putLong(slot.outBytes);
+      putAscii("}\n");
+    } catch (RuntimeException ex) {
+      buffer.position(start);
+      Thread t = Thread.currentThread();
+      t.getUncaughtExceptionHandler().uncaughtException(t, ex);
+    }
+  }
+
+  private static int length(final CharSequence str) {
+    return str == null ? 0 : str.length();
+  }
+
+  private void flush() {
+    buffer.flip();
+    try {
+      while (buffer.hasRemaining()) {
+        out.write(buffer);
+      }
+    } catch (IOException | RuntimeException ex) {
+      Thread t = Thread.currentThread();
+      t.getUncaughtExceptionHandler().uncaughtException(t, ex);
+    } finally {
+      buffer.clear();
+    }
+  }
+
+  /**
+   * make sure there is room for nrBytes, writes out the buffer if needed, grows it for records larger than it.
+   * called once per record, so that a record is never split across writes.
+   */
+  private void ensureCapacity(final int nrBytes) {
+    if (buffer.remaining() >= nrBytes) {
+      return;
+    }
+    flush();
+    if (buffer.capacity() < nrBytes) {
+      buffer = ByteBuffer.allocate(Math.max(nrBytes, buffer.capacity() * 2));
+    }
+  }
+
+  private void putAscii(final String str) {
+    int len = str.length();
+    for (int i = 0; i < len; i++) {
+      buffer.put((byte) str.charAt(i));
+    }
+  }
+
+  private void putLong(final long value) {
+    if (value == Long.MIN_VALUE) {
+      putAscii(Long.toString(value));
+      return;
+    }
+    long v = value;
+    if (v < 0) {
+      buffer.put((byte) '-');
+      v = -v;
+    }
+    int start = buffer.position();
+    do {
+      buffer.put((byte) ('0' + (int) (v % 10)));
+      v /= 10;
+    } while (v != 0);
+    // digits were written least significant first, reverse them.
+    for (int i = start, j = buffer.position() - 1; i < j; i++, j--) {
+      byte b = buffer.get(i);
+      buffer.put(i, buffer.get(j));
+      buffer.put(j, b);
+    }
+  }
+
+  /**
+   * writes a json string, utf-8 encoded.
+   */
+  private void putJsonString(final CharSequence str) {
+    if (str == null) {
+      putAscii("null");
+      return;
+    }
+    int len = str.length();
+    buffer.put((byte) '"');
+    for (int i = 0; i < len; i++) {
+      char c = str.charAt(i);
+      if (c == '"' || c == '\\') {
+        buffer.put((byte) '\\');
+        buffer.put((byte) c);
+      } else if (c < 0x20) {
+        buffer.put((byte) '\\');
+        buffer.put((byte) 'u');
+        buffer.put((byte) '0');
+        buffer.put((byte) '0');
+        buffer.put((byte) hexDigit(c >> 4));
+        buffer.put((byte) hexDigit(c));
+      } else if (c < 0x80) {
+        buffer.put((byte) c);
+      } else if (c < 0x800) {
+        buffer.put((byte) (0xC0 | (c >> 6)));
+        buffer.put((byte) (0x80 | (c & 0x3F)));
+      } else if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(str.charAt(i + 1))) {
+        int cp = Character.toCodePoint(c, str.charAt(++i));
+        buffer.put((byte) (0xF0 | (cp >> 18)));
+        buffer.put((byte) (0x80 | ((cp >> 12) & 0x3F)));
+        buffer.put((byte) (0x80 | ((cp >> 6) & 0x3F)));
+        buffer.put((byte) (0x80 | (cp & 0x3F)));
+      } else if (Character.isSurrogate(c)) {
+        buffer.put((byte) '?');
+      } else {
+        buffer.put((byte) (0xE0 | (c >> 12)));
+        buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+        buffer.put((byte) (0x80 | (c & 0x3F)));
+      }
+    }
+    buffer.put((byte) '"');
+  }
+
+  private static char hexDigit(final int value) {
+    return "0123456789abcdef".charAt(value & 0xF);
+  }
+
+  /**
+   * stops accepting new records, flushes the published ones, and closes the output.
+   */
+  @Override
+  public void close() {
+    running = false;
+    LockSupport.unpark(writer);
+    try {
+      writer.join(TimeUnit.SECONDS.toMillis(10));
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+    try {
+      out.close();
+    } catch (IOException ex) {
+      Thread t = Thread.currentThread();
+      t.getUncaughtExceptionHandler().uncaughtException(t, ex);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "AccessLogRing{" + "name=" + name + ", size=" + slots.length
+            + ", claimSeq=" + claimSeq + ", readSeq=" + readSeq + '}';
+  }
+
+  private static final class Slot {
+
+    private volatile long publishedSeq;
+
+    private long timestampMillis;
+
+    private String name;
+
+    private CharSequence traceId;
+
+    private String clientHost;
+
+    private int status;
+
+    private long execTimeMicros;
+
+    private long inBytes;
+
+    private long outBytes;
+
+    Slot(final long initialSeq) {
+      this.publishedSeq = initialSeq;
+    }
+
+    void clear() {
+      name = null;
+      traceId = null;
+      clientHost = null;
+    }
+  }
+
+}
@@ -0,0 +1,346 @@
+package org.spf4j.servlet;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.annotation.Nullable;
+import javax.annotation.ParametersAreNonnullByDefault;
+import org.spf4j.base.ExecutionContext.SimpleTag;
+import org.spf4j.base.TimeSource;
+
+/**
+ * Adaptive concurrency limiter (gradient style).
+ *
+ * The limit is adjusted every sample window (at least 100ms and 10 completed requests) based on the ratio between
+ * the long term average latency (no load latency estimate) and the current window average latency:
+ * <pre>
+ * gradient = max(0.5, min(1, 1.5 * longRtt / shortRtt))
+ * newLimit = limit * gradient + sqrt(limit)
+ * </pre>
+ * and smoothed. When latency grows due to queueing, the limit shrinks, when latency is stable, the limit grows.
+ * The limit does not grow when the in flight requests are well below the limit (application limited).
+ *
+ * The expected service time, for shedding requests that would not complete before their deadline, is tracked per
+ * endpoint (EMA of the endpoint latency), requests are shed based on their deadline only for endpoints with at least
+ * MIN_ENDPOINT_SAMPLES samples. The endpoint is the matched JAX-RS resource method, set on the permit after matching
+ * by DeadlineSheddingFilter, so the number of endpoints is bounded by the application. At most MAX_ENDPOINTS
+ * endpoints are tracked, requests to untracked endpoints are never shed based on their deadline.
+ *
+ * @author Zoltan Farkas
+ */
+@ParametersAreNonnullByDefault
+final class AdaptiveConcurrencyLimiter {
+
+  private static final long WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+  private static final int MIN_WINDOW_SAMPLES = 10;
+
+  private static final double TOLERANCE = 1.5;
+
+  private static final double SMOOTHING = 0.2;
+
+  /** long term rtt EMA factor, about 60 windows. */
+  private static final double LONG_RTT_ALPHA = 2d / 61;
+
+  private static final int MIN_ENDPOINT_SAMPLES = 20;
+
+  private static final int MAX_ENDPOINTS = Integer.getInteger("spf4j.jaxrs.concurrencyLimit.maxEndpoints", 1024);
+
+  /** the permit of the current request. */
+  static final SimpleTag<Permit> PERMIT = new SimpleTag<Permit>() {
+    @Override
+    public String toString() {
+      return "CLP";
+    }
+  };
+
+  private final int minLimit;
+
+  private final int maxLimit;
+
+  private final double deadlineRatio;
+
+  private final long retryAfterSeconds;
+
+  private final AtomicInteger inFlight;
+
+  private final AtomicInteger windowMaxInFlight;
+
+  private final LongAdder rttSumNanos;
+
+  private final LongAdder rttCount;
+
+  private final ReentrantLock updateLock;
+
+  private final ConcurrentMap<Object, ServiceTime> serviceTimes;
+
+  private volatile int limit;
+
+  private volatile long nextUpdateNanos;
+
+  /** 0 when there is no estimate yet. */
+  private volatile long longRttNanos;
+
+  /** guarded by updateLock. */
+  private double estimatedLimit;
+
+  /**
+   * @param initialLimit the initial concurrency limit.
+   * @param minLimit the min concurrency limit.
+   * @param maxLimit the max concurrency limit.
+   * @param deadlineRatio requests with a time to deadline less than deadlineRatio * expected service time are shed.
+   * (0 to disable deadline based shedding)
+   */
+  AdaptiveConcurrencyLimiter(final int initialLimit, final int minLimit, final int maxLimit,
+          final double deadlineRatio) {
+    this(initialLimit, minLimit, maxLimit, deadlineRatio, 1);
+  }
+
+  /**
+   * @param initialLimit the initial concurrency limit.
+   * @param minLimit the min concurrency limit.
+   * @param maxLimit the max concurrency limit.
+   * @param deadlineRatio requests with a time to deadline less than deadlineRatio * expected service time are shed.
+   * (0 to disable deadline based shedding)
+   * @param retryAfterSeconds the Retry-After of shed requests.
+   */
+  AdaptiveConcurrencyLimiter(final int initialLimit, final int minLimit, final int maxLimit,
+          final double deadlineRatio, final long retryAfterSeconds) {
+    if (minLimit <= 0 || minLimit > initialLimit || initialLimit > maxLimit) {
+      throw new IllegalArgumentException("Invalid limits, min = " + minLimit + ", initial = "
+              + initialLimit + ", max = " + maxLimit);
+    }
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+    this.deadlineRatio = deadlineRatio;
+    this.retryAfterSeconds = retryAfterSeconds;
+    this.inFlight = new AtomicInteger();
+    this.windowMaxInFlight = new AtomicInteger();
+    this.rttSumNanos = new LongAdder();
+    this.rttCount = new LongAdder();
+    this.updateLock = new ReentrantLock();
+    this.serviceTimes = new ConcurrentHashMap<>();
+    this.limit = initialLimit;
+    this.estimatedLimit = initialLimit;
+    this.longRttNanos = 0;
+    this.nextUpdateNanos = TimeSource.nanoTime() + WINDOW_NANOS;
+  }
+
+  /**
+   * @param endpoint the endpoint the request is for.
+   * @param timeToDeadlineNanos the time left to the request deadline.
+   * @return false if the request is not expected to complete before its deadline.
+   */
+  boolean canMeetDeadline(final Object endpoint, final long timeToDeadlineNanos) {
+    if (deadlineRatio <= 0) {
+      return true;
+    }
+    ServiceTime st = serviceTimes.get(endpoint);
+    return st == null || st.samples < MIN_ENDPOINT_SAMPLES || timeToDeadlineNanos >= st.emaNanos * deadlineRatio;
+  }
+
+  /**
+   * @param endpoint the endpoint the request is for, null if not known yet (see Permit.admit).
+   * @return a permit if the request can be executed, null if the concurrency limit is reached.
+   */
+  @Nullable
+  Permit tryAcquire(@Nullable final Object endpoint, final long startNanos) {
+    int lim = limit;
+    int current;
+    do {
+      current = inFlight.get();
+      if (current >= lim) {
+        return null;
+      }
+    } while (!inFlight.compareAndSet(current, current + 1));
+    int nr = current + 1;
+    int max;
+    do {
+      max = windowMaxInFlight.get();
+    } while (nr > max && !windowMaxInFlight.compareAndSet(max, nr));
+    return new Permit(this, endpoint, startNanos);
+  }
+
+  long getRetryAfterSeconds() {
+    return retryAfterSeconds;
+  }
+
+  private void release(@Nullable final Object endpoint, final long rttNanos, final long nowNanos) {
+    inFlight.decrementAndGet();
+    if (endpoint != null) {
+      ServiceTime st = serviceTimes.get(endpoint);
+      if (st == null && serviceTimes.size() < MAX_ENDPOINTS) {
+        st = serviceTimes.computeIfAbsent(endpoint, (e) -> new ServiceTime());
+      }
+      if (st != null) {
+        st.add(rttNanos);
+      }
+    }
+    rttSumNanos.add(rttNanos);
+    rttCount.increment();
+    if (nowNanos - nextUpdateNanos >= 0 && updateLock.tryLock()) {
+      try {
+        update(nowNanos);
+      } finally {
+        updateLock.unlock();
+      }
+    }
+  }
+
+  private void update(final long nowNanos) {
+    if (rttCount.sum() < MIN_WINDOW_SAMPLES) {
+      return;
+    }
+    long count = rttCount.sumThenReset();
+    long sum = rttSumNanos.sumThenReset();
+    nextUpdateNanos = nowNanos + WINDOW_NANOS;
+    int maxInFlight = windowMaxInFlight.getAndSet(inFlight.get());
+    double shortRtt = Math.max(1d, (double) sum / count);
+    double longRtt = longRttNanos == 0 ? shortRtt : longRttNanos * (1 - LONG_RTT_ALPHA) + shortRtt * LONG_RTT_ALPHA;
+    if (longRtt / shortRtt > 2) {
+      // latency dropped substantially (load went away), converge faster.
+      longRtt *= 0.95;
+    }
+    longRttNanos = Math.max(1L, (long) longRtt);
+    if (maxInFlight < estimatedLimit / 2) {
+      return;
+    }
+    double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longRtt / shortRtt));
+    double newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+    newLimit = estimatedLimit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+    estimatedLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+    limit = (int) estimatedLimit;
+  }
+
+  int getLimit() {
+    return limit;
+  }
+
+  int getInFlight() {
+    return inFlight.get();
+  }
+
+  /**
+   * @return the long term average latency (all endpoints), 0 if there is no estimate yet.
+   */
+  long getLongRttNanos() {
+    return longRttNanos;
+  }
+
+  /**
+   * @return the expected service time of the endpoint, 0 if there is no estimate yet.
+   */
+  long getExpectedServiceTimeNanos(final Object endpoint) {
+    ServiceTime st = serviceTimes.get(endpoint);
+    return st == null ? 0 : st.emaNanos;
+  }
+
+  @Override
+  public String toString() {
+    return "AdaptiveConcurrencyLimiter{" + "limit=" + limit + ", inFlight=" + inFlight
+            + ", longRttNanos=" + longRttNanos + ", minLimit=" + minLimit + ", maxLimit=" + maxLimit
+            + ", nrEndpoints=" + serviceTimes.size() + '}';
+  }
+
+  /**
+   * Endpoint service time EMA, concurrent updates are not lost, the sample count is approximate.
+   */
+  private static final class ServiceTime {
+
+    private static final AtomicLongFieldUpdater<ServiceTime> EMA =
+            AtomicLongFieldUpdater.newUpdater(ServiceTime.class, "emaNanos");
+
+    /** endpoint EMA factor, about 20 samples. */
+    private static final double ALPHA = 2d / 21;
+
+    private volatile long emaNanos;
+
+    private volatile int samples;
+
+    @SuppressFBWarnings("VO_VOLATILE_INCREMENT") // approximate count is fine.
+    void add(final long rttNanos) {
+      long ema;
+      long newEma;
+      do {
+        ema = emaNanos;
+        newEma = ema == 0 ? Math.max(1L, rttNanos) : Math.max(1L, (long) (ema * (1 - ALPHA) + rttNanos * ALPHA));
+      } while (!EMA.compareAndSet(this, ema, newEma));
+      if (samples < MIN_ENDPOINT_SAMPLES) {
+        samples++;
+      }
+    }
+  }
+
+  /**
+   * A acquired execution permit, release is idempotent.
+   * The endpoint can be set after the permit is acquired (admit), when the request is matched to a resource method.
+   */
+  static final class Permit {
+
+    private static final AtomicIntegerFieldUpdater<Permit> RELEASED =
+            AtomicIntegerFieldUpdater.newUpdater(Permit.class, "released");
+
+    private final AdaptiveConcurrencyLimiter limiter;
+
+    private final long startNanos;
+
+    @Nullable
+    private volatile Object endpoint;
+
+    /** shed requests are not included in the latency statistics. */
+    private volatile boolean shed;
+
+    private volatile int released;
+
+    Permit(final AdaptiveConcurrencyLimiter limiter, @Nullable final Object endpoint, final long startNanos) {
+      this.limiter = limiter;
+      this.endpoint = endpoint;
+      this.startNanos = startNanos;
+      this.released = 0;
+    }
+
+    /**
+     * @param pEndpoint the endpoint the request is for.
+     * @param timeToDeadlineNanos the time left to the request deadline.
+     * @return false if the request is not expected to complete before its deadline, and should be shed.
+     */
+    boolean admit(final Object pEndpoint, final long timeToDeadlineNanos) {
+      if (limiter.canMeetDeadline(pEndpoint, timeToDeadlineNanos)) {
+        endpoint = pEndpoint;
+        return true;
+      }
+      shed = true;
+      return false;
+    }
+
+    long getRetryAfterSeconds() {
+      return limiter.getRetryAfterSeconds();
+    }
+
+    void release() {
+      release(TimeSource.nanoTime());
+    }
+
+    void release(final long nowNanos) {
+      if (RELEASED.compareAndSet(this, 0, 1)) {
+        if (shed) {
+          limiter.inFlight.decrementAndGet();
+        } else {
+          limiter.release(endpoint, nowNanos - startNanos, nowNanos);
+        }
+      }
+    }
+
+    @Override
+    public String toString() {
+      return "Permit{" + "endpoint=" + endpoint + ", startNanos=" + startNanos + ", released=" + released + '}';
+    }
+  }
+
+}
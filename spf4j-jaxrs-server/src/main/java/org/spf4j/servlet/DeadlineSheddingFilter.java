@@ -0,0 +1,71 @@
+/*
+ * Copyright 2021 SPF4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.servlet;
+
+import java.lang.reflect.Method;
+import javax.annotation.Priority;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.ServiceUnavailableException;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.ext.Provider;
+import org.spf4j.base.ExecutionContext;
+import org.spf4j.base.ExecutionContexts;
+import org.spf4j.base.TimeSource;
+
+/**
+ * Sheds requests with a deadline shorter than the expected service time of the matched resource method.
+ * Works together with the ExecutionContextFilter concurrency limiter (spf4j.jaxrs.concurrencyLimit),
+ * does nothing if the limiter is not enabled.
+ * The resource method (not the request uri) is the service time key, this way the number of tracked endpoints is
+ * bounded by the application, and no key is allocated per request.
+ *
+ * @author Zoltan Farkas
+ */
+@Provider
+@Priority(Priorities.AUTHENTICATION - 100)
+public final class DeadlineSheddingFilter implements ContainerRequestFilter {
+
+  private final javax.inject.Provider<ResourceInfo> resourceInfoProvider;
+
+  public DeadlineSheddingFilter(@Context final javax.inject.Provider<ResourceInfo> resourceInfoProvider) {
+    this.resourceInfoProvider = resourceInfoProvider;
+  }
+
+  @Override
+  public void filter(final ContainerRequestContext rctx) {
+    ExecutionContext ctx = ExecutionContexts.current();
+    if (ctx == null) {
+      return;
+    }
+    AdaptiveConcurrencyLimiter.Permit permit = ctx.get(AdaptiveConcurrencyLimiter.PERMIT);
+    if (permit == null) {
+      return;
+    }
+    Method method = resourceInfoProvider.get().getResourceMethod();
+    if (method == null) {
+      return;
+    }
+    if (!permit.admit(method, ctx.getDeadlineNanos() - TimeSource.nanoTime())) {
+      ExecutionContextFilter.SHED_REQUESTS.increment();
+      throw new ServiceUnavailableException("Deadline shorter than the expected service time",
+              permit.getRetryAfterSeconds());
+    }
+  }
+
+}
@@ -7,6 +7,7 @@ import org.spf4j.http.ContextTags;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.UncheckedIOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Enumeration;
@@ -72,12 +73,22 @@ import org.spf4j.perf.impl.RecorderFactory;
  * <li>Deadline propagation, fully customizable via:
  * DeadlineProtocol and the DefaultDeadlineProtocol implementation.</li>
  * <li>Configurable header overwrite via query Parameters.</li>
- * <li>Standard access log</li>
+ * <li>Standard access log. When a access log file is configured (spf4j.jaxrs.accessLogFile), normal requests
+ * are written asynchronously, as json lines, to it via a ring buffer (size configurable via
+ * spf4j.jaxrs.accessLogBufferSize, 0 to log synchronously), slow or abnormal requests, and requests arriving
+ * while the ring is full are logged synchronously with full detail to the filter logger.
+ * Without a access log file all requests are logged synchronously to the filter logger.</li>
  * <li>Debug logs on error.</li>
  * <li>Profiling information on error.</li>
  * <li>Execution time, timeout relative access log level upgrade.</li>
  * <li>Execution context creation/closing.</li>
  * <li>Context log level overwrites.</li>
+ * <li>Load shedding, disabled by default: a adaptive concurrency limit (see AdaptiveConcurrencyLimiter,
+ * initial limit configurable via spf4j.jaxrs.concurrencyLimit, 0 (default) disables), and rejection of requests with
+ * a deadline shorter than the expected service time of their endpoint (the matched resource method, done by
+ * DeadlineSheddingFilter after resource matching, registered by DefaultServerProvidersFeatures),
+ * shed requests are rejected with 503 and Retry-After.
+ * The initial limit should not be lower than the worker thread pool size.</li>
  * </ul>
  */
 @WebFilter(asyncSupported = true)
@@ -90,6 +101,21 @@ public final class ExecutionContextFilter implements Filter {
 
   public static final String CFG_HEADER_OVERWRITE_QP_PREFIX = "spf4j.jaxrs.headerOverwriteQueryParamPrefix";
 
+  public static final String CFG_ACCESS_LOG_BUFFER_SIZE = "spf4j.jaxrs.accessLogBufferSize";
+
+  public static final String CFG_ACCESS_LOG_FILE = "spf4j.jaxrs.accessLogFile";
+
+  public static final String CFG_CONCURRENCY_LIMIT = "spf4j.jaxrs.concurrencyLimit";
+
+  public static final String CFG_CONCURRENCY_LIMIT_MIN = "spf4j.jaxrs.concurrencyLimit.min";
+
+  public static final String CFG_CONCURRENCY_LIMIT_MAX = "spf4j.jaxrs.concurrencyLimit.max";
+
+  /** requests with a time to deadline less than this percentage of the expected service time are shed. */
+  public static final String CFG_DEADLINE_SHED_PCT = "spf4j.jaxrs.deadlineShedPercent";
+
+  public static final String CFG_RETRY_AFTER_SECONDS = "spf4j.jaxrs.shedRetryAfterSeconds";
+
   private static final MeasurementRecorderSource EXEC_TIME_STATS
                     = RecorderFactory.createScalableQuantizedRecorderSource("http.requestExecTime", "microSecond",
                       60000, 1000, 0, 6, 10);
@@ -100,6 +126,9 @@ public final class ExecutionContextFilter implements Filter {
   private static final MeasurementRecorder SERVER_ERRORS =
           RecorderFactory.createScalableSimpleCountingRecorder("http.serverErrors", "count", 60000);
 
+  static final MeasurementRecorder SHED_REQUESTS =
+          RecorderFactory.createScalableSimpleCountingRecorder("http.shedRequests", "count", 60000);
+
 
   private static final MeasurementRecorder BYTES_IN
                      = RecorderFactory.createScalableMinMaxAvgRecorder("http.contentBytesIn", "bytes", 60000);
@@ -123,6 +152,14 @@ public final class ExecutionContextFilter implements Filter {
 
   private String headerOverwriteQueryParamPrefix;
 
+  @Nullable
+  private AccessLogRing accessLog;
+
+  @Nullable
+  private AdaptiveConcurrencyLimiter limiter;
+
+  private String retryAfter;
+
 
   public ExecutionContextFilter(final SecurityAuthenticator auth) {
     this(new DefaultDeadlineProtocol(), auth);
@@ -154,6 +191,31 @@ public final class ExecutionContextFilter implements Filter {
             CFG_CTX_LOG_LEVEL_HEADER_NAME, Headers.CTX_LOG_LEVEL);
     idHeaderName = Filters.getStringParameter(filterConfig, CFG_ID_HEADER_NAME, Headers.REQ_ID);
     headerOverwriteQueryParamPrefix = Filters.getStringParameter(filterConfig, CFG_HEADER_OVERWRITE_QP_PREFIX, "_");
+    int accessLogBufferSize = Filters.getIntParameter(filterConfig, CFG_ACCESS_LOG_BUFFER_SIZE,
+            Integer.getInteger(CFG_ACCESS_LOG_BUFFER_SIZE, 1024));
+    String accessLogFile = Filters.getStringParameter(filterConfig, CFG_ACCESS_LOG_FILE,
+            System.getProperty(CFG_ACCESS_LOG_FILE));
+    if (accessLogBufferSize > 0 && accessLogFile != null && !accessLogFile.isEmpty()) {
+      try {
+        accessLog = AccessLogRing.open(log.getName(), Paths.get(accessLogFile), accessLogBufferSize);
+      } catch (IOException ex) {
+        throw new UncheckedIOException("Cannot open access log " + accessLogFile, ex);
+      }
+    }
+    int retryAfterSeconds = Filters.getIntParameter(filterConfig, CFG_RETRY_AFTER_SECONDS,
+            Integer.getInteger(CFG_RETRY_AFTER_SECONDS, 1));
+    retryAfter = Integer.toString(retryAfterSeconds);
+    int concurrencyLimit = Filters.getIntParameter(filterConfig, CFG_CONCURRENCY_LIMIT,
+            Integer.getInteger(CFG_CONCURRENCY_LIMIT, 0));
+    if (concurrencyLimit > 0) {
+      limiter = new AdaptiveConcurrencyLimiter(concurrencyLimit,
+              Filters.getIntParameter(filterConfig, CFG_CONCURRENCY_LIMIT_MIN,
+                      Integer.getInteger(CFG_CONCURRENCY_LIMIT_MIN, Math.min(8, concurrencyLimit))),
+              Filters.getIntParameter(filterConfig, CFG_CONCURRENCY_LIMIT_MAX,
+                      Integer.getInteger(CFG_CONCURRENCY_LIMIT_MAX, Math.max(2048, concurrencyLimit))),
+              Filters.getIntParameter(filterConfig, CFG_DEADLINE_SHED_PCT,
+                      Integer.getInteger(CFG_DEADLINE_SHED_PCT, 100)) / 100d, retryAfterSeconds);
+    }
   }
 
 
@@ -218,10 +280,26 @@ public final class ExecutionContextFilter implements Filter {
     } else {
       level = null;
     }
+    AdaptiveConcurrencyLimiter.Permit permit;
+    AdaptiveConcurrencyLimiter lim = limiter;
+    if (lim != null) {
+      // the endpoint is set by DeadlineSheddingFilter, once the request is matched to a resource method.
+      permit = lim.tryAcquire(null, startTimeNanos);
+      if (permit == null) {
+        shed(httpResp, "Server concurrency limit reached", secCtx);
+        logRequestEnd(startTimeNanos, org.spf4j.log.Level.WARN, name, reqId, httpReq, httpResp);
+        return;
+      }
+    } else {
+      permit = null;
+    }
     ExecutionContext ctx = ExecutionContexts.start(name, reqId, null, startTimeNanos, deadlineNanos);
     ctx.put(ContextTags.HTTP_REQ, httpReq);
     ctx.put(ContextTags.HTTP_RESP, httpResp);
     ctx.put(ContextTags.SECURITY_CONTEXT, secCtx);
+    if (permit != null) {
+      ctx.put(AdaptiveConcurrencyLimiter.PERMIT, permit);
+    }
     if (level != null) {
         ctx.setBackendMinLogLevel(level);
     }
@@ -243,6 +321,9 @@ public final class ExecutionContextFilter implements Filter {
                 logRequestEnd(org.spf4j.log.Level.INFO, ctx, httpReq, httpResp);
               } finally {
                 ctx.close();
+                if (permit != null) {
+                  permit.release();
+                }
               }
             }
           }
@@ -268,6 +349,9 @@ public final class ExecutionContextFilter implements Filter {
           logRequestEnd(org.spf4j.log.Level.INFO, ctx, httpReq, httpResp);
         } finally {
           ctx.close();
+          if (permit != null) {
+            permit.release();
+          }
         }
       }
     } catch (Throwable t) {
@@ -280,10 +364,20 @@ public final class ExecutionContextFilter implements Filter {
         logRequestEnd(logLevel, ctx, httpReq, httpResp);
       } finally {
         ctx.close();
+        if (permit != null) {
+          permit.release();
+        }
       }
     }
   }
 
+  private void shed(final HttpServletResponse resp, final String reason, final JaxRsSecurityContext secCtx)
+          throws IOException {
+    SHED_REQUESTS.increment();
+    resp.setHeader(HttpHeaders.RETRY_AFTER, retryAfter);
+    errorResponse(resp, 503, reason, null, secCtx);
+  }
+
   /**
    * Clients disconnecting prematurely.
    * @return
@@ -357,6 +451,11 @@ public final class ExecutionContextFilter implements Filter {
     EXEC_TIME_STATS.getRecorder(req.getMethod()).record(execTimeMicros);
     BYTES_IN.record(bytesRead);
     BYTES_OUT.record(bytesWritten);
+    if (logAttrs == null && level == Level.INFO && accessLog != null
+            && (!log.isLoggable(Level.INFO.getJulLevel()) || accessLog.offer(ctx.getName(), ctx.getId(), remoteHost,
+                    status, execTimeMicros, bytesRead, bytesWritten))) {
+      return;
+    }
     if (logAttrs == null) {
       args = new Object[]{ctx.getName(),
         LogAttribute.traceId(ctx.getId()),
@@ -524,14 +623,18 @@ public final class ExecutionContextFilter implements Filter {
 
   @Override
   public void destroy() {
-    // nothing to destroy
+    if (accessLog != null) {
+      accessLog.close();
+      accessLog = null;
+    }
+    limiter = null;
   }
 
   @Override
   public String toString() {
     return "ExecutionContextFilter{" + "deadlineProtocol=" + deadlineProtocol + ", idHeaderName="
             + idHeaderName + ", warnThreshold=" + warnThreshold + ", errorThreshold="
-            + errorThreshold + '}';
+            + errorThreshold + ", limiter=" + limiter + '}';
   }
 
   @SuppressFBWarnings("DMC_DUBIOUS_MAP_COLLECTION")
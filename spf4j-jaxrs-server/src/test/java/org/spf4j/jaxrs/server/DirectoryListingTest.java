@@ -0,0 +1,69 @@
+/*
+ * Copyright 2021 SPF4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.jaxrs.server;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import org.spf4j.service.avro.FileEntry;
+
+/**
+ *
+ * @author Zoltan Farkas
+ */
+public class DirectoryListingTest {
+
+  @Test
+  public void testListing() throws IOException {
+    Path dir = Files.createTempDirectory("listing");
+    try {
+      Instant now = Instant.parse("2021-01-01T00:00:00Z");
+      for (int i = 0; i < 10; i++) {
+        Path file = Files.createFile(dir.resolve("f" + i + (i % 2 == 0 ? ".log" : ".txt")));
+        Files.setLastModifiedTime(file, FileTime.from(now.plusSeconds(i)));
+      }
+      List<FileEntry> all = new ArrayList<>();
+      new DirectoryListing(dir, null, null, null, null).walk(all::add);
+      Assert.assertEquals(10, all.size());
+      List<FileEntry> logs = new ArrayList<>();
+      new DirectoryListing(dir, dir.getFileSystem().getPathMatcher("glob:*.log"),
+              now.plusSeconds(2), null, null).walk(logs::add);
+      Assert.assertEquals(3, logs.size());
+      List<FileEntry> page = new DirectoryListing(dir, null, null, null, null).page(4);
+      Assert.assertEquals(5, page.size());
+      Assert.assertEquals("f0.log", page.get(0).getName());
+      Assert.assertEquals("f3.txt", page.get(3).getName());
+      page = new DirectoryListing(dir, null, null, null, "f7.txt").page(4);
+      Assert.assertEquals(2, page.size());
+      Assert.assertEquals("f8.log", page.get(0).getName());
+    } finally {
+      try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+        for (Path file : files) {
+          Files.delete(file);
+        }
+      }
+      Files.delete(dir);
+    }
+  }
+
+}
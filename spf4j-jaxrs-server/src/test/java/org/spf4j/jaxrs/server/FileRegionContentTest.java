@@ -0,0 +1,71 @@
+/*
+ * Copyright 2021 SPF4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.jaxrs.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import javax.ws.rs.core.MediaType;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author Zoltan Farkas
+ */
+public class FileRegionContentTest {
+
+  @Test
+  public void testRegions() throws IOException {
+    Path file = Files.createTempFile("region", ".txt");
+    try {
+      Files.write(file, "0123456789".getBytes(StandardCharsets.UTF_8));
+      Assert.assertEquals("0123456789", write(new FileRegionContent(file)));
+      Assert.assertEquals("345", write(new FileRegionContent(file, 3, 3)));
+      Assert.assertEquals("789", write(new FileRegionContent(file, 7, -1)));
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  @Test
+  public void testMultiRange() throws IOException {
+    Path file = Files.createTempFile("region", ".txt");
+    try {
+      Files.write(file, "0123456789".getBytes(StandardCharsets.UTF_8));
+      MultiRangeFileContent content = new MultiRangeFileContent(file, MediaType.TEXT_PLAIN_TYPE, 10,
+              new long[] {0, 8}, new long[] {1, 9});
+      String boundary = content.getMediaType().getParameters().get("boundary");
+      ByteArrayOutputStream bos = new ByteArrayOutputStream();
+      content.write(bos);
+      String result = new String(bos.toByteArray(), StandardCharsets.UTF_8);
+      Assert.assertTrue(result, result.contains("Content-Range: bytes 0-1/10\r\n\r\n01\r\n"));
+      Assert.assertTrue(result, result.contains("Content-Range: bytes 8-9/10\r\n\r\n89\r\n"));
+      Assert.assertTrue(result, result.endsWith("--" + boundary + "--\r\n"));
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  private static String write(final FileRegionContent content) throws IOException {
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    content.write(bos);
+    return new String(bos.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+}
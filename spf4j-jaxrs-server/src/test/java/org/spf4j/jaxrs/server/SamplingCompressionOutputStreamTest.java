@@ -0,0 +1,122 @@
+/*
+ * Copyright 2021 SPF4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.spf4j.jaxrs.server;
+
+import com.google.common.io.ByteStreams;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+import org.junit.Assert;
+import org.junit.Test;
+import org.spf4j.jaxrs.common.providers.CompressionCodecs;
+
+/**
+ *
+ * @author Zoltan Farkas
+ */
+public class SamplingCompressionOutputStreamTest {
+
+  private static final CompressionPolicy POLICY
+          = new DefaultCompressionPolicy(Collections.emptyMap(), 1024, 4096, 0.9);
+
+  @Test
+  public void testCompressible() throws IOException {
+    byte[] data = compressible();
+    MultivaluedMap<String, Object> headers = new MultivaluedHashMap<>();
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    try (SamplingCompressionOutputStream os
+            = new SamplingCompressionOutputStream(bos, headers, CompressionCodecs.GZIP, 6, POLICY)) {
+      os.write(data, 0, 100);
+      os.write(data, 100, data.length - 100);
+    }
+    Assert.assertEquals("gzip", headers.getFirst(HttpHeaders.CONTENT_ENCODING));
+    Assert.assertEquals(HttpHeaders.ACCEPT_ENCODING, headers.getFirst(HttpHeaders.VARY));
+    Assert.assertTrue(bos.size() < data.length / 2);
+    Assert.assertArrayEquals(data,
+            ByteStreams.toByteArray(new GZIPInputStream(new ByteArrayInputStream(bos.toByteArray()))));
+  }
+
+  @Test
+  public void testIncompressibleAndSmall() throws IOException {
+    byte[] data = new byte[10000];
+    new Random(0).nextBytes(data);
+    MultivaluedMap<String, Object> headers = new MultivaluedHashMap<>();
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    try (SamplingCompressionOutputStream os
+            = new SamplingCompressionOutputStream(bos, headers, CompressionCodecs.GZIP, 1, POLICY)) {
+      os.write(data);
+    }
+    Assert.assertNull(headers.getFirst(HttpHeaders.CONTENT_ENCODING));
+    Assert.assertNull(headers.getFirst(HttpHeaders.VARY));
+    Assert.assertArrayEquals(data, bos.toByteArray());
+    bos.reset();
+    try (SamplingCompressionOutputStream os
+            = new SamplingCompressionOutputStream(bos, headers, CompressionCodecs.GZIP, 6, POLICY)) {
+      os.write("small".getBytes(StandardCharsets.UTF_8));
+    }
+    Assert.assertNull(headers.getFirst(HttpHeaders.CONTENT_ENCODING));
+    Assert.assertNull(headers.getFirst(HttpHeaders.VARY));
+    Assert.assertEquals("small", new String(bos.toByteArray(), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testEarlyFlush() throws IOException {
+    byte[] data = compressible();
+    MultivaluedMap<String, Object> headers = new MultivaluedHashMap<>();
+    ByteArrayOutputStream bos = new ByteArrayOutputStream();
+    try (SamplingCompressionOutputStream os
+            = new SamplingCompressionOutputStream(bos, headers, CompressionCodecs.GZIP, 6, POLICY)) {
+      os.write(data, 0, 100);
+      os.flush(); // below min size, does not force a decision.
+      Assert.assertEquals(0, bos.size());
+      Assert.assertNull(headers.getFirst(HttpHeaders.CONTENT_ENCODING));
+      os.write(data, 100, 2000);
+      os.flush();
+      Assert.assertTrue(os.isCompressing());
+      os.write(data, 2100, data.length - 2100);
+    }
+    Assert.assertEquals("gzip", headers.getFirst(HttpHeaders.CONTENT_ENCODING));
+    Assert.assertArrayEquals(data,
+            ByteStreams.toByteArray(new GZIPInputStream(new ByteArrayInputStream(bos.toByteArray()))));
+    // small content with a flush is still written as is.
+    headers.clear();
+    bos.reset();
+    try (SamplingCompressionOutputStream os
+            = new SamplingCompressionOutputStream(bos, headers, CompressionCodecs.GZIP, 6, POLICY)) {
+      os.write(data, 0, 100);
+      os.flush();
+    }
+    Assert.assertNull(headers.getFirst(HttpHeaders.CONTENT_ENCODING));
+    Assert.assertNull(headers.getFirst(HttpHeaders.VARY));
+    Assert.assertEquals(100, bos.size());
+  }
+
+  private static byte[] compressible() {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      sb.append("{\"name\" : \"value").append(i).append("\"}\n");
+    }
+    return sb.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+}
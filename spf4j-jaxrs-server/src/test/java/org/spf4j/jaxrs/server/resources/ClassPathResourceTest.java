@@ -15,13 +15,18 @@
  */
 package org.spf4j.jaxrs.server.resources;
 
+import com.google.common.io.ByteStreams;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
 import javax.ws.rs.ForbiddenException;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import org.junit.Assert;
 import org.junit.Test;
+import org.spf4j.jaxrs.server.StaticContent;
 
 /**
  *
@@ -55,4 +60,30 @@ public class ClassPathResourceTest {
     }
   }
 
+  @Test
+  public void testCachedResource() throws IOException {
+    ClassPathResource res = new ClassPathResource("static", Arrays.asList("index.html", "index.htm"));
+    TestJaxRsSecurityContext testJaxRsSecurityContext = new TestJaxRsSecurityContext();
+    Response resp = res.staticResources("/",  testJaxRsSecurityContext);
+    Response resp2 = res.staticResources("/", "gzip", null, testJaxRsSecurityContext);
+    Assert.assertSame(resp.getEntity(), resp2.getEntity());
+    Assert.assertEquals(resp.getEntityTag(), resp2.getEntityTag());
+  }
+
+  @Test
+  public void testStaticContentEncoding() throws IOException {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 100; i++) {
+      sb.append("<p>some repetitive content</p>\n");
+    }
+    StaticContent content = StaticContent.read(
+            new ByteArrayInputStream(sb.toString().getBytes(StandardCharsets.UTF_8)), MediaType.TEXT_HTML_TYPE);
+    Assert.assertEquals("gzip", content.negotiateEncoding("deflate, gzip;q=0.5"));
+    Assert.assertNull(content.negotiateEncoding("deflate, gzip;q=0"));
+    Assert.assertNull(content.negotiateEncoding(null));
+    Assert.assertNotEquals(content.getEntityTag(null), content.getEntityTag("gzip"));
+    Assert.assertEquals(sb.toString(), new String(ByteStreams.toByteArray(new GZIPInputStream(
+            new ByteArrayInputStream(content.getContent("gzip")))), StandardCharsets.UTF_8));
+  }
+
 }
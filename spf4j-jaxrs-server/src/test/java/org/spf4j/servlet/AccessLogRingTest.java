@@ -0,0 +1,131 @@
+package org.spf4j.servlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author Zoltan Farkas
+ */
+public class AccessLogRingTest {
+
+  @Test
+  public void testAllRecordsEmittedInOrder() throws IOException {
+    File file = File.createTempFile("access", ".log");
+    file.deleteOnExit();
+    AccessLogRing ring = AccessLogRing.open("test", file.toPath(), 3);
+    int offered = 0;
+    for (int i = 0; i < 100; i++) {
+      if (ring.offer("GET/test/" + i, "trace" + i, "127.0.0.1", 200, i, 1, 2)) {
+        offered++;
+      }
+    }
+    ring.close();
+    Assert.assertFalse(ring.offer("GET/test/closed", "trace", "127.0.0.1", 200, 1, 1, 2));
+    List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+    Assert.assertEquals(offered, lines.size());
+    int prev = -1;
+    for (String line : lines) {
+      int idx = Integer.parseInt(field(line, "name").substring("GET/test/".length()));
+      Assert.assertTrue(idx > prev);
+      prev = idx;
+      Assert.assertEquals("trace" + idx, field(line, "trId"));
+      Assert.assertTrue(line, line.endsWith(",\"clientHost\":\"127.0.0.1\",\"httpStatus\":200,\"execTimeMicros\":"
+              + idx + ",\"inBytes\":1,\"outBytes\":2}"));
+    }
+  }
+
+  @Test
+  public void testEncoding() throws IOException {
+    File file = File.createTempFile("access", ".log");
+    file.deleteOnExit();
+    AccessLogRing ring = AccessLogRing.open("test", file.toPath(), 2);
+    String name = "GET/http://h/p?q=\"a\\b\"\u00e9\u20ac\ud83d\ude00\n";
+    Assert.assertTrue(ring.offer(name, "t", "::1", 404, -5, 0, Long.MAX_VALUE));
+    ring.close();
+    List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+    Assert.assertEquals(1, lines.size());
+    Assert.assertTrue(lines.get(0), lines.get(0).matches("\\{\"ts\":[0-9]+,.*"));
+    Assert.assertTrue(lines.get(0), lines.get(0).endsWith(
+            ",\"name\":\"GET/http://h/p?q=\\\"a\\\\b\\\"\u00e9\u20ac\ud83d\ude00\\u000a\",\"trId\":\"t\","
+            + "\"clientHost\":\"::1\",\"httpStatus\":404,\"execTimeMicros\":-5,\"inBytes\":0,"
+            + "\"outBytes\":" + Long.MAX_VALUE + "}"));
+  }
+
+  @Test(timeout = 60000)
+  public void testMultipleProducers() throws InterruptedException, IOException {
+    File file = File.createTempFile("access", ".log");
+    file.deleteOnExit();
+    int nrProducers = 8;
+    int nrRecords = 2000;
+    AccessLogRing ring = AccessLogRing.open("test", file.toPath(), 64);
+    AtomicInteger offered = new AtomicInteger();
+    CountDownLatch start = new CountDownLatch(1);
+    List<Thread> producers = new ArrayList<>(nrProducers);
+    for (int p = 0; p < nrProducers; p++) {
+      String prefix = "GET/p" + p + '/';
+      Thread producer = new Thread(() -> {
+        try {
+          start.await();
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+        for (int i = 0; i < nrRecords; i++) {
+          if (ring.offer(prefix + i, "trace", "127.0.0.1", 200, i, 1, 2)) {
+            offered.incrementAndGet();
+          }
+          if (i % 100 == 0) {
+            Thread.yield(); // let the writer go idle once in a while.
+          }
+        }
+      });
+      producer.start();
+      producers.add(producer);
+    }
+    start.countDown();
+    for (Thread producer : producers) {
+      producer.join();
+    }
+    // the idle writer must be woken up by producers, wait for the records without closing the ring.
+    List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+    while (lines.size() < offered.get()) {
+      Thread.sleep(1);
+      lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+    }
+    ring.close();
+    Assert.assertTrue(offered.get() > 0);
+    lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+    Assert.assertEquals(offered.get(), lines.size());
+    // records of every producer are emitted in the order offered, with no duplicates.
+    int[] prev = new int[nrProducers];
+    Arrays.fill(prev, -1);
+    for (String line : lines) {
+      String name = field(line, "name");
+      int sep = name.indexOf('/', 5);
+      int p = Integer.parseInt(name.substring(5, sep));
+      int idx = Integer.parseInt(name.substring(sep + 1));
+      Assert.assertTrue(name, idx > prev[p]);
+      prev[p] = idx;
+    }
+  }
+
+  /**
+   * @return the value of a (unescaped) string field of a json line.
+   */
+  private static String field(final String line, final String name) {
+    String prefix = "\"" + name + "\":\"";
+    int start = line.indexOf(prefix) + prefix.length();
+    return line.substring(start, line.indexOf('"', start));
+  }
+
+}
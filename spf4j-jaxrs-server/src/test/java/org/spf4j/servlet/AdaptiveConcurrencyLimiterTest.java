@@ -0,0 +1,119 @@
+package org.spf4j.servlet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+import org.spf4j.base.TimeSource;
+
+/**
+ *
+ * @author Zoltan Farkas
+ */
+public class AdaptiveConcurrencyLimiterTest {
+
+  @Test
+  public void testLimitEnforced() {
+    AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1, 10, 1);
+    long now = TimeSource.nanoTime();
+    AdaptiveConcurrencyLimiter.Permit p1 = limiter.tryAcquire("GET /a", now);
+    AdaptiveConcurrencyLimiter.Permit p2 = limiter.tryAcquire("GET /a", now);
+    Assert.assertNotNull(p1);
+    Assert.assertNotNull(p2);
+    Assert.assertNull(limiter.tryAcquire("GET /a", now));
+    p1.release();
+    p1.release(); // idempotent
+    Assert.assertEquals(1, limiter.getInFlight());
+    AdaptiveConcurrencyLimiter.Permit p3 = limiter.tryAcquire("GET /a", now);
+    Assert.assertNotNull(p3);
+    Assert.assertNull(limiter.tryAcquire("GET /a", now));
+    p2.release();
+    p3.release();
+    Assert.assertEquals(0, limiter.getInFlight());
+  }
+
+  @Test
+  public void testLimitAdapts() {
+    AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(20, 10, 1000, 1);
+    Assert.assertTrue(limiter.canMeetDeadline("GET /a", 1));
+    long time = TimeSource.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+    time = runWindows(limiter, time, 30, TimeUnit.MILLISECONDS.toNanos(1));
+    int stableLimit = limiter.getLimit();
+    Assert.assertTrue("limit should grow at stable latency " + limiter, stableLimit > 20);
+    runWindows(limiter, time, 30, TimeUnit.MILLISECONDS.toNanos(20));
+    Assert.assertTrue("limit should shrink when latency grows " + limiter, limiter.getLimit() < stableLimit);
+    Assert.assertTrue(limiter.getLongRttNanos() > 0);
+    Assert.assertTrue(limiter.getExpectedServiceTimeNanos("GET /a") > 0);
+    Assert.assertFalse(limiter.canMeetDeadline("GET /a", TimeUnit.MICROSECONDS.toNanos(1)));
+    Assert.assertTrue(limiter.canMeetDeadline("GET /a", TimeUnit.MINUTES.toNanos(1)));
+  }
+
+  @Test
+  public void testDeadlineSheddingPerEndpoint() {
+    AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(100, 10, 1000, 1);
+    long now = TimeSource.nanoTime();
+    long slow = TimeUnit.SECONDS.toNanos(1);
+    long fast = TimeUnit.MILLISECONDS.toNanos(1);
+    for (int i = 0; i < 19; i++) {
+      limiter.tryAcquire("GET /slow", now - slow).release(now);
+      limiter.tryAcquire("GET /fast", now - fast).release(now);
+    }
+    // not enough samples yet.
+    Assert.assertTrue(limiter.canMeetDeadline("GET /slow", fast * 10));
+    limiter.tryAcquire("GET /slow", now - slow).release(now);
+    limiter.tryAcquire("GET /fast", now - fast).release(now);
+    // a slow endpoint does not cause fast endpoint requests to be shed.
+    Assert.assertFalse(limiter.canMeetDeadline("GET /slow", fast * 10));
+    Assert.assertTrue(limiter.canMeetDeadline("GET /slow", slow * 2));
+    Assert.assertTrue(limiter.canMeetDeadline("GET /fast", fast * 10));
+    Assert.assertFalse(limiter.canMeetDeadline("GET /fast", fast / 10));
+    Assert.assertTrue(limiter.canMeetDeadline("GET /unknown", 1));
+    Assert.assertEquals(slow, limiter.getExpectedServiceTimeNanos("GET /slow"));
+  }
+
+  @Test
+  public void testEndpointSetAfterMatching() {
+    AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(100, 10, 1000, 1, 5);
+    long now = TimeSource.nanoTime();
+    long slow = TimeUnit.SECONDS.toNanos(1);
+    for (int i = 0; i < 20; i++) {
+      AdaptiveConcurrencyLimiter.Permit permit = limiter.tryAcquire(null, now - slow);
+      Assert.assertTrue(permit.admit("resourceMethod", slow * 10));
+      permit.release(now);
+    }
+    Assert.assertEquals(slow, limiter.getExpectedServiceTimeNanos("resourceMethod"));
+    AdaptiveConcurrencyLimiter.Permit permit = limiter.tryAcquire(null, now);
+    Assert.assertFalse(permit.admit("resourceMethod", slow / 10));
+    Assert.assertEquals(5, permit.getRetryAfterSeconds());
+    Assert.assertEquals(1, limiter.getInFlight());
+    permit.release(now + 100 * slow);
+    Assert.assertEquals(0, limiter.getInFlight());
+    // shed requests are not part of the service time.
+    Assert.assertEquals(slow, limiter.getExpectedServiceTimeNanos("resourceMethod"));
+    // requests not matched to a resource method are not tracked per endpoint.
+    limiter.tryAcquire(null, now - slow).release(now);
+    Assert.assertTrue(limiter.canMeetDeadline("other", 1));
+  }
+
+  /**
+   * every window saturates the limit with requests of the given latency.
+   */
+  private static long runWindows(final AdaptiveConcurrencyLimiter limiter, final long startTime,
+          final int nrWindows, final long rttNanos) {
+    long time = startTime;
+    for (int w = 0; w < nrWindows; w++) {
+      time += TimeUnit.MILLISECONDS.toNanos(200);
+      List<AdaptiveConcurrencyLimiter.Permit> permits = new ArrayList<>();
+      AdaptiveConcurrencyLimiter.Permit permit;
+      while ((permit = limiter.tryAcquire("GET /a", time - rttNanos)) != null) {
+        permits.add(permit);
+      }
+      for (AdaptiveConcurrencyLimiter.Permit p : permits) {
+        p.release(time);
+      }
+    }
+    return time;
+  }
+
+}